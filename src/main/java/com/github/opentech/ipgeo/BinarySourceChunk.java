@@ -0,0 +1,165 @@
+package com.github.opentech.ipgeo;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+import com.github.opentech.ipgeo.Schema.Column.Datatype;
+
+/**
+ * Chunk of records of binary source, read in place from memory mapped content. Layout is
+ * described by {@link BinarySourceWriter}.
+ *
+ * @author bhargava.kulkarni
+ */
+public class BinarySourceChunk {
+
+  /**
+   * Content of chunk, starting at record count.
+   */
+  private ByteBuffer content;
+
+  /**
+   * Number of records.
+   */
+  private int size;
+
+  /**
+   * Datatype per column.
+   */
+  private Datatype[] datatypes;
+
+  /**
+   * Offset of null bitmap per column, -1 if column is not nullable.
+   */
+  private int[] nullOffsets;
+
+  /**
+   * Offset of values per column, offsets of string values for string columns.
+   */
+  private int[] valueOffsets;
+
+  /**
+   * Offset of UTF-8 bytes per string column.
+   */
+  private int[] stringOffsets;
+
+  /**
+   * Constructor for the class
+   *
+   * @param content content of chunk, starting at record count
+   * @param datatypes datatype per column
+   * @param nullables nullable flag per column
+   */
+  public BinarySourceChunk(final ByteBuffer content, final Datatype[] datatypes,
+      final boolean[] nullables) {
+    this.content = content;
+    this.datatypes = datatypes;
+    this.size = content.getInt(0);
+    this.nullOffsets = new int[datatypes.length];
+    this.valueOffsets = new int[datatypes.length];
+    this.stringOffsets = new int[datatypes.length];
+    long offset = Integer.BYTES + 2L * Integer.BYTES * this.size;
+    for (int i = 0; i < datatypes.length && offset <= content.limit(); i++) {
+      this.nullOffsets[i] = nullables[i] ? (int) offset : -1;
+      offset += nullables[i] ? (this.size + 7) >>> 3 : 0;
+      this.valueOffsets[i] = (int) offset;
+      if (datatypes[i] == Datatype.STRING) {
+        offset += (this.size + 1L) * Integer.BYTES;
+        this.stringOffsets[i] = (int) offset;
+        if (offset <= content.limit()) {
+          offset += content.getInt(this.valueOffsets[i] + this.size * Integer.BYTES);
+        }
+      } else {
+        offset += (long) this.size * getWidth(datatypes[i]);
+      }
+    }
+    if (this.size < 0 || offset != content.limit()) {
+      throw new IllegalStateException("Corrupt chunk of binary source, " + this.size
+          + " records in " + content.limit() + " bytes");
+    }
+  }
+
+  /**
+   * Width of value stored in binary source.
+   *
+   * @param datatype
+   * @return width expressed in bytes
+   */
+  public static int getWidth(final Datatype datatype) {
+    return (datatype == Datatype.PACKED_INT) ? Integer.BYTES : datatype.getSize();
+  }
+
+  /**
+   * @return number of records
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * @return size of chunk expressed in bytes
+   */
+  public int getBytes() {
+    return this.content.limit();
+  }
+
+  public int getRangeStart(int index) {
+    return this.content.getInt(Integer.BYTES * (1 + index));
+  }
+
+  public int getRangeEnd(int index) {
+    return this.content.getInt(Integer.BYTES * (1 + this.size + index));
+  }
+
+  /**
+   * @param index position of record within chunk
+   * @param column index of column
+   * @return true if value is null
+   */
+  public boolean isNull(int index, int column) {
+    return this.nullOffsets[column] >= 0
+        && (this.content.get(this.nullOffsets[column] + (index >>> 3)) & (0x80 >>> (index & 7)))
+            != 0;
+  }
+
+  /**
+   * Get raw value, as accepted by {@link DataRecord#writeRaw(long, Schema.Column, boolean)}.
+   *
+   * @param index position of record within chunk
+   * @param column index of column, other than string column
+   * @return raw value
+   */
+  public long getRaw(int index, int column) {
+    int offset = this.valueOffsets[column] + index * getWidth(this.datatypes[column]);
+    switch (this.datatypes[column]) {
+      case BYTE:
+        return this.content.get(offset) & 0xFF;
+      case SHORT:
+        return this.content.getShort(offset);
+      case LONG:
+        return this.content.getLong(offset);
+      default:
+        return this.content.getInt(offset);
+    }
+  }
+
+  /**
+   * Get value of string column.
+   *
+   * @param index position of record within chunk
+   * @param column index of string column
+   * @return value, null if value is null
+   */
+  public String getString(int index, int column) {
+    if (isNull(index, column)) {
+      return null;
+    }
+    int start = this.content.getInt(this.valueOffsets[column] + index * Integer.BYTES);
+    int end = this.content.getInt(this.valueOffsets[column] + (index + 1) * Integer.BYTES);
+    byte[] bytes = new byte[end - start];
+    ByteBuffer value = this.content.duplicate();
+    value.position(this.stringOffsets[column] + start);
+    value.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+}
@@ -0,0 +1,235 @@
+package com.github.opentech.ipgeo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.github.opentech.ipgeo.Schema.Column;
+import com.github.opentech.ipgeo.Schema.Column.Datatype;
+
+/**
+ * Reader of binary source written by {@link BinarySourceWriter}. File is memory mapped as windows
+ * & handed out chunk by chunk without copying.
+ *
+ * @author bhargava.kulkarni
+ */
+public class BinarySourceReader implements Closeable {
+
+  /**
+   * Default size of mapped window expressed in bytes.
+   */
+  private static final int WINDOW_SIZE = 1 << 30;
+
+  /**
+   * Name of the file.
+   */
+  private String filename;
+
+  /**
+   * Reference to source file.
+   */
+  private RandomAccessFile sourceReader;
+
+  /**
+   * Size of source file expressed in bytes.
+   */
+  private long length;
+
+  /**
+   * Maximum size of mapped window expressed in bytes.
+   */
+  private int windowSize;
+
+  /**
+   * Starting position of mapped window within file.
+   */
+  private long windowPosition;
+
+  /**
+   * Memory mapped window of source file.
+   */
+  private ByteBuffer window;
+
+  /**
+   * Position of next chunk within window.
+   */
+  private int position;
+
+  /**
+   * Datatype per column.
+   */
+  private Datatype[] datatypes;
+
+  /**
+   * Nullable flag per column.
+   */
+  private boolean[] nullables;
+
+  /**
+   * Observed value range per column.
+   */
+  private long[] minValues, maxValues;
+
+  /**
+   * Constructor for the class
+   *
+   * @param filename name of binary source file
+   * @throws IOException
+   */
+  public BinarySourceReader(final String filename) throws IOException {
+    this(filename, WINDOW_SIZE);
+  }
+
+  /**
+   * Constructor for the class
+   *
+   * @param filename name of binary source file
+   * @param windowSize maximum size of mapped window, must be larger than largest chunk
+   * @throws IOException
+   */
+  BinarySourceReader(final String filename, int windowSize) throws IOException {
+    this.filename = filename;
+    this.windowSize = windowSize;
+    this.sourceReader = new RandomAccessFile(filename, "r");
+    this.length = this.sourceReader.length();
+    try {
+      map(0);
+      readHeader();
+    } catch (RuntimeException e) {
+      this.sourceReader.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Check whether file is binary source.
+   *
+   * @param filename
+   * @return true if file starts with magic number of binary source
+   * @throws IOException
+   */
+  public static boolean isBinarySource(final String filename) throws IOException {
+    try (RandomAccessFile sourceReader = new RandomAccessFile(filename, "r")) {
+      return sourceReader.length() >= Integer.BYTES
+          && sourceReader.readInt() == BinarySourceWriter.MAGIC;
+    }
+  }
+
+  /**
+   * Map window starting at given position within file.
+   *
+   * @param windowPosition
+   * @throws IOException
+   */
+  private void map(long windowPosition) throws IOException {
+    this.windowPosition = windowPosition;
+    this.window = this.sourceReader.getChannel().map(FileChannel.MapMode.READ_ONLY,
+        windowPosition, Math.min(this.windowSize, this.length - windowPosition));
+    this.position = 0;
+  }
+
+  private void readHeader() {
+    if (this.length < 3 * Integer.BYTES || this.window.getInt(0) != BinarySourceWriter.MAGIC) {
+      throw new IllegalStateException("Invalid binary source " + this.filename);
+    }
+    int version = this.window.getInt(Integer.BYTES);
+    if (version != BinarySourceWriter.VERSION) {
+      throw new IllegalStateException("Unsupported binary source " + this.filename
+          + " Reason: version " + version);
+    }
+    int totalColumns = this.window.getInt(2 * Integer.BYTES);
+    this.datatypes = new Datatype[totalColumns];
+    this.nullables = new boolean[totalColumns];
+    this.minValues = new long[totalColumns];
+    this.maxValues = new long[totalColumns];
+    this.position = 3 * Integer.BYTES;
+    for (int i = 0; i < totalColumns; i++) {
+      this.datatypes[i] = Datatype.values()[this.window.get(this.position)];
+      this.nullables[i] = this.window.get(this.position + 1) != 0;
+      this.minValues[i] = this.window.getLong(this.position + 2);
+      this.maxValues[i] = this.window.getLong(this.position + 2 + Long.BYTES);
+      this.position += 2 + 2 * Long.BYTES;
+    }
+  }
+
+  /**
+   * Check columns of binary source against schema definition.
+   *
+   * @param schema
+   * @throws IllegalStateException if columns do not match
+   */
+  public void checkSchema(final Schema schema) {
+    Column[] columns = schema.getColumns();
+    if (columns.length != this.datatypes.length) {
+      throw new IllegalStateException("Binary source " + this.filename
+          + " does not match schema Reason: " + this.datatypes.length + " columns found, "
+          + columns.length + " expected");
+    }
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].getDatatype() != this.datatypes[i]
+          || columns[i].isNullable() != this.nullables[i]) {
+        throw new IllegalStateException("Binary source " + this.filename
+            + " does not match schema Reason: column " + columns[i].getName() + " found as "
+            + this.datatypes[i] + (this.nullables[i] ? " nullable" : ""));
+      }
+    }
+  }
+
+  /**
+   * Get next chunk of records.
+   *
+   * @return chunk, null at end of file
+   * @throws IOException
+   */
+  public BinarySourceChunk nextChunk() throws IOException {
+    while (true) {
+      long chunkPosition = this.windowPosition + this.position;
+      if (chunkPosition >= this.length) {
+        return null;
+      }
+      int limit = this.window.limit();
+      int size = (limit - this.position >= Integer.BYTES) ? this.window.getInt(this.position) : 0;
+      if (chunkPosition + Integer.BYTES + size > this.length || size < 0) {
+        throw new IllegalStateException("Truncated binary source " + this.filename
+            + " at position " + chunkPosition);
+      }
+      if (limit - this.position < Integer.BYTES + size) {
+        if (this.position == 0) {
+          throw new IllegalStateException("Chunk exceeds window size at position "
+              + chunkPosition + " in " + this.filename);
+        }
+        map(chunkPosition);
+        continue;
+      }
+      ByteBuffer chunk = this.window.duplicate();
+      chunk.position(this.position + Integer.BYTES);
+      chunk.limit(this.position + Integer.BYTES + size);
+      this.position = chunk.limit();
+      return new BinarySourceChunk(chunk.slice(), this.datatypes, this.nullables);
+    }
+  }
+
+  /**
+   * @param column index of column
+   * @return minimum observed value of packed column
+   */
+  public long getMinValue(int column) {
+    return this.minValues[column];
+  }
+
+  /**
+   * @param column index of column
+   * @return maximum observed value of packed column
+   */
+  public long getMaxValue(int column) {
+    return this.maxValues[column];
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.window = null;
+    this.sourceReader.close();
+  }
+}
@@ -0,0 +1,339 @@
+package com.github.opentech.ipgeo;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.github.opentech.ipgeo.Schema.Column;
+import com.github.opentech.ipgeo.Schema.Column.Datatype;
+
+/**
+ * Writes binary source, an interchange format which is ingested by
+ * {@link IpLookup#persist(String, String, Schema)} without parsing text. Binary source holds
+ * already validated values, so that it is emitted once & persisted many times.
+ *
+ * File starts with header [magic][version][column count] followed per column by
+ * [datatype][nullable][minimum][maximum], where minimum & maximum are observed value range of
+ * packed columns. Records follow in chunks [chunk size][record count][range starts][range ends]
+ * followed per column by [null bitmap, if nullable][values]. Values are stored column by column
+ * at width of their datatype, packed columns as int. Strings are stored as [offsets][UTF-8
+ * bytes]. All numbers are big endian.
+ *
+ * @author bhargava.kulkarni
+ */
+public class BinarySourceWriter implements Closeable {
+
+  /**
+   * Logger for the class
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(BinarySourceWriter.class);
+
+  /**
+   * Magic number identifying binary source, "IPGS".
+   */
+  public static final int MAGIC = 0x49504753;
+
+  public static final int VERSION = 1;
+
+  /**
+   * Default number of records per chunk.
+   */
+  public static final int CHUNK_RECORDS = 1 << 16;
+
+  /**
+   * Name of the file.
+   */
+  private String filename;
+
+  /**
+   * Schema definition of values.
+   */
+  private Schema schema;
+
+  /**
+   * Number of records per chunk.
+   */
+  private int chunkRecords;
+
+  /**
+   * Output stream of binary source.
+   */
+  private DataOutputStream outputWriter;
+
+  /**
+   * Range starts of pending chunk.
+   */
+  private int[] starts;
+
+  /**
+   * Range ends of pending chunk.
+   */
+  private int[] ends;
+
+  /**
+   * Raw values per column of pending chunk.
+   */
+  private long[][] values;
+
+  /**
+   * Null flags per column of pending chunk.
+   */
+  private boolean[][] nulls;
+
+  /**
+   * String values per column of pending chunk.
+   */
+  private byte[][][] strings;
+
+  /**
+   * Observed value range per column.
+   */
+  private long[] minValues, maxValues;
+
+  /**
+   * Number of records in pending chunk.
+   */
+  private int records;
+
+  /**
+   * Number of records written.
+   */
+  private long totalRecords;
+
+  /**
+   * Constructor for the class
+   *
+   * @param filename name of binary source file
+   * @param schema
+   * @throws IOException
+   */
+  public BinarySourceWriter(final String filename, final Schema schema) throws IOException {
+    this(filename, schema, CHUNK_RECORDS);
+  }
+
+  /**
+   * Constructor for the class
+   *
+   * @param filename name of binary source file
+   * @param schema
+   * @param chunkRecords number of records per chunk
+   * @throws IOException
+   */
+  BinarySourceWriter(final String filename, final Schema schema, int chunkRecords)
+      throws IOException {
+    int totalColumns = schema.getTotalColumns();
+    this.filename = filename;
+    this.schema = schema;
+    this.chunkRecords = chunkRecords;
+    this.starts = new int[chunkRecords];
+    this.ends = new int[chunkRecords];
+    this.values = new long[totalColumns][chunkRecords];
+    this.nulls = new boolean[totalColumns][chunkRecords];
+    this.strings = new byte[totalColumns][][];
+    this.minValues = new long[totalColumns];
+    this.maxValues = new long[totalColumns];
+    Arrays.fill(this.minValues, Long.MAX_VALUE);
+    Arrays.fill(this.maxValues, Long.MIN_VALUE);
+    for (int i = 0; i < totalColumns; i++) {
+      if (schema.getColumn(i).getDatatype() == Datatype.STRING) {
+        this.strings[i] = new byte[chunkRecords][];
+      }
+    }
+    this.outputWriter = new DataOutputStream(new BufferedChannelWriter(filename));
+    writeHeader(this.outputWriter);
+  }
+
+  /**
+   * Write header, value ranges are rewritten on close.
+   *
+   * @param output
+   * @throws IOException
+   */
+  private void writeHeader(DataOutput output) throws IOException {
+    Column[] columns = this.schema.getColumns();
+    output.writeInt(MAGIC);
+    output.writeInt(VERSION);
+    output.writeInt(columns.length);
+    for (int i = 0; i < columns.length; i++) {
+      output.writeByte(columns[i].getDatatype().ordinal());
+      output.writeBoolean(columns[i].isNullable());
+      output.writeLong(this.minValues[i]);
+      output.writeLong(this.maxValues[i]);
+    }
+  }
+
+  /**
+   * Convert tab separated source to binary source. Invalid lines are skipped, same as while
+   * persisting text source.
+   *
+   * @param source name of tab separated source file
+   * @param target name of binary source file
+   * @param schema
+   * @return number of records written
+   * @throws IOException
+   */
+  public static long convert(final String source, final String target, final Schema schema)
+      throws IOException {
+    return convert(source, target, schema, CHUNK_RECORDS);
+  }
+
+  static long convert(final String source, final String target, final Schema schema,
+      int chunkRecords) throws IOException {
+    try (SourceTokenizer tokenizer = new SourceTokenizer(source);
+        BinarySourceWriter writer = new BinarySourceWriter(target, schema, chunkRecords)) {
+      while (tokenizer.nextLine()) {
+        if (tokenizer.getFieldCount() > 1 && writer.add(tokenizer, 1)) {
+          continue;
+        }
+        LOG.error("Invalid record found while converting : {}", tokenizer.getLine());
+      }
+      return writer.getTotalRecords();
+    }
+  }
+
+  /**
+   * Add current line of tab separated source.
+   *
+   * @param tokenizer source positioned at line
+   * @param firstField index of field holding first column value, IP range precedes it
+   * @return true if line is valid & added
+   * @throws IOException
+   */
+  public boolean add(final SourceTokenizer tokenizer, int firstField) throws IOException {
+    Column[] columns = this.schema.getColumns();
+    if (tokenizer.getFieldCount() - firstField != columns.length) {
+      return false;
+    }
+    long range;
+    try {
+      range = tokenizer.parseIpRange(firstField - 1);
+      for (int i = 0; i < columns.length; i++) {
+        int field = firstField + i;
+        boolean isNull = columns[i].isNullable() && tokenizer.isNullValue(field);
+        this.nulls[i][this.records] = isNull;
+        if (columns[i].getDatatype() == Datatype.STRING) {
+          this.strings[i][this.records] =
+              isNull ? null : tokenizer.getString(field).getBytes(StandardCharsets.UTF_8);
+        } else {
+          this.values[i][this.records] =
+              isNull ? 0 : DataRecordProcessor.parseField(tokenizer, field, columns[i]);
+        }
+      }
+    } catch (IllegalArgumentException e) {
+      return false;
+    }
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].getDatatype() == Datatype.PACKED_INT && !this.nulls[i][this.records]) {
+        this.minValues[i] = Math.min(this.minValues[i], this.values[i][this.records]);
+        this.maxValues[i] = Math.max(this.maxValues[i], this.values[i][this.records]);
+      }
+    }
+    this.starts[this.records] = (int) (range >>> 32);
+    this.ends[this.records] = (int) range;
+    this.records++;
+    this.totalRecords++;
+    if (this.records == this.chunkRecords) {
+      flushChunk();
+    }
+    return true;
+  }
+
+  /**
+   * Encode & write pending chunk.
+   *
+   * @throws IOException
+   */
+  private void flushChunk() throws IOException {
+    Column[] columns = this.schema.getColumns();
+    ByteArrayOutputStream chunk = new ByteArrayOutputStream();
+    DataOutputStream chunkWriter = new DataOutputStream(chunk);
+    chunkWriter.writeInt(this.records);
+    for (int r = 0; r < this.records; r++) {
+      chunkWriter.writeInt(this.starts[r]);
+    }
+    for (int r = 0; r < this.records; r++) {
+      chunkWriter.writeInt(this.ends[r]);
+    }
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].isNullable()) {
+        byte[] flags = new byte[(this.records + 7) >>> 3];
+        for (int r = 0; r < this.records; r++) {
+          if (this.nulls[i][r]) {
+            flags[r >>> 3] |= (0x80 >>> (r & 7));
+          }
+        }
+        chunkWriter.write(flags);
+      }
+      if (columns[i].getDatatype() == Datatype.STRING) {
+        int offset = 0;
+        chunkWriter.writeInt(offset);
+        for (int r = 0; r < this.records; r++) {
+          offset += (this.strings[i][r] != null) ? this.strings[i][r].length : 0;
+          chunkWriter.writeInt(offset);
+        }
+        for (int r = 0; r < this.records; r++) {
+          if (this.strings[i][r] != null) {
+            chunkWriter.write(this.strings[i][r]);
+            this.strings[i][r] = null;
+          }
+        }
+      } else {
+        for (int r = 0; r < this.records; r++) {
+          writeValue(chunkWriter, columns[i].getDatatype(), this.values[i][r]);
+        }
+      }
+    }
+    this.outputWriter.writeInt(chunk.size());
+    chunk.writeTo(this.outputWriter);
+    this.records = 0;
+  }
+
+  private static void writeValue(final DataOutputStream output, final Datatype datatype,
+      long value) throws IOException {
+    switch (datatype) {
+      case BYTE:
+        output.writeByte((int) value);
+        break;
+      case SHORT:
+        output.writeShort((int) value);
+        break;
+      case LONG:
+        output.writeLong(value);
+        break;
+      default:
+        output.writeInt((int) value);
+        break;
+    }
+  }
+
+  /**
+   * Write pending chunk & observed value ranges.
+   *
+   * @throws IOException
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.records > 0) {
+      flushChunk();
+    }
+    this.outputWriter.close();
+    try (RandomAccessFile headerWriter = new RandomAccessFile(this.filename, "rw")) {
+      writeHeader(headerWriter);
+    }
+  }
+
+  /**
+   * @return number of records written
+   */
+  public long getTotalRecords() {
+    return this.totalRecords;
+  }
+}
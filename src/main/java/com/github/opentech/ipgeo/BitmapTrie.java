@@ -1,9 +1,13 @@
 package com.github.opentech.ipgeo;
 
+import java.io.File;
+import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.nio.IntBuffer;
-import java.nio.MappedByteBuffer;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * An implementation of Tree Data Structure using Arrays.
@@ -76,6 +80,22 @@ public class BitmapTrie {
     this.valueNodes[0] = NO_VALUE;
   }
 
+  /**
+   * Initialize internal tree structure with nodes built by {@link BitmapTrieBuilder}.
+   * @param valueNodes
+   * @param leftNodes
+   * @param rightNodes
+   */
+  void load(int[] valueNodes, int[] leftNodes, int[] rightNodes) {
+
+    this.size = valueNodes.length;
+    this.allocatedSize = valueNodes.length;
+    this.maxSize = (Integer.MAX_VALUE-32);
+    this.valueNodes = valueNodes;
+    this.leftNodes = leftNodes;
+    this.rightNodes = rightNodes;
+  }
+
   /**
    * Adds a key-value pair into tree.
    * @param key IPv4 network prefix
@@ -129,6 +149,42 @@ public class BitmapTrie {
     return true;
   }
 
+  /**
+   * Adds a value for every address of IPv4 range. Range is decomposed arithmetically into
+   * largest aligned prefixes, each of which is added as a single key.
+   * @param start first IPv4 address of range, unsigned
+   * @param end last IPv4 address of range, unsigned
+   * @param value an arbitrary value to be stored against given range
+   * @return true on successful add of all prefixes
+   */
+  public boolean addRange(int start, int end, int value) {
+    long first = start & 0xFFFFFFFFL;
+    long last = end & 0xFFFFFFFFL;
+    if (first > last) {
+      return false;
+    }
+    while (first <= last) {
+      int hostBits = getHostBits(first, last);
+      if (!add(first, (0xFFFFFFFFL << hostBits) & 0xFFFFFFFFL, value)) {
+        return false;
+      }
+      first += 1L << hostBits;
+    }
+    return true;
+  }
+
+  /**
+   * Number of host bits of largest aligned prefix which starts at first address & does not
+   * extend beyond last address.
+   * @param first first IPv4 address of range
+   * @param last last IPv4 address of range
+   * @return host bits, prefix covers 2^hostBits addresses
+   */
+  public static int getHostBits(long first, long last) {
+    return Math.min(Math.min(Long.numberOfTrailingZeros(first), 32),
+        63 - Long.numberOfLeadingZeros(last - first + 1));
+  }
+
   /**
    * Matches a value for a given IPv4 address, traversing trie and choosing most
    * specific value available for a given address.
@@ -181,20 +237,67 @@ public class BitmapTrie {
    * Persist internal structures to a file.
    * Data is persisted in the order, [value-nodes] -> [left-nodes] ->
    * [right-nodes]
+   * Nodes are streamed through a direct buffer at long file offsets, so that index of any size
+   * is written without mapping it as a whole.
    * @param filename
    */
   public void persist(String filename) throws Exception {
+    persist(filename, BufferedChannelWriter.DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Persist internal structures to a file, through buffer of given size.
+   * @param filename
+   * @param bufferSize size of buffer expressed in bytes
+   * @throws Exception
+   */
+  void persist(String filename, int bufferSize) throws Exception {
+
+    try (RandomAccessFile indexOutputWriter = new RandomAccessFile(filename, "rw");
+        FileChannel fileChannel = indexOutputWriter.getChannel()) {
+      ByteBuffer buffer = allocateBuffer(bufferSize);
+      long position = writeNodes(fileChannel, 0, this.valueNodes, this.size, buffer);
+      position = writeNodes(fileChannel, position, this.leftNodes, this.size, buffer);
+      position = writeNodes(fileChannel, position, this.rightNodes, this.size, buffer);
+      fileChannel.truncate(position);
+      fileChannel.force(false);
+    }
+  }
 
-    RandomAccessFile indexOutputWriter = new RandomAccessFile(filename, "rw");
-    FileChannel fileChannel = indexOutputWriter.getChannel();
-    MappedByteBuffer mappedByteBuffer =
-        fileChannel.map(FileChannel.MapMode.READ_WRITE, 0, 3 * Integer.BYTES * this.size);
-    IntBuffer intBuffer = mappedByteBuffer.asIntBuffer();
-    intBuffer.put(this.valueNodes, 0, this.size);
-    intBuffer.put(this.leftNodes, 0, this.size);
-    intBuffer.put(this.rightNodes, 0, this.size);
-    mappedByteBuffer.force();
-    indexOutputWriter.close();
+  /**
+   * Allocate buffer of given size, or of size of one node array if it is smaller, so that small
+   * shards do not hold large buffers.
+   * @param bufferSize
+   * @return direct buffer
+   */
+  private ByteBuffer allocateBuffer(int bufferSize) {
+    return ByteBuffer.allocateDirect(
+        (int) Math.min(bufferSize, Math.max(1, this.size) * (long) Integer.BYTES));
+  }
+
+  /**
+   * Write nodes to channel in chunks of buffer size.
+   * @param fileChannel
+   * @param position starting position within file expressed in bytes
+   * @param nodes
+   * @param count number of nodes to write
+   * @param buffer
+   * @return position following written nodes
+   * @throws IOException
+   */
+  private static long writeNodes(FileChannel fileChannel, long position, int[] nodes, int count,
+      ByteBuffer buffer) throws IOException {
+    int chunk = buffer.capacity() / Integer.BYTES;
+    for (int written = 0; written < count; written += chunk) {
+      int length = Math.min(chunk, count - written);
+      buffer.clear();
+      buffer.asIntBuffer().put(nodes, written, length);
+      buffer.limit(length * Integer.BYTES);
+      while (buffer.hasRemaining()) {
+        position += fileChannel.write(buffer, position);
+      }
+    }
+    return position;
   }
 
   /**
@@ -206,19 +309,134 @@ public class BitmapTrie {
    * @throws Exception
    */
   public void recover(String filename, int allocatedSize) throws Exception {
+    recover(filename, 0, allocatedSize);
+  }
+
+  /**
+   * Recover index stored at given position within file, e.g. within container. Nodes are
+   * streamed through a direct buffer at long file offsets.
+   * 
+   * @param filename
+   * @param position starting position within file expressed in bytes
+   * @param allocatedSize
+   * @throws Exception
+   */
+  public void recover(String filename, long position, int allocatedSize) throws Exception {
+    recover(filename, position, allocatedSize, BufferedChannelWriter.DEFAULT_BUFFER_SIZE);
+  }
+
+  /**
+   * Recover index stored at given position within file, through buffer of given size.
+   * 
+   * @param filename
+   * @param position starting position within file expressed in bytes
+   * @param allocatedSize
+   * @param bufferSize size of buffer expressed in bytes
+   * @throws Exception
+   */
+  void recover(String filename, long position, int allocatedSize, int bufferSize)
+      throws Exception {
     
     init(allocatedSize);
     this.size = allocatedSize;
-    RandomAccessFile indexInputReader = new RandomAccessFile(filename, "r");
-    FileChannel fileChannel = indexInputReader.getChannel();
-    MappedByteBuffer mappedByteBuffer =
-        fileChannel.map(FileChannel.MapMode.READ_ONLY, 0, 3 * Integer.BYTES * this.size);
-    IntBuffer intBuffer = mappedByteBuffer.asIntBuffer();
-    intBuffer.get(this.valueNodes, 0, this.size);
-    intBuffer.get(this.leftNodes, 0, this.size);
-    intBuffer.get(this.rightNodes, 0, this.size);
-    mappedByteBuffer.force();
-    indexInputReader.close();
+    try (RandomAccessFile indexInputReader = new RandomAccessFile(filename, "r");
+        FileChannel fileChannel = indexInputReader.getChannel()) {
+      if (position + 3L * Integer.BYTES * this.size > fileChannel.size()) {
+        throw new IllegalStateException("Index file " + filename + " is shorter than "
+            + this.size + " nodes");
+      }
+      ByteBuffer buffer = allocateBuffer(bufferSize);
+      position = readNodes(fileChannel, position, this.valueNodes, this.size, buffer);
+      position = readNodes(fileChannel, position, this.leftNodes, this.size, buffer);
+      readNodes(fileChannel, position, this.rightNodes, this.size, buffer);
+    }
+  }
+
+  /**
+   * Create tasks recovering index stored at given position within file in slices, so that
+   * slices are read in parallel. Each task reads its range of value, left & right nodes through
+   * buffer of calling thread. Trie must not be used until all tasks are complete.
+   *
+   * @param filename
+   * @param position starting position within file expressed in bytes
+   * @param allocatedSize
+   * @param sliceNodes number of nodes per slice
+   * @param buffers direct buffer per thread
+   * @return tasks, each returning number of bytes read
+   */
+  List<Callable<Long>> recoverSlices(String filename, long position, int allocatedSize,
+      int sliceNodes, ThreadLocal<ByteBuffer> buffers) {
+
+    init(allocatedSize);
+    this.size = allocatedSize;
+    if (position + 3L * Integer.BYTES * this.size > new File(filename).length()) {
+      throw new IllegalStateException("Index file " + filename + " is shorter than "
+          + this.size + " nodes");
+    }
+    List<Callable<Long>> slices = new ArrayList<Callable<Long>>();
+    for (int from = 0; from < this.size; from += sliceNodes) {
+      final int first = from;
+      final int count = Math.min(sliceNodes, this.size - from);
+      slices.add(() -> {
+        ByteBuffer buffer = buffers.get();
+        try (RandomAccessFile indexInputReader = new RandomAccessFile(filename, "r");
+            FileChannel fileChannel = indexInputReader.getChannel()) {
+          long offset = position + (long) first * Integer.BYTES;
+          long arraySize = (long) this.size * Integer.BYTES;
+          readNodes(fileChannel, offset, this.valueNodes, first, count, buffer);
+          readNodes(fileChannel, offset + arraySize, this.leftNodes, first, count, buffer);
+          readNodes(fileChannel, offset + 2 * arraySize, this.rightNodes, first, count, buffer);
+        }
+        return 3L * Integer.BYTES * count;
+      });
+    }
+    return slices;
+  }
+
+  /**
+   * Read nodes from channel in chunks of buffer size.
+   * @param fileChannel
+   * @param position starting position within file expressed in bytes
+   * @param nodes
+   * @param count number of nodes to read
+   * @param buffer
+   * @return position following read nodes
+   * @throws IOException
+   */
+  private static long readNodes(FileChannel fileChannel, long position, int[] nodes, int count,
+      ByteBuffer buffer) throws IOException {
+    return readNodes(fileChannel, position, nodes, 0, count, buffer);
+  }
+
+  /**
+   * Read range of nodes from channel in chunks of buffer size.
+   * @param fileChannel
+   * @param position position of first node of range within file expressed in bytes
+   * @param nodes
+   * @param first first node of range
+   * @param count number of nodes to read
+   * @param buffer
+   * @return position following read nodes
+   * @throws IOException
+   */
+  private static long readNodes(FileChannel fileChannel, long position, int[] nodes, int first,
+      int count, ByteBuffer buffer) throws IOException {
+    int chunk = buffer.capacity() / Integer.BYTES;
+    for (int read = 0; read < count; read += chunk) {
+      int length = Math.min(chunk, count - read);
+      buffer.clear();
+      buffer.limit(length * Integer.BYTES);
+      while (buffer.hasRemaining()) {
+        int bytes = fileChannel.read(buffer, position);
+        if (bytes < 0) {
+          throw new IllegalStateException("Unexpected end of index file at " + position);
+        }
+        position += bytes;
+      }
+      buffer.flip();
+      buffer.asIntBuffer().get(nodes, first + read, length);
+    }
+    return position;
   }
 
   /**
@@ -0,0 +1,465 @@
+package com.github.opentech.ipgeo;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.PriorityQueue;
+
+/**
+ * Bulk builder of {@link BitmapTrie}. Prefixes are collected, sorted by address & prefix length
+ * and trie is constructed in single linear pass, keeping path from root to last prefix on a
+ * stack. Nodes are allocated in depth first order & arrays are sized exactly, since number of
+ * nodes is counted by a pass over sorted prefixes before construction. Prefixes which do not fit
+ * in memory are sorted as runs written to temporary files & merged.
+ *
+ * Result is same as adding prefixes one by one with {@link BitmapTrie#add(long, long, int)},
+ * value of last added duplicate prefix wins.
+ *
+ * @author bhargava.kulkarni
+ */
+public class BitmapTrieBuilder implements Closeable {
+
+  /**
+   * Default number of prefixes sorted in memory.
+   */
+  public static final int DEFAULT_RUN_SIZE = 1 << 22;
+
+  /**
+   * Bits of sort key holding position of prefix within run, which keeps sort stable.
+   */
+  private static final int SEQUENCE_BITS = 25;
+
+  private static final int PREFIX_LENGTH_BITS = 6;
+
+  /**
+   * Initial number of prefixes the run has room for, run grows as prefixes are added. Kept small
+   * so that many builders, e.g. one per shard, do not hold memory before prefixes are added.
+   */
+  static final int INITIAL_CAPACITY = 16;
+
+  /**
+   * Directory of temporary run files.
+   */
+  private File tempDirectory;
+
+  /**
+   * Maximum number of prefixes sorted in memory.
+   */
+  private int runSize;
+
+  /**
+   * Sort keys of prefixes of current run, [address][prefix length][sequence].
+   */
+  private long[] keys;
+
+  /**
+   * Values of prefixes of current run, indexed by sequence.
+   */
+  private int[] values;
+
+  /**
+   * Number of prefixes in current run.
+   */
+  private int count;
+
+  /**
+   * Whether prefixes of current run are added in sorted order.
+   */
+  private boolean sorted = true;
+
+  /**
+   * Sorted runs written to temporary files.
+   */
+  private List<File> runs = new ArrayList<File>();
+
+  /**
+   * Constructor for the class
+   *
+   * @param tempDirectory directory of temporary run files
+   */
+  public BitmapTrieBuilder(final File tempDirectory) {
+    this(tempDirectory, DEFAULT_RUN_SIZE);
+  }
+
+  /**
+   * Constructor for the class
+   *
+   * @param tempDirectory directory of temporary run files
+   * @param runSize maximum number of prefixes sorted in memory
+   */
+  BitmapTrieBuilder(final File tempDirectory, int runSize) {
+    if (runSize <= 0 || runSize > (1 << SEQUENCE_BITS)) {
+      throw new IllegalArgumentException("Invalid run size " + runSize);
+    }
+    this.tempDirectory = tempDirectory;
+    this.runSize = runSize;
+    this.keys = new long[Math.min(runSize, INITIAL_CAPACITY)];
+    this.values = new int[this.keys.length];
+  }
+
+  /**
+   * Adds a key-value pair.
+   *
+   * @param key IPv4 network prefix
+   * @param prefixLength length of prefix in bits
+   * @param value an arbitrary value to be stored against given key
+   * @return true on successful add
+   * @throws IOException if run can not be written
+   */
+  public boolean add(long key, int prefixLength, int value) throws IOException {
+    if (prefixLength < 0 || prefixLength > Integer.SIZE) {
+      return false;
+    }
+    if (this.count == this.runSize) {
+      writeRun();
+    }
+    if (this.count == this.keys.length) {
+      int length = (int) Math.min((long) this.count << 1, this.runSize);
+      this.keys = Arrays.copyOf(this.keys, length);
+      this.values = Arrays.copyOf(this.values, length);
+    }
+    long mask = (0xFFFFFFFFL << (Integer.SIZE - prefixLength)) & 0xFFFFFFFFL;
+    long prefix = ((key & mask) << PREFIX_LENGTH_BITS) | prefixLength;
+    long sortKey = (prefix << SEQUENCE_BITS) | this.count;
+    if (this.count > 0 && sortKey < this.keys[this.count - 1]) {
+      this.sorted = false;
+    }
+    this.keys[this.count] = sortKey;
+    this.values[this.count] = value;
+    this.count++;
+    return true;
+  }
+
+  /**
+   * Adds a value for every address of IPv4 range, same as
+   * {@link BitmapTrie#addRange(int, int, int)}.
+   *
+   * @param start first IPv4 address of range, unsigned
+   * @param end last IPv4 address of range, unsigned
+   * @param value an arbitrary value to be stored against given range
+   * @return true on successful add of all prefixes
+   * @throws IOException if run can not be written
+   */
+  public boolean addRange(int start, int end, int value) throws IOException {
+    long first = start & 0xFFFFFFFFL;
+    long last = end & 0xFFFFFFFFL;
+    if (first > last) {
+      return false;
+    }
+    while (first <= last) {
+      int hostBits = BitmapTrie.getHostBits(first, last);
+      if (!add(first, Integer.SIZE - hostBits, value)) {
+        return false;
+      }
+      first += 1L << hostBits;
+    }
+    return true;
+  }
+
+  /**
+   * Sort prefixes of current run.
+   */
+  private void sortRun() {
+    if (!this.sorted) {
+      Arrays.sort(this.keys, 0, this.count);
+      this.sorted = true;
+    }
+  }
+
+  /**
+   * Sort current run & write it to temporary file.
+   *
+   * @throws IOException
+   */
+  private void writeRun() throws IOException {
+    sortRun();
+    File run = File.createTempFile("trie", ".run", this.tempDirectory);
+    this.runs.add(run);
+    try (DataOutputStream runOutputWriter =
+        new DataOutputStream(new BufferedOutputStream(new FileOutputStream(run)))) {
+      for (int i = 0; i < this.count; i++) {
+        runOutputWriter.writeLong(this.keys[i] >>> SEQUENCE_BITS);
+        runOutputWriter.writeInt(this.values[(int) (this.keys[i] & ((1 << SEQUENCE_BITS) - 1))]);
+      }
+    }
+    this.count = 0;
+  }
+
+  /**
+   * Write current run to temporary file & release memory of run, e.g. when memory shared by
+   * several builders is exhausted.
+   *
+   * @throws IOException if run can not be written
+   */
+  void spill() throws IOException {
+    if (this.count > 0) {
+      writeRun();
+    }
+    this.keys = new long[Math.min(this.runSize, INITIAL_CAPACITY)];
+    this.values = new int[this.keys.length];
+  }
+
+  /**
+   * @return number of prefixes current run has room for, i.e. memory held by builder
+   */
+  int getCapacity() {
+    return this.keys.length;
+  }
+
+  /**
+   * Build trie from added prefixes, replacing existing content of trie.
+   *
+   * @param bitmapTrie trie to be built
+   * @throws IOException if runs can not be read
+   */
+  public void build(final BitmapTrie bitmapTrie) throws IOException {
+    sortRun();
+
+    /**
+     * Count nodes. Prefixes are in depth first order, so that nodes shared with any previous
+     * prefix are exactly nodes shared with immediately previous prefix.
+     */
+    long size = 1;
+    long previous = -1;
+    try (PrefixCursor cursor = openCursor()) {
+      while (cursor.next()) {
+        size += getPrefixLength(cursor.prefix) - getCommonLength(previous, cursor.prefix);
+        previous = cursor.prefix;
+      }
+    }
+    if (size > Integer.MAX_VALUE - 32) {
+      throw new IllegalStateException("Trie of " + size + " nodes exceeds maximum size");
+    }
+
+    int[] valueNodes = new int[(int) size];
+    int[] leftNodes = new int[(int) size];
+    int[] rightNodes = new int[(int) size];
+    Arrays.fill(valueNodes, BitmapTrie.NO_VALUE);
+    Arrays.fill(leftNodes, BitmapTrie.NULL_PTR);
+    Arrays.fill(rightNodes, BitmapTrie.NULL_PTR);
+
+    /**
+     * Path from root to last prefix, indexed by depth.
+     */
+    int[] path = new int[Integer.SIZE + 1];
+    path[0] = BitmapTrie.ROOT_PTR;
+    int next = 1;
+    previous = -1;
+    try (PrefixCursor cursor = openCursor()) {
+      while (cursor.next()) {
+        long address = cursor.prefix >>> PREFIX_LENGTH_BITS;
+        int prefixLength = getPrefixLength(cursor.prefix);
+        for (int depth = getCommonLength(previous, cursor.prefix); depth < prefixLength; depth++) {
+          if (((address >>> (Integer.SIZE - 1 - depth)) & 1) != 0) {
+            rightNodes[path[depth]] = next;
+          } else {
+            leftNodes[path[depth]] = next;
+          }
+          path[depth + 1] = next++;
+        }
+        valueNodes[path[prefixLength]] = cursor.value;
+        previous = cursor.prefix;
+      }
+    }
+    bitmapTrie.load(valueNodes, leftNodes, rightNodes);
+  }
+
+  private static int getPrefixLength(long prefix) {
+    return (int) (prefix & ((1 << PREFIX_LENGTH_BITS) - 1));
+  }
+
+  /**
+   * Length of longest common prefix of two prefixes.
+   *
+   * @param previous prefix, -1 if there is none
+   * @param prefix
+   * @return length in bits
+   */
+  private static int getCommonLength(long previous, long prefix) {
+    if (previous < 0) {
+      return 0;
+    }
+    long difference = (previous ^ prefix) >>> PREFIX_LENGTH_BITS;
+    int common = (difference == 0) ? Integer.SIZE
+        : Long.numberOfLeadingZeros(difference) - (Long.SIZE - Integer.SIZE);
+    return Math.min(common, Math.min(getPrefixLength(previous), getPrefixLength(prefix)));
+  }
+
+  /**
+   * Open cursor over all prefixes in sorted order, merging runs written to files with current
+   * run. Equal prefixes are ordered by the order of add.
+   *
+   * @return cursor
+   * @throws IOException
+   */
+  private PrefixCursor openCursor() throws IOException {
+    if (this.runs.isEmpty()) {
+      return new MemoryCursor();
+    }
+    List<PrefixCursor> cursors = new ArrayList<PrefixCursor>();
+    try {
+      for (File run : this.runs) {
+        cursors.add(new FileCursor(run));
+      }
+    } catch (IOException e) {
+      for (PrefixCursor cursor : cursors) {
+        cursor.close();
+      }
+      throw e;
+    }
+    cursors.add(new MemoryCursor());
+    return new MergeCursor(cursors);
+  }
+
+  /**
+   * Delete temporary run files.
+   */
+  @Override
+  public void close() {
+    for (File run : this.runs) {
+      run.delete();
+    }
+    this.runs.clear();
+  }
+
+  /**
+   * Cursor over sorted prefixes.
+   */
+  private abstract static class PrefixCursor implements Closeable {
+
+    /**
+     * Current prefix, [address][prefix length].
+     */
+    long prefix;
+
+    /**
+     * Value of current prefix.
+     */
+    int value;
+
+    /**
+     * Order of cursor while merging, lower order wins for equal prefixes.
+     */
+    int order;
+
+    /**
+     * Advance to next prefix.
+     *
+     * @return false at end
+     * @throws IOException
+     */
+    abstract boolean next() throws IOException;
+
+    @Override
+    public void close() throws IOException {}
+  }
+
+  /**
+   * Cursor over current run.
+   */
+  private class MemoryCursor extends PrefixCursor {
+
+    private int position;
+
+    @Override
+    boolean next() {
+      if (this.position == BitmapTrieBuilder.this.count) {
+        return false;
+      }
+      long sortKey = BitmapTrieBuilder.this.keys[this.position++];
+      this.prefix = sortKey >>> SEQUENCE_BITS;
+      this.value = BitmapTrieBuilder.this.values[(int) (sortKey & ((1 << SEQUENCE_BITS) - 1))];
+      return true;
+    }
+  }
+
+  /**
+   * Cursor over run written to file.
+   */
+  private static class FileCursor extends PrefixCursor {
+
+    private DataInputStream runInputReader;
+
+    FileCursor(final File run) throws IOException {
+      this.runInputReader =
+          new DataInputStream(new BufferedInputStream(new FileInputStream(run)));
+    }
+
+    @Override
+    boolean next() throws IOException {
+      try {
+        this.prefix = this.runInputReader.readLong();
+      } catch (EOFException e) {
+        return false;
+      }
+      this.value = this.runInputReader.readInt();
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      this.runInputReader.close();
+    }
+  }
+
+  /**
+   * Cursor merging sorted cursors, cursors are given in order of add.
+   */
+  private static class MergeCursor extends PrefixCursor {
+
+    private List<PrefixCursor> cursors;
+
+    private PriorityQueue<PrefixCursor> queue;
+
+    /**
+     * Cursor which returned current prefix, advanced on next call.
+     */
+    private PrefixCursor current;
+
+    MergeCursor(final List<PrefixCursor> cursors) throws IOException {
+      this.cursors = cursors;
+      this.queue = new PriorityQueue<PrefixCursor>(cursors.size(), (first, second) -> {
+        int result = Long.compare(first.prefix, second.prefix);
+        return (result != 0) ? result : Integer.compare(first.order, second.order);
+      });
+      for (int i = 0; i < cursors.size(); i++) {
+        PrefixCursor cursor = cursors.get(i);
+        cursor.order = i;
+        if (cursor.next()) {
+          this.queue.add(cursor);
+        }
+      }
+    }
+
+    @Override
+    boolean next() throws IOException {
+      if (this.current != null && this.current.next()) {
+        this.queue.add(this.current);
+      }
+      this.current = this.queue.poll();
+      if (this.current == null) {
+        return false;
+      }
+      this.prefix = this.current.prefix;
+      this.value = this.current.value;
+      return true;
+    }
+
+    @Override
+    public void close() throws IOException {
+      for (PrefixCursor cursor : this.cursors) {
+        cursor.close();
+      }
+    }
+  }
+}
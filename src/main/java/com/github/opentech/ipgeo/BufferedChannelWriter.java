@@ -0,0 +1,255 @@
+package com.github.opentech.ipgeo;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Output stream to a file, double buffered. Content is collected in a direct buffer which is
+ * written through {@link FileChannel} by a background thread, while the other buffer is being
+ * filled. Errors of background writes are thrown by the next call of write, flush or close.
+ * Writer is not thread safe.
+ *
+ * @author bhargava.kulkarni
+ */
+public class BufferedChannelWriter extends OutputStream {
+
+  /**
+   * Default size of each buffer expressed in bytes.
+   */
+  public static final int DEFAULT_BUFFER_SIZE = 4 << 20;
+
+  /**
+   * Name of the file.
+   */
+  private String filename;
+
+  /**
+   * Reference to output file.
+   */
+  private RandomAccessFile outputFile;
+
+  /**
+   * Channel of output file.
+   */
+  private FileChannel channel;
+
+  /**
+   * Buffer being filled.
+   */
+  private ByteBuffer buffer;
+
+  /**
+   * Pending background write, returns written buffer for reuse.
+   */
+  private Future<ByteBuffer> pending;
+
+  /**
+   * Background thread writing buffers.
+   */
+  private ExecutorService flusher;
+
+  /**
+   * Size of content written so far expressed in bytes.
+   */
+  private long size;
+
+  /**
+   * Size of file preallocated up front, file is truncated to size of content on close.
+   */
+  private long preallocatedSize;
+
+  /**
+   * Statistics updated per background write, may be null.
+   */
+  private PersistStatistics persistStatistics;
+
+  private boolean closed;
+
+  /**
+   * Constructor for the class
+   *
+   * @param filename name of output file, existing content is discarded
+   * @throws IOException
+   */
+  public BufferedChannelWriter(final String filename) throws IOException {
+    this(filename, DEFAULT_BUFFER_SIZE, 0, null);
+  }
+
+  /**
+   * Constructor for the class
+   *
+   * @param filename name of output file, existing content is discarded
+   * @param bufferSize size of each buffer expressed in bytes
+   * @param preallocatedSize expected size of file, 0 if file is not preallocated
+   * @param persistStatistics statistics updated per background write, may be null
+   * @throws IOException
+   */
+  public BufferedChannelWriter(final String filename, int bufferSize, long preallocatedSize,
+      final PersistStatistics persistStatistics) throws IOException {
+    this.filename = filename;
+    this.preallocatedSize = preallocatedSize;
+    this.persistStatistics = persistStatistics;
+    this.outputFile = new RandomAccessFile(filename, "rw");
+    try {
+      this.outputFile.setLength(preallocatedSize);
+      this.channel = this.outputFile.getChannel();
+      this.buffer = ByteBuffer.allocateDirect(bufferSize);
+      this.pending = CompletableFuture.completedFuture(ByteBuffer.allocateDirect(bufferSize));
+    } catch (IOException | RuntimeException | Error e) {
+      this.outputFile.close();
+      throw e;
+    }
+    // Flusher does not keep JVM alive when writer is abandoned without close
+    this.flusher = Executors.newSingleThreadExecutor(runnable -> {
+      Thread flusher = new Thread(runnable, "ip-lookup-flusher");
+      flusher.setDaemon(true);
+      return flusher;
+    });
+  }
+
+  @Override
+  public void write(int data) throws IOException {
+    if (!this.buffer.hasRemaining()) {
+      handOver();
+    }
+    this.buffer.put((byte) data);
+    this.size++;
+  }
+
+  @Override
+  public void write(byte[] data, int offset, int length) throws IOException {
+    while (length > 0) {
+      if (!this.buffer.hasRemaining()) {
+        handOver();
+      }
+      int chunk = Math.min(length, this.buffer.remaining());
+      this.buffer.put(data, offset, chunk);
+      this.size += chunk;
+      offset += chunk;
+      length -= chunk;
+    }
+  }
+
+  /**
+   * Write content of memory mapped or heap buffer, from its position to its limit.
+   *
+   * @param data
+   * @throws IOException
+   */
+  public void write(ByteBuffer data) throws IOException {
+    ByteBuffer content = data.duplicate();
+    while (content.hasRemaining()) {
+      if (!this.buffer.hasRemaining()) {
+        handOver();
+      }
+      int chunk = Math.min(content.remaining(), this.buffer.remaining());
+      ByteBuffer slice = content.duplicate();
+      slice.limit(slice.position() + chunk);
+      this.buffer.put(slice);
+      content.position(content.position() + chunk);
+      this.size += chunk;
+    }
+  }
+
+  /**
+   * Hand filled buffer over to background thread & continue with buffer written previously.
+   *
+   * @throws IOException if previous background write failed
+   */
+  private void handOver() throws IOException {
+    ByteBuffer free = awaitPending();
+    this.buffer.flip();
+    this.pending = submitWrite(this.buffer);
+    this.buffer = free;
+  }
+
+  /**
+   * Write buffer on background thread.
+   *
+   * @param content buffer, flipped
+   * @return pending write
+   */
+  private Future<ByteBuffer> submitWrite(final ByteBuffer content) {
+    return this.flusher.submit(() -> {
+      long start = System.nanoTime();
+      int bytes = content.remaining();
+      while (content.hasRemaining()) {
+        this.channel.write(content);
+      }
+      if (this.persistStatistics != null && bytes > 0) {
+        this.persistStatistics.addWrite(bytes, System.nanoTime() - start);
+      }
+      content.clear();
+      return content;
+    });
+  }
+
+  /**
+   * Wait for pending background write.
+   *
+   * @return written buffer
+   * @throws IOException if background write failed
+   */
+  private ByteBuffer awaitPending() throws IOException {
+    try {
+      return this.pending.get();
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException("Failed to write " + this.filename + " Reason: " + cause, cause);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IOException("Interrupted while writing " + this.filename, e);
+    }
+  }
+
+  /**
+   * Write buffered content to file.
+   *
+   * @throws IOException
+   */
+  @Override
+  public void flush() throws IOException {
+    handOver();
+    awaitPending();
+  }
+
+  /**
+   * Write buffered content, truncate preallocated file to size of content & close file.
+   *
+   * @throws IOException
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    try {
+      flush();
+      if (this.preallocatedSize != this.size) {
+        this.outputFile.setLength(this.size);
+      }
+    } finally {
+      this.flusher.shutdownNow();
+      this.outputFile.close();
+    }
+  }
+
+  /**
+   * @return size of content written so far expressed in bytes
+   */
+  public long getSize() {
+    return this.size;
+  }
+}
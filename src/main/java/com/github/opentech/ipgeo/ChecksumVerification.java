@@ -0,0 +1,26 @@
+package com.github.opentech.ipgeo;
+
+/**
+ * Verification of block checksums while recovering persisted IP lookup.
+ *
+ * @author bhargava.kulkarni
+ */
+public enum ChecksumVerification {
+
+  /**
+   * Checksums are not verified.
+   */
+  NONE,
+
+  /**
+   * Blocks are verified in parallel before lookup is initialized, corrupt lookup fails to
+   * initialize. Recovery takes longer by time needed to read all files once.
+   */
+  EAGER,
+
+  /**
+   * Blocks are verified on background thread after lookup is initialized, so that lookup serves
+   * at once. Corruption is reported by {@link ChecksumVerifier} once found.
+   */
+  LAZY
+}
@@ -0,0 +1,224 @@
+package com.github.opentech.ipgeo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Verifies block checksums of persisted IP lookup, either in parallel before lookup serves or
+ * on background thread once it serves. Reports outcome & throughput of verification.
+ *
+ * @author bhargava.kulkarni
+ */
+public class ChecksumVerifier {
+
+  /**
+   * Logger for the class
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(ChecksumVerifier.class);
+
+  /**
+   * Outcome of verification.
+   */
+  public enum Status {
+    PENDING, PASSED, FAILED
+  }
+
+  /**
+   * Persisted lookup, directory or container.
+   */
+  private String basepath;
+
+  /**
+   * Container of lookup, null if lookup is persisted as directory.
+   */
+  private LookupContainer container;
+
+  private Checksums checksums;
+
+  private volatile Status status = Status.PENDING;
+
+  /**
+   * Description of first corrupt block, null unless verification failed.
+   */
+  private volatile String failure;
+
+  /**
+   * Size of verified content expressed in bytes.
+   */
+  private AtomicLong verifiedBytes = new AtomicLong();
+
+  /**
+   * Elapsed time of verification expressed in nanoseconds.
+   */
+  private volatile long verifyTime;
+
+  private CountDownLatch completion = new CountDownLatch(1);
+
+  /**
+   * Constructor for the class
+   *
+   * @param basepath persisted lookup, directory or container
+   * @param container container of lookup, null if lookup is persisted as directory
+   * @param checksums checksums of lookup
+   */
+  public ChecksumVerifier(String basepath, LookupContainer container, Checksums checksums) {
+    this.basepath = basepath;
+    this.container = container;
+    this.checksums = checksums;
+  }
+
+  /**
+   * Verify all blocks in parallel.
+   *
+   * @param threads number of blocks verified in parallel
+   * @throws IllegalStateException if block is corrupt or file is truncated
+   */
+  public void verify(int threads) {
+    long verifyStart = System.nanoTime();
+    ExecutorService workers = Executors.newFixedThreadPool(Math.max(threads, 1));
+    ThreadLocal<ByteBuffer> buffers =
+        ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(this.checksums.getBlockSize()));
+    List<FileChannel> channels = new ArrayList<FileChannel>();
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (Map.Entry<String, Checksums.FileChecksums> entry : this.checksums.getFiles()
+          .entrySet()) {
+        LookupContainer.Section section = LookupContainer.locate(this.container,
+            this.basepath + File.separator + entry.getKey());
+        if (section.getLength() < entry.getValue().getLength()) {
+          throw new IllegalStateException("File " + entry.getKey() + " is truncated to "
+              + section.getLength() + " bytes, expected " + entry.getValue().getLength());
+        }
+        FileChannel channel = new RandomAccessFile(section.getFilename(), "r").getChannel();
+        channels.add(channel);
+        int[] blockChecksums = entry.getValue().getChecksums();
+        for (int block = 0; block < blockChecksums.length; block++) {
+          final int blockNo = block;
+          futures.add(workers.submit(() -> {
+            verifyBlock(channel, section.getPosition(), entry.getKey(),
+                entry.getValue().getLength(), blockNo, blockChecksums[blockNo], buffers.get());
+            return null;
+          }));
+        }
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      this.status = Status.PASSED;
+    } catch (Exception e) {
+      Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+      this.failure = cause.getMessage();
+      this.status = Status.FAILED;
+    } finally {
+      workers.shutdownNow();
+      for (FileChannel channel : channels) {
+        try {
+          channel.close();
+        } catch (IOException e) {
+          LOG.error("Failed to close file of IP lookup {} {}", this.basepath, e.getMessage());
+        }
+      }
+      this.verifyTime = System.nanoTime() - verifyStart;
+      this.completion.countDown();
+    }
+    if (this.status == Status.FAILED) {
+      LOG.error("Checksum verification of IP lookup {} failed Reason: {}", this.basepath,
+          this.failure);
+      throw new IllegalStateException("Checksum verification of IP lookup " + this.basepath
+          + " failed Reason: " + this.failure);
+    }
+    LOG.info("Verified checksums of IP lookup {} bytes {} time {} ms throughput {} MB/s",
+        this.basepath, this.verifiedBytes.get(), this.verifyTime / 1000000,
+        String.format(Locale.ROOT, "%.1f", getThroughput()));
+  }
+
+  /**
+   * Verify all blocks on background thread, outcome is reported by {@link #getStatus()}.
+   *
+   * @param threads number of blocks verified in parallel
+   */
+  public void verifyInBackground(int threads) {
+    Thread verifier = new Thread(() -> {
+      try {
+        verify(threads);
+      } catch (IllegalStateException e) {
+        // Outcome is reported through status
+      }
+    }, "ip-lookup-verifier");
+    verifier.setDaemon(true);
+    verifier.start();
+  }
+
+  private void verifyBlock(FileChannel channel, long position, String name, long length,
+      int block, int expected, ByteBuffer buffer) throws IOException {
+    int blockSize = this.checksums.getBlockSize();
+    int size = (int) Math.min(blockSize, length - (long) block * blockSize);
+    if (Checksums.checksum(channel, position + (long) block * blockSize, size,
+        buffer) != expected) {
+      throw new IllegalStateException(
+          "Checksum mismatch in block " + block + " of file " + name);
+    }
+    this.verifiedBytes.addAndGet(size);
+  }
+
+  /**
+   * Wait for verification to complete.
+   *
+   * @param timeout maximum time to wait expressed in milliseconds
+   * @return outcome, {@link Status#PENDING} if verification is not complete in time
+   * @throws InterruptedException
+   */
+  public Status await(long timeout) throws InterruptedException {
+    this.completion.await(timeout, TimeUnit.MILLISECONDS);
+    return this.status;
+  }
+
+  public Status getStatus() {
+    return this.status;
+  }
+
+  /**
+   * @return description of first corrupt block, null unless verification failed
+   */
+  public String getFailure() {
+    return this.failure;
+  }
+
+  /**
+   * @return size of verified content expressed in bytes
+   */
+  public long getVerifiedBytes() {
+    return this.verifiedBytes.get();
+  }
+
+  /**
+   * @return elapsed time of verification expressed in nanoseconds
+   */
+  public long getVerifyTime() {
+    return this.verifyTime;
+  }
+
+  /**
+   * @return verified megabytes per second
+   */
+  public double getThroughput() {
+    return (this.verifyTime == 0) ? 0
+        : (this.verifiedBytes.get() / (1024.0 * 1024.0)) / (this.verifyTime / 1e9);
+  }
+}
@@ -0,0 +1,342 @@
+package com.github.opentech.ipgeo;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.zip.CRC32;
+
+/**
+ * Per-block CRC32 checksums of files of persisted IP lookup, stored in checksums file of lookup.
+ * Each file is split into blocks of {@link #BLOCK_SIZE} bytes, so that blocks are verified in
+ * parallel & file changed in place is re-checksummed from first changed block only. Metadata &
+ * checksums file itself are not covered, checksums file carries checksum of its own content.
+ *
+ * Checksums file is [block size] followed per file by [name][length][block count][checksums]
+ * & [checksum of preceding content]. All numbers are big endian.
+ *
+ * Checksums of lookup with delta updates applied are keyed by delta generation, same as overlay
+ * index. Checksums of next generation are written before metadata commits it, so that committed
+ * metadata always refers to checksums of its own generation.
+ *
+ * @author bhargava.kulkarni
+ */
+public class Checksums {
+
+  /**
+   * Size of checksummed block expressed in bytes.
+   */
+  public static final int BLOCK_SIZE = 1 << 22;
+
+  /**
+   * Suffix of checksums written before they atomically replace previous checksums.
+   */
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  /**
+   * Size of checksummed block expressed in bytes.
+   */
+  private int blockSize;
+
+  /**
+   * Checksums per file name, in order of name.
+   */
+  private Map<String, FileChecksums> files = new LinkedHashMap<String, FileChecksums>();
+
+  /**
+   * Checksummed length & block checksums of single file.
+   */
+  static class FileChecksums {
+
+    private long length;
+    private int[] checksums;
+
+    private FileChecksums(long length, int[] checksums) {
+      this.length = length;
+      this.checksums = checksums;
+    }
+
+    long getLength() {
+      return this.length;
+    }
+
+    int[] getChecksums() {
+      return this.checksums;
+    }
+  }
+
+  /**
+   * Constructor for the class
+   *
+   * @param blockSize size of checksummed block expressed in bytes
+   */
+  Checksums(int blockSize) {
+    this.blockSize = blockSize;
+  }
+
+  /**
+   * Compute checksums of all files of persisted IP lookup.
+   *
+   * @param basepath directory of persisted lookup
+   * @param threads number of files checksummed in parallel
+   * @return checksums
+   * @throws Exception
+   */
+  public static Checksums compute(final String basepath, int threads) throws Exception {
+    return compute(basepath, threads, BLOCK_SIZE);
+  }
+
+  static Checksums compute(final String basepath, int threads, int blockSize) throws Exception {
+    File[] files = new File(basepath).listFiles(file -> file.isFile() && isChecksummed(file));
+    if (files == null) {
+      throw new IllegalArgumentException("IP lookup directory " + basepath + " not found");
+    }
+    Arrays.sort(files);
+    Checksums checksums = new Checksums(blockSize);
+    ExecutorService workers = Executors.newFixedThreadPool(Math.max(threads, 1));
+    try {
+      List<Future<FileChecksums>> futures = new ArrayList<Future<FileChecksums>>();
+      for (File file : files) {
+        futures.add(workers.submit(() -> checksums.computeFile(file.getPath(), 0, null)));
+      }
+      for (int i = 0; i < files.length; i++) {
+        checksums.files.put(files[i].getName(), futures.get(i).get());
+      }
+    } finally {
+      workers.shutdownNow();
+    }
+    return checksums;
+  }
+
+  private static boolean isChecksummed(File file) {
+    String name = file.getName();
+    return !name.equals(LookupConstants.METADATA_FILE_NAME)
+        && !name.equals(LookupConstants.CHECKSUMS_FILE_NAME)
+        && !name.startsWith(LookupConstants.CHECKSUMS_FILE_NAME + ".")
+        && !name.endsWith(TEMP_SUFFIX);
+  }
+
+  /**
+   * Checksum file, blocks before given position keep their checksums.
+   *
+   * @param filename
+   * @param position position of first changed byte
+   * @param previous previous checksums of file, null if file is new
+   * @return checksums of file
+   * @throws IOException
+   */
+  private FileChecksums computeFile(String filename, long position, FileChecksums previous)
+      throws IOException {
+    try (RandomAccessFile fileReader = new RandomAccessFile(filename, "r");
+        FileChannel channel = fileReader.getChannel()) {
+      long length = channel.size();
+      int blocks = (int) ((length + this.blockSize - 1) / this.blockSize);
+      int kept = (previous == null) ? 0
+          : (int) (Math.min(Math.min(position, previous.length), length) / this.blockSize);
+      int[] checksums = new int[blocks];
+      if (kept > 0) {
+        System.arraycopy(previous.checksums, 0, checksums, 0, kept);
+      }
+      ByteBuffer buffer = ByteBuffer.allocateDirect(this.blockSize);
+      for (int block = kept; block < blocks; block++) {
+        checksums[block] = checksum(channel, (long) block * this.blockSize,
+            (int) Math.min(this.blockSize, length - (long) block * this.blockSize), buffer);
+      }
+      return new FileChecksums(length, checksums);
+    }
+  }
+
+  /**
+   * Checksum given portion of file.
+   *
+   * @param channel
+   * @param position
+   * @param length
+   * @param buffer buffer of at least given length
+   * @return CRC32 of portion
+   * @throws IOException
+   */
+  static int checksum(FileChannel channel, long position, int length, ByteBuffer buffer)
+      throws IOException {
+    buffer.clear();
+    buffer.limit(length);
+    while (buffer.hasRemaining()) {
+      if (channel.read(buffer, position + buffer.position()) < 0) {
+        throw new IllegalStateException("File is shorter than checksummed length");
+      }
+    }
+    buffer.flip();
+    CRC32 crc = new CRC32();
+    crc.update(buffer);
+    return (int) crc.getValue();
+  }
+
+  /**
+   * Re-checksum file changed in place, e.g. appended or replaced by delta update.
+   *
+   * @param basepath directory of persisted lookup
+   * @param name name of file
+   * @param position position of first changed byte, 0 if file is replaced
+   * @throws IOException
+   */
+  public void update(final String basepath, final String name, long position)
+      throws IOException {
+    this.files.put(name, computeFile(basepath + File.separator + name, position,
+        this.files.get(name)));
+  }
+
+  /**
+   * Drop checksums of removed file.
+   *
+   * @param name name of file
+   */
+  public void remove(final String name) {
+    this.files.remove(name);
+  }
+
+  /**
+   * Name of checksums file of given delta generation.
+   *
+   * @param generation delta generation, 0 if no delta update is applied
+   * @return name of file
+   */
+  public static String getFilename(int generation) {
+    return (generation == 0) ? LookupConstants.CHECKSUMS_FILE_NAME
+        : LookupConstants.CHECKSUMS_FILE_NAME + "." + generation;
+  }
+
+  /**
+   * Persist checksums of lookup without delta updates.
+   *
+   * @param basepath directory of persisted lookup
+   * @throws IOException
+   */
+  public void persist(final String basepath) throws IOException {
+    persist(basepath, 0);
+  }
+
+  /**
+   * Persist checksums of given delta generation. Checksums are written to temporary file which
+   * then atomically replaces previous checksums, checksums are written before metadata.
+   *
+   * @param basepath directory of persisted lookup
+   * @param generation delta generation, 0 if no delta update is applied
+   * @throws IOException
+   */
+  public void persist(final String basepath, int generation) throws IOException {
+    ByteArrayOutputStream content = new ByteArrayOutputStream();
+    DataOutputStream contentWriter = new DataOutputStream(content);
+    contentWriter.writeInt(this.blockSize);
+    contentWriter.writeInt(this.files.size());
+    for (Map.Entry<String, FileChecksums> entry : this.files.entrySet()) {
+      contentWriter.writeUTF(entry.getKey());
+      contentWriter.writeLong(entry.getValue().length);
+      contentWriter.writeInt(entry.getValue().checksums.length);
+      for (int checksum : entry.getValue().checksums) {
+        contentWriter.writeInt(checksum);
+      }
+    }
+    CRC32 crc = new CRC32();
+    crc.update(content.toByteArray());
+    contentWriter.writeInt((int) crc.getValue());
+
+    String filename = basepath + File.separator + getFilename(generation);
+    try (FileOutputStream checksumsWriter = new FileOutputStream(filename + TEMP_SUFFIX)) {
+      content.writeTo(checksumsWriter);
+      checksumsWriter.getFD().sync();
+    }
+    Files.move(Paths.get(filename + TEMP_SUFFIX), Paths.get(filename),
+        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Recover checksums of persisted IP lookup without delta updates.
+   *
+   * @param basepath persisted lookup
+   * @param container container of lookup, null if lookup is persisted as directory
+   * @return checksums, null if lookup is persisted without checksums
+   * @throws IOException
+   */
+  public static Checksums recover(final String basepath, final LookupContainer container)
+      throws IOException {
+    return recover(basepath, container, 0);
+  }
+
+  /**
+   * Recover checksums of given delta generation of persisted IP lookup.
+   *
+   * @param basepath persisted lookup
+   * @param container container of lookup, null if lookup is persisted as directory
+   * @param generation delta generation committed by metadata, 0 if no delta update is applied
+   * @return checksums, null if lookup is persisted without checksums
+   * @throws IOException
+   */
+  public static Checksums recover(final String basepath, final LookupContainer container,
+      int generation) throws IOException {
+    String checksumsName = getFilename(generation);
+    byte[] content;
+    if (container != null) {
+      if (container.getSection(checksumsName) == null) {
+        return null;
+      }
+      content = container.readSection(checksumsName);
+    } else {
+      File file = new File(basepath, checksumsName);
+      if (!file.isFile()) {
+        return null;
+      }
+      content = Files.readAllBytes(file.toPath());
+    }
+    CRC32 crc = new CRC32();
+    crc.update(content, 0, Math.max(content.length - Integer.BYTES, 0));
+    if (content.length < 3 * Integer.BYTES
+        || ByteBuffer.wrap(content, content.length - Integer.BYTES, Integer.BYTES)
+            .getInt() != (int) crc.getValue()) {
+      throw new IllegalStateException("Corrupt checksums of IP lookup " + basepath);
+    }
+    DataInputStream checksumsReader = new DataInputStream(new ByteArrayInputStream(content));
+    Checksums checksums = new Checksums(checksumsReader.readInt());
+    int count = checksumsReader.readInt();
+    for (int i = 0; i < count; i++) {
+      String name = checksumsReader.readUTF();
+      long length = checksumsReader.readLong();
+      int[] blockChecksums = new int[checksumsReader.readInt()];
+      for (int block = 0; block < blockChecksums.length; block++) {
+        blockChecksums[block] = checksumsReader.readInt();
+      }
+      checksums.files.put(name, new FileChecksums(length, blockChecksums));
+    }
+    return checksums;
+  }
+
+  /**
+   * @return size of checksummed block expressed in bytes
+   */
+  public int getBlockSize() {
+    return this.blockSize;
+  }
+
+  /**
+   * @return checksums per file name
+   */
+  Map<String, FileChecksums> getFiles() {
+    return this.files;
+  }
+}
@@ -0,0 +1,226 @@
+package com.github.opentech.ipgeo;
+
+import java.io.DataOutput;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+import com.github.opentech.ipgeo.Schema.Column;
+
+/**
+ * ColumnBlock is a logical portion of the memory mapped with physical column file portion
+ * located on the disk. Block holds either values of one column or null flags of one column.
+ * 
+ * @author bhargava.kulkarni
+ */
+public class ColumnBlock {
+
+  /**
+   * Name of the file.
+   */
+  private String filename;
+
+  /**
+   * Column associated with block, null if block holds null flags.
+   */
+  private Column column;
+
+  /**
+   * Size of one value expressed in bytes.
+   */
+  private int width;
+
+  /**
+   * Size of the block expressed in bytes.
+   */
+  private int size;
+
+  /**
+   * Reference to file used for creating memory block
+   */
+  private RandomAccessFile columnReader;
+
+  /**
+   * Memory mapped byte buffer, or its copy in anonymous memory.
+   */
+  private ByteBuffer mappedByteBuffer;
+
+  /**
+   * True if block is copied into anonymous memory.
+   */
+  private boolean anonymous;
+
+  /**
+   * Constructor for the class.
+   * 
+   * @param filename name of column file
+   * @param column column definition, null if file holds null flags
+   * @param position starting position within file expressed in bytes
+   * @param size size of the block expressed in bytes
+   */
+  public ColumnBlock(final String filename, final Column column, long position, int size) {
+    this(filename, column, position, size, MemoryMode.MAPPED);
+  }
+
+  /**
+   * Constructor for the class.
+   * 
+   * @param filename name of column file
+   * @param column column definition, null if file holds null flags
+   * @param position starting position within file expressed in bytes
+   * @param size size of the block expressed in bytes
+   * @param memoryMode memory backing block
+   */
+  public ColumnBlock(final String filename, final Column column, long position, int size,
+      MemoryMode memoryMode) {
+    this.filename = filename;
+    this.column = column;
+    this.width = (column == null) ? 0 : getWidth(column);
+    this.size = size;
+    try {
+      init(position);
+      if (memoryMode == MemoryMode.ANONYMOUS) {
+        ByteBuffer mapped = this.mappedByteBuffer;
+        this.mappedByteBuffer = CommonUtilities.copyToAnonymous(mapped, this.filename);
+        this.anonymous = this.mappedByteBuffer != mapped;
+      }
+    } catch (Throwable e) {
+      throw new IllegalStateException(
+          "Failed to initialise column block on file " + this.filename + " Reason: "
+              + e.getMessage());
+    }
+  }
+
+  /**
+   * Initialize Column Block
+   * 
+   * @param position
+   * @throws IOException
+   */
+  public void init(long position) throws IOException {
+    this.columnReader = new RandomAccessFile(this.filename, "r");
+    if (position + this.size > this.columnReader.length()) {
+      throw new IllegalStateException("Invalid column block: " + this.filename + " position="
+          + position + ", size=" + this.size);
+    }
+    this.mappedByteBuffer = this.columnReader.getChannel()
+        .map(FileChannel.MapMode.READ_ONLY, position, this.size);
+  }
+
+  /**
+   * Un-Initialize Column Block. Mapping is released at once, block is read under lease of
+   * {@link DataBlockLookup} which un-initializes block once no read is in flight.
+   * 
+   * @throws IOException
+   */
+  public void uninit() throws IOException {
+    CommonUtilities.unmap(this.mappedByteBuffer);
+    this.mappedByteBuffer = null;
+    this.columnReader.close();
+  }
+
+  /**
+   * Get raw value of record at given offset within block.
+   * 
+   * @param offset record offset within block
+   * @return raw value, same as {@link DataRecord#readRaw(int)}
+   */
+  public long get(int offset) {
+    int position = offset * this.width;
+    switch (this.column.getDatatype()) {
+      case BYTE:
+        return this.mappedByteBuffer.get(position) & 0xFF;
+      case SHORT:
+        return this.mappedByteBuffer.getShort(position);
+      case INT:
+      case FLOAT:
+      case STRING:
+        return this.mappedByteBuffer.getInt(position);
+      case LONG:
+        return this.mappedByteBuffer.getLong(position);
+      case PACKED_INT:
+        long value = 0;
+        for (int i = 0; i < this.width; i++) {
+          value = (value << 8) | (this.mappedByteBuffer.get(position + i) & 0xFF);
+        }
+        return this.column.getMinValue() + value;
+      default:
+        throw new IllegalStateException("Unsupported datatype " + this.column.getDatatype());
+    }
+  }
+
+  /**
+   * Page in portion of block.
+   * 
+   * @param position starting position within block
+   * @param length length of portion expressed in bytes, truncated at end of block
+   * @return number of paged in bytes
+   */
+  public long load(int position, int length) {
+    if (position >= this.size) {
+      return 0;
+    }
+    return CommonUtilities.touch(this.mappedByteBuffer, position,
+        Math.min(length, this.size - position));
+  }
+
+  /**
+   * Check null flag of record at given offset within block.
+   * 
+   * @param offset record offset within block
+   * @return true if value is null
+   */
+  public boolean isNull(long offset) {
+    return (this.mappedByteBuffer.get((int) (offset >>> 3)) & (0x80 >>> (offset & 7))) != 0;
+  }
+
+  /**
+   * @return true if block is copied into anonymous memory
+   */
+  public boolean isAnonymous() {
+    return this.anonymous;
+  }
+
+  /**
+   * Get Block Size
+   * 
+   * @return block size
+   */
+  public int getSize() {
+    return this.size;
+  }
+
+  /**
+   * Size of one column value in column file. Packed columns take as many bytes as needed by
+   * their width, which means columns with single value are not stored at all.
+   * 
+   * @param column
+   * @return width expressed in bytes
+   */
+  public static int getWidth(final Column column) {
+    if (column.getDatatype() == Column.Datatype.PACKED_INT) {
+      return (column.getBits() + 7) >>> 3;
+    }
+    return column.getDatatype().getSize();
+  }
+
+  /**
+   * Write raw value of column in column file format.
+   * 
+   * @param output
+   * @param column
+   * @param rawValue
+   * @throws IOException
+   */
+  public static void write(final DataOutput output, final Column column, long rawValue)
+      throws IOException {
+    int width = getWidth(column);
+    long value =
+        (column.getDatatype() == Column.Datatype.PACKED_INT) ? rawValue - column.getMinValue()
+            : rawValue;
+    for (int i = width - 1; i >= 0; i--) {
+      output.write((int) (value >>> (i << 3)));
+    }
+  }
+}
@@ -0,0 +1,152 @@
+package com.github.opentech.ipgeo;
+
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.util.BitSet;
+
+import com.github.opentech.ipgeo.Schema.Column;
+
+/**
+ * Writes records in columnar layout, one file per schema column named [data].[column index].
+ * Null flags of nullable columns are written to file named [data].[column index].nulls
+ * 
+ * @author bhargava.kulkarni
+ */
+public class ColumnarDataWriter implements DataWriter {
+
+  /**
+   * Suffix of files holding null flags.
+   */
+  public static final String NULLS_SUFFIX = ".nulls";
+
+  /**
+   * Base name of column files.
+   */
+  private String filename;
+
+  /**
+   * Schema definition used for writing records.
+   */
+  private Schema schema;
+
+  /**
+   * Output stream per column.
+   */
+  private DataOutputStream[] columnWriters;
+
+  /**
+   * Null flags per nullable column.
+   */
+  private BitSet[] nullFlags;
+
+  /**
+   * Number of records written.
+   */
+  private int records;
+
+  /**
+   * Size of buffer per column file expressed in bytes.
+   */
+  private static final int COLUMN_BUFFER_SIZE = 1 << 20;
+
+  /**
+   * Constructor for the class
+   * 
+   * @param filename base name of column files
+   * @param schema
+   * @throws IOException
+   */
+  public ColumnarDataWriter(final String filename, final Schema schema) throws IOException {
+    this(filename, schema, null);
+  }
+
+  /**
+   * Constructor for the class, column files opened already are closed if any column file can not
+   * be opened.
+   * 
+   * @param filename base name of column files
+   * @param schema
+   * @param persistStatistics statistics updated per background write, may be null
+   * @throws IOException
+   */
+  public ColumnarDataWriter(final String filename, final Schema schema,
+      final PersistStatistics persistStatistics) throws IOException {
+    this.filename = filename;
+    this.schema = schema;
+    Column[] columns = schema.getColumns();
+    this.columnWriters = new DataOutputStream[columns.length];
+    this.nullFlags = new BitSet[columns.length];
+    try {
+      for (int i = 0; i < columns.length; i++) {
+        this.columnWriters[i] = new DataOutputStream(new BufferedChannelWriter(
+            getColumnFilename(filename, i), COLUMN_BUFFER_SIZE, 0, persistStatistics));
+        if (columns[i].isNullable()) {
+          this.nullFlags[i] = new BitSet();
+        }
+      }
+    } catch (IOException | RuntimeException | Error e) {
+      for (DataOutputStream columnWriter : this.columnWriters) {
+        if (columnWriter != null) {
+          try {
+            columnWriter.close();
+          } catch (IOException closeFailure) {
+            e.addSuppressed(closeFailure);
+          }
+        }
+      }
+      throw e;
+    }
+  }
+
+  @Override
+  public void write(final DataRecord record) throws IOException {
+    Column[] columns = this.schema.getColumns();
+    for (int i = 0; i < columns.length; i++) {
+      if (record.isNull(i)) {
+        this.nullFlags[i].set(this.records);
+        for (int j = 0; j < ColumnBlock.getWidth(columns[i]); j++) {
+          this.columnWriters[i].write(0);
+        }
+      } else {
+        ColumnBlock.write(this.columnWriters[i], columns[i], record.readRaw(i));
+      }
+    }
+    this.records++;
+  }
+
+  /**
+   * Flush column files & write null flags.
+   * 
+   * @throws IOException
+   */
+  @Override
+  public void close() throws IOException {
+    Column[] columns = this.schema.getColumns();
+    for (int i = 0; i < columns.length; i++) {
+      this.columnWriters[i].close();
+      if (this.nullFlags[i] != null) {
+        byte[] flags = new byte[(this.records + 7) >>> 3];
+        for (int record = this.nullFlags[i].nextSetBit(0); record >= 0;
+            record = this.nullFlags[i].nextSetBit(record + 1)) {
+          flags[record >>> 3] |= (0x80 >>> (record & 7));
+        }
+        try (FileOutputStream nullsWriter =
+            new FileOutputStream(getColumnFilename(this.filename, i) + NULLS_SUFFIX)) {
+          nullsWriter.write(flags);
+        }
+      }
+    }
+  }
+
+  /**
+   * Name of file holding values of given column
+   * 
+   * @param filename base name of column files
+   * @param index column index
+   * @return column filename
+   */
+  public static String getColumnFilename(final String filename, int index) {
+    return filename + "." + index;
+  }
+}
@@ -6,6 +6,16 @@ import java.io.ByteArrayOutputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -19,6 +29,30 @@ public class CommonUtilities {
 
   private static final Logger LOG = LoggerFactory.getLogger(CommonUtilities.class);
 
+  /**
+   * Releases memory mapping of direct buffer, null if JVM offers no way to do so.
+   */
+  private static final BufferUnmapper UNMAPPER = createUnmapper();
+
+  /**
+   * Size of memory page expressed in bytes, assumed to be smallest page size of supported
+   * platforms.
+   */
+  public static final int PAGE_SIZE = 4096;
+
+  /**
+   * Sum of touched bytes, written so that reads made by {@link #touch(ByteBuffer, int, int)}
+   * are not eliminated by compiler.
+   */
+  private static volatile int touchedSum;
+
+  /**
+   * Releases memory mapping of direct buffer.
+   */
+  private interface BufferUnmapper {
+    void unmap(ByteBuffer buffer) throws Exception;
+  }
+
   private CommonUtilities() {
   }
   
@@ -40,6 +74,36 @@ public class CommonUtilities {
     return numberOfLines;
   }
 
+  /**
+   * Resolve source files of given name. Name may hold a glob pattern in its last path element,
+   * e.g. "ip_geo_2020_11_01_*.txt", in which case matching files are returned in order of name.
+   * 
+   * @param filename name of file or glob pattern
+   * @return source files
+   * @throws IOException if pattern does not match any file
+   */
+  public static List<String> listSourceFiles(String filename) throws IOException {
+    Path path = Paths.get(filename);
+    String pattern = path.getFileName().toString();
+    if (!pattern.matches(".*[*?\\[{].*")) {
+      return Collections.singletonList(filename);
+    }
+    Path directory = (path.getParent() != null) ? path.getParent() : Paths.get(".");
+    List<String> filenames = new ArrayList<String>();
+    try (DirectoryStream<Path> paths = Files.newDirectoryStream(directory, pattern)) {
+      for (Path source : paths) {
+        if (Files.isRegularFile(source)) {
+          filenames.add(source.toString());
+        }
+      }
+    }
+    if (filenames.isEmpty()) {
+      throw new IOException("No source file matches " + filename);
+    }
+    Collections.sort(filenames);
+    return filenames;
+  }
+
   /**
    * Returns host name on which program is running.
    * 
@@ -78,5 +142,106 @@ public class CommonUtilities {
     }
     return output.toString();
   }
-}
 
+  /**
+   * Release memory mapping of buffer at once, rather than once buffer is garbage collected.
+   * Buffer, as well as every view of it, must not be accessed afterwards, as doing so crashes
+   * the JVM. Callers are expected to guard access, e.g. by counting leases.
+   * 
+   * @param buffer memory mapped buffer
+   * @return true if mapping is released, false if it is left to garbage collection
+   */
+  public static boolean unmap(ByteBuffer buffer) {
+    if (UNMAPPER == null || buffer == null || !buffer.isDirect()) {
+      return false;
+    }
+    try {
+      UNMAPPER.unmap(buffer);
+      return true;
+    } catch (Exception e) {
+      LOG.error("Failed to unmap buffer {}", e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Fault in pages of given portion of memory mapped buffer, by reading one byte per page.
+   * Unlike {@link java.nio.MappedByteBuffer#load()} portion of buffer is loaded, buffer is
+   * read with absolute reads only so that it may be shared across threads.
+   * 
+   * @param buffer memory mapped buffer
+   * @param position starting position of portion
+   * @param length length of portion expressed in bytes
+   * @return length of portion
+   */
+  public static int touch(ByteBuffer buffer, int position, int length) {
+    int sum = 0;
+    int end = position + length;
+    for (int i = position; i < end; i += PAGE_SIZE) {
+      sum += buffer.get(i);
+    }
+    if (length > 0) {
+      sum += buffer.get(end - 1);
+    }
+    touchedSum = sum;
+    return length;
+  }
+
+  /**
+   * Copy content of memory mapped buffer into anonymous off-heap memory, i.e. direct buffer, &
+   * release mapping. Mapped buffer is kept if direct memory limit of JVM is exceeded.
+   * 
+   * @param mapped memory mapped buffer, must not be accessed afterwards unless it is returned
+   * @param filename name of mapped file, used for logging
+   * @return copy of buffer, or mapped buffer if it is not copied
+   */
+  public static ByteBuffer copyToAnonymous(ByteBuffer mapped, String filename) {
+    ByteBuffer copy;
+    try {
+      copy = ByteBuffer.allocateDirect(mapped.capacity());
+    } catch (OutOfMemoryError e) {
+      LOG.error("Failed to copy {} bytes of {} to anonymous memory, keeping mapping {}",
+          mapped.capacity(), filename, e.getMessage());
+      return mapped;
+    }
+    copy.put(mapped.duplicate());
+    copy.clear();
+    unmap(mapped);
+    return copy;
+  }
+
+  /**
+   * Resolve supported way of releasing mapping, Unsafe.invokeCleaner on Java 9 & later,
+   * cleaner of direct buffer on Java 8. Both are resolved through reflection, so that there is
+   * no compile time dependency on JDK internal classes.
+   * 
+   * @return unmapper, null if none is available
+   */
+  private static BufferUnmapper createUnmapper() {
+    try {
+      Class<?> unsafeClass = Class.forName("sun.misc.Unsafe");
+      Method invokeCleaner = unsafeClass.getMethod("invokeCleaner", ByteBuffer.class);
+      Field theUnsafe = unsafeClass.getDeclaredField("theUnsafe");
+      theUnsafe.setAccessible(true);
+      Object unsafe = theUnsafe.get(null);
+      return buffer -> invokeCleaner.invoke(unsafe, buffer);
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      // Not available before Java 9
+    }
+    try {
+      Method cleaner = Class.forName("java.nio.DirectByteBuffer").getMethod("cleaner");
+      cleaner.setAccessible(true);
+      Method clean = Class.forName("sun.misc.Cleaner").getMethod("clean");
+      clean.setAccessible(true);
+      return buffer -> {
+        Object bufferCleaner = cleaner.invoke(buffer);
+        if (bufferCleaner != null) {
+          clean.invoke(bufferCleaner);
+        }
+      };
+    } catch (ReflectiveOperationException | RuntimeException e) {
+      LOG.info("Memory mappings are released by garbage collection only {}", e.getMessage());
+      return null;
+    }
+  }
+}
@@ -0,0 +1,146 @@
+package com.github.opentech.ipgeo;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * CompressedDataBlock is a logical portion of the memory mapped with physical file portion of
+ * encoded record groups located on the disk. Block always starts & ends at group boundary.
+ *
+ * @author bhargava.kulkarni
+ */
+public class CompressedDataBlock {
+
+  /**
+   * Name of the file.
+   */
+  private String filename;
+
+  /**
+   * DataBlock init parameters
+   */
+  private DataBlockInitArgs dataBlockInitArgs;
+
+  /**
+   * Reference to file used for creating memory block
+   */
+  private RandomAccessFile dataReader;
+
+  /**
+   * Memory mapped byte buffer, or its copy in anonymous memory.
+   */
+  private ByteBuffer mappedByteBuffer;
+
+  /**
+   * True if block is copied into anonymous memory.
+   */
+  private boolean anonymous;
+
+  /**
+   * Constructor for the class.
+   *
+   * @param filename name of file
+   * @param dataBlockInitArgs position & size of block
+   */
+  public CompressedDataBlock(final String filename, final DataBlockInitArgs dataBlockInitArgs) {
+    this(filename, dataBlockInitArgs, MemoryMode.MAPPED);
+  }
+
+  /**
+   * Constructor for the class.
+   *
+   * @param filename name of file
+   * @param dataBlockInitArgs position & size of block
+   * @param memoryMode memory backing block
+   */
+  public CompressedDataBlock(final String filename, final DataBlockInitArgs dataBlockInitArgs,
+      MemoryMode memoryMode) {
+    this.filename = filename;
+    this.dataBlockInitArgs = dataBlockInitArgs;
+    try {
+      init();
+      if (memoryMode == MemoryMode.ANONYMOUS) {
+        ByteBuffer mapped = this.mappedByteBuffer;
+        this.mappedByteBuffer = CommonUtilities.copyToAnonymous(mapped, this.filename);
+        this.anonymous = this.mappedByteBuffer != mapped;
+      }
+    } catch (Throwable e) {
+      throw new IllegalStateException("Failed to initialise compressed datablock on file "
+          + this.filename + " Reason: " + e.getMessage());
+    }
+  }
+
+  /**
+   * Initialize Compressed Data Block
+   *
+   * @throws IOException
+   */
+  public void init() throws IOException {
+    this.dataReader = new RandomAccessFile(this.filename, "r");
+    if (this.dataBlockInitArgs.getPosition() + this.dataBlockInitArgs.getSize() > this.dataReader
+        .length()) {
+      throw new IllegalStateException("Invalid compressed datablock: " + this.dataBlockInitArgs);
+    }
+    this.mappedByteBuffer = this.dataReader.getChannel().map(FileChannel.MapMode.READ_ONLY,
+        this.dataBlockInitArgs.getPosition(), this.dataBlockInitArgs.getSize());
+  }
+
+  /**
+   * Un-Initialize Compressed Data Block. Buffer is unmapped at once & must not be read
+   * afterwards, {@link DataBlockLookup} un-initializes its blocks once last lease on them is
+   * released.
+   *
+   * @throws IOException
+   */
+  public void uninit() throws IOException {
+    CommonUtilities.unmap(this.mappedByteBuffer);
+    this.mappedByteBuffer = null;
+    this.dataReader.close();
+  }
+
+  /**
+   * Page in portion of block.
+   *
+   * @param position starting position within block
+   * @param length length of portion expressed in bytes
+   * @return number of paged in bytes
+   */
+  public long load(int position, int length) {
+    return CommonUtilities.touch(this.mappedByteBuffer, position, length);
+  }
+
+  /**
+   * Get memory mapped content of block. Content must be accessed with absolute reads only, as
+   * buffer is shared across threads.
+   *
+   * @return mapped buffer, or its copy in anonymous memory
+   */
+  public ByteBuffer getBuffer() {
+    return this.mappedByteBuffer;
+  }
+
+  /**
+   * @return starting position of block within file
+   */
+  public long getPosition() {
+    return this.dataBlockInitArgs.getPosition();
+  }
+
+  /**
+   * @return true if block is copied into anonymous memory
+   */
+  public boolean isAnonymous() {
+    return this.anonymous;
+  }
+
+  /**
+   * Get Block Size
+   *
+   * @return block size
+   */
+  public int getSize() {
+    return this.dataBlockInitArgs.getSize();
+  }
+}
@@ -0,0 +1,145 @@
+package com.github.opentech.ipgeo;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+
+import com.github.opentech.ipgeo.Schema.Column;
+
+/**
+ * Writes records in compressed layout, as groups of fixed number of records encoded by
+ * {@link RecordGroup}. Starting position of each group followed by end of last group is written
+ * to file named [data].groups
+ *
+ * @author bhargava.kulkarni
+ */
+public class CompressedDataWriter implements DataWriter {
+
+  /**
+   * Suffix of file holding group positions.
+   */
+  public static final String GROUPS_SUFFIX = ".groups";
+
+  /**
+   * Schema definition used for writing records.
+   */
+  private Schema schema;
+
+  /**
+   * Number of records per group.
+   */
+  private int recordsPerGroup;
+
+  /**
+   * Output stream of encoded groups.
+   */
+  private DataOutputStream dataOutputWriter;
+
+  /**
+   * Output stream of group positions.
+   */
+  private DataOutputStream groupsOutputWriter;
+
+  /**
+   * Raw values per column of pending group.
+   */
+  private long[][] values;
+
+  /**
+   * Null flags per column of pending group.
+   */
+  private boolean[][] nulls;
+
+  /**
+   * Number of records in pending group.
+   */
+  private int records;
+
+  /**
+   * Size of encoded groups expressed in bytes.
+   */
+  private long size;
+
+  /**
+   * Constructor for the class
+   *
+   * @param filename name of data file
+   * @param schema
+   * @param recordsPerGroup number of records per group
+   * @throws IOException
+   */
+  public CompressedDataWriter(final String filename, final Schema schema, int recordsPerGroup)
+      throws IOException {
+    this(filename, schema, recordsPerGroup, null);
+  }
+
+  /**
+   * Constructor for the class
+   *
+   * @param filename name of data file
+   * @param schema
+   * @param recordsPerGroup number of records per group
+   * @param persistStatistics statistics updated per background write, may be null
+   * @throws IOException
+   */
+  public CompressedDataWriter(final String filename, final Schema schema, int recordsPerGroup,
+      final PersistStatistics persistStatistics) throws IOException {
+    this.schema = schema;
+    this.recordsPerGroup = recordsPerGroup;
+    this.values = new long[schema.getTotalColumns()][recordsPerGroup];
+    this.nulls = new boolean[schema.getTotalColumns()][recordsPerGroup];
+    this.dataOutputWriter = new DataOutputStream(new BufferedChannelWriter(filename,
+        BufferedChannelWriter.DEFAULT_BUFFER_SIZE, 0, persistStatistics));
+    this.groupsOutputWriter = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(filename + GROUPS_SUFFIX)));
+  }
+
+  @Override
+  public void write(final DataRecord record) throws IOException {
+    Column[] columns = this.schema.getColumns();
+    for (int i = 0; i < columns.length; i++) {
+      this.nulls[i][this.records] = record.isNull(i);
+      this.values[i][this.records] = this.nulls[i][this.records] ? 0 : record.readRaw(i);
+    }
+    this.records++;
+    if (this.records == this.recordsPerGroup) {
+      flushGroup();
+    }
+  }
+
+  /**
+   * Encode & write pending group.
+   *
+   * @throws IOException
+   */
+  private void flushGroup() throws IOException {
+    byte[] group = RecordGroup.encode(this.schema, this.values, this.nulls, this.records);
+    this.groupsOutputWriter.writeLong(this.size);
+    this.dataOutputWriter.write(group);
+    this.size += group.length;
+    this.records = 0;
+  }
+
+  /**
+   * Write pending group & position of end of last group.
+   *
+   * @throws IOException
+   */
+  @Override
+  public void close() throws IOException {
+    if (this.records > 0) {
+      flushGroup();
+    }
+    this.groupsOutputWriter.writeLong(this.size);
+    this.dataOutputWriter.close();
+    this.groupsOutputWriter.close();
+  }
+
+  /**
+   * @return size of encoded groups expressed in bytes
+   */
+  public long getSize() {
+    return this.size;
+  }
+}
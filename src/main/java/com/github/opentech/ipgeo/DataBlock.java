@@ -2,7 +2,7 @@ package com.github.opentech.ipgeo;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
-import java.nio.MappedByteBuffer;
+import java.nio.ByteBuffer;
 import java.nio.channels.FileChannel;
 
 /**
@@ -34,15 +34,37 @@ public class DataBlock {
   private RandomAccessFile dataReader;
 
   /**
-   * Memory mapped byte buffer.
+   * Memory mapped byte buffer, or its copy in anonymous memory.
    */
-  private MappedByteBuffer mappedByteBuffer;
+  private ByteBuffer mappedByteBuffer;
+
+  /**
+   * True if block is copied into anonymous memory.
+   */
+  private boolean anonymous;
 
   /**
    * Variable that holds active record reads per thread execution context.
    */
   private ThreadLocal<DataRecord> dataRecord;
 
+  /**
+   * View of memory mapped byte buffer per thread execution context, so that concurrent reads do
+   * not share position.
+   */
+  private ThreadLocal<ByteBuffer> readBuffer;
+
+  /**
+   * Leases on memory mapped byte buffer. Block holds one lease until it is un-initialized,
+   * buffer is unmapped once last lease is released.
+   */
+  private LeaseCounter leases = new LeaseCounter(this::unmap);
+
+  /**
+   * Pool used for resolving string columns.
+   */
+  private StringPool stringPool;
+
   /**
    * Constructor for the class.
    * 
@@ -53,8 +75,10 @@ public class DataBlock {
       final DataBlockInitArgs dataBlockInitArgs) {
     this.filename = dataBlockLookupInitArgs.getFilename();
     this.schema = dataBlockLookupInitArgs.getSchema();
+    this.stringPool = dataBlockLookupInitArgs.getStringPool();
     this.dataBlockInitArgs = dataBlockInitArgs;
     this.dataRecord = new ThreadLocal<DataRecord>();
+    this.readBuffer = ThreadLocal.withInitial(() -> this.mappedByteBuffer.duplicate());
     try {
       init(dataBlockLookupInitArgs);
     } catch (Throwable e) {
@@ -70,10 +94,12 @@ public class DataBlock {
    * @throws IOException
    */
   public void init(final DataBlockLookupInitArgs dataBlockLookupInitArgs) throws IOException {
-    this.dataReader = new RandomAccessFile(this.filename, "r");
+    LookupContainer.Section data =
+        LookupContainer.locate(dataBlockLookupInitArgs.getContainer(), this.filename);
+    this.dataReader = new RandomAccessFile(data.getFilename(), "r");
     this.mappedByteBuffer = dataReader.getChannel().map(FileChannel.MapMode.READ_ONLY,
-        this.dataBlockInitArgs.getPosition(), this.dataBlockInitArgs.getSize());
-    this.mappedByteBuffer.load();
+        data.getPosition() + this.dataBlockInitArgs.getPosition(),
+        this.dataBlockInitArgs.getSize());
     /**
      * Validate new Data Block.
      * Each record must be separated by newline character.
@@ -85,33 +111,80 @@ public class DataBlock {
         || lastLineSeparator != LookupConstants.NEW_LINE) {
       throw new IllegalStateException("Invalid datablock: " + this.dataBlockInitArgs);
     }
+    if (dataBlockLookupInitArgs.getMemoryMode() == MemoryMode.ANONYMOUS) {
+      ByteBuffer mapped = this.mappedByteBuffer;
+      this.mappedByteBuffer = CommonUtilities.copyToAnonymous(mapped, this.filename);
+      this.anonymous = this.mappedByteBuffer != mapped;
+    }
   }
 
   /**
-   * Un-Initialize Data Block
+   * Un-Initialize Data Block. Memory mapped byte buffer is unmapped once all leases are
+   * released, reads started afterwards find no record. Repeated calls have no effect.
    * 
    * @throws IOException
    */
-  @SuppressWarnings("restriction")
   public void uninit() throws IOException {
-    /**
-     * DirectByteBuffers are garbage collected by using a phantom reference and a
-     * reference queue. Every once a while, the JVM checks the reference queue and
-     * cleans the DirectByteBuffers. However, as this doesn't happen
-     * immediately after discarding all references to a DirectByteBuffer, it's
-     * possible to get OutOfMemoryError using DirectByteBuffers. This function
-     * explicitly calls the Cleaner method of a DirectByteBuffer.
-     */
-    sun.misc.Cleaner cleaner = ((sun.nio.ch.DirectBuffer) this.mappedByteBuffer).cleaner();
-    if (cleaner != null) {
-      cleaner.clean();
+    this.leases.retire();
+  }
+
+  /**
+   * Acquire lease on memory mapped byte buffer, buffer stays mapped until lease is released.
+   * 
+   * @return true if lease is acquired, false if block is un-initialized
+   */
+  public boolean acquire() {
+    return this.leases.acquire();
+  }
+
+  /**
+   * Release lease on memory mapped byte buffer, last release unmaps buffer & closes file.
+   */
+  public void release() {
+    this.leases.release();
+  }
+
+  /**
+   * Mapping is released at once rather than once buffer is garbage collected, so that reloads
+   * do not pile up mappings. No lease is held, hence no view of buffer is read.
+   */
+  private void unmap() {
+    CommonUtilities.unmap(this.mappedByteBuffer);
+    this.mappedByteBuffer = null;
+    try {
+      this.dataReader.close();
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "Failed to release datablock on file " + this.filename + " Reason: " + e.getMessage());
     }
-    this.dataReader.getChannel().close();
-    this.dataReader.close();
   }
 
   /**
-   * Get portion of memory bytes starting at offset until length bytes
+   * Page in memory mapped byte buffer under lease.
+   * 
+   * @return number of paged in bytes, 0 if block is un-initialized
+   */
+  public long load() {
+    if (!acquire()) {
+      return 0;
+    }
+    try {
+      return CommonUtilities.touch(this.mappedByteBuffer, 0, this.dataBlockInitArgs.getSize());
+    } finally {
+      release();
+    }
+  }
+
+  /**
+   * @return number of leases, 0 once block is un-initialized & unmapped
+   */
+  public int getLeases() {
+    return this.leases.getLeases();
+  }
+
+  /**
+   * Get portion of memory bytes starting at offset until length bytes. Bytes are copied to
+   * record under lease, so record stays readable after block is un-initialized.
    * 
    * @param offset
    * @param length
@@ -119,19 +192,31 @@ public class DataBlock {
    */
   public DataRecord get(int offset, int length) {
     DataRecord record = null;
-    if (offset < this.dataBlockInitArgs.getSize()) {
-      record = this.dataRecord.get();
-      if (record == null) {
-        this.dataRecord.set(new DataRecord(this.schema, length));
+    if (offset < this.dataBlockInitArgs.getSize() && acquire()) {
+      try {
         record = this.dataRecord.get();
+        if (record == null) {
+          this.dataRecord.set(new DataRecord(this.schema, length, this.stringPool));
+          record = this.dataRecord.get();
+        }
+        record.clear();
+        ByteBuffer buffer = this.readBuffer.get();
+        buffer.position(offset);
+        record.read(buffer, 0, length);
+      } finally {
+        release();
       }
-      record.clear();
-      this.mappedByteBuffer.position(offset);
-      record.read(this.mappedByteBuffer, 0, length);
     }
     return record;
   }
 
+  /**
+   * @return true if block is copied into anonymous memory
+   */
+  public boolean isAnonymous() {
+    return this.anonymous;
+  }
+
   /**
    * Get Block Number
    * 
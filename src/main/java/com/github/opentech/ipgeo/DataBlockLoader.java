@@ -0,0 +1,344 @@
+package com.github.opentech.ipgeo;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.IntToLongFunction;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Pages in segments of memory mapped data, either before lookup serves or on background
+ * threads once it serves, & reports page-in progress. Segment is unit of page-in & of access
+ * profile, i.e. data block of row layout or lines per data block records of other layouts.
+ *
+ * Access profile is a file of [segment]:[access count] lines, in order of rank.
+ *
+ * @author bhargava.kulkarni
+ */
+public class DataBlockLoader {
+
+  /**
+   * Logger for the class
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(DataBlockLoader.class);
+
+  /**
+   * Suffix of access profile written before it atomically replaces previous profile.
+   */
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  /**
+   * Name of paged in file, used for logging.
+   */
+  private String filename;
+
+  /**
+   * Pages in given segment, returns number of paged in bytes.
+   */
+  private IntToLongFunction pageIn;
+
+  /**
+   * State of segment, i.e. not paged in, being paged in, paged in or failed.
+   */
+  private static final int NOT_LOADED = 0, LOADING = 1, LOADED = 2, FAILED = 3;
+
+  /**
+   * State per segment.
+   */
+  private AtomicIntegerArray loaded;
+
+  private AtomicInteger loadedSegments = new AtomicInteger();
+
+  private AtomicInteger failedSegments = new AtomicInteger();
+
+  /**
+   * Number of segments paged in or failed, completion is signalled once all segments are done.
+   */
+  private AtomicInteger doneSegments = new AtomicInteger();
+
+  private AtomicLong loadedBytes = new AtomicLong();
+
+  /**
+   * Start of first page-in & elapsed time until all segments are paged in, expressed in
+   * nanoseconds.
+   */
+  private volatile long loadStart, loadTime;
+
+  private CountDownLatch completion = new CountDownLatch(1);
+
+  /**
+   * Threads paging in segments in background, null unless background page-in is started.
+   */
+  private volatile ExecutorService workers;
+
+  /**
+   * Constructor for the class
+   *
+   * @param filename name of paged in file, used for logging
+   * @param segments number of segments
+   * @param pageIn function paging in given segment & returning number of paged in bytes
+   */
+  public DataBlockLoader(String filename, int segments, IntToLongFunction pageIn) {
+    this.filename = filename;
+    this.pageIn = pageIn;
+    this.loaded = new AtomicIntegerArray(segments);
+    if (segments == 0) {
+      this.completion.countDown();
+    }
+  }
+
+  /**
+   * Page in given segments in parallel, returns once all of them are paged in. Segments paged in
+   * already are skipped.
+   *
+   * @param segments segments in order of page-in
+   * @param threads number of segments paged in in parallel
+   */
+  public void load(int[] segments, int threads) {
+    ExecutorService loaders = Executors.newFixedThreadPool(Math.max(threads, 1));
+    try {
+      load(segments, loaders);
+    } finally {
+      loaders.shutdownNow();
+    }
+  }
+
+  /**
+   * Page in given segments on given executor, e.g. pool shared by all phases of recovery,
+   * returns once all of them are paged in. Segments paged in already are skipped.
+   *
+   * @param segments segments in order of page-in
+   * @param loaders executor paging in segments, its tasks must not wait for this call
+   */
+  public void load(int[] segments, ExecutorService loaders) {
+    if (this.loadStart == 0) {
+      this.loadStart = System.nanoTime();
+    }
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int segment : segments) {
+        futures.add(loaders.submit(() -> loadSegment(segment)));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (Exception e) {
+      Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+      throw new IllegalStateException(
+          "Failed to page in " + this.filename + " Reason: " + cause.getMessage());
+    }
+  }
+
+  /**
+   * Page in all segments not paged in yet on background daemon threads, progress is reported by
+   * {@link #getLoadedSegments()}, {@link #getFailedSegments()} & {@link #getLoadedBytes()}.
+   *
+   * @param threads number of segments paged in in parallel
+   */
+  public void loadInBackground(int threads) {
+    if (this.loadStart == 0) {
+      this.loadStart = System.nanoTime();
+    }
+    ExecutorService loaders = Executors.newFixedThreadPool(Math.max(threads, 1), runnable -> {
+      Thread loader = new Thread(runnable, "ip-lookup-loader");
+      loader.setDaemon(true);
+      return loader;
+    });
+    for (int segment = 0; segment < this.loaded.length(); segment++) {
+      if (this.loaded.get(segment) == NOT_LOADED) {
+        final int segmentNo = segment;
+        loaders.submit(() -> {
+          try {
+            loadSegment(segmentNo);
+          } catch (RuntimeException e) {
+            LOG.error("Failed to page in segment {} of {} {}", segmentNo, this.filename,
+                e.getMessage());
+          }
+        });
+      }
+    }
+    loaders.shutdown();
+    this.workers = loaders;
+  }
+
+  /**
+   * Page in segment unless it is paged in already. Segment which fails to page in counts towards
+   * completion, so that waiting for completion does not wait for failed segments.
+   *
+   * @param segment segment to page in
+   */
+  private void loadSegment(int segment) {
+    if (!this.loaded.compareAndSet(segment, NOT_LOADED, LOADING)) {
+      return;
+    }
+    try {
+      this.loadedBytes.addAndGet(this.pageIn.applyAsLong(segment));
+      this.loaded.set(segment, LOADED);
+      this.loadedSegments.incrementAndGet();
+    } catch (RuntimeException e) {
+      this.loaded.set(segment, FAILED);
+      this.failedSegments.incrementAndGet();
+      throw e;
+    } finally {
+      if (this.doneSegments.incrementAndGet() == this.loaded.length()) {
+        this.loadTime = System.nanoTime() - this.loadStart;
+        this.completion.countDown();
+        LOG.info("Paged in {} segments {} bytes of {} in {} ms, {} segments failed",
+            this.loadedSegments.get(), this.loadedBytes.get(), this.filename,
+            this.loadTime / 1000000, this.failedSegments.get());
+      }
+    }
+  }
+
+  /**
+   * Stop background page-in, segments being paged in are completed before returning.
+   *
+   * @throws InterruptedException
+   */
+  public void stop() throws InterruptedException {
+    ExecutorService loaders = this.workers;
+    if (loaders != null) {
+      loaders.shutdownNow();
+      loaders.awaitTermination(1, TimeUnit.MINUTES);
+    }
+  }
+
+  /**
+   * Wait for all segments to be paged in or to fail.
+   *
+   * @param timeout maximum time to wait expressed in milliseconds
+   * @return true if all segments are paged in or failed
+   * @throws InterruptedException
+   */
+  public boolean await(long timeout) throws InterruptedException {
+    return this.completion.await(timeout, TimeUnit.MILLISECONDS);
+  }
+
+  /**
+   * Read access profile.
+   *
+   * @param filename name of profile file
+   * @param segments number of segments, segments beyond are ignored
+   * @return segments in order of rank, empty if there is no profile
+   * @throws IOException
+   */
+  public static int[] readAccessProfile(final String filename, int segments) throws IOException {
+    if (filename == null || !new File(filename).isFile()) {
+      LOG.info("Access profile {} not found", filename);
+      return new int[0];
+    }
+    List<Integer> ranked = new ArrayList<Integer>();
+    try (BufferedReader profileReader = new BufferedReader(new FileReader(filename))) {
+      String line;
+      while ((line = profileReader.readLine()) != null) {
+        int pos = line.indexOf(LookupConstants.COLON);
+        int segment = Integer.parseInt((pos < 0) ? line.trim() : line.substring(0, pos).trim());
+        if (segment >= 0 && segment < segments) {
+          ranked.add(segment);
+        }
+      }
+    }
+    return ranked.stream().mapToInt(Integer::intValue).toArray();
+  }
+
+  /**
+   * Write access profile, segments which are not accessed are left out. Profile is written to
+   * temporary file which then atomically replaces previous profile.
+   *
+   * @param filename name of profile file
+   * @param accessCounts access count per segment
+   * @throws IOException
+   */
+  public static void writeAccessProfile(final String filename, final long[] accessCounts)
+      throws IOException {
+    Integer[] segments = new Integer[accessCounts.length];
+    for (int segment = 0; segment < segments.length; segment++) {
+      segments[segment] = segment;
+    }
+    Arrays.sort(segments,
+        Comparator.comparingLong((Integer segment) -> accessCounts[segment]).reversed());
+    try (BufferedWriter profileWriter =
+        new BufferedWriter(new FileWriter(filename + TEMP_SUFFIX))) {
+      for (int segment : segments) {
+        if (accessCounts[segment] > 0) {
+          profileWriter.write(segment + LookupConstants.COLON + accessCounts[segment]);
+          profileWriter.newLine();
+        }
+      }
+    }
+    Files.move(Paths.get(filename + TEMP_SUFFIX), Paths.get(filename),
+        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * @param segment
+   * @return true if segment is paged in
+   */
+  public boolean isLoaded(int segment) {
+    return this.loaded.get(segment) == LOADED;
+  }
+
+  /**
+   * @return number of segments
+   */
+  public int getSegments() {
+    return this.loaded.length();
+  }
+
+  /**
+   * @return number of paged in segments
+   */
+  public int getLoadedSegments() {
+    return this.loadedSegments.get();
+  }
+
+  /**
+   * @return number of segments which failed to page in
+   */
+  public int getFailedSegments() {
+    return this.failedSegments.get();
+  }
+
+  /**
+   * @return number of paged in bytes
+   */
+  public long getLoadedBytes() {
+    return this.loadedBytes.get();
+  }
+
+  /**
+   * @return fraction of segments paged in or failed, between 0 & 1
+   */
+  public double getProgress() {
+    return (this.loaded.length() == 0) ? 1
+        : (double) this.doneSegments.get() / this.loaded.length();
+  }
+
+  /**
+   * @return elapsed time until all segments are paged in or failed expressed in nanoseconds, 0
+   *         until then
+   */
+  public long getLoadTime() {
+    return this.loadTime;
+  }
+}
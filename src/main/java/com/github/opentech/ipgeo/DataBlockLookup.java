@@ -1,9 +1,19 @@
 package com.github.opentech.ipgeo;
 
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.FileInputStream;
 import java.io.IOException;
-import java.util.HashMap;
-import java.util.Map;
-import java.util.stream.Collectors;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+import com.github.opentech.ipgeo.Schema.Column;
 
 /**
  * Efficient fixed length record lookup on large persistent Data.
@@ -24,10 +34,72 @@ public class DataBlockLookup {
   private DataRecordProcessor dataRecordProcessor;
 
   /**
-   * Memory mapped DataBlocks.Since JAVA has limitation for maximum size of memory mapped file to
-   * 2GB, single large file is mapped multiple times as data blocks.
+   * Memory mapped DataBlocks by block number.Since JAVA has limitation for maximum size of memory
+   * mapped file to 2GB, single large file is mapped multiple times as data blocks.
+   */
+  private DataBlock[] memoryMappedDataBlocks = new DataBlock[0];
+
+  /**
+   * Number of lines in one memory mapped data block of row layout, lines per data block unless
+   * such block exceeds 2GB.
+   */
+  private int linesPerBlock;
+
+  /**
+   * Memory mapped column blocks per column, used with columnar layout. Each column file is mapped
+   * as multiple blocks of lines per data block records.
+   */
+  private ColumnBlock[][] columnBlocks;
+
+  /**
+   * Memory mapped null flags per column, used with columnar layout.
+   */
+  private ColumnBlock[] nullBlocks;
+
+  /**
+   * Memory mapped blocks of encoded record groups, used with compressed layout.
+   */
+  private CompressedDataBlock[] compressedBlocks;
+
+  /**
+   * Starting position of each group within file followed by end of last group, used with
+   * compressed layout.
+   */
+  private long[] groupPositions;
+
+  /**
+   * Compressed block holding each group, used with compressed layout.
+   */
+  private int[] groupBlocks;
+
+  /**
+   * Cache of decoded groups, null if groups are decoded per read.
+   */
+  private DecodedGroupCache decodedGroupCache;
+
+  /**
+   * Variable that holds active record reads per thread execution context, used with columnar
+   * layout.
+   */
+  private ThreadLocal<DataRecord> dataRecord;
+
+  /**
+   * Loader paging in data blocks according to load policy.
+   */
+  private DataBlockLoader dataBlockLoader;
+
+  /**
+   * Number of reads per segment, i.e. data block of row layout or lines per data block records
+   * of other layouts. Counts are striped, so that concurrent readers do not contend on shared
+   * counters. Null unless reads are profiled, i.e. with hot first policy or access profiling.
    */
-  private Map<Integer, DataBlock> memoryMappedDataBlocks;
+  private LongAdder[] accessCounts;
+
+  /**
+   * Leases on column & compressed blocks, row blocks hold leases of their own. Lookup holds one
+   * lease until it is un-initialized, blocks are unmapped once last lease is released.
+   */
+  private LeaseCounter leases = new LeaseCounter(this::uninitBlocks);
 
   /**
    * Constructor for the class.
@@ -37,7 +109,7 @@ public class DataBlockLookup {
   public DataBlockLookup(DataBlockLookupInitArgs dataBlockLookupInitArgs) {
     this.dataBlockLookupInitArgs = dataBlockLookupInitArgs;
     this.dataRecordProcessor = new DataRecordProcessor(this.dataBlockLookupInitArgs.getSchema());
-    this.memoryMappedDataBlocks = new HashMap<Integer, DataBlock>();
+    this.dataRecord = new ThreadLocal<DataRecord>();
     try {
       init();
     } catch (Throwable e) {
@@ -50,59 +122,651 @@ public class DataBlockLookup {
    * Initialize internal structures
    */
   public void init() throws IOException {
-    int blockNo = 0;
-    int blockSize = this.dataBlockLookupInitArgs.getLinesPerDataBlock()
-        * this.dataBlockLookupInitArgs.getDataBlockRowSize(), size = 0;
-    long totalSize = Long.valueOf(this.dataBlockLookupInitArgs.getTotalLines())
-        * this.dataBlockLookupInitArgs.getDataBlockRowSize(), position = 0;
+    if (this.dataBlockLookupInitArgs.getDataLayout() == DataLayout.COLUMNAR) {
+      initColumns();
+    } else if (this.dataBlockLookupInitArgs.getDataLayout() == DataLayout.COMPRESSED) {
+      initGroups();
+    } else {
+      initBlocks();
+    }
+    initLoader();
+  }
+
+  /**
+   * Initialize data blocks for row layout.
+   * 
+   * @throws IOException
+   */
+  private void initBlocks() throws IOException {
+    int rowSize = this.dataBlockLookupInitArgs.getDataBlockRowSize();
+    this.linesPerBlock =
+        Math.min(this.dataBlockLookupInitArgs.getLinesPerDataBlock(), Integer.MAX_VALUE / rowSize);
+    long totalLines = this.dataBlockLookupInitArgs.getTotalLines();
+    this.memoryMappedDataBlocks =
+        new DataBlock[(int) ((totalLines + this.linesPerBlock - 1) / this.linesPerBlock)];
+    forEachBlock(this.memoryMappedDataBlocks.length, blockNo -> {
+      long firstLine = (long) blockNo * this.linesPerBlock;
+      int lines = (int) Math.min(this.linesPerBlock, totalLines - firstLine);
+      DataBlockInitArgs dataBlockInitArgs =
+          new DataBlockInitArgs(blockNo, firstLine * rowSize, lines * rowSize);
+      this.memoryMappedDataBlocks[blockNo] =
+          new DataBlock(this.dataBlockLookupInitArgs, dataBlockInitArgs);
+    });
+  }
+
+  /**
+   * Initialize given number of blocks, in parallel on executor of init args if given. Each block
+   * is mapped by its own task, so that mapping of large files is not serialized.
+   * 
+   * @param count number of blocks
+   * @param initializer initializer of single block
+   */
+  private void forEachBlock(int count, IntConsumer initializer) {
+    ExecutorService executor = this.dataBlockLookupInitArgs.getExecutor();
+    if (executor == null) {
+      for (int blockNo = 0; blockNo < count; blockNo++) {
+        initializer.accept(blockNo);
+      }
+      return;
+    }
+    List<Future<?>> futures = new ArrayList<Future<?>>();
+    for (int blockNo = 0; blockNo < count; blockNo++) {
+      final int block = blockNo;
+      futures.add(executor.submit(() -> initializer.accept(block)));
+    }
+    try {
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (Exception e) {
+      Throwable cause = (e.getCause() != null) ? e.getCause() : e;
+      throw new IllegalStateException("Failed to map "
+          + this.dataBlockLookupInitArgs.getFilename() + " Reason: " + cause.getMessage());
+    }
+  }
+
+  /**
+   * Initialize loader & page in segments which are paged in before lookup serves, i.e. all
+   * segments with eager policy or segments of access profile with hot first policy.
+   * 
+   * @throws IOException
+   */
+  private void initLoader() throws IOException {
+    int segments = (this.dataBlockLookupInitArgs.getDataLayout() == DataLayout.ROW)
+        ? this.memoryMappedDataBlocks.length
+        : (int) ((this.dataBlockLookupInitArgs.getTotalLines()
+            + this.dataBlockLookupInitArgs.getLinesPerDataBlock() - 1)
+            / this.dataBlockLookupInitArgs.getLinesPerDataBlock());
+    if (this.dataBlockLookupInitArgs.getLoadPolicy() == LoadPolicy.HOT_FIRST
+        || this.dataBlockLookupInitArgs.isAccessProfiling()) {
+      this.accessCounts = new LongAdder[segments];
+      Arrays.setAll(this.accessCounts, segment -> new LongAdder());
+    }
+    this.dataBlockLoader = new DataBlockLoader(this.dataBlockLookupInitArgs.getFilename(),
+        segments, this::loadSegment);
+    switch (this.dataBlockLookupInitArgs.getLoadPolicy()) {
+      case EAGER:
+        int[] all = new int[segments];
+        Arrays.setAll(all, segment -> segment);
+        load(all);
+        break;
+      case HOT_FIRST:
+        load(DataBlockLoader
+            .readAccessProfile(this.dataBlockLookupInitArgs.getAccessProfile(), segments));
+        break;
+      default:
+        break;
+    }
+  }
+
+  /**
+   * Page in given segments, on executor of init args if given.
+   * 
+   * @param segments segments in order of page-in
+   */
+  private void load(int[] segments) {
+    if (this.dataBlockLookupInitArgs.getExecutor() != null) {
+      this.dataBlockLoader.load(segments, this.dataBlockLookupInitArgs.getExecutor());
+    } else {
+      this.dataBlockLoader.load(segments, this.dataBlockLookupInitArgs.getLoadThreads());
+    }
+  }
+
+  /**
+   * Page in all segments not paged in yet on background threads, with background & hot first
+   * policies. Intended to be called once lookup serves.
+   */
+  public void loadInBackground() {
+    LoadPolicy loadPolicy = this.dataBlockLookupInitArgs.getLoadPolicy();
+    if (loadPolicy == LoadPolicy.BACKGROUND || loadPolicy == LoadPolicy.HOT_FIRST) {
+      this.dataBlockLoader.loadInBackground(this.dataBlockLookupInitArgs.getLoadThreads());
+    }
+  }
 
-    for (long currentSize = 0; currentSize < totalSize; currentSize += blockSize) {
-      position = currentSize;
-      size = (int) Math.min((totalSize - currentSize), blockSize);
-      if (size > 0) {
-        DataBlockInitArgs dataBlockInitArgs = new DataBlockInitArgs(blockNo++, position, size);
-        DataBlock dataBlock = new DataBlock(this.dataBlockLookupInitArgs, dataBlockInitArgs);
-        memoryMappedDataBlocks.put(dataBlock.getBlockNo(), dataBlock);
+  /**
+   * Page in single segment.
+   * 
+   * @param segment
+   * @return number of paged in bytes
+   */
+  private long loadSegment(int segment) {
+    if (this.dataBlockLookupInitArgs.getDataLayout() == DataLayout.ROW) {
+      return this.memoryMappedDataBlocks[segment].load();
+    }
+    if (!this.leases.acquire()) {
+      return 0;
+    }
+    try {
+      return loadBlocks(segment);
+    } finally {
+      this.leases.release();
+    }
+  }
+
+  /**
+   * Page in column or compressed blocks of single segment, lease must be held.
+   * 
+   * @param segment
+   * @return number of paged in bytes
+   */
+  private long loadBlocks(int segment) {
+    int linesPerDataBlock = this.dataBlockLookupInitArgs.getLinesPerDataBlock();
+    long firstLine = (long) segment * linesPerDataBlock;
+    int lines = (int) Math.min(linesPerDataBlock,
+        this.dataBlockLookupInitArgs.getTotalLines() - firstLine);
+    long bytes = 0;
+    if (this.columnBlocks != null) {
+      for (int i = 0; i < this.columnBlocks.length; i++) {
+        if (this.columnBlocks[i].length > 0) {
+          bytes += this.columnBlocks[i][segment].load(0, this.columnBlocks[i][segment].getSize());
+        }
+        if (this.nullBlocks[i] != null) {
+          bytes += this.nullBlocks[i].load((int) (firstLine >>> 3), (lines + 7) >>> 3);
+        }
       }
+      return bytes;
+    }
+    int recordsPerGroup = this.dataBlockLookupInitArgs.getRecordsPerGroup();
+    int lastGroup = (int) ((firstLine + lines - 1) / recordsPerGroup);
+    for (int groupNo = (int) (firstLine / recordsPerGroup); groupNo <= lastGroup; groupNo++) {
+      bytes += getGroupBlock(groupNo).load(getGroupPosition(groupNo),
+          (int) (this.groupPositions[groupNo + 1] - this.groupPositions[groupNo]));
     }
+    return bytes;
   }
 
   /**
-   * Select record from index.
-   * index = BlockNo + Offset
-   * Offset = line no within block
+   * Initialize column blocks for columnar layout.
+   * 
+   * @throws IOException
+   */
+  private void initColumns() throws IOException {
+    Column[] columns = this.dataBlockLookupInitArgs.getSchema().getColumns();
+    long totalLines = this.dataBlockLookupInitArgs.getTotalLines();
+    int linesPerDataBlock = this.dataBlockLookupInitArgs.getLinesPerDataBlock();
+    int blocks = (int) ((totalLines + linesPerDataBlock - 1) / linesPerDataBlock);
+    this.columnBlocks = new ColumnBlock[columns.length][];
+    this.nullBlocks = new ColumnBlock[columns.length];
+
+    LookupContainer container = this.dataBlockLookupInitArgs.getContainer();
+    forEachBlock(columns.length, i -> {
+      String filename =
+          ColumnarDataWriter.getColumnFilename(this.dataBlockLookupInitArgs.getFilename(), i);
+      int width = ColumnBlock.getWidth(columns[i]);
+      this.columnBlocks[i] = new ColumnBlock[(width == 0) ? 0 : blocks];
+      LookupContainer.Section values = (width == 0) ? null
+          : LookupContainer.locate(container, filename);
+      for (int blockNo = 0; blockNo < this.columnBlocks[i].length; blockNo++) {
+        int lines =
+            (int) Math.min(linesPerDataBlock, totalLines - (long) blockNo * linesPerDataBlock);
+        this.columnBlocks[i][blockNo] = new ColumnBlock(values.getFilename(), columns[i],
+            values.getPosition() + (long) blockNo * linesPerDataBlock * width, lines * width,
+            this.dataBlockLookupInitArgs.getMemoryMode());
+      }
+      if (columns[i].isNullable() && totalLines > 0) {
+        LookupContainer.Section nulls =
+            LookupContainer.locate(container, filename + ColumnarDataWriter.NULLS_SUFFIX);
+        this.nullBlocks[i] = new ColumnBlock(nulls.getFilename(), null, nulls.getPosition(),
+            (int) ((totalLines + 7) >>> 3), this.dataBlockLookupInitArgs.getMemoryMode());
+      }
+    });
+  }
+
+  /**
+   * Initialize compressed blocks for compressed layout. Groups are mapped as blocks of at most
+   * 2GB, each block holding whole groups.
+   * 
+   * @throws IOException
+   */
+  private void initGroups() throws IOException {
+    LookupContainer container = this.dataBlockLookupInitArgs.getContainer();
+    LookupContainer.Section data =
+        LookupContainer.locate(container, this.dataBlockLookupInitArgs.getFilename());
+    LookupContainer.Section groups = LookupContainer.locate(container,
+        this.dataBlockLookupInitArgs.getFilename() + CompressedDataWriter.GROUPS_SUFFIX);
+    String filename = data.getFilename();
+    int recordsPerGroup = this.dataBlockLookupInitArgs.getRecordsPerGroup();
+    int totalGroups = (int) ((this.dataBlockLookupInitArgs.getTotalLines() + recordsPerGroup - 1)
+        / recordsPerGroup);
+    this.groupPositions = new long[totalGroups + 1];
+    try (FileInputStream groupsInput = new FileInputStream(groups.getFilename());
+        DataInputStream groupsReader = new DataInputStream(new BufferedInputStream(
+            Channels.newInputStream(groupsInput.getChannel().position(groups.getPosition()))))) {
+      for (int groupNo = 0; groupNo <= totalGroups; groupNo++) {
+        this.groupPositions[groupNo] = data.getPosition() + groupsReader.readLong();
+      }
+    }
+
+    this.groupBlocks = new int[totalGroups];
+    List<CompressedDataBlock> blocks = new ArrayList<CompressedDataBlock>();
+    int firstGroup = 0;
+    for (int groupNo = 0; groupNo <= totalGroups; groupNo++) {
+      long size = this.groupPositions[groupNo] - this.groupPositions[firstGroup];
+      if (groupNo == totalGroups || (this.groupPositions[groupNo + 1]
+          - this.groupPositions[firstGroup]) > Integer.MAX_VALUE) {
+        if (size > 0) {
+          blocks.add(new CompressedDataBlock(filename, new DataBlockInitArgs(blocks.size(),
+              this.groupPositions[firstGroup], (int) size),
+              this.dataBlockLookupInitArgs.getMemoryMode()));
+        }
+        firstGroup = groupNo;
+      }
+      if (groupNo < totalGroups) {
+        this.groupBlocks[groupNo] = blocks.size();
+      }
+    }
+    this.compressedBlocks = blocks.toArray(new CompressedDataBlock[blocks.size()]);
+    if (this.dataBlockLookupInitArgs.getDecodedGroupCacheSize() > 0) {
+      this.decodedGroupCache =
+          new DecodedGroupCache(this.dataBlockLookupInitArgs.getDecodedGroupCacheSize());
+    }
+  }
+
+  /**
+   * Select record from index. Index is record number, i.e. line no within file, read as unsigned
+   * 32 bit number so that up to 2^32 - 2 records are addressed. With row layout of lookups
+   * persisted with data block offset bits index is block no & line no within block.
+   * With columnar & compressed layouts record is assembled from columns.
    * 
    * @param index search index
    * @return DataRecord selected record
    */
   public DataRecord selectRecord(int index) {
-    int blockNo = (index >>> this.dataBlockLookupInitArgs.getDataBlockOffsetBits());
-    int lineNo =
-        (index & (0xFFFFFFFF >>> (32 - this.dataBlockLookupInitArgs.getDataBlockOffsetBits())));
-    DataBlock dataBlock = this.memoryMappedDataBlocks.get(blockNo);
-    if (dataBlock != null) {
-      return this.dataRecordProcessor.readRecord(dataBlock, lineNo);
+    long recordNo = getRecordNo(index);
+    if (this.dataBlockLookupInitArgs.getDataLayout() != DataLayout.ROW) {
+      if (!this.leases.acquire()) {
+        return null;
+      }
+      try {
+        return assembleRecord(recordNo);
+      } finally {
+        this.leases.release();
+      }
+    }
+    long blockNo = recordNo / this.linesPerBlock;
+    if (blockNo < this.memoryMappedDataBlocks.length) {
+      if (this.accessCounts != null) {
+        this.accessCounts[(int) blockNo].increment();
+      }
+      return this.dataRecordProcessor.readRecord(this.memoryMappedDataBlocks[(int) blockNo],
+          (int) (recordNo % this.linesPerBlock));
     } else {
       return null;
     }
   }
 
+  /**
+   * Convert index to record number.
+   * 
+   * @param index search index
+   * @return record number
+   */
+  private long getRecordNo(int index) {
+    int offsetBits = this.dataBlockLookupInitArgs.getDataBlockOffsetBits();
+    return (offsetBits == 0) ? Integer.toUnsignedLong(index)
+        : toRecordNo(index, offsetBits, this.dataBlockLookupInitArgs.getLinesPerDataBlock());
+  }
+
+  /**
+   * Convert index of row layout encoded as block no & line no within block to record number.
+   * 
+   * @param index search index
+   * @param offsetBits number of bits used for representing line no within block
+   * @param linesPerDataBlock number of lines in one data block
+   * @return record number
+   */
+  public static long toRecordNo(int index, int offsetBits, int linesPerDataBlock) {
+    return (long) (index >>> offsetBits) * linesPerDataBlock + (index & ((1 << offsetBits) - 1));
+  }
+
+  /**
+   * Select raw value of single column from index. With columnar layout only given column is read,
+   * with compressed layout only given column is decoded unless group is cached.
+   * 
+   * @param index search index
+   * @param column column index
+   * @return raw value of column, same as {@link DataRecord#readRaw(int)}
+   */
+  public long selectValue(int index, int column) {
+    if (this.dataBlockLookupInitArgs.getDataLayout() == DataLayout.ROW) {
+      return selectRecord(index).readRaw(column);
+    }
+    long recordNo = getRecordNo(index);
+    countAccess(recordNo);
+    acquire();
+    try {
+      return readValue(recordNo, column);
+    } finally {
+      this.leases.release();
+    }
+  }
+
+  /**
+   * Acquire lease on column & compressed blocks, fail if lookup is un-initialized.
+   */
+  private void acquire() {
+    if (!this.leases.acquire()) {
+      throw new IllegalStateException("Datablock lookup on "
+          + this.dataBlockLookupInitArgs.getFilename() + " is un-initialized");
+    }
+  }
+
+  /**
+   * Count read of segment holding record of columnar or compressed layout.
+   * 
+   * @param recordNo line no within file
+   */
+  private void countAccess(long recordNo) {
+    if (this.accessCounts == null) {
+      return;
+    }
+    long segment = recordNo / this.dataBlockLookupInitArgs.getLinesPerDataBlock();
+    if (segment < this.accessCounts.length) {
+      this.accessCounts[(int) segment].increment();
+    }
+  }
+
+  private long readValue(long recordNo, int column) {
+    if (this.compressedBlocks != null) {
+      int recordsPerGroup = this.dataBlockLookupInitArgs.getRecordsPerGroup();
+      int groupNo = (int) (recordNo / recordsPerGroup);
+      int offset = (int) (recordNo % recordsPerGroup);
+      RecordGroup group = selectGroup(groupNo);
+      if (group != null) {
+        return group.get(offset, column);
+      }
+      return RecordGroup.decodeValue(getGroupBlock(groupNo).getBuffer(),
+          getGroupPosition(groupNo), getGroupRecords(groupNo), offset, column);
+    }
+    int linesPerDataBlock = this.dataBlockLookupInitArgs.getLinesPerDataBlock();
+    ColumnBlock[] blocks = this.columnBlocks[column];
+    if (blocks.length == 0) {
+      return this.dataBlockLookupInitArgs.getSchema().getColumn(column).getMinValue();
+    }
+    return blocks[(int) (recordNo / linesPerDataBlock)].get((int) (recordNo % linesPerDataBlock));
+  }
+
+  /**
+   * Check whether value of single column is null at index.
+   * 
+   * @param index search index
+   * @param column column index
+   * @return true if value is null
+   */
+  public boolean isNull(int index, int column) {
+    if (this.dataBlockLookupInitArgs.getDataLayout() == DataLayout.ROW) {
+      return selectRecord(index).isNull(column);
+    }
+    acquire();
+    try {
+      return readNull(getRecordNo(index), column);
+    } finally {
+      this.leases.release();
+    }
+  }
+
+  private boolean readNull(long recordNo, int column) {
+    if (this.compressedBlocks != null) {
+      int recordsPerGroup = this.dataBlockLookupInitArgs.getRecordsPerGroup();
+      int groupNo = (int) (recordNo / recordsPerGroup);
+      int offset = (int) (recordNo % recordsPerGroup);
+      RecordGroup group = selectGroup(groupNo);
+      if (group != null) {
+        return group.isNull(offset, column);
+      }
+      return RecordGroup.decodeNull(getGroupBlock(groupNo).getBuffer(),
+          getGroupPosition(groupNo), getGroupRecords(groupNo), offset, column);
+    }
+    return this.nullBlocks[column] != null && this.nullBlocks[column].isNull(recordNo);
+  }
+
+  /**
+   * Select decoded group, group is decoded & cached if it is not present in cache.
+   * 
+   * @param groupNo
+   * @return decoded group, null if decoded groups are not cached
+   */
+  private RecordGroup selectGroup(int groupNo) {
+    if (this.decodedGroupCache == null) {
+      return null;
+    }
+    RecordGroup group = this.decodedGroupCache.get(groupNo);
+    if (group == null) {
+      group = RecordGroup.decode(getGroupBlock(groupNo).getBuffer(), getGroupPosition(groupNo),
+          this.dataBlockLookupInitArgs.getSchema(), getGroupRecords(groupNo));
+      this.decodedGroupCache.put(groupNo, group);
+    }
+    return group;
+  }
+
+  /**
+   * @param groupNo
+   * @return compressed block holding group
+   */
+  private CompressedDataBlock getGroupBlock(int groupNo) {
+    return this.compressedBlocks[this.groupBlocks[groupNo]];
+  }
+
+  /**
+   * @param groupNo
+   * @return position of group within its compressed block
+   */
+  private int getGroupPosition(int groupNo) {
+    return (int) (this.groupPositions[groupNo] - getGroupBlock(groupNo).getPosition());
+  }
+
+  /**
+   * @param groupNo
+   * @return number of records in group, last group may hold fewer records
+   */
+  private int getGroupRecords(int groupNo) {
+    int recordsPerGroup = this.dataBlockLookupInitArgs.getRecordsPerGroup();
+    return (int) Math.min(recordsPerGroup,
+        this.dataBlockLookupInitArgs.getTotalLines() - (long) groupNo * recordsPerGroup);
+  }
+
+  /**
+   * Assemble record of columnar or compressed layout from its column values, lease must be held.
+   * Values are copied to record, so record stays readable after lease is released.
+   * 
+   * @param recordNo line no within file
+   * @return DataRecord assembled record
+   */
+  private DataRecord assembleRecord(long recordNo) {
+    if (recordNo >= this.dataBlockLookupInitArgs.getTotalLines()) {
+      return null;
+    }
+    countAccess(recordNo);
+    Schema schema = this.dataBlockLookupInitArgs.getSchema();
+    DataRecord record = this.dataRecord.get();
+    if (record == null) {
+      record = new DataRecord(schema, this.dataRecordProcessor.getRowSize(),
+          this.dataBlockLookupInitArgs.getStringPool());
+      this.dataRecord.set(record);
+    }
+    record.clear();
+    Column[] columns = schema.getColumns();
+    int recordsPerGroup = this.dataBlockLookupInitArgs.getRecordsPerGroup();
+    RecordGroup group = (this.compressedBlocks != null)
+        ? selectGroup((int) (recordNo / recordsPerGroup)) : null;
+    int offset = (group != null) ? (int) (recordNo % recordsPerGroup) : 0;
+    for (int i = 0; i < columns.length; i++) {
+      if (group != null) {
+        boolean isNull = group.isNull(offset, i);
+        record.writeRaw(isNull ? 0 : group.get(offset, i), columns[i], isNull);
+        continue;
+      }
+      boolean isNull = readNull(recordNo, i);
+      record.writeRaw(isNull ? 0 : readValue(recordNo, i), columns[i], isNull);
+    }
+    record.position(schema.getSize());
+    record.append(LookupConstants.NEW_LINE);
+    return record;
+  }
+
+  /**
+   * @param blockNo number of memory mapped data block of row layout
+   * @return data block, null if there is no such block
+   */
+  public DataBlock getDataBlock(int blockNo) {
+    return (blockNo >= 0 && blockNo < this.memoryMappedDataBlocks.length)
+        ? this.memoryMappedDataBlocks[blockNo] : null;
+  }
+
+  /**
+   * Save access profile, ranking segments by number of reads since lookup is initialized.
+   * Profile is used by {@link LoadPolicy#HOT_FIRST} when lookup is initialized next.
+   * 
+   * @param filename name of profile file
+   * @throws IOException
+   */
+  public void saveAccessProfile(final String filename) throws IOException {
+    if (this.accessCounts == null) {
+      throw new IllegalStateException("Reads of " + this.dataBlockLookupInitArgs.getFilename()
+          + " are not profiled, enable access profiling");
+    }
+    DataBlockLoader.writeAccessProfile(filename,
+        Arrays.stream(this.accessCounts).mapToLong(LongAdder::sum).toArray());
+  }
+
+  /**
+   * Discard reads counted so far, e.g. reads of warm-up which are not real traffic.
+   */
+  public void resetAccessProfile() {
+    if (this.accessCounts != null) {
+      for (LongAdder accessCount : this.accessCounts) {
+        accessCount.reset();
+      }
+    }
+  }
+
+  /**
+   * @return loader paging in data blocks, reports page-in progress
+   */
+  public DataBlockLoader getDataBlockLoader() {
+    return this.dataBlockLoader;
+  }
+
   /**
    * @return Size of data blocks
    */
   public long getSize() {
-    return this.memoryMappedDataBlocks.entrySet().stream().map(e -> e.getValue().getSize())
-        .collect(Collectors.summingLong(Integer::intValue));
+    return getSize(false);
+  }
+
+  /**
+   * @return Size of data blocks copied into anonymous memory, remaining blocks are mapped
+   */
+  public long getAnonymousSize() {
+    return getSize(true);
+  }
+
+  private long getSize(boolean anonymousOnly) {
+    long size = 0;
+    for (DataBlock dataBlock : this.memoryMappedDataBlocks) {
+      size += (!anonymousOnly || dataBlock.isAnonymous()) ? dataBlock.getSize() : 0;
+    }
+    if (this.columnBlocks != null) {
+      for (int i = 0; i < this.columnBlocks.length; i++) {
+        for (ColumnBlock columnBlock : this.columnBlocks[i]) {
+          size += (!anonymousOnly || columnBlock.isAnonymous()) ? columnBlock.getSize() : 0;
+        }
+        ColumnBlock nullBlock = this.nullBlocks[i];
+        size += (nullBlock != null && (!anonymousOnly || nullBlock.isAnonymous()))
+            ? nullBlock.getSize() : 0;
+      }
+    }
+    if (this.compressedBlocks != null) {
+      for (CompressedDataBlock compressedBlock : this.compressedBlocks) {
+        size += (!anonymousOnly || compressedBlock.isAnonymous()) ? compressedBlock.getSize() : 0;
+      }
+    }
+    return size;
+  }
+
+  /**
+   * @return Total number of lines
+   */
+  public long getTotalLines() {
+    return this.dataBlockLookupInitArgs.getTotalLines();
+  }
+
+  /**
+   * @return cache of decoded groups, null if layout is not compressed or cache is disabled
+   */
+  public DecodedGroupCache getDecodedGroupCache() {
+    return this.decodedGroupCache;
   }
   
   /**
-   * Un-initialize Data Block Lookup
+   * @return number of leases on column & compressed blocks, 0 once they are unmapped
+   */
+  public int getLeases() {
+    return this.leases.getLeases();
+  }
+  
+  /**
+   * Un-initialize Data Block Lookup. Row blocks are unmapped once their leases are released,
+   * column & compressed blocks once leases of lookup are released. Reads started afterwards find
+   * no record. Repeated calls have no effect.
    * 
    * @throws Exception
    */
   public void uninit() throws IOException {
-    for (DataBlock datablock : memoryMappedDataBlocks.values()) {
+    try {
+      this.dataBlockLoader.stop();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    for (DataBlock datablock : memoryMappedDataBlocks) {
       datablock.uninit();
     }
+    this.leases.retire();
+  }
+
+  /**
+   * Unmap column & compressed blocks, run once last lease is released.
+   */
+  private void uninitBlocks() {
+    try {
+      if (this.columnBlocks != null) {
+        for (int i = 0; i < this.columnBlocks.length; i++) {
+          for (ColumnBlock columnBlock : this.columnBlocks[i]) {
+            columnBlock.uninit();
+          }
+          if (this.nullBlocks[i] != null) {
+            this.nullBlocks[i].uninit();
+          }
+        }
+      }
+      if (this.compressedBlocks != null) {
+        for (CompressedDataBlock compressedBlock : this.compressedBlocks) {
+          compressedBlock.uninit();
+        }
+      }
+    } catch (IOException e) {
+      throw new IllegalStateException("Failed to release datablock lookup on "
+          + this.dataBlockLookupInitArgs.getFilename() + " Reason: " + e.getMessage());
+    }
   }
 }
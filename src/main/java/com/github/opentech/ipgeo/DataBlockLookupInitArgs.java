@@ -1,5 +1,7 @@
 package com.github.opentech.ipgeo;
 
+import java.util.concurrent.ExecutorService;
+
 /**
  * Parameters needed to initialize DataBlocks
  * 
@@ -23,20 +25,78 @@ public class DataBlockLookupInitArgs {
   private int dataBlockRowSize;
   
   /**
-   * Number of bits used for representing offset in each Data Block.
+   * Number of bits used for representing offset in each Data Block, used with record indices of
+   * row layout encoded as block number & offset. 0 if record indices are record numbers.
    */
   private int dataBlockOffsetBits;
   
   /**
    * Total number of lines in file
    */
-  private int totalLines;
+  private long totalLines;
   
   /**
    * Number of lines in one data block
    */
   private int linesPerDataBlock;
 
+  /**
+   * Pool used for resolving string columns
+   */
+  private StringPool stringPool;
+
+  /**
+   * Physical layout of records in file
+   */
+  private DataLayout dataLayout = DataLayout.ROW;
+
+  /**
+   * Number of records per group, used with compressed layout
+   */
+  private int recordsPerGroup;
+
+  /**
+   * Maximum number of decoded groups held in memory, used with compressed layout
+   */
+  private int decodedGroupCacheSize;
+
+  /**
+   * Container holding data files, null if data files are separate files
+   */
+  private LookupContainer container;
+
+  /**
+   * Page-in of memory mapped data blocks
+   */
+  private LoadPolicy loadPolicy = LoadPolicy.EAGER;
+
+  /**
+   * Number of data blocks paged in in parallel
+   */
+  private int loadThreads = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Name of access profile file ranking data blocks paged in first, used with hot first policy
+   */
+  private String accessProfile;
+
+  /**
+   * Count reads per data block, so that access profile can be saved, also with other policies
+   * than hot first
+   */
+  private boolean accessProfiling;
+
+  /**
+   * Executor mapping & paging in data blocks in parallel while initializing, e.g. pool shared by
+   * all phases of recovery. Data blocks are mapped in sequence & paged in on own threads if null
+   */
+  private ExecutorService executor;
+
+  /**
+   * Memory backing data blocks
+   */
+  private MemoryMode memoryMode = MemoryMode.MAPPED;
+
   public String getFilename() {
     return filename;
   }
@@ -69,11 +129,11 @@ public class DataBlockLookupInitArgs {
     this.dataBlockOffsetBits = dataBlockOffsetBits;
   }
 
-  public int getTotalLines() {
+  public long getTotalLines() {
     return totalLines;
   }
 
-  public void setTotalLines(int totalLines) {
+  public void setTotalLines(long totalLines) {
     this.totalLines = totalLines;
   }
 
@@ -84,4 +144,92 @@ public class DataBlockLookupInitArgs {
   public void setLinesPerDataBlock(int linesPerDataBlock) {
     this.linesPerDataBlock = linesPerDataBlock;
   }
+
+  public StringPool getStringPool() {
+    return stringPool;
+  }
+
+  public void setStringPool(StringPool stringPool) {
+    this.stringPool = stringPool;
+  }
+
+  public DataLayout getDataLayout() {
+    return dataLayout;
+  }
+
+  public void setDataLayout(DataLayout dataLayout) {
+    this.dataLayout = dataLayout;
+  }
+
+  public int getRecordsPerGroup() {
+    return recordsPerGroup;
+  }
+
+  public void setRecordsPerGroup(int recordsPerGroup) {
+    this.recordsPerGroup = recordsPerGroup;
+  }
+
+  public LookupContainer getContainer() {
+    return container;
+  }
+
+  public void setContainer(LookupContainer container) {
+    this.container = container;
+  }
+
+  public LoadPolicy getLoadPolicy() {
+    return loadPolicy;
+  }
+
+  public void setLoadPolicy(LoadPolicy loadPolicy) {
+    this.loadPolicy = loadPolicy;
+  }
+
+  public int getLoadThreads() {
+    return loadThreads;
+  }
+
+  public void setLoadThreads(int loadThreads) {
+    this.loadThreads = loadThreads;
+  }
+
+  public String getAccessProfile() {
+    return accessProfile;
+  }
+
+  public void setAccessProfile(String accessProfile) {
+    this.accessProfile = accessProfile;
+  }
+
+  public boolean isAccessProfiling() {
+    return accessProfiling;
+  }
+
+  public void setAccessProfiling(boolean accessProfiling) {
+    this.accessProfiling = accessProfiling;
+  }
+
+  public int getDecodedGroupCacheSize() {
+    return decodedGroupCacheSize;
+  }
+
+  public void setDecodedGroupCacheSize(int decodedGroupCacheSize) {
+    this.decodedGroupCacheSize = decodedGroupCacheSize;
+  }
+
+  public ExecutorService getExecutor() {
+    return executor;
+  }
+
+  public void setExecutor(ExecutorService executor) {
+    this.executor = executor;
+  }
+
+  public MemoryMode getMemoryMode() {
+    return memoryMode;
+  }
+
+  public void setMemoryMode(MemoryMode memoryMode) {
+    this.memoryMode = memoryMode;
+  }
 }
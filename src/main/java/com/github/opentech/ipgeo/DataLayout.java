@@ -0,0 +1,27 @@
+package com.github.opentech.ipgeo;
+
+/**
+ * Physical layout of persisted data records.
+ * 
+ * @author bhargava.kulkarni
+ */
+public enum DataLayout {
+
+  /**
+   * Fixed size rows separated by newline, stored in a single data file.
+   * Suited for reading entire records.
+   */
+  ROW,
+
+  /**
+   * One contiguous array per schema column. Suited for reading single columns & scanning
+   * column values sequentially.
+   */
+  COLUMNAR,
+
+  /**
+   * Groups of fixed number of records, each column of group encoded as frame of reference or
+   * delta. Suited for datasets which do not fit in memory uncompressed.
+   */
+  COMPRESSED
+}
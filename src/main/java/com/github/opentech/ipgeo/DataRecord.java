@@ -5,7 +5,7 @@ import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
 
 import com.github.opentech.ipgeo.Schema.Column;
-import com.github.opentech.ipgeo.Schema.Column.Datatype;
+import com.github.opentech.ipgeo.StringPool.PooledString;
 
 /**
  * Fixed size data record.
@@ -29,6 +29,16 @@ public class DataRecord {
    */
   private ByteBuffer byteBuffer;
 
+  /**
+   * Pool used for resolving string columns.
+   */
+  private StringPool stringPool;
+
+  /**
+   * Reusable views of string columns.
+   */
+  private PooledString[] strings;
+
   /**
    * Constructor for the class
    * 
@@ -41,6 +51,19 @@ public class DataRecord {
     this.byteBuffer = ByteBuffer.allocate(size);
   }
 
+  /**
+   * Constructor for the class
+   * 
+   * @param schema
+   * @param size
+   * @param stringPool pool used for resolving string columns
+   */
+  public DataRecord(Schema schema, int size, StringPool stringPool) {
+    this(schema, size);
+    this.stringPool = stringPool;
+    this.strings = new PooledString[schema.getTotalColumns()];
+  }
+
   /**
    * Clears contents of row
    */
@@ -49,25 +72,121 @@ public class DataRecord {
   }
 
   /**
-   * Write column to buffer
+   * Write column to buffer. Fixed width columns are written at current buffer pointer, packed
+   * columns & null flags are written at their position within row.
    * 
    * @param byteBuffer
    * @param value
    * @param column
    */
   public void writeColumn(String value, Column column) {
+    boolean isNull = column.isNullable() && Column.isNullValue(value);
+    writeRaw(isNull ? 0 : column.getDatatype().parse(value), column, isNull);
+  }
+
+  /**
+   * Write raw column value to buffer. Fixed width columns are written at current buffer pointer,
+   * packed columns & null flags are written at their position within row.
+   * 
+   * @param rawValue raw value as returned by {@link #readRaw(int)}
+   * @param column
+   * @param isNull true if value is null
+   */
+  public void writeRaw(long rawValue, Column column, boolean isNull) {
+    if (column.isNullable()) {
+      setNull(column, isNull);
+    } else if (isNull) {
+      throw new IllegalArgumentException("Column " + column.getName() + " is not nullable");
+    }
     switch (column.getDatatype()) {
+      case BYTE:
+        byteBuffer.put((byte) rawValue);
+        break;
       case SHORT:
-        byteBuffer.putShort(Short.parseShort(value));
+        byteBuffer.putShort((short) rawValue);
         break;
       case INT:
-        byteBuffer.putInt(Integer.parseInt(value));
+      case FLOAT:
+      case STRING:
+        byteBuffer.putInt((int) rawValue);
+        break;
+      case LONG:
+        byteBuffer.putLong(rawValue);
+        break;
+      case PACKED_INT:
+        // Null value is written as 0 bits, so that equal rows are equal bytes on reused records
+        putBits(column.getBitOffset(), column.getBits(),
+            isNull ? 0 : rawValue - column.getMinValue());
         break;
       default:
         break;
     }
   }
 
+  /**
+   * Write id of dictionary encoded string column to buffer at current buffer pointer.
+   * 
+   * @param id string id, negative value represents null
+   * @param column
+   */
+  public void writeString(int id, Column column) {
+    writeRaw(Math.max(id, 0), column, id < 0);
+  }
+
+  /**
+   * Set null flag of column
+   *
+   * @param column
+   * @param isNull
+   */
+  private void setNull(Column column, boolean isNull) {
+    int index = this.schema.getNullBitmapOffset() + (column.getNullIndex() >>> 3);
+    int mask = 0x80 >>> (column.getNullIndex() & 7);
+    byte flags = this.byteBuffer.get(index);
+    this.byteBuffer.put(index, (byte) (isNull ? (flags | mask) : (flags & ~mask)));
+  }
+
+  /**
+   * Write bits of value starting at given bit offset within row.
+   *
+   * @param bitOffset
+   * @param bits
+   * @param value
+   */
+  private void putBits(int bitOffset, int bits, long value) {
+    if (value < 0 || (bits < Long.SIZE && (value >>> bits) != 0)) {
+      throw new IllegalArgumentException("Value " + value + " does not fit in " + bits + " bits");
+    }
+    for (int i = 0; i < bits; i++) {
+      int bit = bitOffset + i;
+      int index = bit >>> 3;
+      int mask = 0x80 >>> (bit & 7);
+      byte current = this.byteBuffer.get(index);
+      this.byteBuffer.put(index, (((value >>> (bits - 1 - i)) & 1) != 0)
+          ? (byte) (current | mask) : (byte) (current & ~mask));
+    }
+  }
+
+  /**
+   * Read bits starting at given bit offset within row.
+   *
+   * @param bitOffset
+   * @param bits
+   * @return value
+   */
+  private long getBits(int bitOffset, int bits) {
+    if (bits == 0) {
+      return 0;
+    }
+    int lastBit = bitOffset + bits - 1;
+    long value = 0;
+    for (int index = bitOffset >>> 3; index <= (lastBit >>> 3); index++) {
+      value = (value << 8) | (this.byteBuffer.get(index) & 0xFF);
+    }
+    value >>>= (7 - (lastBit & 7));
+    return value & (0xFFFFFFFFFFFFFFFFL >>> (Long.SIZE - bits));
+  }
+
   /**
    * Append given byte of data at current buffer pointer
    * 
@@ -77,6 +196,29 @@ public class DataRecord {
     this.byteBuffer.put(data);
   }
 
+  /**
+   * Move buffer pointer to given position
+   *
+   * @param position
+   */
+  public void position(int position) {
+    this.byteBuffer.position(position);
+  }
+
+  /**
+   * @return view of row content, changes to record are visible through view
+   */
+  public ByteBuffer content() {
+    return ByteBuffer.wrap(this.byteBuffer.array());
+  }
+
+  /**
+   * @return copy of row content
+   */
+  public ByteBuffer copyContent() {
+    return ByteBuffer.wrap(this.byteBuffer.array().clone());
+  }
+
   /**
    * @return check whether record is valid or not
    */
@@ -100,6 +242,31 @@ public class DataRecord {
     return writeStatus;
   }
 
+  /**
+   * Check whether column value at given index is null
+   *
+   * @param index
+   * @return true if value is null
+   */
+  public boolean isNull(int index) {
+    Column column = this.schema.getColumn(index);
+    if (!column.isNullable()) {
+      return false;
+    }
+    int flags = byteBuffer.get(this.schema.getNullBitmapOffset() + (column.getNullIndex() >>> 3));
+    return (flags & (0x80 >>> (column.getNullIndex() & 7))) != 0;
+  }
+
+  /**
+   * Read unsigned Byte value from given index as column value
+   *
+   * @param index
+   * @return Byte value of column in range 0-255
+   */
+  public int readByte(int index) {
+    return byteBuffer.get(this.schema.getColumn(index).getOffset()) & 0xFF;
+  }
+
   /**
    * Read Short value from given index as column value
    * 
@@ -111,13 +278,81 @@ public class DataRecord {
   }
 
   /**
-   * Read Integer value from given index as column value
+   * Read Integer value from given index as column value. Packed columns are expanded to their
+   * actual value.
    * 
    * @param index
    * @return Integer value of column
    */
   public int readInt(int index) {
-    return byteBuffer.getInt(this.schema.getColumn(index).getOffset());
+    Column column = this.schema.getColumn(index);
+    if (column.getDatatype() == Column.Datatype.PACKED_INT) {
+      return (int) (column.getMinValue() + getBits(column.getBitOffset(), column.getBits()));
+    }
+    return byteBuffer.getInt(column.getOffset());
+  }
+
+  /**
+   * Read Long value from given index as column value
+   *
+   * @param index
+   * @return Long value of column
+   */
+  public long readLong(int index) {
+    return byteBuffer.getLong(this.schema.getColumn(index).getOffset());
+  }
+
+  /**
+   * Read Float value from given index as column value
+   *
+   * @param index
+   * @return Float value of column
+   */
+  public float readFloat(int index) {
+    return byteBuffer.getFloat(this.schema.getColumn(index).getOffset());
+  }
+
+  /**
+   * Read String value from given index as column value. Returned view refers to string pool
+   * memory directly & it is reused by subsequent reads of same column from this record.
+   * 
+   * @param index
+   * @return String value of column, null if value is null
+   */
+  public CharSequence readString(int index) {
+    if (this.stringPool == null) {
+      throw new IllegalStateException("String pool is not available");
+    }
+    if (isNull(index)) {
+      return null;
+    }
+    this.strings[index] = this.stringPool.get(readInt(index), this.strings[index]);
+    return this.strings[index];
+  }
+
+  /**
+   * Read raw value from given index as column value. Floats are represented by their IEEE 754
+   * bits, same as {@link Column.Datatype#parse(String)}.
+   *
+   * @param index
+   * @return raw value of column
+   */
+  public long readRaw(int index) {
+    switch (this.schema.getColumn(index).getDatatype()) {
+      case BYTE:
+        return readByte(index);
+      case SHORT:
+        return readShort(index);
+      case INT:
+      case FLOAT:
+      case PACKED_INT:
+      case STRING:
+        return readInt(index);
+      case LONG:
+        return readLong(index);
+      default:
+        throw new IllegalStateException("Unsupported datatype at column " + index);
+    }
   }
 
   /**
@@ -135,23 +370,62 @@ public class DataRecord {
    * Read value as String from given index as column value
    * 
    * @param index
-   * @return Column value as string
+   * @return Column value as string, null if value is null
    */
   public String read(int index) {
     String value = null;
     Column column = this.schema.getColumn(index);
+    if (isNull(index)) {
+      return value;
+    }
     switch (column.getDatatype()) {
+      case BYTE:
+        value = String.valueOf(readByte(index));
+        break;
       case SHORT:
         value = String.valueOf(byteBuffer.getShort(column.getOffset()));
         break;
       case INT:
         value = String.valueOf(byteBuffer.getInt(column.getOffset()));
         break;
+      case LONG:
+        value = String.valueOf(readLong(index));
+        break;
+      case FLOAT:
+        value = String.valueOf(readFloat(index));
+        break;
+      case PACKED_INT:
+        value = String.valueOf(readInt(index));
+        break;
+      case STRING:
+        value = readString(index).toString();
+        break;
       default:
         break;
     }
     return value;
   }
+
+  /**
+   * Check whether column value at given index is equal to given source value
+   *
+   * @param index
+   * @param value
+   * @return true if values are equal
+   */
+  public boolean matches(int index, String value) {
+    Column column = this.schema.getColumn(index);
+    if (column.isNullable() && Column.isNullValue(value)) {
+      return isNull(index);
+    }
+    if (isNull(index)) {
+      return false;
+    }
+    if (column.getDatatype() == Column.Datatype.STRING) {
+      return ((PooledString) readString(index)).contentEquals(value);
+    }
+    return readRaw(index) == column.getDatatype().parse(value);
+  }
   
   /**
    * Returns string representation of data record.
@@ -164,8 +438,7 @@ public class DataRecord {
       result.append("Column Name=" + column.getName());
       result.append(", Column datatype=" + column.getDatatype());
       result.append(", Column offset=" + column.getOffset());
-      result.append(", Column value="
-          + ((column.getDatatype().equals(Datatype.INT)) ? this.readInt(i) : this.readShort(i)));
+      result.append(", Column value=" + this.read(i));
       result.append("\n");
     }
     return result.toString();
@@ -1,8 +1,10 @@
 package com.github.opentech.ipgeo;
 
 import java.io.RandomAccessFile;
+import java.util.Arrays;
 
 import com.github.opentech.ipgeo.Schema.Column;
+import com.github.opentech.ipgeo.Schema.Column.Datatype;
 
 /**
  * Data records processor designed to process record reads & writes
@@ -21,6 +23,16 @@ public class DataRecordProcessor {
    */
   private ThreadLocal<DataRecord> dataRecord;
 
+  /**
+   * Minimum & maximum values observed for packed columns.
+   */
+  private long[] minValues, maxValues;
+
+  /**
+   * Dictionary encoder for string columns.
+   */
+  private StringPoolBuilder stringPoolBuilder;
+
   /**
    * Constructor for the class
    * 
@@ -29,6 +41,9 @@ public class DataRecordProcessor {
   public DataRecordProcessor(Schema schema) {
     this.schema = schema;
     this.dataRecord = new ThreadLocal<DataRecord>();
+    if (schema.hasStringColumns()) {
+      this.stringPoolBuilder = new StringPoolBuilder();
+    }
   }
 
   /**
@@ -46,17 +61,11 @@ public class DataRecordProcessor {
         return valid;
       }
       for (int i = 0; i < columns.length; i++) {
-        switch (columns[i].getDatatype()) {
-          case SHORT:
-            Short.parseShort(values[i]);
-            break;
-          case INT:
-            Integer.parseInt(values[i]);
-            break;
-          default:
-            valid = false;
-            break;
+        if ((columns[i].isNullable() && Column.isNullValue(values[i]))
+            || columns[i].getDatatype() == Datatype.STRING) {
+          continue;
         }
+        columns[i].getDatatype().parse(values[i]);
       }
     } catch (NumberFormatException e) {
       valid = false;
@@ -73,6 +82,16 @@ public class DataRecordProcessor {
    *         false otherwise
    */
   public boolean writeRecord(RandomAccessFile outputWriter, String[] values) {
+    return encodeRecord(values).write(outputWriter);
+  }
+
+  /**
+   * Encode values as single line. Returned record is reused by subsequent calls from same thread.
+   * 
+   * @param values
+   * @return record  encoded record
+   */
+  public DataRecord encodeRecord(String[] values) {
     Column[] columns = this.schema.getColumns();
     if (this.dataRecord.get() == null) {
       this.dataRecord.set(new DataRecord(this.schema, getRowSize()));
@@ -80,10 +99,273 @@ public class DataRecordProcessor {
     DataRecord record = this.dataRecord.get();
     record.clear();
     for (int i = 0; i < columns.length; i++) {
-      record.writeColumn(values[i], columns[i]);
+      if (columns[i].getDatatype() == Datatype.STRING) {
+        record.writeString((columns[i].isNullable() && Column.isNullValue(values[i])) ? -1
+            : this.stringPoolBuilder.encode(values[i]), columns[i]);
+      } else {
+        record.writeColumn(values[i], columns[i]);
+      }
+    }
+    record.position(this.schema.getSize());
+    record.append(LookupConstants.NEW_LINE);
+    return record;
+  }
+
+  /**
+   * Validate & encode fields of current source line as single line. Numeric fields are parsed
+   * directly from source bytes. Returned record is reused by subsequent calls from same thread.
+   * 
+   * @param tokenizer source positioned at line
+   * @param firstField index of field holding first column value
+   * @return record  encoded record, null if validation fails
+   */
+  public DataRecord encodeRecord(SourceTokenizer tokenizer, int firstField) {
+    DataRecord record = parseRecord(tokenizer, firstField);
+    if (record != null) {
+      encodeStrings(record, extractStrings(tokenizer, firstField));
+    }
+    return record;
+  }
+
+  /**
+   * Validate & encode fields of current source line except string columns, which are left for
+   * {@link #encodeStrings(DataRecord, String[])}. Returned record is reused by subsequent calls
+   * from same thread.
+   * 
+   * @param tokenizer source positioned at line
+   * @param firstField index of field holding first column value
+   * @return record  encoded record, null if validation fails or value does not fit packed column
+   */
+  public DataRecord parseRecord(SourceTokenizer tokenizer, int firstField) {
+    Column[] columns = this.schema.getColumns();
+    if (tokenizer.getFieldCount() - firstField != columns.length) {
+      return null;
+    }
+    if (this.dataRecord.get() == null) {
+      this.dataRecord.set(new DataRecord(this.schema, getRowSize()));
+    }
+    DataRecord record = this.dataRecord.get();
+    record.clear();
+    try {
+      for (int i = 0; i < columns.length; i++) {
+        boolean isNull = columns[i].isNullable() && tokenizer.isNullValue(firstField + i);
+        record.writeRaw((isNull || columns[i].getDatatype() == Datatype.STRING) ? 0
+            : parseField(tokenizer, firstField + i, columns[i]), columns[i], isNull);
+      }
+    } catch (IllegalArgumentException e) {
+      return null;
+    }
+    record.position(this.schema.getSize());
+    record.append(LookupConstants.NEW_LINE);
+    return record;
+  }
+
+  /**
+   * Encode record of binary source except string columns, same as
+   * {@link #parseRecord(SourceTokenizer, int)}. Columns of binary source must match schema.
+   * 
+   * @param chunk chunk of binary source
+   * @param index position of record within chunk
+   * @return record  encoded record, null if value does not fit packed column
+   */
+  public DataRecord parseRecord(BinarySourceChunk chunk, int index) {
+    Column[] columns = this.schema.getColumns();
+    if (this.dataRecord.get() == null) {
+      this.dataRecord.set(new DataRecord(this.schema, getRowSize()));
+    }
+    DataRecord record = this.dataRecord.get();
+    record.clear();
+    try {
+      for (int i = 0; i < columns.length; i++) {
+        boolean isNull = chunk.isNull(index, i);
+        record.writeRaw((isNull || columns[i].getDatatype() == Datatype.STRING) ? 0
+            : chunk.getRaw(index, i), columns[i], isNull);
+      }
+    } catch (IllegalArgumentException e) {
+      return null;
     }
+    record.position(this.schema.getSize());
     record.append(LookupConstants.NEW_LINE);
-    return record.write(outputWriter);
+    return record;
+  }
+
+  /**
+   * Extract values of string columns from record of binary source.
+   * 
+   * @param chunk chunk of binary source
+   * @param index position of record within chunk
+   * @return values indexed by column, null for null values & other columns. null if schema has
+   *         no string columns
+   */
+  public String[] extractStrings(BinarySourceChunk chunk, int index) {
+    if (this.stringPoolBuilder == null) {
+      return null;
+    }
+    Column[] columns = this.schema.getColumns();
+    String[] strings = new String[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].getDatatype() == Datatype.STRING) {
+        strings[i] = chunk.getString(index, i);
+      }
+    }
+    return strings;
+  }
+
+  /**
+   * Extract values of string columns from current source line.
+   * 
+   * @param tokenizer source positioned at line
+   * @param firstField index of field holding first column value
+   * @return values indexed by column, null for null values & other columns. null if schema has
+   *         no string columns
+   */
+  public String[] extractStrings(SourceTokenizer tokenizer, int firstField) {
+    if (this.stringPoolBuilder == null) {
+      return null;
+    }
+    Column[] columns = this.schema.getColumns();
+    String[] strings = new String[columns.length];
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].getDatatype() == Datatype.STRING
+          && !(columns[i].isNullable() && tokenizer.isNullValue(firstField + i))) {
+        strings[i] = tokenizer.getString(firstField + i);
+      }
+    }
+    return strings;
+  }
+
+  /**
+   * Encode values of string columns into record. Strings are encoded once record is known to be
+   * valid, so that pool holds only used strings.
+   * 
+   * @param record record written by {@link #parseRecord(SourceTokenizer, int)}
+   * @param strings values as returned by {@link #extractStrings(SourceTokenizer, int)}
+   */
+  public void encodeStrings(DataRecord record, String[] strings) {
+    if (strings == null) {
+      return;
+    }
+    Column[] columns = this.schema.getColumns();
+    for (int i = 0; i < columns.length; i++) {
+      if (strings[i] != null) {
+        record.position(columns[i].getOffset());
+        record.writeString(this.stringPoolBuilder.encode(strings[i]), columns[i]);
+      }
+    }
+  }
+
+  /**
+   * Parse field of source line as raw column value.
+   * 
+   * @param tokenizer
+   * @param field
+   * @param column
+   * @return raw value
+   * @throws NumberFormatException if value is not valid for column
+   */
+  static long parseField(SourceTokenizer tokenizer, int field, Column column) {
+    if (column.getDatatype() == Datatype.FLOAT) {
+      return column.getDatatype().parse(tokenizer.getString(field));
+    }
+    return column.getDatatype().checkRange(tokenizer.parseLong(field));
+  }
+
+  /**
+   * Validate fields of current source line & observe values of packed columns.
+   * 
+   * @param tokenizer source positioned at line
+   * @param firstField index of field holding first column value
+   * @return true if validation succeeds, false otherwise
+   */
+  public boolean observe(SourceTokenizer tokenizer, int firstField) {
+    Column[] columns = this.schema.getColumns();
+    if (tokenizer.getFieldCount() - firstField != columns.length) {
+      return false;
+    }
+    try {
+      for (int i = 0; i < columns.length; i++) {
+        if ((columns[i].isNullable() && tokenizer.isNullValue(firstField + i))
+            || columns[i].getDatatype() == Datatype.STRING) {
+          continue;
+        }
+        parseField(tokenizer, firstField + i, columns[i]);
+      }
+    } catch (NumberFormatException e) {
+      return false;
+    }
+    if (this.minValues == null) {
+      this.minValues = new long[columns.length];
+      this.maxValues = new long[columns.length];
+      Arrays.fill(this.minValues, Long.MAX_VALUE);
+      Arrays.fill(this.maxValues, Long.MIN_VALUE);
+    }
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].getDatatype() == Datatype.PACKED_INT
+          && !tokenizer.isNullValue(firstField + i)) {
+        long value = tokenizer.parseLong(firstField + i);
+        this.minValues[i] = Math.min(this.minValues[i], value);
+        this.maxValues[i] = Math.max(this.maxValues[i], value);
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Observe values of packed columns. Values must be validated before.
+   * 
+   * @param values
+   */
+  public void observe(String[] values) {
+    Column[] columns = this.schema.getColumns();
+    if (this.minValues == null) {
+      this.minValues = new long[columns.length];
+      this.maxValues = new long[columns.length];
+      Arrays.fill(this.minValues, Long.MAX_VALUE);
+      Arrays.fill(this.maxValues, Long.MIN_VALUE);
+    }
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].getDatatype() == Datatype.PACKED_INT && !Column.isNullValue(values[i])) {
+        long value = columns[i].getDatatype().parse(values[i]);
+        this.minValues[i] = Math.min(this.minValues[i], value);
+        this.maxValues[i] = Math.max(this.maxValues[i], value);
+      }
+    }
+  }
+
+  /**
+   * Observe value range of packed column, as recorded in header of binary source.
+   * 
+   * @param column index of column
+   * @param minValue
+   * @param maxValue
+   */
+  public void observe(int column, long minValue, long maxValue) {
+    if (this.minValues == null) {
+      int totalColumns = this.schema.getTotalColumns();
+      this.minValues = new long[totalColumns];
+      this.maxValues = new long[totalColumns];
+      Arrays.fill(this.minValues, Long.MAX_VALUE);
+      Arrays.fill(this.maxValues, Long.MIN_VALUE);
+    }
+    this.minValues[column] = Math.min(this.minValues[column], minValue);
+    this.maxValues[column] = Math.max(this.maxValues[column], maxValue);
+  }
+
+  /**
+   * Apply observed value ranges to packed columns of schema.
+   * Columns without any observed value are packed to zero width.
+   */
+  public void pack() {
+    Column[] columns = this.schema.getColumns();
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].getDatatype() == Datatype.PACKED_INT) {
+        boolean observed = this.minValues != null && this.minValues[i] <= this.maxValues[i];
+        this.schema.setPacking(i, observed ? this.minValues[i] : 0,
+            observed ? this.maxValues[i] : 0);
+      }
+    }
+    this.minValues = null;
+    this.maxValues = null;
   }
 
   /**
@@ -102,6 +384,13 @@ public class DataRecordProcessor {
     return null;
   }
 
+  /**
+   * @return dictionary encoder for string columns, null if schema has no string columns.
+   */
+  public StringPoolBuilder getStringPoolBuilder() {
+    return this.stringPoolBuilder;
+  }
+
   /**
    * @return row size as per schema definition.
    */
@@ -0,0 +1,20 @@
+package com.github.opentech.ipgeo;
+
+import java.io.Closeable;
+import java.io.IOException;
+
+/**
+ * Writer of persisted data records, one implementation per {@link DataLayout}.
+ * 
+ * @author bhargava.kulkarni
+ */
+public interface DataWriter extends Closeable {
+
+  /**
+   * Write record to data file
+   * 
+   * @param record
+   * @throws IOException if record can not be written
+   */
+  void write(DataRecord record) throws IOException;
+}
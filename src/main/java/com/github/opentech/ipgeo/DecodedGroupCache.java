@@ -0,0 +1,165 @@
+package com.github.opentech.ipgeo;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of decoded record groups keyed by group number. Groups are evicted by clock
+ * (second chance) policy once cache is full, i.e. group read since clock hand passed it last is
+ * skipped once & group not read since is evicted.
+ *
+ * Cache hit reads concurrent map & sets reference flag of group unless it is set already, so that
+ * hits take no shared lock & do not write shared state in steady state. Insertion & eviction are
+ * serialised, they follow decoding of group which costs more than taking the lock.
+ *
+ * @author bhargava.kulkarni
+ */
+public class DecodedGroupCache {
+
+  /**
+   * Cached group & its reference flag.
+   */
+  private static final class Entry {
+
+    private final int groupNo;
+
+    private final RecordGroup group;
+
+    /**
+     * Set on read, cleared by clock hand passing the entry.
+     */
+    private volatile boolean referenced;
+
+    private Entry(int groupNo, RecordGroup group) {
+      this.groupNo = groupNo;
+      this.group = group;
+    }
+  }
+
+  /**
+   * Maximum number of groups held by cache.
+   */
+  private int capacity;
+
+  /**
+   * Decoded groups by group number.
+   */
+  private ConcurrentHashMap<Integer, Entry> groups;
+
+  /**
+   * Clock of cached groups, updated only under lock of the cache.
+   */
+  private Entry[] clock;
+
+  /**
+   * Number of occupied clock slots.
+   */
+  private int occupied;
+
+  /**
+   * Next slot examined for eviction.
+   */
+  private int hand;
+
+  /**
+   * Number of lookups served from cache.
+   */
+  private LongAdder hits = new LongAdder();
+
+  /**
+   * Number of lookups which needed decoding.
+   */
+  private LongAdder misses = new LongAdder();
+
+  /**
+   * Constructor for the class
+   *
+   * @param capacity maximum number of groups held by cache
+   */
+  public DecodedGroupCache(final int capacity) {
+    this.capacity = capacity;
+    this.groups = new ConcurrentHashMap<Integer, Entry>(capacity);
+    this.clock = new Entry[capacity];
+  }
+
+  /**
+   * Get decoded group, null if group is not present in cache.
+   *
+   * @param groupNo
+   * @return decoded group
+   */
+  public RecordGroup get(int groupNo) {
+    Entry entry = this.groups.get(groupNo);
+    if (entry == null) {
+      this.misses.increment();
+      return null;
+    }
+    if (!entry.referenced) {
+      entry.referenced = true;
+    }
+    this.hits.increment();
+    return entry.group;
+  }
+
+  /**
+   * Add decoded group to cache, group not read since clock hand passed it last is evicted if cache
+   * is full. Group present in cache already is kept.
+   *
+   * @param groupNo
+   * @param group
+   */
+  public void put(int groupNo, final RecordGroup group) {
+    if (this.capacity <= 0) {
+      return;
+    }
+    synchronized (this) {
+      if (this.groups.containsKey(groupNo)) {
+        return;
+      }
+      int slot;
+      if (this.occupied < this.capacity) {
+        slot = this.occupied++;
+      } else {
+        while (this.clock[this.hand].referenced) {
+          this.clock[this.hand].referenced = false;
+          this.hand = (this.hand + 1) % this.capacity;
+        }
+        slot = this.hand;
+        this.groups.remove(this.clock[slot].groupNo);
+        this.hand = (this.hand + 1) % this.capacity;
+      }
+      Entry entry = new Entry(groupNo, group);
+      this.clock[slot] = entry;
+      this.groups.put(groupNo, entry);
+    }
+  }
+
+  /**
+   * @return number of groups present in cache
+   */
+  public int size() {
+    return this.groups.size();
+  }
+
+  /**
+   * @return number of lookups served from cache
+   */
+  public long getHits() {
+    return this.hits.sum();
+  }
+
+  /**
+   * @return number of lookups which needed decoding
+   */
+  public long getMisses() {
+    return this.misses.sum();
+  }
+
+  /**
+   * @return ratio of lookups served from cache, 0 if there are no lookups
+   */
+  public double getHitRate() {
+    long hits = this.hits.sum(), total = hits + this.misses.sum();
+    return (total == 0) ? 0 : ((double) hits / total);
+  }
+}
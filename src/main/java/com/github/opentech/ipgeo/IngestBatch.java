@@ -0,0 +1,104 @@
+package com.github.opentech.ipgeo;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Valid records of batch of source lines, parsed & encoded except string columns. Records are
+ * held in source order.
+ * 
+ * @author bhargava.kulkarni
+ */
+public class IngestBatch {
+
+  /**
+   * Size of row expressed in bytes.
+   */
+  private int rowSize;
+
+  /**
+   * Encoded rows.
+   */
+  private ByteBuffer rows;
+
+  /**
+   * IP range per record, first address in upper 32 bits & last address in lower 32 bits.
+   */
+  private long[] ranges = new long[1024];
+
+  /**
+   * Number of records.
+   */
+  private int size;
+
+  /**
+   * Values of string columns per record, null if schema has no string columns.
+   */
+  private List<String[]> strings = new ArrayList<String[]>();
+
+  /**
+   * Constructor for the class
+   * 
+   * @param rowSize size of row expressed in bytes
+   */
+  public IngestBatch(int rowSize) {
+    this.rowSize = rowSize;
+    this.rows = ByteBuffer.allocate(rowSize * 1024);
+  }
+
+  /**
+   * Add record to batch
+   * 
+   * @param record encoded record
+   * @param range IP range as returned by {@link SourceTokenizer#parseIpRange(int)}
+   * @param values values of string columns
+   */
+  public void add(DataRecord record, long range, String[] values) {
+    if (this.rows.remaining() < this.rowSize) {
+      ByteBuffer rows = ByteBuffer.allocate(this.rows.capacity() << 1);
+      this.rows.flip();
+      rows.put(this.rows);
+      this.rows = rows;
+    }
+    if (this.size == this.ranges.length) {
+      this.ranges = Arrays.copyOf(this.ranges, this.size << 1);
+    }
+    this.rows.put(record.content().array(), 0, this.rowSize);
+    this.ranges[this.size++] = range;
+    this.strings.add(values);
+  }
+
+  /**
+   * @return number of records
+   */
+  public int size() {
+    return this.size;
+  }
+
+  /**
+   * Read encoded record at given position into record
+   * 
+   * @param index position of record within batch
+   * @param record
+   */
+  public void read(int index, DataRecord record) {
+    ByteBuffer row = this.rows.duplicate();
+    row.position(index * this.rowSize);
+    record.clear();
+    record.read(row, 0, this.rowSize);
+  }
+
+  public int getRangeStart(int index) {
+    return (int) (this.ranges[index] >>> 32);
+  }
+
+  public int getRangeEnd(int index) {
+    return (int) this.ranges[index];
+  }
+
+  public String[] getStrings(int index) {
+    return this.strings.get(index);
+  }
+}
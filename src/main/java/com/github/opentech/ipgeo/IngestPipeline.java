@@ -0,0 +1,296 @@
+package com.github.opentech.ipgeo;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Staged ingestion of source file. Reader thread splits source into batches of whole lines,
+ * parallel workers parse, validate & encode batches & batches are handed to single committer
+ * in source order through {@link #next()}, so that output does not depend on number of workers.
+ * Source made of multiple part files is read by concurrent readers, one per part, and handed
+ * to committer as if parts were concatenated in order. Parts in binary source format are
+ * handed out in chunks & encoded without parsing text.
+ *
+ * @author bhargava.kulkarni
+ */
+public class IngestPipeline implements Closeable {
+
+  /**
+   * Logger for the class
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(IngestPipeline.class);
+
+  /**
+   * Marker of end of source.
+   */
+  private static final Future<IngestBatch> END = CompletableFuture.completedFuture(null);
+
+  /**
+   * Data record processor used by workers.
+   */
+  private DataRecordProcessor dataRecordProcessor;
+
+  /**
+   * Statistics of pipeline stages.
+   */
+  private PersistStatistics persistStatistics;
+
+  /**
+   * Executor running readers.
+   */
+  private ExecutorService readers;
+
+  /**
+   * Executor running workers.
+   */
+  private ExecutorService workers;
+
+  /**
+   * Completion of reader per part.
+   */
+  private List<Future<?>> readerCompletions = new ArrayList<Future<?>>();
+
+  /**
+   * Batches in source order per part, bounded so that readers do not run ahead of committer.
+   */
+  private List<BlockingQueue<Future<IngestBatch>>> batches =
+      new ArrayList<BlockingQueue<Future<IngestBatch>>>();
+
+  /**
+   * Part currently handed to committer.
+   */
+  private int part;
+
+  /**
+   * Constructor for the class, starts reader & workers.
+   *
+   * @param source name of source file
+   * @param dataRecordProcessor
+   * @param threads number of workers
+   * @param batchSize size of batch expressed in bytes
+   * @param persistStatistics statistics of pipeline stages
+   */
+  public IngestPipeline(final String source, final DataRecordProcessor dataRecordProcessor,
+      int threads, int batchSize, final PersistStatistics persistStatistics) {
+    this(Collections.singletonList(source), dataRecordProcessor, threads, batchSize,
+        persistStatistics);
+  }
+
+  /**
+   * Constructor for the class, starts readers & workers.
+   *
+   * @param sources names of part files of source, in order
+   * @param dataRecordProcessor
+   * @param threads number of workers, also maximum number of concurrent readers
+   * @param batchSize size of batch expressed in bytes
+   * @param persistStatistics statistics of pipeline stages
+   */
+  public IngestPipeline(final List<String> sources, final DataRecordProcessor dataRecordProcessor,
+      int threads, int batchSize, final PersistStatistics persistStatistics) {
+    if (sources.isEmpty()) {
+      throw new IllegalArgumentException("No source file to ingest");
+    }
+    this.dataRecordProcessor = dataRecordProcessor;
+    this.persistStatistics = persistStatistics;
+    this.workers = Executors.newFixedThreadPool(threads, runnable -> {
+      Thread worker = new Thread(runnable, "ip-lookup-ingest-worker");
+      worker.setDaemon(true);
+      return worker;
+    });
+
+    /**
+     * Parts are started in order, so that part handed to committer always has running reader.
+     * Total number of batches held ahead of committer does not depend on number of parts.
+     */
+    int readerThreads = Math.min(sources.size(), threads);
+    int capacity = Math.max(2, (threads * 2) / readerThreads);
+    this.readers = Executors.newFixedThreadPool(readerThreads, runnable -> {
+      Thread reader = new Thread(runnable, "ip-lookup-ingest-reader");
+      reader.setDaemon(true);
+      return reader;
+    });
+    for (final String source : sources) {
+      final BlockingQueue<Future<IngestBatch>> partBatches =
+          new ArrayBlockingQueue<Future<IngestBatch>>(capacity);
+      this.batches.add(partBatches);
+      this.readerCompletions.add(this.readers.submit(() -> {
+        read(source, batchSize, partBatches);
+        return null;
+      }));
+    }
+  }
+
+  /**
+   * Split source into batches & submit them to workers. Binary source is split into its chunks
+   * regardless of batch size. End of part is marked unless reader is interrupted, i.e. pipeline
+   * is closed & no committer takes batches from full queue any more.
+   *
+   * @param source
+   * @param batchSize
+   * @param partBatches batches of part
+   * @throws Exception
+   */
+  private void read(final String source, int batchSize,
+      final BlockingQueue<Future<IngestBatch>> partBatches) throws Exception {
+    try {
+      if (BinarySourceReader.isBinarySource(source)) {
+        readBinary(source, partBatches);
+      } else {
+        readText(source, batchSize, partBatches);
+      }
+    } catch (InterruptedException e) {
+      throw e;
+    } catch (Exception | Error e) {
+      partBatches.put(END);
+      throw e;
+    }
+    partBatches.put(END);
+  }
+
+  /**
+   * Split text source into batches of whole lines & submit them to workers.
+   *
+   * @param source
+   * @param batchSize
+   * @param partBatches batches of part
+   * @throws Exception
+   */
+  private void readText(final String source, int batchSize,
+      final BlockingQueue<Future<IngestBatch>> partBatches) throws Exception {
+    try (SourceTokenizer tokenizer = new SourceTokenizer(source)) {
+      long start = System.nanoTime();
+      ByteBuffer content;
+      while ((content = tokenizer.nextBatch(batchSize)) != null) {
+        this.persistStatistics.addRead(content.limit(), System.nanoTime() - start);
+        final ByteBuffer batch = content;
+        partBatches.put(this.workers.submit(() -> parse(batch)));
+        start = System.nanoTime();
+      }
+    }
+  }
+
+  /**
+   * Split binary source into chunks & submit them to workers.
+   *
+   * @param source
+   * @param partBatches batches of part
+   * @throws Exception
+   */
+  private void readBinary(final String source,
+      final BlockingQueue<Future<IngestBatch>> partBatches) throws Exception {
+    try (BinarySourceReader reader = new BinarySourceReader(source)) {
+      long start = System.nanoTime();
+      BinarySourceChunk chunk;
+      while ((chunk = reader.nextChunk()) != null) {
+        this.persistStatistics.addRead(chunk.getBytes(), System.nanoTime() - start);
+        final BinarySourceChunk batch = chunk;
+        partBatches.put(this.workers.submit(() -> parse(batch)));
+        start = System.nanoTime();
+      }
+    }
+  }
+
+  /**
+   * Parse, validate & encode batch of lines.
+   *
+   * @param content batch of lines
+   * @return batch of valid records
+   * @throws Exception
+   */
+  private IngestBatch parse(final ByteBuffer content) throws Exception {
+    long start = System.nanoTime(), lines = 0;
+    IngestBatch batch = new IngestBatch(this.dataRecordProcessor.getRowSize());
+    SourceTokenizer tokenizer = new SourceTokenizer(content);
+    while (tokenizer.nextLine()) {
+      lines++;
+      if (tokenizer.getFieldCount() > 1) {
+
+        long range;
+        try {
+          range = tokenizer.parseIpRange(0);
+        } catch (IllegalArgumentException e) {
+          LOG.error("Unable to persist IP address {} details", e.getMessage());
+          continue;
+        }
+
+        DataRecord record = this.dataRecordProcessor.parseRecord(tokenizer, 1);
+        if (record == null) {
+          LOG.error("Invalid record found while persisting : {}", tokenizer.getLine());
+          continue;
+        }
+        batch.add(record, range, this.dataRecordProcessor.extractStrings(tokenizer, 1));
+      } else {
+        LOG.error("Invalid record found while persisting : {}", tokenizer.getLine());
+      }
+    }
+    this.persistStatistics.addParse(lines, System.nanoTime() - start);
+    return batch;
+  }
+
+  /**
+   * Encode chunk of binary source, values are validated while converting to binary source.
+   *
+   * @param chunk
+   * @return batch of valid records
+   */
+  private IngestBatch parse(final BinarySourceChunk chunk) {
+    long start = System.nanoTime();
+    IngestBatch batch = new IngestBatch(this.dataRecordProcessor.getRowSize());
+    for (int i = 0; i < chunk.size(); i++) {
+      DataRecord record = this.dataRecordProcessor.parseRecord(chunk, i);
+      if (record == null) {
+        LOG.error("Invalid record found while persisting : record {} of binary chunk", i);
+        continue;
+      }
+      long range = ((long) chunk.getRangeStart(i) << 32) | (chunk.getRangeEnd(i) & 0xFFFFFFFFL);
+      batch.add(record, range, this.dataRecordProcessor.extractStrings(chunk, i));
+    }
+    this.persistStatistics.addParse(chunk.size(), System.nanoTime() - start);
+    return batch;
+  }
+
+  /**
+   * Get next batch in source order, blocks until batch is parsed.
+   *
+   * @return batch, null at end of source
+   * @throws Exception if reading or parsing of source fails
+   */
+  public IngestBatch next() throws Exception {
+    try {
+      while (this.part < this.batches.size()) {
+        IngestBatch batch = this.batches.get(this.part).take().get();
+        if (batch != null) {
+          return batch;
+        }
+        this.readerCompletions.get(this.part).get();
+        this.part++;
+      }
+      return null;
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to ingest source Reason: " + e.getCause(),
+          e.getCause());
+    }
+  }
+
+  /**
+   * Stop readers & workers.
+   */
+  @Override
+  public void close() {
+    this.readers.shutdownNow();
+    this.workers.shutdownNow();
+  }
+}
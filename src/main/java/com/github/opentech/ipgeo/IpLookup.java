@@ -1,32 +1,55 @@
 package com.github.opentech.ipgeo;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.BufferedOutputStream;
 import java.io.BufferedReader;
 import java.io.BufferedWriter;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
 import java.io.RandomAccessFile;
 
 import java.net.InetAddress;
 import java.net.UnknownHostException;
 
 import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
 
 import java.time.ZoneOffset;
 import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 
 import org.apache.commons.io.FileUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import com.github.maltalex.ineter.range.IPv4Range;
-import com.github.maltalex.ineter.range.IPv4Subnet;
+import com.github.opentech.ipgeo.Schema.Column;
+import com.github.opentech.ipgeo.Schema.Column.Datatype;
 
 /**
  * IP lookup implementation.
@@ -45,6 +68,34 @@ public class IpLookup {
    */
   private static int IPV4_SIZE = 32;
 
+  /**
+   * Value of overlay index marking range removed by delta update.
+   */
+  private static final int REMOVED_VALUE = BitmapTrie.NO_VALUE - 1;
+
+  /**
+   * Maximum number of data records. Index values are record numbers read as unsigned 32 bit
+   * numbers, except {@link BitmapTrie#NO_VALUE} & {@link #REMOVED_VALUE}. IPv4 address space
+   * holds at most 2^32 ranges, hence 32 bit index values address every distinct record.
+   */
+  private static final long MAX_RECORDS = Integer.toUnsignedLong(REMOVED_VALUE);
+
+  /**
+   * Operations of delta update.
+   */
+  private static final String DELTA_ADD = "add", DELTA_UPDATE = "update",
+      DELTA_REMOVE = "remove";
+
+  /**
+   * Size of range recorded in delta file, [first address][last address][record index].
+   */
+  private static final int DELTA_RANGE_SIZE = 3 * Integer.BYTES;
+
+  /**
+   * Suffix of file written before it atomically replaces previous file.
+   */
+  private static final String TEMP_SUFFIX = ".tmp";
+
   /**
    * IP-GEO lookup DB base path when persisted.
    */
@@ -58,13 +109,29 @@ public class IpLookup {
   /**
    * Internal structure which holds IP Address indexing data.
    */
-  public BitmapTrie lookupTree = new BitmapTrie();
+  public ShardedTrie lookupTree;
+
+  /**
+   * Index of ranges changed by delta updates, null if no delta is applied. Value
+   * {@link #REMOVED_VALUE} marks removed range.
+   */
+  private BitmapTrie overlayTree;
 
   /**
    * Internal structure which holds data blocks.
    */
   private DataBlockLookup dataBlockLookup;
 
+  /**
+   * Internal structure which holds values of string columns.
+   */
+  private StringPool stringPool;
+
+  /**
+   * Verifier of block checksums of persisted lookup, null if checksums are not verified.
+   */
+  private ChecksumVerifier checksumVerifier;
+
   /**
    * Buffer used for converting IP string to long.
    * Kept as an optimization to avoid frequent memory allocations in fast path.
@@ -81,6 +148,62 @@ public class IpLookup {
    */
   private int linesPerDataBlock = 10000000;
 
+  /**
+   * Flag to indicate records with identical content are persisted only once.
+   */
+  private boolean deduplicate = true;
+
+  /**
+   * Physical layout of persisted data records.
+   */
+  private DataLayout dataLayout = DataLayout.ROW;
+
+  /**
+   * Parameter to indicate number of records encoded together with compressed layout.
+   */
+  private int recordsPerGroup = 64;
+
+  /**
+   * Number of workers parsing source in parallel while persisting.
+   */
+  private int persistThreads = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Expected size of data file with row layout expressed in bytes, preallocated up front while
+   * persisting. Data file is not preallocated if 0.
+   */
+  private long preallocatedDataSize;
+
+  /**
+   * Number of leading bits of IP address used as key of index shard while persisting.
+   */
+  private int indexShardBits = 8;
+
+  /**
+   * Size of batch of source lines handed to a worker, expressed in bytes.
+   */
+  private int ingestBatchSize = 4 << 20;
+
+  /**
+   * Statistics of last persist.
+   */
+  private PersistStatistics persistStatistics;
+
+  /**
+   * Statistics of recovery, null unless lookup is recovered.
+   */
+  private RecoveryStatistics recoveryStatistics;
+
+  /**
+   * Warm-up of recovered lookup, null unless lookup is warmed up.
+   */
+  private LookupWarmer lookupWarmer;
+
+  /**
+   * Memory backing recovered lookup, null unless lookup is recovered.
+   */
+  private MemoryStatus memoryStatus;
+
   /**
    * Initializes IPv4 tree with default capacity of 1024 nodes. It should
    * be sufficient for small data.
@@ -107,9 +230,23 @@ public class IpLookup {
    * @param schema
    */
   public IpLookup(String basepath, Schema schema) {
+    this(basepath, schema, new IpLookupInitArgs());
+  }
+
+  /**
+   * Initializes IPv4 tree with a given persisted path.
+   * 
+   * @param basepath
+   * @param schema
+   * @param ipLookupInitArgs
+   */
+  public IpLookup(String basepath, Schema schema, IpLookupInitArgs ipLookupInitArgs) {
     try {
-      recover(basepath, schema);
+      recover(basepath, schema, ipLookupInitArgs);
       this.basepath = basepath;
+      if (ipLookupInitArgs.isWarmUp()) {
+        warmUp(ipLookupInitArgs);
+      }
       this.initialised = true;
     } catch (Exception e) {
       initialised = false;
@@ -123,10 +260,31 @@ public class IpLookup {
    * @param allocatedSize
    */
   private void init(int allocatedSize) {
-    this.lookupTree.init(allocatedSize);
+    this.lookupTree = new ShardedTrie(0, allocatedSize);
     this.createTime = ZonedDateTime.now();
   }
 
+  /**
+   * Replay recorded or synthetic sample of IP addresses through lookup, so that lookup reports
+   * initialized once match path is compiled & pages read by sample are faulted in.
+   * 
+   * @param ipLookupInitArgs
+   * @throws IOException
+   */
+  private void warmUp(IpLookupInitArgs ipLookupInitArgs) throws IOException {
+    String[] sample = LookupWarmer.readSample(ipLookupInitArgs.getWarmUpSample(),
+        ipLookupInitArgs.getWarmUpSampleSize());
+    if (sample.length == 0) {
+      sample = LookupWarmer.syntheticSample(ipLookupInitArgs.getWarmUpSampleSize(),
+          this.lookupTree, this.createTime.toEpochSecond());
+    }
+    this.lookupWarmer = new LookupWarmer(sample, ipLookupInitArgs.getWarmUpTolerance(),
+        ipLookupInitArgs.getWarmUpTimeout());
+    this.lookupWarmer.run(this);
+    // Replayed sample is not real traffic & must not rank data blocks
+    this.dataBlockLookup.resetAccessProfile();
+  }
+
   /**
    * Un-initialize IP lookup internal structures.
    * 
@@ -137,6 +295,9 @@ public class IpLookup {
   public void uninit(boolean clean) {
     try {
       this.dataBlockLookup.uninit();
+      if (this.stringPool != null) {
+        this.stringPool.uninit();
+      }
       if (clean && this.basepath != null) {
         FileUtils.cleanDirectory(new File(this.basepath));
       }
@@ -179,7 +340,7 @@ public class IpLookup {
   public DataRecord match(String ipAddress) {
     DataRecord dataRecord = null;
     try {
-      int value = this.lookupTree.match(inet_aton(ipAddress));
+      int value = matchValue(inet_aton(ipAddress));
       if (value != BitmapTrie.NO_VALUE) {
         dataRecord = this.dataBlockLookup.selectRecord(value);
       }
@@ -189,6 +350,50 @@ public class IpLookup {
     return dataRecord;
   }
 
+  /**
+   * Selects record index for a given IPv4 address. Index can be used for reading single column
+   * values through {@link #getDataBlockLookup()}.
+   * 
+   * @param ipAddress IPv4 address to look up, in string form (i.e. "e.f.g.h")
+   * @return record index, {@link BitmapTrie#NO_VALUE} if there is no match
+   * @throws UnknownHostException
+   */
+  public int matchIndex(String ipAddress) throws UnknownHostException {
+    return matchValue(inet_aton(ipAddress));
+  }
+
+  /**
+   * Selects record index for a given IPv4 address, ranges changed by delta updates are matched
+   * in overlay index first.
+   * 
+   * @param ipAddress IPv4 address
+   * @return record index, {@link BitmapTrie#NO_VALUE} if there is no match
+   */
+  private int matchValue(long ipAddress) {
+    if (this.overlayTree != null) {
+      int value = this.overlayTree.match(ipAddress);
+      if (value != BitmapTrie.NO_VALUE) {
+        return (value == REMOVED_VALUE) ? BitmapTrie.NO_VALUE : value;
+      }
+    }
+    return this.lookupTree.match(ipAddress);
+  }
+
+  /**
+   * @return verifier of block checksums, null if lookup is persisted without checksums or
+   *         checksums are not verified
+   */
+  public ChecksumVerifier getChecksumVerifier() {
+    return this.checksumVerifier;
+  }
+
+  /**
+   * @return Internal structure which holds data blocks.
+   */
+  public DataBlockLookup getDataBlockLookup() {
+    return this.dataBlockLookup;
+  }
+
   /**
    * Check IP lookup is initialized properly or not.
    * 
@@ -203,45 +408,342 @@ public class IpLookup {
    * 
    * @param basepath
    * @param schema
+   * @param ipLookupInitArgs
    * @throws Exception
    */
-  private void recover(String basepath, Schema schema) throws Exception {
+  private void recover(String basepath, Schema schema, IpLookupInitArgs ipLookupInitArgs)
+      throws Exception {
 
-    Map<String, String> metadata = new HashMap<String, String>();
-    BufferedReader metadataReader = new BufferedReader(
-        new FileReader(basepath + File.separator + LookupConstants.METADATA_FILE_NAME));
-    String line = null;
-    while ((line = metadataReader.readLine()) != null) {
-      String[] keyValue = line.split(LookupConstants.COLON, 2);
-      metadata.put(keyValue[0].trim(), keyValue[1].trim());
-    }
-    metadataReader.close();
+    long recoveryStart = System.nanoTime();
+    RecoveryStatistics statistics =
+        new RecoveryStatistics(Math.max(ipLookupInitArgs.getRecoveryThreads(), 1));
+
+    /**
+     * Lookup packed into container is recovered from sections of container, header of container
+     * holds fingerprint & create time.
+     */
+    LookupContainer container =
+        LookupContainer.isContainer(basepath) ? new LookupContainer(basepath) : null;
+    Map<String, String> metadata = readMetadata(basepath, container);
+    checkFingerprint(basepath, schema, (container != null) ? container.getFingerprint()
+        : metadata.get(LookupConstants.SCHEMA_FINGERPRINT));
     
-    this.createTime = ZonedDateTime.parse(metadata.get(LookupConstants.CREATED_AT));
-    int allocatedSize = Integer.parseInt(metadata.get(LookupConstants.ALLOCATED_SIZE));
-    this.lookupTree.recover(basepath + File.separator + LookupConstants.INDEX_FILE_NAME,
-        allocatedSize);
-    if (this.lookupTree.getSize() != allocatedSize) {
-      throw new IllegalStateException("Unable to initialise IP Address Index");
+    this.createTime = (container != null) ? container.getCreateTime()
+        : ZonedDateTime.parse(metadata.get(LookupConstants.CREATED_AT));
+    statistics.setMetadataTime(System.nanoTime() - recoveryStart);
+
+    /**
+     * Eager verification runs before any file is mapped, so that corrupt or partially copied
+     * lookup fails to initialize. Lazy verification starts once lookup is initialized.
+     */
+    Checksums checksums =
+        (ipLookupInitArgs.getChecksumVerification() != ChecksumVerification.NONE)
+            ? Checksums.recover(basepath, container,
+                Integer.parseInt(metadata.getOrDefault(LookupConstants.DELTA_GENERATION, "0")))
+            : null;
+    if (checksums != null) {
+      this.checksumVerifier = new ChecksumVerifier(basepath, container, checksums);
+      if (ipLookupInitArgs.getChecksumVerification() == ChecksumVerification.EAGER) {
+        this.checksumVerifier.verify(ipLookupInitArgs.getChecksumThreads());
+        statistics.setChecksumTime(this.checksumVerifier.getVerifyTime());
+      }
+    }
+
+    /**
+     * Index & data are recovered concurrently on bounded pool. Slices of preloaded index shards
+     * are queued first & read while this thread recovers strings & maps data blocks, which in
+     * turn are mapped & paged in on the same pool. Only this thread waits for pool tasks, so that
+     * pool tasks never wait for each other.
+     */
+    ExecutorService recoveryPool = Executors.newFixedThreadPool(statistics.getThreads());
+    try {
+      recoverConcurrently(basepath, container, metadata, schema, ipLookupInitArgs, recoveryPool,
+          recoveryStart, statistics);
+    } finally {
+      recoveryPool.shutdownNow();
+    }
+    statistics.setTotalTime(System.nanoTime() - recoveryStart);
+    this.recoveryStatistics = statistics;
+    LOG.info("Recovered IP lookup {} {}", basepath, statistics);
+    this.memoryStatus = new MemoryStatus(ipLookupInitArgs.getMemoryMode(),
+        this.dataBlockLookup.getSize(), this.dataBlockLookup.getAnonymousSize());
+    this.memoryStatus.log(basepath);
+
+    if (checksums != null
+        && ipLookupInitArgs.getChecksumVerification() == ChecksumVerification.LAZY) {
+      this.checksumVerifier.verifyInBackground(ipLookupInitArgs.getChecksumThreads());
+    }
+    this.dataBlockLookup.loadInBackground();
+  }
+
+  /**
+   * Recover index, strings & data of persisted IP lookup on given pool.
+   * 
+   * @param basepath
+   * @param container container of lookup, null if lookup is persisted as directory
+   * @param metadata
+   * @param schema
+   * @param ipLookupInitArgs
+   * @param recoveryPool
+   * @param recoveryStart start of recovery expressed in nanoseconds
+   * @param statistics
+   * @throws Exception
+   */
+  private void recoverConcurrently(String basepath, LookupContainer container,
+      Map<String, String> metadata, Schema schema, IpLookupInitArgs ipLookupInitArgs,
+      ExecutorService recoveryPool, long recoveryStart, RecoveryStatistics statistics)
+      throws Exception {
+
+    this.lookupTree = recoverIndex(basepath, container, metadata);
+
+    /**
+     * Index shards are loaded on first access, except shards requested up front.
+     */
+    int[] preloadedShards = ipLookupInitArgs.isPreloadIndex()
+        ? IntStream.range(0, this.lookupTree.getShardCount()).toArray()
+        : ipLookupInitArgs.getPreloadedIndexShards();
+    long indexStart = System.nanoTime();
+    List<Future<?>> indexSlices = new ArrayList<Future<?>>();
+    for (Callable<Long> slice : this.lookupTree.getPreloadTasks(preloadedShards)) {
+      indexSlices.add(recoveryPool.submit(() -> {
+        long bytes = slice.call();
+        statistics.addIndexSlice(bytes, System.nanoTime() - indexStart);
+        return null;
+      }));
+    }
+
+    /**
+     * Overlay index written by delta updates takes precedence over index.
+     */
+    if (metadata.containsKey(LookupConstants.OVERLAY_SIZE)) {
+      LookupContainer.Section overlay = LookupContainer.locate(container, getOverlayFilename(
+          basepath, Integer.parseInt(metadata.get(LookupConstants.DELTA_GENERATION))));
+      this.overlayTree = new BitmapTrie();
+      this.overlayTree.recover(overlay.getFilename(), overlay.getPosition(),
+          Integer.parseInt(metadata.get(LookupConstants.OVERLAY_SIZE)));
+    }
+
+    setPacking(schema, metadata);
+
+    /**
+     * Strings are only appended by delta updates, pool may hold strings of update which is
+     * not committed to metadata yet.
+     */
+    long stringsStart = System.nanoTime();
+    if (schema.hasStringColumns()) {
+      LookupContainer.Section strings = LookupContainer.locate(container,
+          basepath + File.separator + LookupConstants.STRINGS_FILE_NAME);
+      this.stringPool =
+          new StringPool(strings.getFilename(), strings.getPosition(), strings.getLength());
+      if (this.stringPool.getCount() < Integer
+          .parseInt(metadata.getOrDefault(LookupConstants.TOTAL_STRINGS, "-1"))) {
+        throw new IllegalStateException("Unable to initialise String Pool");
+      }
     }
+    statistics.setStringsTime(System.nanoTime() - stringsStart);
 
     DataBlockLookupInitArgs dataBlockLookupInitArgs = new DataBlockLookupInitArgs();
     dataBlockLookupInitArgs.setFilename(basepath + File.separator + LookupConstants.DATA_FILE_NAME);
     dataBlockLookupInitArgs.setSchema(schema);
+    dataBlockLookupInitArgs.setStringPool(this.stringPool);
+    dataBlockLookupInitArgs.setContainer(container);
+    dataBlockLookupInitArgs.setDataLayout(DataLayout
+        .valueOf(metadata.getOrDefault(LookupConstants.DATA_LAYOUT, DataLayout.ROW.name())));
+    if (dataBlockLookupInitArgs.getDataLayout() == DataLayout.COMPRESSED) {
+      dataBlockLookupInitArgs.setRecordsPerGroup(
+          Integer.parseInt(metadata.get(LookupConstants.RECORDS_PER_GROUP)));
+      dataBlockLookupInitArgs
+          .setDecodedGroupCacheSize(ipLookupInitArgs.getDecodedGroupCacheSize());
+    }
     int rowSize = Integer.parseInt(metadata.get(LookupConstants.ROW_SIZE));
-    int totalDatablockLines = Integer.parseInt(metadata.get(LookupConstants.TOTAL_DATABLOCK_LINES));
+    long totalDatablockLines = Long.parseLong(metadata.get(LookupConstants.TOTAL_DATABLOCK_LINES));
     
-    dataBlockLookupInitArgs.setDataBlockOffsetBits(
-        Integer.parseInt(metadata.get(LookupConstants.DATABLOCK_OFFSET_BITS)));
+    dataBlockLookupInitArgs.setDataBlockOffsetBits(getDataBlockOffsetBits(metadata));
     dataBlockLookupInitArgs.setDataBlockRowSize(rowSize);
     dataBlockLookupInitArgs.setTotalLines(totalDatablockLines);
     dataBlockLookupInitArgs
         .setLinesPerDataBlock(Integer.parseInt(metadata.get(LookupConstants.LINES_PER_DATABLOCK)));
+    dataBlockLookupInitArgs.setLoadPolicy(ipLookupInitArgs.getLoadPolicy());
+    dataBlockLookupInitArgs.setLoadThreads(ipLookupInitArgs.getLoadThreads());
+    dataBlockLookupInitArgs.setAccessProfile(ipLookupInitArgs.getAccessProfile());
+    dataBlockLookupInitArgs.setAccessProfiling(ipLookupInitArgs.isAccessProfiling());
+    dataBlockLookupInitArgs.setExecutor(recoveryPool);
+    dataBlockLookupInitArgs.setMemoryMode(ipLookupInitArgs.getMemoryMode());
+    long dataStart = System.nanoTime();
     this.dataBlockLookup = new DataBlockLookup(dataBlockLookupInitArgs);
-    long totalSize = Long.valueOf(totalDatablockLines) * rowSize;
-    if (this.dataBlockLookup.getSize() != totalSize) {
+    statistics.setDataTime(System.nanoTime() - dataStart);
+    long totalSize = totalDatablockLines * rowSize;
+    if ((dataBlockLookupInitArgs.getDataLayout() == DataLayout.ROW
+        && this.dataBlockLookup.getSize() != totalSize)
+        || rowSize != new DataRecordProcessor(schema).getRowSize()) {
       throw new IllegalStateException("Unable to initialise DataBlock Lookup");
     }
+
+    try {
+      for (Future<?> indexSlice : indexSlices) {
+        indexSlice.get();
+      }
+    } catch (ExecutionException e) {
+      throw new IllegalStateException(
+          "Failed to load index shard Reason: " + e.getCause().getMessage(), e.getCause());
+    }
+  }
+
+  /**
+   * Read metadata of persisted IP lookup, in order of keys.
+   * 
+   * @param basepath
+   * @return metadata
+   * @throws IOException
+   */
+  private static Map<String, String> readMetadata(String basepath) throws IOException {
+    return readMetadata(basepath, null);
+  }
+
+  /**
+   * Read metadata of persisted IP lookup, in order of keys.
+   * 
+   * @param basepath
+   * @param container container of lookup, null if lookup is persisted as directory
+   * @return metadata
+   * @throws IOException
+   */
+  private static Map<String, String> readMetadata(String basepath, LookupContainer container)
+      throws IOException {
+    Map<String, String> metadata = new LinkedHashMap<String, String>();
+    try (BufferedReader metadataReader = (container != null)
+        ? new BufferedReader(new InputStreamReader(new ByteArrayInputStream(
+            container.readSection(LookupConstants.METADATA_FILE_NAME)), StandardCharsets.UTF_8))
+        : new BufferedReader(
+            new FileReader(basepath + File.separator + LookupConstants.METADATA_FILE_NAME))) {
+      String line = null;
+      while ((line = metadataReader.readLine()) != null) {
+        String[] keyValue = line.split(LookupConstants.COLON, 2);
+        metadata.put(keyValue[0].trim(), keyValue[1].trim());
+      }
+    }
+    return metadata;
+  }
+
+  /**
+   * Write metadata of persisted IP lookup. Metadata is written to temporary file which then
+   * atomically replaces previous metadata.
+   * 
+   * @param basepath
+   * @param metadata
+   * @throws IOException
+   */
+  private static void writeMetadata(String basepath, Map<String, String> metadata)
+      throws IOException {
+    String metadataFilename = basepath + File.separator + LookupConstants.METADATA_FILE_NAME;
+    try (BufferedWriter metadataOutputWriter =
+        new BufferedWriter(new FileWriter(metadataFilename + TEMP_SUFFIX))) {
+      int remaining = metadata.size();
+      for (Map.Entry<String, String> entry : metadata.entrySet()) {
+        persistMetadata(metadataOutputWriter, entry.getKey(), entry.getValue(), --remaining > 0);
+      }
+    }
+    Files.move(Paths.get(metadataFilename + TEMP_SUFFIX), Paths.get(metadataFilename),
+        StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  /**
+   * Number of bits used for representing line no within data block in record indices of lookups
+   * persisted with indices encoded as block no & line no, used with row layout only.
+   * 
+   * @param metadata
+   * @return offset bits, 0 if record indices are record numbers
+   */
+  private static int getDataBlockOffsetBits(Map<String, String> metadata) {
+    DataLayout layout = DataLayout
+        .valueOf(metadata.getOrDefault(LookupConstants.DATA_LAYOUT, DataLayout.ROW.name()));
+    return (layout != DataLayout.ROW) ? 0
+        : Integer.parseInt(metadata.getOrDefault(LookupConstants.DATABLOCK_OFFSET_BITS, "0"));
+  }
+
+  /**
+   * Check schema against fingerprint of schema persisted lookup is built with. Lookups
+   * persisted without fingerprint are not checked.
+   * 
+   * @param basepath
+   * @param schema
+   * @param fingerprint persisted fingerprint, null if lookup has none
+   */
+  private static void checkFingerprint(String basepath, Schema schema, String fingerprint) {
+    if (fingerprint != null && !fingerprint.equals(schema.getFingerprint())) {
+      throw new IllegalStateException("Schema does not match IP lookup " + basepath
+          + " Reason: fingerprint " + schema.getFingerprint() + ", expected " + fingerprint);
+    }
+  }
+
+  /**
+   * Open persisted index, shards are recovered on first access.
+   * 
+   * @param basepath
+   * @param container container of lookup, null if lookup is persisted as directory
+   * @param metadata
+   * @return index
+   */
+  private static ShardedTrie recoverIndex(String basepath, LookupContainer container,
+      Map<String, String> metadata) {
+    long allocatedSize = Long.parseLong(metadata.get(LookupConstants.ALLOCATED_SIZE));
+    int indexShardBits =
+        Integer.parseInt(metadata.getOrDefault(LookupConstants.INDEX_SHARD_BITS, "0"));
+    String indexShardSizes =
+        metadata.getOrDefault(LookupConstants.INDEX_SHARD_SIZES, Long.toString(allocatedSize));
+    ShardedTrie index = new ShardedTrie(basepath, container, indexShardBits,
+        Arrays.stream(indexShardSizes.split(",")).mapToInt(Integer::parseInt).toArray());
+    if (index.getSize() != allocatedSize) {
+      throw new IllegalStateException("Unable to initialise IP Address Index");
+    }
+    return index;
+  }
+
+  /**
+   * Apply persisted value ranges to packed columns of schema.
+   * 
+   * @param schema
+   * @param metadata
+   */
+  private static void setPacking(Schema schema, Map<String, String> metadata) {
+    if (schema.hasPackedColumns()) {
+      String columnPacking = metadata.get(LookupConstants.COLUMN_PACKING);
+      if (columnPacking == null) {
+        throw new IllegalStateException("Packed columns found without packing details");
+      }
+      for (String packing : columnPacking.split(",")) {
+        String[] indexRange = packing.split("[=/]");
+        schema.setPacking(Integer.parseInt(indexRange[0]), Long.parseLong(indexRange[1]),
+            Long.parseLong(indexRange[2]));
+      }
+    }
+  }
+
+  /**
+   * Check persisted IP lookup is directory, lookup packed into container is read only.
+   * 
+   * @param basepath
+   * @param operation operation, as used in error message
+   */
+  private static void checkDirectory(String basepath, String operation) {
+    if (LookupContainer.isContainer(basepath)) {
+      throw new IllegalStateException("Unable to " + operation + " " + basepath
+          + " Reason: lookup is packed into container, lookup directory is needed");
+    }
+  }
+
+  /**
+   * Pack persisted IP lookup into single container file, which is recovered same as lookup
+   * directory by {@link #IpLookup(String, Schema, IpLookupInitArgs)}. Container is replaced
+   * atomically, so that lookup is distributed & swapped by single file operation.
+   * 
+   * @param basepath persisted IP lookup
+   * @param target name of container file
+   * @throws IOException
+   */
+  public static void pack(final String basepath, final String target) throws IOException {
+    checkDirectory(basepath, "pack");
+    LookupContainer.pack(basepath, target, readMetadata(basepath));
   }
 
   /**
@@ -249,168 +751,738 @@ public class IpLookup {
    * scenario where there is less frequent update to existing IP lookup structures but more memory
    * efficient & time efficient lookup operations are needed, especially when the size of lookup
    * data is really really huge to keep it entirely in memory.
+   * Source is tab separated text, or binary source written by {@link BinarySourceWriter}.
    * 
-   * @param source
+   * @param source name of source file, or glob pattern matching part files of source
    * @param target
    * @param schema
    * @throws Exception
    */
   public void persist(final String source, final String target, final Schema schema)
       throws Exception {
+    persist(CommonUtilities.listSourceFiles(source), target, schema);
+  }
+
+  /**
+   * Persist IP lookup internal structures to disk from source made of multiple part files. Parts
+   * are read & parsed concurrently, result is same as persisting parts concatenated in order.
+   * 
+   * @param sources names of part files of source, in order
+   * @param target
+   * @param schema
+   * @throws Exception
+   */
+  public void persist(final List<String> sources, final String target, final Schema schema)
+      throws Exception {
 
-    int linesCount = CommonUtilities.countLinesInLocalFile(source);
+    long persistStart = System.nanoTime();
     FileUtils.deleteQuietly(new File(target));
     Files.createDirectories(Paths.get(target));
 
     /**
-     * Determine number of bits needed to represent Data Block & Offset Block
-     * These values are dependent on the number of lines present in source file
-     * Default value is 1M, which means for a source file with lines 4M,
-     * total 4 Data Blocks are created & 2 bits are needed to represent 4 data blocks
-     * Remaining (32-2)=30 bits are used to represent offset within Data block.
+     * Record index is record number within data for all layouts, data is split into data blocks
+     * while recovering only.
      */
-    BufferedReader bufferedReader = new BufferedReader(new FileReader(source));
-    RandomAccessFile dataOutputWriter =
-        new RandomAccessFile(target + File.separator + LookupConstants.DATA_FILE_NAME, "rw");
-    int maxNoOfBlocks = (linesCount / this.getLinesPerDataBlock())
-        + ((linesCount % this.getLinesPerDataBlock()) == 0 ? 0 : 1);
-    int offsetBits = Integer.numberOfLeadingZeros(Math.max(maxNoOfBlocks - 1, 1));
-
-    String line = null;
-    int blockNo = 0, lineNo = 0;
-    int datalinesCount = 0;
+    long datalinesCount = 0, sourceRecordsCount = 0;
+    Map<ByteBuffer, Integer> distinctRecords = new HashMap<ByteBuffer, Integer>();
     DataRecordProcessor dataRecordProcessor = new DataRecordProcessor(schema);
+    derivePacking(sources, schema, dataRecordProcessor);
+    PersistStatistics statistics = new PersistStatistics(this.persistThreads);
+    DataWriter dataWriter = createDataWriter(target + File.separator
+        + LookupConstants.DATA_FILE_NAME, schema, this.dataLayout, this.recordsPerGroup,
+        statistics);
 
     /**
      * Process each record in source file, create indices for each IP range.
      * First column in source is assumed to have IP range / sub-net details.
      * Records for which validation fails or error occurs are skipped.
+     * Source is parsed by parallel workers & committed here in source order.
+     * Failure to write data aborts persist.
+     */
+    DataRecord record = new DataRecord(schema, dataRecordProcessor.getRowSize());
+    IngestPipeline ingestPipeline = new IngestPipeline(sources, dataRecordProcessor,
+        this.persistThreads, this.ingestBatchSize, statistics);
+    ShardedTrieBuilder lookupTreeBuilder =
+        new ShardedTrieBuilder(new File(target), this.indexShardBits);
+    try {
+      IngestBatch batch;
+      while ((batch = ingestPipeline.next()) != null) {
+        long commitStart = System.nanoTime();
+        for (int i = 0; i < batch.size(); i++) {
+          batch.read(i, record);
+          dataRecordProcessor.encodeStrings(record, batch.getStrings(i));
+
+          /**
+           * Writing values to the persistent location & updating record index
+           * in IP prefix Tree MUST be atomic.
+           * Records whose encoded content is already persisted share existing record index.
+           */
+          Integer existingIndex =
+              this.deduplicate ? distinctRecords.get(record.content()) : null;
+          if (existingIndex == null && datalinesCount >= MAX_RECORDS) {
+            throw new IllegalStateException(
+                "Source exceeds maximum number of records " + MAX_RECORDS);
+          }
+          if (existingIndex == null) {
+            dataWriter.write(record);
+          }
+
+          int index = (existingIndex != null) ? existingIndex : (int) datalinesCount;
+          if (!lookupTreeBuilder.addRange(batch.getRangeStart(i), batch.getRangeEnd(i), index)) {
+            throw new IllegalStateException(
+                "Unable to add all subnets to the IP lookup structure");
+          }
+          sourceRecordsCount++;
+          if (existingIndex != null) {
+            continue;
+          }
+          if (this.deduplicate) {
+            distinctRecords.put(record.copyContent(), index);
+          }
+          datalinesCount++;
+        }
+        statistics.addCommit(System.nanoTime() - commitStart);
+      }
+
+      /**
+       * IP prefix Tree is built in bulk once all prefixes are known, nodes are laid out in
+       * depth first order. Index shards are built in parallel.
+       */
+      this.lookupTree = lookupTreeBuilder.build(this.persistThreads);
+    } finally {
+      ingestPipeline.close();
+      dataWriter.close();
+      lookupTreeBuilder.close();
+    }
+
+    this.lookupTree.persist(target);
+    if (schema.hasStringColumns()) {
+      dataRecordProcessor.getStringPoolBuilder()
+          .persist(target + File.separator + LookupConstants.STRINGS_FILE_NAME);
+    }
+
+    /**
+     * Checksums cover all files written so far, metadata written last commits lookup.
+     */
+    long checksumStart = System.nanoTime();
+    Checksums.compute(target, this.persistThreads).persist(target);
+    statistics.setChecksumTime(System.nanoTime() - checksumStart);
+
+    /**
+     * Write metadata used for recovery of IP lookup data. Metadata is written last & replaces
+     * previous metadata atomically, so that lookup is never recovered from partial metadata.
+     */
+    Map<String, String> metadata = new LinkedHashMap<String, String>();
+    metadata.put(LookupConstants.CREATED_BY, CommonUtilities.getHostname());
+    metadata.put(LookupConstants.CREATED_AT, ZonedDateTime.now(ZoneOffset.UTC).toString());
+    metadata.put(LookupConstants.ALLOCATED_SIZE, Long.toString(this.lookupTree.getSize()));
+    metadata.put(LookupConstants.INDEX_SHARD_BITS, Integer.toString(this.indexShardBits));
+    metadata.put(LookupConstants.INDEX_SHARD_SIZES,
+        Arrays.stream(this.lookupTree.getShardSizes()).mapToObj(Integer::toString)
+            .collect(Collectors.joining(",")));
+    metadata.put(LookupConstants.ROW_SIZE, Integer.toString(dataRecordProcessor.getRowSize()));
+    metadata.put(LookupConstants.LINES_PER_DATABLOCK,
+        Integer.toString(this.getLinesPerDataBlock()));
+    metadata.put(LookupConstants.TOTAL_DATABLOCK_LINES, Long.toString(datalinesCount));
+    metadata.put(LookupConstants.TOTAL_SOURCE_RECORDS, Long.toString(sourceRecordsCount));
+    metadata.put(LookupConstants.DEDUP_RATIO,
+        String.format(Locale.ROOT, "%.4f",
+            (datalinesCount == 0) ? 1.0 : ((double) sourceRecordsCount / datalinesCount)));
+    metadata.put(LookupConstants.SCHEMA_FINGERPRINT, schema.getFingerprint());
+    if (dataWriter instanceof CompressedDataWriter) {
+      long compressedSize = ((CompressedDataWriter) dataWriter).getSize();
+      metadata.put(LookupConstants.RECORDS_PER_GROUP, Integer.toString(this.recordsPerGroup));
+      metadata.put(LookupConstants.COMPRESSION_RATIO,
+          String.format(Locale.ROOT, "%.4f", (compressedSize == 0) ? 1.0
+              : ((double) datalinesCount * dataRecordProcessor.getRowSize() / compressedSize)));
+    }
+    if (schema.hasPackedColumns()) {
+      metadata.put(LookupConstants.COLUMN_PACKING, getColumnPacking(schema));
+    }
+    if (schema.hasStringColumns()) {
+      metadata.put(LookupConstants.TOTAL_STRINGS,
+          Integer.toString(dataRecordProcessor.getStringPoolBuilder().getCount()));
+    }
+    metadata.put(LookupConstants.DATA_LAYOUT, this.dataLayout.name());
+    writeMetadata(target, metadata);
+
+    statistics.setTotalTime(System.nanoTime() - persistStart);
+    this.persistStatistics = statistics;
+    LOG.info("Persisted IP lookup {} {}", target, statistics);
+  }
+
+  /**
+   * Apply delta to persisted IP lookup without rebuilding it. Each line of delta is tab
+   * separated operation, IP range & values, operation is one of add, update or remove, remove
+   * lines have no values. Records added or updated are appended to data & ranges changed by all
+   * deltas since persist are indexed by overlay index, which takes precedence over index. Time
+   * of update depends on size of changes, not on size of lookup. Metadata is replaced atomically,
+   * so that lookup recovered concurrently sees either previous or updated content. Values of
+   * packed columns must fit packing of persisted lookup, records which do not fit are skipped.
+   * Only row data layout supports delta updates.
+   * 
+   * @param basepath persisted IP lookup
+   * @param deltaFile
+   * @param schema
+   * @throws Exception
+   */
+  public void applyDelta(final String basepath, final String deltaFile, final Schema schema)
+      throws Exception {
+
+    long deltaStart = System.nanoTime();
+    checkDirectory(basepath, "apply delta to");
+    Map<String, String> metadata = readMetadata(basepath);
+    checkFingerprint(basepath, schema, metadata.get(LookupConstants.SCHEMA_FINGERPRINT));
+    DataLayout layout = DataLayout
+        .valueOf(metadata.getOrDefault(LookupConstants.DATA_LAYOUT, DataLayout.ROW.name()));
+    if (layout != DataLayout.ROW) {
+      throw new IllegalStateException("Unable to apply delta to " + basepath + " Reason: "
+          + layout + " data layout does not support delta updates");
+    }
+    setPacking(schema, metadata);
+    DataRecordProcessor dataRecordProcessor = new DataRecordProcessor(schema);
+    int rowSize = dataRecordProcessor.getRowSize();
+    if (rowSize != Integer.parseInt(metadata.get(LookupConstants.ROW_SIZE))) {
+      throw new IllegalStateException("Unable to apply delta to " + basepath
+          + " Reason: row size of schema does not match");
+    }
+    int linesPerBlock = Integer.parseInt(metadata.get(LookupConstants.LINES_PER_DATABLOCK));
+    int offsetBits = getDataBlockOffsetBits(metadata);
+    long maxRecords = (offsetBits == 0) ? MAX_RECORDS
+        : Math.min(MAX_RECORDS, (1L << (Integer.SIZE - offsetBits)) * linesPerBlock);
+    long datalinesCount = Long.parseLong(metadata.get(LookupConstants.TOTAL_DATABLOCK_LINES));
+    int generation =
+        Integer.parseInt(metadata.getOrDefault(LookupConstants.DELTA_GENERATION, "0"));
+    long deltaRanges = Long.parseLong(metadata.getOrDefault(LookupConstants.DELTA_RANGES, "0"));
+
+    /**
+     * Strings of persisted lookup keep their ids, new strings are appended.
      */
-    while ((line = bufferedReader.readLine()) != null) {
-      String[] keyValuesPair = line.split("\t", 2);
-      String[] values = keyValuesPair[1].split("\t");
+    StringPoolBuilder stringPoolBuilder = dataRecordProcessor.getStringPoolBuilder();
+    String stringsFilename = basepath + File.separator + LookupConstants.STRINGS_FILE_NAME;
+    int totalStrings = 0;
+    if (stringPoolBuilder != null) {
+      totalStrings = Integer.parseInt(metadata.get(LookupConstants.TOTAL_STRINGS));
+      StringPool stringPool = new StringPool(stringsFilename);
+      try {
+        stringPoolBuilder.load(stringPool, totalStrings);
+      } finally {
+        stringPool.uninit();
+      }
+    }
 
-      if (dataRecordProcessor.validate(values)) {
+    /**
+     * Content beyond size recorded in metadata is left by failed update & is discarded.
+     * Recovered lookups never read beyond size recorded in metadata.
+     */
+    String dataFilename = basepath + File.separator + LookupConstants.DATA_FILE_NAME;
+    String deltaFilename = basepath + File.separator + LookupConstants.DELTA_FILE_NAME;
+    long dataSize = datalinesCount * rowSize, deltaSize = deltaRanges * DELTA_RANGE_SIZE;
+    truncate(dataFilename, dataSize);
+    truncate(deltaFilename, deltaSize);
 
-        IPv4Range ipv4Range = null;
-        List<IPv4Subnet> ipv4subnets = null;
+    int deltaRecords = 0, appendedLines = 0;
+    Map<ByteBuffer, Integer> distinctRecords = new HashMap<ByteBuffer, Integer>();
+    try (SourceTokenizer tokenizer = new SourceTokenizer(deltaFile);
+        OutputStream dataWriter =
+            new BufferedOutputStream(new FileOutputStream(dataFilename, true));
+        DataOutputStream deltaWriter = new DataOutputStream(
+            new BufferedOutputStream(new FileOutputStream(deltaFilename, true)))) {
+      while (tokenizer.nextLine()) {
+        long range;
         try {
-          ipv4Range = IPv4Range.parse(keyValuesPair[0]);
-          ipv4subnets = ipv4Range.toSubnets();
-        } catch (Exception e) {
-          LOG.error("Unable to persist IP address {} details", e.getMessage());
+          range = tokenizer.parseIpRange(1);
+        } catch (IllegalArgumentException e) {
+          LOG.error("Unable to apply delta to IP address {} details", e.getMessage());
           continue;
         }
 
-        /**
-         * Writing values to the persistent location & updating record index
-         * in IP prefix Tree MUST be atomic.
-         */
-        if (dataRecordProcessor.writeRecord(dataOutputWriter, values)) {
-
-          int index = (blockNo << offsetBits) | lineNo;
-          int subnetsCount = 0;
-          for (IPv4Subnet ipv4subnet : ipv4subnets) {
-            if (this.add(ipv4subnet.toString(), index)) {
-              subnetsCount++;
-            }
-          }
-          if (subnetsCount != ipv4subnets.size()) {
-            bufferedReader.close();
-            dataOutputWriter.close();
-            throw new IllegalStateException("Unable to add all subnets to the IP lookup structure");
+        int index;
+        String operation = tokenizer.getString(0);
+        if (DELTA_REMOVE.equals(operation) && tokenizer.getFieldCount() == 2) {
+          index = REMOVED_VALUE;
+        } else if (DELTA_ADD.equals(operation) || DELTA_UPDATE.equals(operation)) {
+          DataRecord record = dataRecordProcessor.encodeRecord(tokenizer, 2);
+          if (record == null) {
+            LOG.error("Invalid record found while applying delta : {}", tokenizer.getLine());
+            continue;
           }
-          lineNo++;
-          if (lineNo % this.getLinesPerDataBlock() == 0) {
-            lineNo = 0;
-            blockNo++;
+          Integer existingIndex =
+              this.deduplicate ? distinctRecords.get(record.content()) : null;
+          if (existingIndex != null) {
+            index = existingIndex;
+          } else {
+            index = (offsetBits == 0) ? (int) datalinesCount
+                : (int) (((datalinesCount / linesPerBlock) << offsetBits)
+                    | (datalinesCount % linesPerBlock));
+            if (datalinesCount >= maxRecords || index == BitmapTrie.NO_VALUE
+                || index == REMOVED_VALUE) {
+              throw new IllegalStateException("Delta exceeds maximum number of records "
+                  + maxRecords + ", persist lookup again");
+            }
+            dataWriter.write(record.content().array(), 0, rowSize);
+            if (this.deduplicate) {
+              distinctRecords.put(record.copyContent(), index);
+            }
+            datalinesCount++;
+            appendedLines++;
           }
-          datalinesCount++;
+        } else {
+          LOG.error("Invalid record found while applying delta : {}", tokenizer.getLine());
+          continue;
         }
-      } else {
-        LOG.error("Invalid record found while persisting : {}", line);
+        deltaWriter.writeInt((int) (range >>> 32));
+        deltaWriter.writeInt((int) range);
+        deltaWriter.writeInt(index);
+        deltaRanges++;
+        deltaRecords++;
       }
     }
 
-    bufferedReader.close();
-    dataOutputWriter.close();
+    /**
+     * Overlay index is rebuilt from ranges of all deltas, range of later delta wins.
+     */
+    BitmapTrie overlay = new BitmapTrie();
+    try (BitmapTrieBuilder overlayBuilder = new BitmapTrieBuilder(new File(basepath));
+        DataInputStream deltaReader = new DataInputStream(
+            new BufferedInputStream(new FileInputStream(deltaFilename)))) {
+      for (long i = 0; i < deltaRanges; i++) {
+        int start = deltaReader.readInt();
+        int end = deltaReader.readInt();
+        if (!overlayBuilder.addRange(start, end, deltaReader.readInt())) {
+          throw new IllegalStateException("Unable to add all subnets to the overlay index");
+        }
+      }
+      overlayBuilder.build(overlay);
+    }
+    overlay.persist(getOverlayFilename(basepath, generation + 1));
 
-    this.lookupTree.persist(target + File.separator + LookupConstants.INDEX_FILE_NAME);
+    boolean stringsChanged =
+        stringPoolBuilder != null && stringPoolBuilder.getCount() > totalStrings;
+    if (stringsChanged) {
+      stringPoolBuilder.persist(stringsFilename + TEMP_SUFFIX);
+      Files.move(Paths.get(stringsFilename + TEMP_SUFFIX), Paths.get(stringsFilename),
+          StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
 
     /**
-     * Write metadata used for recovery of IP lookup data.
+     * Checksums of appended files are updated from committed size, blocks before it are kept.
+     * Checksums of next generation are committed by metadata together with overlay index.
      */
-    BufferedWriter metadataOutputWriter = new BufferedWriter(
-        new FileWriter(target + File.separator + LookupConstants.METADATA_FILE_NAME));
-    persistMetadata(metadataOutputWriter, LookupConstants.CREATED_BY, CommonUtilities.getHostname(),
-        true);
-    persistMetadata(metadataOutputWriter, LookupConstants.CREATED_AT,
-        ZonedDateTime.now(ZoneOffset.UTC).toString(), true);
-    persistMetadata(metadataOutputWriter, LookupConstants.ALLOCATED_SIZE,
-        Integer.toString(this.lookupTree.getSize()), true);
-    persistMetadata(metadataOutputWriter, LookupConstants.ROW_SIZE,
-        Integer.toString(dataRecordProcessor.getRowSize()), true);
-    persistMetadata(metadataOutputWriter, LookupConstants.LINES_PER_DATABLOCK,
-        Integer.toString(this.getLinesPerDataBlock()), true);
-    persistMetadata(metadataOutputWriter, LookupConstants.TOTAL_DATABLOCK_LINES,
-        Integer.toString(datalinesCount), true);
-    persistMetadata(metadataOutputWriter, LookupConstants.DATABLOCK_OFFSET_BITS,
-        Integer.toString(offsetBits), false);
-    metadataOutputWriter.close();
+    Checksums checksums = Checksums.recover(basepath, null, generation);
+    if (checksums != null) {
+      checksums.update(basepath, LookupConstants.DATA_FILE_NAME, dataSize);
+      checksums.update(basepath, LookupConstants.DELTA_FILE_NAME, deltaSize);
+      checksums.update(basepath,
+          new File(getOverlayFilename(basepath, generation + 1)).getName(), 0);
+      checksums.remove(new File(getOverlayFilename(basepath, generation)).getName());
+      if (stringsChanged) {
+        checksums.update(basepath, LookupConstants.STRINGS_FILE_NAME, 0);
+      }
+      checksums.persist(basepath, generation + 1);
+    }
+
+    metadata.put(LookupConstants.CREATED_AT, ZonedDateTime.now(ZoneOffset.UTC).toString());
+    metadata.put(LookupConstants.TOTAL_DATABLOCK_LINES, Long.toString(datalinesCount));
+    metadata.put(LookupConstants.DELTA_GENERATION, Integer.toString(generation + 1));
+    metadata.put(LookupConstants.DELTA_RANGES, Long.toString(deltaRanges));
+    metadata.put(LookupConstants.OVERLAY_SIZE, Integer.toString(overlay.getSize()));
+    if (stringPoolBuilder != null) {
+      metadata.put(LookupConstants.TOTAL_STRINGS, Integer.toString(stringPoolBuilder.getCount()));
+    }
+    writeMetadata(basepath, metadata);
+    Files.deleteIfExists(Paths.get(getOverlayFilename(basepath, generation)));
+    Files.deleteIfExists(Paths.get(basepath, Checksums.getFilename(generation)));
+
+    LOG.info("Applied delta {} to IP lookup {} records {} appended lines {} time {} ms",
+        deltaFile, basepath, deltaRecords, appendedLines,
+        (System.nanoTime() - deltaStart) / 1000000);
+  }
+
+  /**
+   * Rebuild persisted IP lookup with new schema, e.g. schema with added column, reusing its
+   * index. Source must be source of persisted lookup with values of new schema. Each record is
+   * placed at record index its range is matched to, so that data is rewritten in same record
+   * order & index is copied to target as is. Records sharing record index must be identical
+   * with new schema & every record must be referenced by source, otherwise lookup has to be
+   * persisted again. Lookups with delta updates applied are not supported.
+   * 
+   * @param source name of source file, or glob pattern matching part files of source
+   * @param basepath persisted IP lookup
+   * @param target
+   * @param schema new schema
+   * @throws Exception
+   */
+  public void rebuildData(final String source, final String basepath, final String target,
+      final Schema schema) throws Exception {
+
+    long rebuildStart = System.nanoTime();
+    checkDirectory(basepath, "rebuild data of");
+    Map<String, String> metadata = readMetadata(basepath);
+    if (metadata.containsKey(LookupConstants.DELTA_GENERATION)) {
+      throw new IllegalStateException("Unable to rebuild data of " + basepath
+          + " Reason: delta updates are applied, persist lookup again");
+    }
+    ShardedTrie index = recoverIndex(basepath, null, metadata);
+    DataLayout layout = DataLayout
+        .valueOf(metadata.getOrDefault(LookupConstants.DATA_LAYOUT, DataLayout.ROW.name()));
+    int groupSize = (layout == DataLayout.COMPRESSED)
+        ? Integer.parseInt(metadata.get(LookupConstants.RECORDS_PER_GROUP)) : this.recordsPerGroup;
+    int linesPerBlock = Integer.parseInt(metadata.get(LookupConstants.LINES_PER_DATABLOCK));
+    int offsetBits = getDataBlockOffsetBits(metadata);
+    long datalinesCount = Long.parseLong(metadata.get(LookupConstants.TOTAL_DATABLOCK_LINES));
+
+    List<String> sources = CommonUtilities.listSourceFiles(source);
+    FileUtils.deleteQuietly(new File(target));
+    Files.createDirectories(Paths.get(target));
+    DataRecordProcessor dataRecordProcessor = new DataRecordProcessor(schema);
+    derivePacking(sources, schema, dataRecordProcessor);
+    int rowSize = dataRecordProcessor.getRowSize();
+    PersistStatistics statistics = new PersistStatistics(this.persistThreads);
+
+    /**
+     * Rows are placed by record index into temporary file of row layout.
+     */
+    String dataFilename = target + File.separator + LookupConstants.DATA_FILE_NAME;
+    String rowsFilename = dataFilename + TEMP_SUFFIX;
+    long[] placedLines = new long[(int) ((datalinesCount + Long.SIZE - 1) / Long.SIZE)];
+    long placedCount = 0;
+    ByteBuffer placedRow = ByteBuffer.allocate(rowSize);
+    DataRecord record = new DataRecord(schema, rowSize);
+    long sourceRecordsCount = 0;
+    try (RandomAccessFile rowsFile = new RandomAccessFile(rowsFilename, "rw");
+        IngestPipeline ingestPipeline = new IngestPipeline(sources, dataRecordProcessor,
+            this.persistThreads, this.ingestBatchSize, statistics)) {
+      FileChannel rowsChannel = rowsFile.getChannel();
+      IngestBatch batch;
+      while ((batch = ingestPipeline.next()) != null) {
+        long commitStart = System.nanoTime();
+        for (int i = 0; i < batch.size(); i++) {
+          batch.read(i, record);
+          dataRecordProcessor.encodeStrings(record, batch.getStrings(i));
+          sourceRecordsCount++;
+
+          int value = index.match(batch.getRangeStart(i) & 0xFFFFFFFFL);
+          long line = (offsetBits == 0) ? Integer.toUnsignedLong(value)
+              : DataBlockLookup.toRecordNo(value, offsetBits, linesPerBlock);
+          if (value == BitmapTrie.NO_VALUE || line >= datalinesCount
+              || value != index.match(batch.getRangeEnd(i) & 0xFFFFFFFFL)) {
+            throw new IllegalStateException("Unable to rebuild data of " + basepath
+                + " Reason: range of source record " + sourceRecordsCount + " is not indexed");
+          }
+
+          ByteBuffer row = ByteBuffer.wrap(record.content().array(), 0, rowSize);
+          long placedBit = 1L << line;
+          if ((placedLines[(int) (line >>> 6)] & placedBit) != 0) {
+            placedRow.clear();
+            do {
+              rowsChannel.read(placedRow, line * rowSize + placedRow.position());
+            } while (placedRow.hasRemaining());
+            placedRow.flip();
+            if (!placedRow.equals(row)) {
+              throw new IllegalStateException("Unable to rebuild data of " + basepath
+                  + " Reason: records sharing record index " + value
+                  + " differ with new schema, persist lookup again");
+            }
+          } else {
+            while (row.hasRemaining()) {
+              rowsChannel.write(row, line * rowSize + row.position());
+            }
+            placedLines[(int) (line >>> 6)] |= placedBit;
+            placedCount++;
+          }
+        }
+        statistics.addCommit(System.nanoTime() - commitStart);
+      }
+    }
+    if (placedCount != datalinesCount) {
+      throw new IllegalStateException("Unable to rebuild data of " + basepath + " Reason: "
+          + (datalinesCount - placedCount) + " records are not found in source");
+    }
+
+    /**
+     * Temporary file is data of row layout, other layouts are written from it in order.
+     */
+    long compressedSize = -1;
+    if (layout == DataLayout.ROW) {
+      Files.move(Paths.get(rowsFilename), Paths.get(dataFilename));
+    } else {
+      DataWriter dataWriter =
+          createDataWriter(dataFilename, schema, layout, groupSize, statistics);
+      try (DataInputStream rowsReader = new DataInputStream(
+          new BufferedInputStream(new FileInputStream(rowsFilename)))) {
+        for (long line = 0; line < datalinesCount; line++) {
+          record.clear();
+          rowsReader.readFully(record.content().array(), 0, rowSize);
+          dataWriter.write(record);
+        }
+      } finally {
+        dataWriter.close();
+      }
+      if (dataWriter instanceof CompressedDataWriter) {
+        compressedSize = ((CompressedDataWriter) dataWriter).getSize();
+      }
+      Files.delete(Paths.get(rowsFilename));
+    }
+
+    for (int shard = 0; shard < index.getShardCount(); shard++) {
+      if (index.getShardSizes()[shard] > 0) {
+        copyFile(ShardedTrie.getShardFilename(basepath, index.getShardBits(), shard),
+            ShardedTrie.getShardFilename(target, index.getShardBits(), shard));
+      }
+    }
+    if (schema.hasStringColumns()) {
+      dataRecordProcessor.getStringPoolBuilder()
+          .persist(target + File.separator + LookupConstants.STRINGS_FILE_NAME);
+    }
+
+    metadata.put(LookupConstants.CREATED_BY, CommonUtilities.getHostname());
+    metadata.put(LookupConstants.CREATED_AT, ZonedDateTime.now(ZoneOffset.UTC).toString());
+    metadata.put(LookupConstants.ROW_SIZE, Integer.toString(rowSize));
+    metadata.put(LookupConstants.TOTAL_SOURCE_RECORDS, Long.toString(sourceRecordsCount));
+    metadata.put(LookupConstants.DEDUP_RATIO, String.format(Locale.ROOT, "%.4f",
+        (datalinesCount == 0) ? 1.0 : ((double) sourceRecordsCount / datalinesCount)));
+    metadata.put(LookupConstants.SCHEMA_FINGERPRINT, schema.getFingerprint());
+    if (compressedSize >= 0) {
+      metadata.put(LookupConstants.COMPRESSION_RATIO, String.format(Locale.ROOT, "%.4f",
+          (compressedSize == 0) ? 1.0 : ((double) datalinesCount * rowSize / compressedSize)));
+    }
+    metadata.remove(LookupConstants.COLUMN_PACKING);
+    if (schema.hasPackedColumns()) {
+      metadata.put(LookupConstants.COLUMN_PACKING, getColumnPacking(schema));
+    }
+    metadata.remove(LookupConstants.TOTAL_STRINGS);
+    if (schema.hasStringColumns()) {
+      metadata.put(LookupConstants.TOTAL_STRINGS,
+          Integer.toString(dataRecordProcessor.getStringPoolBuilder().getCount()));
+    }
+    long checksumStart = System.nanoTime();
+    Checksums.compute(target, this.persistThreads).persist(target);
+    statistics.setChecksumTime(System.nanoTime() - checksumStart);
+    writeMetadata(target, metadata);
+
+    statistics.setTotalTime(System.nanoTime() - rebuildStart);
+    this.persistStatistics = statistics;
+    LOG.info("Rebuilt data of IP lookup {} into {} {}", basepath, target, statistics);
+  }
+
+  /**
+   * Link file to new name, file is copied if linking is not supported.
+   * 
+   * @param source
+   * @param target
+   * @throws IOException
+   */
+  private static void copyFile(String source, String target) throws IOException {
+    try {
+      Files.createLink(Paths.get(target), Paths.get(source));
+    } catch (UnsupportedOperationException | IOException e) {
+      Files.copy(Paths.get(source), Paths.get(target), StandardCopyOption.REPLACE_EXISTING);
+    }
+  }
+
+  /**
+   * Name of overlay index file of given delta generation.
+   * 
+   * @param basepath
+   * @param generation
+   * @return name of file
+   */
+  private static String getOverlayFilename(String basepath, int generation) {
+    return basepath + File.separator + LookupConstants.OVERLAY_FILE_NAME + "." + generation;
+  }
+
+  /**
+   * Discard content of file beyond given size.
+   * 
+   * @param filename
+   * @param size
+   * @throws IOException
+   */
+  private static void truncate(String filename, long size) throws IOException {
+    File file = new File(filename);
+    if (file.length() < size) {
+      throw new IllegalStateException(
+          "File " + filename + " is shorter than expected size " + size);
+    }
+    if (file.length() > size) {
+      try (RandomAccessFile randomAccessFile = new RandomAccessFile(file, "rw")) {
+        randomAccessFile.setLength(size);
+      }
+    }
+  }
+
+  /**
+   * Create writer of data file for given data layout.
+   * 
+   * @param filename name of data file
+   * @param schema
+   * @param dataLayout
+   * @param recordsPerGroup number of records encoded together with compressed layout
+   * @param statistics statistics of persist
+   * @return data writer
+   * @throws IOException
+   */
+  private DataWriter createDataWriter(final String filename, final Schema schema,
+      final DataLayout dataLayout, int recordsPerGroup, final PersistStatistics statistics)
+      throws IOException {
+    switch (dataLayout) {
+      case COLUMNAR:
+        return new ColumnarDataWriter(filename, schema, statistics);
+      case COMPRESSED:
+        return new CompressedDataWriter(filename, schema, recordsPerGroup, statistics);
+      default:
+        return new RowDataWriter(filename, this.preallocatedDataSize, statistics);
+    }
+  }
+
+  /**
+   * Derive width of packed columns from value ranges observed in source. Binary sources are
+   * checked against schema & their recorded value ranges are used without scanning records.
+   * 
+   * @param sources
+   * @param schema
+   * @param dataRecordProcessor
+   * @throws IOException
+   */
+  private static void derivePacking(final List<String> sources, final Schema schema,
+      final DataRecordProcessor dataRecordProcessor) throws IOException {
+    Column[] columns = schema.getColumns();
+    for (String source : sources) {
+      if (BinarySourceReader.isBinarySource(source)) {
+        try (BinarySourceReader reader = new BinarySourceReader(source)) {
+          reader.checkSchema(schema);
+          for (int i = 0; i < columns.length; i++) {
+            if (columns[i].getDatatype() == Datatype.PACKED_INT) {
+              dataRecordProcessor.observe(i, reader.getMinValue(i), reader.getMaxValue(i));
+            }
+          }
+        }
+      } else if (schema.hasPackedColumns()) {
+        try (SourceTokenizer tokenizer = new SourceTokenizer(source)) {
+          while (tokenizer.nextLine()) {
+            dataRecordProcessor.observe(tokenizer, 1);
+          }
+        }
+      }
+    }
+    dataRecordProcessor.pack();
+  }
+
+  /**
+   * Format value ranges of packed columns as metadata value.
+   * Format is index=min/max separated by comma.
+   * 
+   * @param schema
+   * @return packing details
+   */
+  private static String getColumnPacking(final Schema schema) {
+    StringBuilder columnPacking = new StringBuilder();
+    Column[] columns = schema.getColumns();
+    for (int i = 0; i < columns.length; i++) {
+      if (columns[i].isPacked()) {
+        long maxValue = columns[i].getMinValue()
+            + ((columns[i].getBits() == 0) ? 0 : ((1L << columns[i].getBits()) - 1));
+        columnPacking.append(columnPacking.length() == 0 ? "" : ",").append(i).append('=')
+            .append(columns[i].getMinValue()).append('/').append(maxValue);
+      }
+    }
+    return columnPacking.toString();
   }
 
   /**
    * Validate IP lookup data against given source
    * An exception is thrown if validation fails.
    * 
-   * @param source
+   * @param source name of source file, or glob pattern matching part files of source
    * @param schema
    * @throws Exception
    */
   public void validate(final String source, final Schema schema) throws Exception {
-    BufferedReader bufferedReader = new BufferedReader(new FileReader(source));
+    for (String part : CommonUtilities.listSourceFiles(source)) {
+      if (BinarySourceReader.isBinarySource(part)) {
+        throw new IllegalArgumentException("Validation against binary source " + part
+            + " is not supported, validate against tab separated source");
+      }
+      validatePart(part, schema);
+    }
+  }
+
+  /**
+   * Validate IP lookup data against single source file.
+   * 
+   * @param source
+   * @param schema
+   * @throws Exception
+   */
+  private void validatePart(final String source, final Schema schema) throws Exception {
     DataRecordProcessor dataRecordProcessor = new DataRecordProcessor(schema);
-    String line;
-    while ((line = bufferedReader.readLine()) != null) {
-      String[] keyValuesPair = line.split("\t", 2);
-      String[] values = keyValuesPair[1].split("\t");
-
-      if (dataRecordProcessor.validate(values)) {
-        IPv4Range ipv4Range = null;
-        List<IPv4Subnet> ipv4subnets = null;
-        try {
-          ipv4Range = IPv4Range.parse(keyValuesPair[0]);
-          ipv4subnets = ipv4Range.toSubnets();
-        } catch (Exception e) {
-          LOG.error("Unable to validate IP address {} details", e.getMessage());
-          continue;
+    try (SourceTokenizer tokenizer = new SourceTokenizer(source)) {
+      while (tokenizer.nextLine()) {
+        String[] values = new String[tokenizer.getFieldCount() - 1];
+        for (int i = 0; i < values.length; i++) {
+          values[i] = tokenizer.getString(i + 1);
         }
 
-        for (IPv4Subnet ipv4subnet : ipv4subnets) {
-          boolean valid = true;
-          DataRecord firstRecord = this.match(ipv4subnet.getFirst().toString());
-          for (int i = 0; i < values.length; i++) {
-            if (!values[i].equals(firstRecord.read(i))) {
-              valid = false;
-            }
+        if (dataRecordProcessor.validate(values)) {
+          long range;
+          try {
+            range = tokenizer.parseIpRange(0);
+          } catch (IllegalArgumentException e) {
+            LOG.error("Unable to validate IP address {} details", e.getMessage());
+            continue;
           }
-          DataRecord lastRecord = this.match(ipv4subnet.getLast().toString());
-          for (int i = 0; i < values.length; i++) {
-            if (!values[i].equals(lastRecord.read(i))) {
-              valid = false;
+
+          /**
+           * Range is decomposed into same prefixes as added while persisting, first & last
+           * address of each prefix must match source values.
+           */
+          long first = range >>> 32, last = range & 0xFFFFFFFFL;
+          while (first <= last) {
+            long prefixSize = 1L << BitmapTrie.getHostBits(first, last);
+            if (!matches(first, values) || !matches(first + prefixSize - 1, values)) {
+              throw new IllegalStateException("IP lookup validation failed for address "
+                  + tokenizer.getString(0) + " " + match(first) + " "
+                  + match(first + prefixSize - 1));
             }
+            first += prefixSize;
           }
-          if (!valid) {
-            bufferedReader.close();
-            throw new IllegalStateException(
-                "IP lookup validation failed for address " + firstRecord + " " + lastRecord);
-          }
+        } else {
+          LOG.error("Invalid record found while validating : {}", tokenizer.getLine());
         }
-      } else {
-        LOG.error("Invalid record found while validating : {}", line);
       }
     }
-    bufferedReader.close();
+  }
+
+  /**
+   * Selects record for a given IPv4 address.
+   * 
+   * @param ipAddress IPv4 address
+   * @return record, null if there is no match
+   */
+  private DataRecord match(long ipAddress) {
+    int value = matchValue(ipAddress);
+    return (value != BitmapTrie.NO_VALUE) ? this.dataBlockLookup.selectRecord(value) : null;
+  }
+
+  /**
+   * Check whether record matched for IPv4 address holds given values.
+   * 
+   * @param ipAddress IPv4 address
+   * @param values
+   * @return true if all values are equal
+   */
+  private boolean matches(long ipAddress, String[] values) {
+    DataRecord record = match(ipAddress);
+    if (record == null) {
+      return false;
+    }
+    for (int i = 0; i < values.length; i++) {
+      if (!record.matches(i, values[i])) {
+        return false;
+      }
+    }
+    return true;
   }
 
   /**
@@ -458,15 +1530,10 @@ public class IpLookup {
   public static ZonedDateTime getCreateTime(final String basepath) {
     ZonedDateTime dateTime = null;
     try {
-      Map<String, String> metadata = new HashMap<String, String>();
-      BufferedReader metadataReader = new BufferedReader(
-          new FileReader(basepath + File.separator + LookupConstants.METADATA_FILE_NAME));
-      String line = null;
-      while ((line = metadataReader.readLine()) != null) {
-        String[] keyValue = line.split(LookupConstants.COLON, 2);
-        metadata.put(keyValue[0].trim(), keyValue[1].trim());
+      if (LookupContainer.isContainer(basepath)) {
+        return new LookupContainer(basepath).getCreateTime();
       }
-      metadataReader.close();
+      Map<String, String> metadata = readMetadata(basepath);
       String createTime = metadata.get(LookupConstants.CREATED_AT);
 
       if (createTime != null) {
@@ -487,6 +1554,156 @@ public class IpLookup {
     this.linesPerDataBlock = linesPerDataBlock;
   }
 
+  /**
+   * Enable or disable de-duplication of records while persisting.
+   * 
+   * @param deduplicate
+   */
+  public void setDeduplicate(boolean deduplicate) {
+    this.deduplicate = deduplicate;
+  }
+
+  /**
+   * Check whether records are de-duplicated while persisting.
+   * 
+   * @return deduplicate
+   */
+  public boolean isDeduplicate() {
+    return this.deduplicate;
+  }
+
+  /**
+   * Set physical layout of persisted data records.
+   * 
+   * @param dataLayout
+   */
+  public void setDataLayout(DataLayout dataLayout) {
+    this.dataLayout = dataLayout;
+  }
+
+  /**
+   * Get physical layout of persisted data records.
+   * 
+   * @return dataLayout
+   */
+  public DataLayout getDataLayout() {
+    return this.dataLayout;
+  }
+
+  /**
+   * Set number of records encoded together with compressed layout.
+   * 
+   * @param recordsPerGroup
+   */
+  public void setRecordsPerGroup(int recordsPerGroup) {
+    this.recordsPerGroup = recordsPerGroup;
+  }
+
+  /**
+   * Get number of records encoded together with compressed layout.
+   * 
+   * @return recordsPerGroup
+   */
+  public int getRecordsPerGroup() {
+    return this.recordsPerGroup;
+  }
+
+  /**
+   * Set number of workers parsing source in parallel while persisting. Persisted content does
+   * not depend on number of workers.
+   * 
+   * @param persistThreads
+   */
+  public void setPersistThreads(int persistThreads) {
+    this.persistThreads = persistThreads;
+  }
+
+  /**
+   * Get number of workers parsing source in parallel while persisting.
+   * 
+   * @return persistThreads
+   */
+  public int getPersistThreads() {
+    return this.persistThreads;
+  }
+
+  /**
+   * Set expected size of data file with row layout, preallocated up front while persisting. Data
+   * file is truncated to size of written rows, so that estimate does not need to be exact.
+   * 
+   * @param preallocatedDataSize size expressed in bytes, 0 if data file is not preallocated
+   */
+  public void setPreallocatedDataSize(long preallocatedDataSize) {
+    this.preallocatedDataSize = preallocatedDataSize;
+  }
+
+  /**
+   * Set number of leading bits of IP address used as key of index shard while persisting, e.g.
+   * 8 bits partition index into 256 shards by leading octet. Index is not partitioned if 0.
+   * 
+   * @param indexShardBits
+   */
+  public void setIndexShardBits(int indexShardBits) {
+    if (indexShardBits < 0 || indexShardBits > ShardedTrie.MAX_SHARD_BITS) {
+      throw new IllegalArgumentException("Invalid number of index shard bits " + indexShardBits);
+    }
+    this.indexShardBits = indexShardBits;
+  }
+
+  /**
+   * Get number of leading bits of IP address used as key of index shard while persisting.
+   * 
+   * @return indexShardBits
+   */
+  public int getIndexShardBits() {
+    return this.indexShardBits;
+  }
+
+  /**
+   * Set size of batch of source lines handed to a worker while persisting.
+   * 
+   * @param ingestBatchSize size expressed in bytes
+   */
+  public void setIngestBatchSize(int ingestBatchSize) {
+    this.ingestBatchSize = ingestBatchSize;
+  }
+
+  /**
+   * Get statistics of last persist.
+   * 
+   * @return persistStatistics, null if nothing is persisted
+   */
+  public PersistStatistics getPersistStatistics() {
+    return this.persistStatistics;
+  }
+
+  /**
+   * Get statistics of recovery, i.e. time per phase & time to ready.
+   * 
+   * @return recoveryStatistics, null unless lookup is recovered
+   */
+  public RecoveryStatistics getRecoveryStatistics() {
+    return this.recoveryStatistics;
+  }
+
+  /**
+   * Get warm-up of lookup, i.e. warm-up time & latency before & after warm-up.
+   * 
+   * @return lookupWarmer, null unless lookup is warmed up
+   */
+  public LookupWarmer getLookupWarmer() {
+    return this.lookupWarmer;
+  }
+
+  /**
+   * Get memory backing lookup, i.e. active memory mode & huge page settings.
+   * 
+   * @return memoryStatus, null unless lookup is recovered
+   */
+  public MemoryStatus getMemoryStatus() {
+    return this.memoryStatus;
+  }
+
   /**
    * Get number of liner per Data Block.
    * 
@@ -0,0 +1,359 @@
+package com.github.opentech.ipgeo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.time.ZonedDateTime;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Managed access to latest persisted IP lookup of a directory. Directory holds either single
+ * persisted lookup, which is updated in place e.g. by {@link IpLookup#applyDelta}, or persisted
+ * lookups as sub directories or containers written by {@link IpLookup#pack}. Lookup is complete
+ * once its metadata or container is written & latest lookup is the one with latest create
+ * time.
+ *
+ * Directory is polled on a background thread, newer lookup is recovered & validated there &
+ * then replaces current lookup atomically. Readers hold a {@link Lease} on the lookup they read,
+ * replaced lookup is un-initialized only once all its leases are released, so that reads are
+ * neither blocked nor see unmapped data during reload.
+ *
+ * @author bhargava.kulkarni
+ */
+public class IpLookupHandle implements Closeable {
+
+  /**
+   * Logger for the class
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(IpLookupHandle.class);
+
+  /**
+   * Directory of persisted lookups.
+   */
+  private String directory;
+
+  /**
+   * Schema definition, copied per recovered lookup.
+   */
+  private Schema schema;
+
+  /**
+   * Parameters used to initialize recovered lookups.
+   */
+  private IpLookupInitArgs ipLookupInitArgs;
+
+  /**
+   * Check of recovered lookup before it replaces current lookup.
+   */
+  private Predicate<IpLookup> validator = ipLookup -> true;
+
+  /**
+   * Lookup currently served, null until first lookup is recovered.
+   */
+  private AtomicReference<Version> current = new AtomicReference<Version>();
+
+  /**
+   * Background thread polling directory & un-initializing replaced lookups.
+   */
+  private ScheduledExecutorService reloader;
+
+  /**
+   * Base path & create time of latest lookup which failed to recover or validate, so that it
+   * is not retried on each poll.
+   */
+  private String failedBasepath;
+  private ZonedDateTime failedCreateTime;
+
+  /**
+   * Statistics of reloads.
+   */
+  private AtomicInteger reloads = new AtomicInteger();
+  private AtomicInteger failedReloads = new AtomicInteger();
+  private AtomicInteger retiredVersions = new AtomicInteger();
+  private AtomicLong lastLoadTime = new AtomicLong();
+
+  private volatile boolean closed;
+
+  /**
+   * Lookup served by handle, counts leases. Handle holds one lease while lookup is current, last
+   * release of replaced lookup un-initializes it on background thread. Leases are counted by
+   * striped counters, so that concurrent reads do not contend on one shared counter.
+   */
+  private class Version {
+
+    private IpLookup ipLookup;
+    private String basepath;
+    private ZonedDateTime createTime;
+    private LeaseCounter leases = new LeaseCounter(() -> retire(this));
+
+    private Version(IpLookup ipLookup, String basepath) {
+      this.ipLookup = ipLookup;
+      this.basepath = basepath;
+      this.createTime = ipLookup.getCreateTime();
+    }
+  }
+
+  /**
+   * Lease on lookup, lookup stays initialized until lease is closed. Lease is not thread safe &
+   * records read through it must not be used after it is closed.
+   */
+  public class Lease implements AutoCloseable {
+
+    private Version version;
+
+    private Lease(Version version) {
+      this.version = version;
+    }
+
+    /**
+     * @return leased lookup
+     */
+    public IpLookup getIpLookup() {
+      return this.version.ipLookup;
+    }
+
+    @Override
+    public void close() {
+      if (this.version != null) {
+        this.version.leases.release();
+        this.version = null;
+      }
+    }
+  }
+
+  /**
+   * Constructor for the class, recovers latest lookup & polls directory with given interval.
+   *
+   * @param directory directory of persisted lookups
+   * @param schema
+   * @param ipLookupInitArgs
+   * @param pollInterval interval of polling expressed in milliseconds, directory is not polled
+   *        if 0
+   */
+  public IpLookupHandle(String directory, Schema schema, IpLookupInitArgs ipLookupInitArgs,
+      long pollInterval) {
+    this.directory = directory;
+    this.schema = schema;
+    this.ipLookupInitArgs = ipLookupInitArgs;
+    this.reloader = Executors.newSingleThreadScheduledExecutor(runnable -> {
+      Thread thread = new Thread(runnable, "ip-lookup-reloader");
+      thread.setDaemon(true);
+      return thread;
+    });
+    reload();
+    if (pollInterval > 0) {
+      this.reloader.scheduleWithFixedDelay(() -> {
+        try {
+          reload();
+        } catch (Throwable e) {
+          LOG.error("Failed to reload IP lookup from {} {}", this.directory, e.getMessage());
+        }
+      }, pollInterval, pollInterval, TimeUnit.MILLISECONDS);
+    }
+  }
+
+  /**
+   * Acquire lease on current lookup.
+   *
+   * @return lease, to be closed once reads are done
+   * @throws IllegalStateException if no lookup is recovered
+   */
+  public Lease acquire() {
+    while (true) {
+      Version version = this.current.get();
+      if (version == null) {
+        throw new IllegalStateException("No IP lookup is available in " + this.directory);
+      }
+      if (version.leases.acquire()) {
+        return new Lease(version);
+      }
+    }
+  }
+
+  /**
+   * Match IPv4 address in current lookup & read matched record under lease.
+   *
+   * @param ipAddress IPv4 address, in string form (i.e. "e.f.g.h")
+   * @param reader reads values of record, record is null if there is no match
+   * @return value returned by reader
+   */
+  public <T> T match(String ipAddress, Function<DataRecord, T> reader) {
+    try (Lease lease = acquire()) {
+      return reader.apply(lease.getIpLookup().match(ipAddress));
+    }
+  }
+
+  /**
+   * Recover latest lookup of directory if it is newer than current lookup & replace current
+   * lookup with it. Called periodically on background thread, may be called to reload at once.
+   *
+   * @return true if current lookup is replaced
+   */
+  public synchronized boolean reload() {
+    if (this.closed) {
+      return false;
+    }
+    String basepath = findLatest();
+    ZonedDateTime createTime = (basepath != null) ? IpLookup.getCreateTime(basepath) : null;
+    Version version = this.current.get();
+    if (createTime == null || (version != null && !createTime.isAfter(version.createTime))) {
+      return false;
+    }
+    if (basepath.equals(this.failedBasepath) && createTime.equals(this.failedCreateTime)) {
+      return false;
+    }
+
+    long loadStart = System.nanoTime();
+    IpLookup ipLookup = new IpLookup(basepath, this.schema.copy(), this.ipLookupInitArgs);
+    boolean valid = ipLookup.isInitialised();
+    try {
+      valid = valid && this.validator.test(ipLookup);
+    } catch (RuntimeException e) {
+      LOG.error("Failed to validate IP lookup {} {}", basepath, e.getMessage());
+      valid = false;
+    }
+    if (!valid) {
+      if (ipLookup.isInitialised()) {
+        ipLookup.uninit(false);
+      }
+      this.failedBasepath = basepath;
+      this.failedCreateTime = createTime;
+      this.failedReloads.incrementAndGet();
+      LOG.error("Rejected IP lookup {} created at {}", basepath, createTime);
+      return false;
+    }
+
+    Version previous = this.current.getAndSet(new Version(ipLookup, basepath));
+    if (previous != null) {
+      previous.leases.retire();
+    }
+    this.reloads.incrementAndGet();
+    this.lastLoadTime.set((System.nanoTime() - loadStart) / 1000000);
+    LOG.info("Loaded IP lookup {} created at {} in {} ms", basepath, createTime,
+        this.lastLoadTime.get());
+    return true;
+  }
+
+  /**
+   * Find latest complete lookup of directory.
+   *
+   * @return base path of lookup, null if directory has no complete lookup
+   */
+  private String findLatest() {
+    File base = new File(this.directory);
+    if (new File(base, LookupConstants.METADATA_FILE_NAME).isFile()) {
+      return this.directory;
+    }
+    File[] builds = base.listFiles(file -> new File(file, LookupConstants.METADATA_FILE_NAME)
+        .isFile() || LookupContainer.isContainer(file.getPath()));
+    String latest = null;
+    ZonedDateTime latestCreateTime = null;
+    for (File build : (builds != null) ? builds : new File[0]) {
+      ZonedDateTime createTime = IpLookup.getCreateTime(build.getPath());
+      if (createTime != null
+          && (latestCreateTime == null || createTime.isAfter(latestCreateTime))) {
+        latest = build.getPath();
+        latestCreateTime = createTime;
+      }
+    }
+    return latest;
+  }
+
+  /**
+   * Un-initialize lookup without leases on background thread.
+   *
+   * @param version
+   */
+  private void retire(final Version version) {
+    Runnable uninit = () -> {
+      version.ipLookup.uninit(false);
+      this.retiredVersions.incrementAndGet();
+      LOG.info("Retired IP lookup {} created at {}", version.basepath, version.createTime);
+    };
+    try {
+      this.reloader.execute(uninit);
+    } catch (RejectedExecutionException e) {
+      // Handle is closed, lookup is un-initialized by thread releasing last lease
+      uninit.run();
+    }
+  }
+
+  /**
+   * Stop polling & retire current lookup once its leases are released.
+   */
+  @Override
+  public synchronized void close() {
+    if (this.closed) {
+      return;
+    }
+    this.closed = true;
+    this.reloader.shutdown();
+    Version version = this.current.getAndSet(null);
+    if (version != null) {
+      version.leases.retire();
+    }
+  }
+
+  /**
+   * Set check of recovered lookup, lookup which fails check does not replace current lookup.
+   *
+   * @param validator
+   */
+  public void setValidator(Predicate<IpLookup> validator) {
+    this.validator = validator;
+  }
+
+  /**
+   * @return base path of current lookup, null if no lookup is recovered
+   */
+  public String getBasepath() {
+    Version version = this.current.get();
+    return (version != null) ? version.basepath : null;
+  }
+
+  /**
+   * @return create time of current lookup, null if no lookup is recovered
+   */
+  public ZonedDateTime getCreateTime() {
+    Version version = this.current.get();
+    return (version != null) ? version.createTime : null;
+  }
+
+  /**
+   * @return number of lookups which replaced current lookup, including first one
+   */
+  public int getReloads() {
+    return this.reloads.get();
+  }
+
+  /**
+   * @return number of lookups rejected as they failed to recover or validate
+   */
+  public int getFailedReloads() {
+    return this.failedReloads.get();
+  }
+
+  /**
+   * @return number of replaced lookups un-initialized once their leases were released
+   */
+  public int getRetiredVersions() {
+    return this.retiredVersions.get();
+  }
+
+  /**
+   * @return time of last successful recovery expressed in milliseconds
+   */
+  public long getLastLoadTime() {
+    return this.lastLoadTime.get();
+  }
+}
@@ -0,0 +1,224 @@
+package com.github.opentech.ipgeo;
+
+/**
+ * Parameters needed to initialize persisted IP lookup
+ * 
+ * @author bhargava.kulkarni
+ */
+public class IpLookupInitArgs {
+
+  /**
+   * Maximum number of decoded record groups held in memory, used with compressed layout.
+   * Groups are decoded per read if size is 0.
+   */
+  private int decodedGroupCacheSize = 1024;
+
+  /**
+   * Index shards loaded while initializing, remaining shards are loaded on first access.
+   * Shard of an IP address is given by {@link ShardedTrie#getShardNo(long)}.
+   */
+  private int[] preloadedIndexShards = new int[0];
+
+  /**
+   * Load all index shards while initializing, instead of shards given by
+   * {@link #setPreloadedIndexShards(int[])} only.
+   */
+  private boolean preloadIndex;
+
+  /**
+   * Number of threads recovering index slices & mapping data blocks concurrently.
+   */
+  private int recoveryThreads = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Verification of block checksums, lookups persisted without checksums are not verified.
+   */
+  private ChecksumVerification checksumVerification = ChecksumVerification.EAGER;
+
+  /**
+   * Number of blocks verified in parallel.
+   */
+  private int checksumThreads = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Page-in of memory mapped data blocks.
+   */
+  private LoadPolicy loadPolicy = LoadPolicy.EAGER;
+
+  /**
+   * Number of data blocks paged in in parallel.
+   */
+  private int loadThreads = Runtime.getRuntime().availableProcessors();
+
+  /**
+   * Name of access profile file ranking data blocks paged in first, used with
+   * {@link LoadPolicy#HOT_FIRST}. Profile is saved by {@link DataBlockLookup#saveAccessProfile}.
+   */
+  private String accessProfile;
+
+  /**
+   * Count reads per data block, so that access profile can be saved. Reads are always counted
+   * with {@link LoadPolicy#HOT_FIRST}.
+   */
+  private boolean accessProfiling;
+
+  /**
+   * Memory backing data blocks, reported by {@link IpLookup#getMemoryStatus()}.
+   */
+  private MemoryMode memoryMode = MemoryMode.MAPPED;
+
+  /**
+   * Warm up lookup by replaying sample of IP addresses before it reports initialized, see
+   * {@link LookupWarmer}.
+   */
+  private boolean warmUp;
+
+  /**
+   * Name of file of recorded IP addresses replayed by warm-up, synthetic sample drawn across
+   * index is replayed if null or not found.
+   */
+  private String warmUpSample;
+
+  /**
+   * Maximum number of IP addresses replayed per round of warm-up.
+   */
+  private int warmUpSampleSize = 10000;
+
+  /**
+   * Maximum relative change of mean latency between consecutive rounds once warm-up completes.
+   */
+  private double warmUpTolerance = 0.1;
+
+  /**
+   * Maximum time of warm-up expressed in milliseconds.
+   */
+  private long warmUpTimeout = 10000;
+
+  public int getDecodedGroupCacheSize() {
+    return decodedGroupCacheSize;
+  }
+
+  public void setDecodedGroupCacheSize(int decodedGroupCacheSize) {
+    this.decodedGroupCacheSize = decodedGroupCacheSize;
+  }
+
+  public int[] getPreloadedIndexShards() {
+    return preloadedIndexShards;
+  }
+
+  public void setPreloadedIndexShards(int[] preloadedIndexShards) {
+    this.preloadedIndexShards = preloadedIndexShards;
+  }
+
+  public boolean isPreloadIndex() {
+    return preloadIndex;
+  }
+
+  public void setPreloadIndex(boolean preloadIndex) {
+    this.preloadIndex = preloadIndex;
+  }
+
+  public int getRecoveryThreads() {
+    return recoveryThreads;
+  }
+
+  public void setRecoveryThreads(int recoveryThreads) {
+    this.recoveryThreads = recoveryThreads;
+  }
+
+  public ChecksumVerification getChecksumVerification() {
+    return checksumVerification;
+  }
+
+  public void setChecksumVerification(ChecksumVerification checksumVerification) {
+    this.checksumVerification = checksumVerification;
+  }
+
+  public int getChecksumThreads() {
+    return checksumThreads;
+  }
+
+  public void setChecksumThreads(int checksumThreads) {
+    this.checksumThreads = checksumThreads;
+  }
+
+  public LoadPolicy getLoadPolicy() {
+    return loadPolicy;
+  }
+
+  public void setLoadPolicy(LoadPolicy loadPolicy) {
+    this.loadPolicy = loadPolicy;
+  }
+
+  public int getLoadThreads() {
+    return loadThreads;
+  }
+
+  public void setLoadThreads(int loadThreads) {
+    this.loadThreads = loadThreads;
+  }
+
+  public String getAccessProfile() {
+    return accessProfile;
+  }
+
+  public void setAccessProfile(String accessProfile) {
+    this.accessProfile = accessProfile;
+  }
+
+  public boolean isAccessProfiling() {
+    return accessProfiling;
+  }
+
+  public void setAccessProfiling(boolean accessProfiling) {
+    this.accessProfiling = accessProfiling;
+  }
+
+  public MemoryMode getMemoryMode() {
+    return memoryMode;
+  }
+
+  public void setMemoryMode(MemoryMode memoryMode) {
+    this.memoryMode = memoryMode;
+  }
+
+  public boolean isWarmUp() {
+    return warmUp;
+  }
+
+  public void setWarmUp(boolean warmUp) {
+    this.warmUp = warmUp;
+  }
+
+  public String getWarmUpSample() {
+    return warmUpSample;
+  }
+
+  public void setWarmUpSample(String warmUpSample) {
+    this.warmUpSample = warmUpSample;
+  }
+
+  public int getWarmUpSampleSize() {
+    return warmUpSampleSize;
+  }
+
+  public void setWarmUpSampleSize(int warmUpSampleSize) {
+    this.warmUpSampleSize = warmUpSampleSize;
+  }
+
+  public double getWarmUpTolerance() {
+    return warmUpTolerance;
+  }
+
+  public void setWarmUpTolerance(double warmUpTolerance) {
+    this.warmUpTolerance = warmUpTolerance;
+  }
+
+  public long getWarmUpTimeout() {
+    return warmUpTimeout;
+  }
+
+  public void setWarmUpTimeout(long warmUpTimeout) {
+    this.warmUpTimeout = warmUpTimeout;
+  }
+}
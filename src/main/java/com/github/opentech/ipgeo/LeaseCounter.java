@@ -0,0 +1,97 @@
+package com.github.opentech.ipgeo;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Leases on a shared resource, e.g. mapped data block or recovered lookup. Owner of resource
+ * holds one lease until it retires resource, resource is released once it is retired & all
+ * leases are released.
+ *
+ * Acquired & released leases are counted by striped counters rather than by single counter, so
+ * that concurrent readers update counter cells of their own & do not contend on one cache line.
+ * Reader counts its lease before it checks retired flag & owner sets retired flag before it
+ * compares counts, so that either reader sees resource retired & backs off, or its lease is
+ * counted by owner & resource is released by the last reader instead.
+ *
+ * @author bhargava.kulkarni
+ */
+class LeaseCounter {
+
+  private final LongAdder acquired = new LongAdder();
+
+  private final LongAdder released = new LongAdder();
+
+  private final AtomicBoolean retired = new AtomicBoolean();
+
+  /**
+   * Set once resource is released, so that it is released only once.
+   */
+  private final AtomicBoolean drained = new AtomicBoolean();
+
+  /**
+   * Releases resource, run by thread which retires resource or releases last lease.
+   */
+  private final Runnable onDrained;
+
+  /**
+   * Constructor for the class, lease of owner is acquired.
+   *
+   * @param onDrained releases resource once it is retired & all leases are released
+   */
+  LeaseCounter(final Runnable onDrained) {
+    this.onDrained = onDrained;
+    this.acquired.increment();
+  }
+
+  /**
+   * Acquire lease unless resource is retired already.
+   *
+   * @return true if lease is acquired
+   */
+  boolean acquire() {
+    this.acquired.increment();
+    if (this.retired.get()) {
+      release();
+      return false;
+    }
+    return true;
+  }
+
+  /**
+   * Release lease, release of last lease of retired resource releases resource.
+   */
+  void release() {
+    this.released.increment();
+    if (this.retired.get()) {
+      drain();
+    }
+  }
+
+  /**
+   * Retire resource & release lease of owner. Repeated calls have no effect.
+   */
+  void retire() {
+    if (this.retired.compareAndSet(false, true)) {
+      release();
+    }
+  }
+
+  /**
+   * Release resource if no lease is held. Released leases are summed before acquired leases, so
+   * that lease released in between is not counted without being acquired.
+   */
+  private void drain() {
+    long releasedLeases = this.released.sum();
+    if (releasedLeases == this.acquired.sum() && this.drained.compareAndSet(false, true)) {
+      this.onDrained.run();
+    }
+  }
+
+  /**
+   * @return number of leases, 0 once resource is released
+   */
+  int getLeases() {
+    return this.drained.get() ? 0 : (int) (this.acquired.sum() - this.released.sum());
+  }
+}
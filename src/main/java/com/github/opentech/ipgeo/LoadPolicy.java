@@ -0,0 +1,33 @@
+package com.github.opentech.ipgeo;
+
+/**
+ * Page-in of memory mapped data blocks while recovering persisted IP lookup.
+ *
+ * @author bhargava.kulkarni
+ */
+public enum LoadPolicy {
+
+  /**
+   * All blocks are paged in before lookup is initialized, so that no read faults in pages.
+   * Recovery takes longer by time needed to read whole data once.
+   */
+  EAGER,
+
+  /**
+   * Blocks are not paged in, pages are faulted in by reads on first access.
+   */
+  LAZY,
+
+  /**
+   * Blocks are paged in by background threads once lookup is initialized, so that lookup serves
+   * at once & rarely read blocks do not delay recovery.
+   */
+  BACKGROUND,
+
+  /**
+   * Blocks ranked by saved access profile are paged in before lookup is initialized, in order of
+   * rank, remaining blocks are paged in by background threads afterwards. Without profile same as
+   * {@link #BACKGROUND}.
+   */
+  HOT_FIRST
+}
@@ -14,6 +14,10 @@ public class LookupConstants {
   public static final String DATA_FILE_NAME = "data";
   public static final String INDEX_FILE_NAME = "index";
   public static final String METADATA_FILE_NAME = "metadata";
+  public static final String STRINGS_FILE_NAME = "strings";
+  public static final String DELTA_FILE_NAME = "delta";
+  public static final String OVERLAY_FILE_NAME = "overlay";
+  public static final String CHECKSUMS_FILE_NAME = "checksums";
   public static String COLON = ":";
   public static String CREATED_BY = "created_by";
   public static String CREATED_AT = "created_at";
@@ -23,4 +27,18 @@ public class LookupConstants {
   public static String LINES_PER_DATABLOCK = "lines_per_datablock";
   public static String TOTAL_DATABLOCK_LINES = "total_datablock_lines";
   public static String DATABLOCK_OFFSET_BITS = "datablock_offset_bits";
+  public static String COLUMN_PACKING = "column_packing";
+  public static String TOTAL_STRINGS = "total_strings";
+  public static String TOTAL_SOURCE_RECORDS = "total_source_records";
+  public static String DEDUP_RATIO = "dedup_ratio";
+  public static String DATA_LAYOUT = "data_layout";
+  public static String RECORDS_PER_GROUP = "records_per_group";
+  public static String COMPRESSION_RATIO = "compression_ratio";
+  public static String INDEX_SHARD_BITS = "index_shard_bits";
+  public static String INDEX_SHARD_SIZES = "index_shard_sizes";
+  public static String DELTA_GENERATION = "delta_generation";
+  public static String DELTA_RANGES = "delta_ranges";
+  public static String OVERLAY_SIZE = "overlay_size";
+  public static String SCHEMA_FINGERPRINT = "schema_fingerprint";
+  public static final String NULL_VALUE = "\\N";
 }
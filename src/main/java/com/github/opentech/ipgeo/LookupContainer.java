@@ -0,0 +1,329 @@
+package com.github.opentech.ipgeo;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.ZonedDateTime;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Persisted IP lookup packed into single file, so that lookup is distributed & atomically
+ * replaced by single file operation. Files of lookup directory are stored as sections of
+ * container & mapped in place on recovery.
+ *
+ * Container starts with fixed header [magic][version][schema fingerprint][data layout][create
+ * time seconds][create time nanos][section count] followed by section table, per section
+ * [name][position][length]. Names are ASCII, zero padded to {@link #NAME_SIZE} bytes. Sections
+ * start at page boundaries. All numbers are big endian.
+ *
+ * @author bhargava.kulkarni
+ */
+public class LookupContainer {
+
+  /**
+   * Magic number identifying container, "IPGC".
+   */
+  public static final int MAGIC = 0x49504743;
+
+  public static final int VERSION = 1;
+
+  /**
+   * Size of section name expressed in bytes.
+   */
+  private static final int NAME_SIZE = 32;
+
+  /**
+   * Size of fixed part of header & of section table entry expressed in bytes.
+   */
+  private static final int HEADER_SIZE = 5 * Integer.BYTES + 2 * Long.BYTES,
+      SECTION_SIZE = NAME_SIZE + 2 * Long.BYTES;
+
+  /**
+   * Alignment of sections expressed in bytes.
+   */
+  private static final int SECTION_ALIGNMENT = 4096;
+
+  /**
+   * Fingerprint stored when packed lookup has none.
+   */
+  private static final long NO_FINGERPRINT = -1;
+
+  /**
+   * Suffix of container written before it atomically replaces previous container.
+   */
+  private static final String TEMP_SUFFIX = ".tmp";
+
+  /**
+   * Name of the file.
+   */
+  private String filename;
+
+  private long fingerprint;
+
+  private DataLayout dataLayout;
+
+  private ZonedDateTime createTime;
+
+  /**
+   * Sections by name, in order of position.
+   */
+  private Map<String, Section> sections = new LinkedHashMap<String, Section>();
+
+  /**
+   * Contiguous portion of file.
+   */
+  public static class Section {
+
+    private String filename;
+    private long position;
+    private long length;
+
+    /**
+     * Constructor for the class
+     *
+     * @param filename name of file holding section
+     * @param position starting position within file expressed in bytes
+     * @param length length expressed in bytes
+     */
+    public Section(String filename, long position, long length) {
+      this.filename = filename;
+      this.position = position;
+      this.length = length;
+    }
+
+    public String getFilename() {
+      return this.filename;
+    }
+
+    public long getPosition() {
+      return this.position;
+    }
+
+    public long getLength() {
+      return this.length;
+    }
+  }
+
+  /**
+   * Constructor for the class, reads header of container.
+   *
+   * @param filename name of container file
+   * @throws IOException
+   */
+  public LookupContainer(final String filename) throws IOException {
+    this.filename = filename;
+    try (RandomAccessFile containerReader = new RandomAccessFile(filename, "r");
+        FileChannel channel = containerReader.getChannel()) {
+      long length = channel.size();
+      ByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0,
+          Math.min(length, SECTION_ALIGNMENT));
+      if (length < HEADER_SIZE || header.getInt(0) != MAGIC) {
+        throw new IllegalStateException("Invalid IP lookup container " + filename);
+      }
+      int version = header.getInt(Integer.BYTES);
+      if (version != VERSION) {
+        throw new IllegalStateException("Unsupported IP lookup container " + filename
+            + " Reason: version " + version);
+      }
+      this.fingerprint = header.getLong(2 * Integer.BYTES);
+      this.dataLayout = DataLayout.values()[header.getInt(2 * Integer.BYTES + Long.BYTES)];
+      this.createTime = ZonedDateTime.ofInstant(Instant.ofEpochSecond(
+          header.getLong(3 * Integer.BYTES + Long.BYTES),
+          header.getInt(3 * Integer.BYTES + 2 * Long.BYTES)), ZoneOffset.UTC);
+      int count = header.getInt(4 * Integer.BYTES + 2 * Long.BYTES);
+      if (count < 0 || HEADER_SIZE + (long) count * SECTION_SIZE > length) {
+        throw new IllegalStateException("Invalid IP lookup container " + filename
+            + " Reason: " + count + " sections");
+      }
+      if (HEADER_SIZE + count * SECTION_SIZE > header.limit()) {
+        header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE + count * SECTION_SIZE);
+      }
+      byte[] name = new byte[NAME_SIZE];
+      for (int i = 0; i < count; i++) {
+        header.position(HEADER_SIZE + i * SECTION_SIZE);
+        header.get(name);
+        int nameLength = 0;
+        while (nameLength < NAME_SIZE && name[nameLength] != 0) {
+          nameLength++;
+        }
+        long position = header.getLong();
+        long sectionLength = header.getLong();
+        if (position < 0 || sectionLength < 0 || position + sectionLength > length) {
+          throw new IllegalStateException("Truncated IP lookup container " + filename);
+        }
+        this.sections.put(new String(name, 0, nameLength, StandardCharsets.US_ASCII),
+            new Section(filename, position, sectionLength));
+      }
+    }
+  }
+
+  /**
+   * Check whether file is container.
+   *
+   * @param filename
+   * @return true if file starts with magic number of container
+   */
+  public static boolean isContainer(final String filename) {
+    File file = new File(filename);
+    if (!file.isFile() || file.length() < HEADER_SIZE) {
+      return false;
+    }
+    try (RandomAccessFile containerReader = new RandomAccessFile(file, "r")) {
+      return containerReader.readInt() == MAGIC;
+    } catch (IOException e) {
+      return false;
+    }
+  }
+
+  /**
+   * Pack persisted IP lookup into container. Container is written to temporary file which then
+   * atomically replaces previous container. Lookup directory is left as is.
+   *
+   * @param basepath directory of persisted lookup
+   * @param target name of container file
+   * @param metadata metadata of persisted lookup
+   * @throws IOException
+   */
+  static void pack(final String basepath, final String target, final Map<String, String> metadata)
+      throws IOException {
+    File[] files = new File(basepath).listFiles(
+        file -> file.isFile() && !file.getName().endsWith(TEMP_SUFFIX));
+    if (files == null) {
+      throw new IllegalArgumentException("IP lookup directory " + basepath + " not found");
+    }
+    Arrays.sort(files);
+    String fingerprint = metadata.get(LookupConstants.SCHEMA_FINGERPRINT);
+    ZonedDateTime createTime = ZonedDateTime.parse(metadata.get(LookupConstants.CREATED_AT));
+    DataLayout dataLayout = DataLayout
+        .valueOf(metadata.getOrDefault(LookupConstants.DATA_LAYOUT, DataLayout.ROW.name()));
+
+    ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE + files.length * SECTION_SIZE);
+    header.putInt(MAGIC);
+    header.putInt(VERSION);
+    header.putLong((fingerprint != null) ? Long.parseLong(fingerprint, 16) : NO_FINGERPRINT);
+    header.putInt(dataLayout.ordinal());
+    header.putLong(createTime.toEpochSecond());
+    header.putInt(createTime.getNano());
+    header.putInt(files.length);
+    long position = align(header.capacity());
+    for (File file : files) {
+      byte[] name = file.getName().getBytes(StandardCharsets.US_ASCII);
+      if (name.length > NAME_SIZE) {
+        throw new IllegalArgumentException("Name of file " + file + " exceeds " + NAME_SIZE
+            + " bytes");
+      }
+      header.put(Arrays.copyOf(name, NAME_SIZE));
+      header.putLong(position);
+      header.putLong(file.length());
+      position = align(position + file.length());
+    }
+    header.flip();
+
+    String tempTarget = target + TEMP_SUFFIX;
+    try (RandomAccessFile containerWriter = new RandomAccessFile(tempTarget, "rw");
+        FileChannel channel = containerWriter.getChannel()) {
+      channel.truncate(0);
+      channel.write(header, 0);
+      for (int i = 0; i < files.length; i++) {
+        long sectionPosition = header.getLong(HEADER_SIZE + i * SECTION_SIZE + NAME_SIZE);
+        try (RandomAccessFile fileReader = new RandomAccessFile(files[i], "r");
+            FileChannel fileChannel = fileReader.getChannel()) {
+          long length = fileChannel.size();
+          for (long copied = 0; copied < length;) {
+            copied += fileChannel.transferTo(copied, length - copied, channel.position(
+                sectionPosition + copied));
+          }
+        }
+      }
+      channel.force(true);
+    }
+    Files.move(Paths.get(tempTarget), Paths.get(target), StandardCopyOption.ATOMIC_MOVE,
+        StandardCopyOption.REPLACE_EXISTING);
+  }
+
+  private static long align(long position) {
+    return (position + SECTION_ALIGNMENT - 1) & -SECTION_ALIGNMENT;
+  }
+
+  /**
+   * Locate file of persisted lookup, either within container or as separate file.
+   *
+   * @param container container of lookup, null if lookup is persisted as directory
+   * @param filename name of file within lookup directory, only last path element is used to
+   *        locate section of container
+   * @return location of file
+   * @throws IllegalStateException if container has no such section
+   */
+  public static Section locate(final LookupContainer container, final String filename) {
+    if (container == null) {
+      return new Section(filename, 0, new File(filename).length());
+    }
+    Section section = container.getSection(new File(filename).getName());
+    if (section == null) {
+      throw new IllegalStateException("Section " + new File(filename).getName()
+          + " not found in IP lookup container " + container.getFilename());
+    }
+    return section;
+  }
+
+  /**
+   * Read whole section, intended for small sections e.g. metadata.
+   *
+   * @param name name of section
+   * @return content of section
+   * @throws IOException
+   */
+  public byte[] readSection(String name) throws IOException {
+    Section section = locate(this, name);
+    byte[] content = new byte[(int) section.getLength()];
+    try (RandomAccessFile containerReader = new RandomAccessFile(this.filename, "r")) {
+      containerReader.seek(section.getPosition());
+      containerReader.readFully(content);
+    }
+    return content;
+  }
+
+  /**
+   * @param name name of section, same as name of file in lookup directory
+   * @return section, null if container has no such section
+   */
+  public Section getSection(String name) {
+    return this.sections.get(name);
+  }
+
+  /**
+   * @return names of sections, in order of position
+   */
+  public String[] getSectionNames() {
+    return this.sections.keySet().toArray(new String[this.sections.size()]);
+  }
+
+  public String getFilename() {
+    return this.filename;
+  }
+
+  /**
+   * @return fingerprint of schema lookup is built with, null if lookup has none
+   */
+  public String getFingerprint() {
+    return (this.fingerprint == NO_FINGERPRINT) ? null : String.format("%08x", this.fingerprint);
+  }
+
+  public DataLayout getDataLayout() {
+    return this.dataLayout;
+  }
+
+  public ZonedDateTime getCreateTime() {
+    return this.createTime;
+  }
+}
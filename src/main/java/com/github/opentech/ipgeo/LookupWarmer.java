@@ -0,0 +1,273 @@
+package com.github.opentech.ipgeo;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Warms up recovered IP lookup before it reports ready, by replaying sample of IP addresses
+ * through full match & record read path in rounds until latency of a round stabilizes. Replay
+ * gets match path compiled & faults in index & data pages read by sample, so that first real
+ * lookups neither run interpreted code nor fault in pages. Recorded sample of real traffic
+ * touches hottest pages, synthetic sample is drawn across index.
+ *
+ * Recorded sample is a file of one IPv4 address per line, e.g. extracted from access logs.
+ *
+ * @author bhargava.kulkarni
+ */
+public class LookupWarmer {
+
+  /**
+   * Logger for the class
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(LookupWarmer.class);
+
+  /**
+   * Minimum number of rounds, latency of first round is latency of cold lookup.
+   */
+  private static final int MIN_ROUNDS = 3;
+
+  /**
+   * Percentile of lookup latency reported per round.
+   */
+  private static final double PERCENTILE = 0.99;
+
+  /**
+   * IP addresses replayed per round.
+   */
+  private String[] sample;
+
+  /**
+   * Maximum relative change of mean latency between consecutive rounds of stable latency.
+   */
+  private double tolerance;
+
+  /**
+   * Maximum time of warm-up expressed in milliseconds.
+   */
+  private long timeout;
+
+  private int rounds;
+
+  private long matches;
+
+  private boolean stable;
+
+  /**
+   * Elapsed time of warm-up expressed in nanoseconds.
+   */
+  private long warmUpTime;
+
+  /**
+   * Mean & percentile latency of first & last round expressed in nanoseconds.
+   */
+  private long initialMean, initialPercentile, finalMean, finalPercentile;
+
+  /**
+   * Constructor for the class
+   *
+   * @param sample IP addresses replayed per round
+   * @param tolerance maximum relative change of mean latency between consecutive rounds of stable
+   *        latency, e.g. 0.1
+   * @param timeout maximum time of warm-up expressed in milliseconds
+   */
+  public LookupWarmer(String[] sample, double tolerance, long timeout) {
+    this.sample = sample;
+    this.tolerance = tolerance;
+    this.timeout = timeout;
+  }
+
+  /**
+   * Replay sample through lookup until mean latency of consecutive rounds differs by at most
+   * tolerance, or until timeout.
+   *
+   * @param ipLookup recovered lookup
+   */
+  public void run(IpLookup ipLookup) {
+    long warmUpStart = System.nanoTime();
+    long deadline = warmUpStart + TimeUnit.MILLISECONDS.toNanos(this.timeout);
+    long[] latencies = new long[this.sample.length];
+    long previousMean = -1;
+    while (this.sample.length > 0) {
+      long roundMatches = 0;
+      for (int i = 0; i < this.sample.length; i++) {
+        long lookupStart = System.nanoTime();
+        DataRecord dataRecord = ipLookup.match(this.sample[i]);
+        latencies[i] = System.nanoTime() - lookupStart;
+        if (dataRecord != null) {
+          roundMatches++;
+        }
+      }
+      this.rounds++;
+      this.matches += roundMatches;
+      long mean = Arrays.stream(latencies).sum() / latencies.length;
+      Arrays.sort(latencies);
+      long percentile = latencies[(int) (PERCENTILE * (latencies.length - 1))];
+      if (this.rounds == 1) {
+        this.initialMean = mean;
+        this.initialPercentile = percentile;
+      }
+      this.finalMean = mean;
+      this.finalPercentile = percentile;
+      this.stable = this.rounds >= MIN_ROUNDS
+          && Math.abs(mean - previousMean) <= this.tolerance * previousMean;
+      if (this.stable || System.nanoTime() > deadline) {
+        break;
+      }
+      previousMean = mean;
+    }
+    this.warmUpTime = System.nanoTime() - warmUpStart;
+    LOG.info("Warmed up IP lookup {}", this);
+  }
+
+  /**
+   * Read recorded sample, lines which are not IPv4 addresses are skipped.
+   *
+   * @param filename name of sample file
+   * @param size maximum number of addresses, addresses beyond are ignored
+   * @return addresses, empty if there is no sample
+   * @throws IOException
+   */
+  public static String[] readSample(final String filename, int size) throws IOException {
+    if (filename == null || !new File(filename).isFile()) {
+      LOG.info("Warm-up sample {} not found", filename);
+      return new String[0];
+    }
+    List<String> sample = new ArrayList<String>();
+    try (BufferedReader sampleReader = new BufferedReader(new FileReader(filename))) {
+      String line;
+      while (sample.size() < size && (line = sampleReader.readLine()) != null) {
+        line = line.trim();
+        if (isAddress(line)) {
+          sample.add(line);
+        }
+      }
+    }
+    return sample.toArray(new String[sample.size()]);
+  }
+
+  private static boolean isAddress(String line) {
+    String[] octets = line.split("\\.", -1);
+    if (octets.length != 4) {
+      return false;
+    }
+    for (String octet : octets) {
+      if (octet.isEmpty() || octet.length() > 3 || !octet.chars().allMatch(Character::isDigit)
+          || Integer.parseInt(octet) > 255) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Draw synthetic sample across index, shards are drawn in proportion to their size so that
+   * most addresses fall into populated address space.
+   *
+   * @param size number of addresses
+   * @param index index of lookup
+   * @param seed seed of random addresses
+   * @return addresses
+   */
+  public static String[] syntheticSample(int size, ShardedTrie index, long seed) {
+    int[] shardSizes = index.getShardSizes();
+    long[] cumulativeSizes = new long[shardSizes.length];
+    long totalSize = 0;
+    for (int shard = 0; shard < shardSizes.length; shard++) {
+      totalSize += shardSizes[shard];
+      cumulativeSizes[shard] = totalSize;
+    }
+    int hostBits = Integer.SIZE - index.getShardBits();
+    Random random = new Random(seed);
+    String[] sample = new String[size];
+    for (int i = 0; i < size; i++) {
+      int shard = 0;
+      if (totalSize > 0) {
+        long drawn = (long) (random.nextDouble() * totalSize);
+        shard = Arrays.binarySearch(cumulativeSizes, drawn + 1);
+        shard = (shard < 0) ? -shard - 1 : shard;
+      }
+      long address = ((long) shard << hostBits)
+          | (random.nextInt() & 0xFFFFFFFFL & ((1L << hostBits) - 1));
+      sample[i] = (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "."
+          + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+    return sample;
+  }
+
+  /**
+   * @return number of replayed rounds
+   */
+  public int getRounds() {
+    return this.rounds;
+  }
+
+  /**
+   * @return number of replayed lookups which matched a record
+   */
+  public long getMatches() {
+    return this.matches;
+  }
+
+  /**
+   * @return true if latency stabilized before timeout
+   */
+  public boolean isStable() {
+    return this.stable;
+  }
+
+  /**
+   * @return elapsed time of warm-up expressed in nanoseconds
+   */
+  public long getWarmUpTime() {
+    return this.warmUpTime;
+  }
+
+  /**
+   * @return mean latency of first round, i.e. before warm-up, expressed in nanoseconds
+   */
+  public long getInitialMean() {
+    return this.initialMean;
+  }
+
+  /**
+   * @return 99th percentile latency of first round expressed in nanoseconds
+   */
+  public long getInitialPercentile() {
+    return this.initialPercentile;
+  }
+
+  /**
+   * @return mean latency of last round, i.e. after warm-up, expressed in nanoseconds
+   */
+  public long getFinalMean() {
+    return this.finalMean;
+  }
+
+  /**
+   * @return 99th percentile latency of last round expressed in nanoseconds
+   */
+  public long getFinalPercentile() {
+    return this.finalPercentile;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT,
+        "LookupWarmer [sample=%d, rounds=%d, matches=%d, stable=%b, warmUpTime=%d ms,"
+            + " initialMean=%d ns, initialP99=%d ns, finalMean=%d ns, finalP99=%d ns]",
+        this.sample.length, this.rounds, this.matches, this.stable,
+        TimeUnit.NANOSECONDS.toMillis(this.warmUpTime), this.initialMean,
+        this.initialPercentile, this.finalMean, this.finalPercentile);
+  }
+}
@@ -0,0 +1,25 @@
+package com.github.opentech.ipgeo;
+
+/**
+ * Memory backing data blocks of persisted IP lookup once it is recovered. Index is held on
+ * heap in either mode, so that it is backed by huge pages once JVM runs with
+ * -XX:+UseTransparentHugePages or -XX:+UseLargePages.
+ *
+ * @author bhargava.kulkarni
+ */
+public enum MemoryMode {
+
+  /**
+   * Data blocks are memory mapped files. Pages are shared with page cache & may be evicted under
+   * memory pressure, so that evicted pages fault in from disk on next read.
+   */
+  MAPPED,
+
+  /**
+   * Data blocks are copied into anonymous off-heap memory & mappings are released. Pages are not
+   * evicted from page cache, i.e. stay resident unless swapped out, & are backed by transparent
+   * huge pages when system enables them for all anonymous memory. Data occupies memory twice
+   * while copied. Block falls back to mapping if direct memory limit of JVM is exceeded.
+   */
+  ANONYMOUS
+}
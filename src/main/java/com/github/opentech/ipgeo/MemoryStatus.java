@@ -0,0 +1,227 @@
+package com.github.opentech.ipgeo;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.List;
+import java.util.Locale;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.sun.management.HotSpotDiagnosticMXBean;
+
+/**
+ * Memory backing recovered IP lookup, i.e. requested & active {@link MemoryMode} of data blocks
+ * together with huge page & swap settings of system & JVM which decide whether pages are huge
+ * & stay resident. Settings are read through /sys, /proc & JVM management interface, settings
+ * which are not available, e.g. on other platforms than Linux, are reported as unknown.
+ *
+ * @author bhargava.kulkarni
+ */
+public class MemoryStatus {
+
+  /**
+   * Logger for the class
+   */
+  private static final Logger LOG = LoggerFactory.getLogger(MemoryStatus.class);
+
+  /**
+   * Setting of transparent huge pages of system, reported if setting is not available.
+   */
+  public static final String UNKNOWN = "unknown";
+
+  private static final String TRANSPARENT_HUGE_PAGES =
+      "/sys/kernel/mm/transparent_hugepage/enabled";
+
+  private static final String MEMINFO = "/proc/meminfo";
+
+  private static final String SWAP_TOTAL = "SwapTotal:";
+
+  private MemoryMode requestedMode;
+
+  /**
+   * Size of data blocks & of data blocks copied into anonymous memory expressed in bytes.
+   */
+  private long dataSize, anonymousSize;
+
+  /**
+   * Setting of transparent huge pages of system, i.e. always, madvise, never or unknown.
+   */
+  private String transparentHugePages;
+
+  /**
+   * True if JVM backs heap, i.e. index, by huge pages.
+   */
+  private boolean heapLargePages;
+
+  /**
+   * Size of swap space expressed in bytes, -1 if unknown.
+   */
+  private long swapTotal;
+
+  /**
+   * Constructor for the class, reads settings of system & JVM.
+   *
+   * @param requestedMode requested memory mode of data blocks
+   * @param dataSize size of data blocks expressed in bytes
+   * @param anonymousSize size of data blocks copied into anonymous memory expressed in bytes
+   */
+  public MemoryStatus(MemoryMode requestedMode, long dataSize, long anonymousSize) {
+    this.requestedMode = requestedMode;
+    this.dataSize = dataSize;
+    this.anonymousSize = anonymousSize;
+    this.transparentHugePages = readTransparentHugePages();
+    this.heapLargePages = readHeapLargePages();
+    this.swapTotal = readSwapTotal();
+  }
+
+  private static String readTransparentHugePages() {
+    try {
+      return parseTransparentHugePages(
+          new String(Files.readAllBytes(Paths.get(TRANSPARENT_HUGE_PAGES)), "US-ASCII"));
+    } catch (IOException | RuntimeException e) {
+      return UNKNOWN;
+    }
+  }
+
+  /**
+   * Parse setting of transparent huge pages, e.g. "always [madvise] never".
+   *
+   * @param setting
+   * @return selected setting, unknown if none is selected
+   */
+  static String parseTransparentHugePages(String setting) {
+    int start = setting.indexOf('[');
+    int end = setting.indexOf(']', start + 1);
+    return (start < 0 || end < 0) ? UNKNOWN : setting.substring(start + 1, end);
+  }
+
+  private static boolean readHeapLargePages() {
+    try {
+      HotSpotDiagnosticMXBean diagnostics =
+          ManagementFactory.getPlatformMXBean(HotSpotDiagnosticMXBean.class);
+      if (Boolean.parseBoolean(diagnostics.getVMOption("UseLargePages").getValue())) {
+        return true;
+      }
+      return Boolean
+          .parseBoolean(diagnostics.getVMOption("UseTransparentHugePages").getValue());
+    } catch (RuntimeException | LinkageError e) {
+      // Option is not supported by JVM or platform
+      return false;
+    }
+  }
+
+  private static long readSwapTotal() {
+    try {
+      return parseSwapTotal(Files.readAllLines(Paths.get(MEMINFO)));
+    } catch (IOException | RuntimeException e) {
+      return -1;
+    }
+  }
+
+  /**
+   * Parse size of swap space from lines of meminfo, e.g. "SwapTotal:  2097148 kB".
+   *
+   * @param meminfo
+   * @return size expressed in bytes, -1 if not found
+   */
+  static long parseSwapTotal(List<String> meminfo) {
+    for (String line : meminfo) {
+      if (line.startsWith(SWAP_TOTAL)) {
+        String[] tokens = line.substring(SWAP_TOTAL.length()).trim().split("\\s+");
+        return Long.parseLong(tokens[0]) * ((tokens.length > 1) ? 1024 : 1);
+      }
+    }
+    return -1;
+  }
+
+  /**
+   * Log status, mode which falls short of requested mode is logged as error.
+   *
+   * @param basepath persisted lookup
+   */
+  public void log(String basepath) {
+    if (this.requestedMode != getActiveMode()) {
+      LOG.error("IP lookup {} falls back to memory mode {} {}", basepath, getActiveMode(), this);
+    } else {
+      LOG.info("IP lookup {} {}", basepath, this);
+    }
+  }
+
+  public MemoryMode getRequestedMode() {
+    return this.requestedMode;
+  }
+
+  /**
+   * @return {@link MemoryMode#ANONYMOUS} if all data blocks are copied into anonymous memory
+   */
+  public MemoryMode getActiveMode() {
+    return (this.anonymousSize > 0 && this.anonymousSize == this.dataSize) ? MemoryMode.ANONYMOUS
+        : MemoryMode.MAPPED;
+  }
+
+  /**
+   * @return size of data blocks expressed in bytes
+   */
+  public long getDataSize() {
+    return this.dataSize;
+  }
+
+  /**
+   * @return size of data blocks copied into anonymous memory expressed in bytes
+   */
+  public long getAnonymousSize() {
+    return this.anonymousSize;
+  }
+
+  /**
+   * @return setting of transparent huge pages of system, i.e. always, madvise, never or unknown
+   */
+  public String getTransparentHugePages() {
+    return this.transparentHugePages;
+  }
+
+  /**
+   * @return true if data copied into anonymous memory is backed by transparent huge pages, i.e.
+   *         system enables them for all anonymous memory. JVM does not advise memory for huge
+   *         pages, so that madvise setting does not apply.
+   */
+  public boolean isDataHugePages() {
+    return this.anonymousSize > 0 && "always".equals(this.transparentHugePages);
+  }
+
+  /**
+   * @return true if JVM backs heap, i.e. index, by huge pages
+   */
+  public boolean isHeapLargePages() {
+    return this.heapLargePages;
+  }
+
+  /**
+   * @return size of swap space expressed in bytes, -1 if unknown
+   */
+  public long getSwapTotal() {
+    return this.swapTotal;
+  }
+
+  /**
+   * @return true if all data blocks stay resident, i.e. are copied into anonymous memory which
+   *         can not be swapped out as there is no swap space
+   */
+  public boolean isDataResident() {
+    return getActiveMode() == MemoryMode.ANONYMOUS && this.swapTotal == 0;
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT,
+        "MemoryStatus [requestedMode=%s, activeMode=%s, dataSize=%d, anonymousSize=%d,"
+            + " transparentHugePages=%s, dataHugePages=%b, heapLargePages=%b, swapTotal=%d,"
+            + " dataResident=%b]",
+        this.requestedMode, getActiveMode(), this.dataSize, this.anonymousSize,
+        this.transparentHugePages, isDataHugePages(), this.heapLargePages, this.swapTotal,
+        isDataResident());
+  }
+}
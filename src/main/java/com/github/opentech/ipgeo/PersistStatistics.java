@@ -0,0 +1,191 @@
+package com.github.opentech.ipgeo;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of IP lookup persist, collected per pipeline stage. Busy time of a stage excludes
+ * time spent waiting for other stages, so that throughput of each stage shows which stage
+ * bounds the build.
+ * 
+ * @author bhargava.kulkarni
+ */
+public class PersistStatistics {
+
+  /**
+   * Number of parse workers.
+   */
+  private int threads;
+
+  /**
+   * Size of source expressed in bytes.
+   */
+  private AtomicLong sourceBytes = new AtomicLong();
+
+  /**
+   * Number of source lines.
+   */
+  private AtomicLong sourceLines = new AtomicLong();
+
+  /**
+   * Busy time of reader stage expressed in nanoseconds.
+   */
+  private AtomicLong readTime = new AtomicLong();
+
+  /**
+   * Busy time of parse stage summed across workers expressed in nanoseconds.
+   */
+  private AtomicLong parseTime = new AtomicLong();
+
+  /**
+   * Busy time of commit stage expressed in nanoseconds.
+   */
+  private AtomicLong commitTime = new AtomicLong();
+
+  /**
+   * Size of data written expressed in bytes.
+   */
+  private AtomicLong dataBytes = new AtomicLong();
+
+  /**
+   * Busy time of background data writes expressed in nanoseconds.
+   */
+  private AtomicLong writeTime = new AtomicLong();
+
+  /**
+   * Time of checksumming persisted files expressed in nanoseconds.
+   */
+  private AtomicLong checksumTime = new AtomicLong();
+
+  /**
+   * Elapsed time of persist expressed in nanoseconds.
+   */
+  private AtomicLong totalTime = new AtomicLong();
+
+  /**
+   * Constructor for the class
+   * 
+   * @param threads number of parse workers
+   */
+  public PersistStatistics(int threads) {
+    this.threads = threads;
+  }
+
+  public void addRead(long bytes, long time) {
+    this.sourceBytes.addAndGet(bytes);
+    this.readTime.addAndGet(time);
+  }
+
+  public void addParse(long lines, long time) {
+    this.sourceLines.addAndGet(lines);
+    this.parseTime.addAndGet(time);
+  }
+
+  public void addCommit(long time) {
+    this.commitTime.addAndGet(time);
+  }
+
+  public void addWrite(long bytes, long time) {
+    this.dataBytes.addAndGet(bytes);
+    this.writeTime.addAndGet(time);
+  }
+
+  public void setChecksumTime(long checksumTime) {
+    this.checksumTime.set(checksumTime);
+  }
+
+  public void setTotalTime(long totalTime) {
+    this.totalTime.set(totalTime);
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public long getSourceBytes() {
+    return sourceBytes.get();
+  }
+
+  public long getSourceLines() {
+    return sourceLines.get();
+  }
+
+  public long getReadTime() {
+    return readTime.get();
+  }
+
+  public long getParseTime() {
+    return parseTime.get();
+  }
+
+  public long getCommitTime() {
+    return commitTime.get();
+  }
+
+  public long getDataBytes() {
+    return dataBytes.get();
+  }
+
+  public long getWriteTime() {
+    return writeTime.get();
+  }
+
+  public long getChecksumTime() {
+    return checksumTime.get();
+  }
+
+  public long getTotalTime() {
+    return totalTime.get();
+  }
+
+  /**
+   * @return source bytes handed out by reader per second of reader busy time
+   */
+  public double getReadThroughput() {
+    return perSecond(getSourceBytes(), getReadTime());
+  }
+
+  /**
+   * @return lines parsed per second of parse stage, with workers running in parallel
+   */
+  public double getParseThroughput() {
+    return perSecond(getSourceLines(), getParseTime() / Math.max(this.threads, 1));
+  }
+
+  /**
+   * @return lines committed per second of committer busy time
+   */
+  public double getCommitThroughput() {
+    return perSecond(getSourceLines(), getCommitTime());
+  }
+
+  /**
+   * @return data bytes written per second of background writer busy time
+   */
+  public double getWriteThroughput() {
+    return perSecond(getDataBytes(), getWriteTime());
+  }
+
+  /**
+   * @return lines persisted per second of elapsed time
+   */
+  public double getTotalThroughput() {
+    return perSecond(getSourceLines(), getTotalTime());
+  }
+
+  private static double perSecond(long count, long time) {
+    return (time <= 0) ? 0 : ((double) count * TimeUnit.SECONDS.toNanos(1) / time);
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT,
+        "PersistStatistics [threads=%d, sourceBytes=%d, sourceLines=%d, readThroughput=%.0f B/s,"
+            + " parseThroughput=%.0f lines/s, commitThroughput=%.0f lines/s, dataBytes=%d,"
+            + " writeThroughput=%.0f B/s, checksumTime=%d ms, totalThroughput=%.0f lines/s]",
+        this.threads, getSourceBytes(), getSourceLines(), getReadThroughput(),
+        getParseThroughput(), getCommitThroughput(), getDataBytes(), getWriteThroughput(),
+        TimeUnit.NANOSECONDS.toMillis(getChecksumTime()), getTotalThroughput());
+  }
+}
@@ -0,0 +1,312 @@
+package com.github.opentech.ipgeo;
+
+import java.nio.ByteBuffer;
+
+import com.github.opentech.ipgeo.Schema.Column;
+
+/**
+ * Fixed number of consecutive records encoded column by column, used with compressed layout.
+ * Each column of a group is encoded either as frame of reference (offset from column minimum)
+ * or as delta (zigzag encoded difference from previous value), whichever needs fewer bits.
+ * Column chunk is laid out as [flags] -> [bits] -> [base] -> [null bitmap] -> [packed values],
+ * where null bitmap is present only if group has null values for column.
+ *
+ * @author bhargava.kulkarni
+ */
+public class RecordGroup {
+
+  /**
+   * Flag to indicate column chunk is delta encoded.
+   */
+  private static final int DELTA_ENCODED = 0x01;
+
+  /**
+   * Flag to indicate column chunk has null bitmap.
+   */
+  private static final int HAS_NULLS = 0x02;
+
+  /**
+   * Size of column chunk header expressed in bytes.
+   */
+  private static final int HEADER_SIZE = 2 + Long.BYTES;
+
+  /**
+   * Decoded raw values per column.
+   */
+  private long[][] values;
+
+  /**
+   * Decoded null flags per column, null if column has no null values in group.
+   */
+  private boolean[][] nulls;
+
+  /**
+   * Constructor for the class
+   *
+   * @param values raw values per column
+   * @param nulls null flags per column
+   */
+  private RecordGroup(long[][] values, boolean[][] nulls) {
+    this.values = values;
+    this.nulls = nulls;
+  }
+
+  /**
+   * Get raw value of column
+   *
+   * @param record record offset within group
+   * @param column column index
+   * @return raw value, same as {@link DataRecord#readRaw(int)}
+   */
+  public long get(int record, int column) {
+    return this.values[column][record];
+  }
+
+  /**
+   * Check whether value of column is null
+   *
+   * @param record record offset within group
+   * @param column column index
+   * @return true if value is null
+   */
+  public boolean isNull(int record, int column) {
+    return this.nulls[column] != null && this.nulls[column][record];
+  }
+
+  /**
+   * Encode group of records.
+   *
+   * @param schema
+   * @param values raw values per column
+   * @param nulls null flags per column
+   * @param records number of records in group
+   * @return encoded group
+   */
+  public static byte[] encode(final Schema schema, long[][] values, boolean[][] nulls,
+      int records) {
+    Column[] columns = schema.getColumns();
+    int[] flags = new int[columns.length];
+    int[] bits = new int[columns.length];
+    long[] bases = new long[columns.length];
+    int size = 0;
+    for (int i = 0; i < columns.length; i++) {
+      long min = 0, max = 0, first = 0, previous = 0, deltas = 0;
+      boolean found = false;
+      for (int record = 0; record < records; record++) {
+        if (nulls[i][record]) {
+          flags[i] |= HAS_NULLS;
+          continue;
+        }
+        long value = values[i][record];
+        if (!found) {
+          min = max = first = previous = value;
+          found = true;
+        }
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+        deltas |= zigzag(value - previous);
+        previous = value;
+      }
+      int frameBits = Long.SIZE - Long.numberOfLeadingZeros(max - min);
+      int deltaBits = Long.SIZE - Long.numberOfLeadingZeros(deltas);
+      if (deltaBits < frameBits) {
+        flags[i] |= DELTA_ENCODED;
+        bits[i] = deltaBits;
+        bases[i] = first;
+      } else {
+        bits[i] = frameBits;
+        bases[i] = min;
+      }
+      size += getChunkSize(flags[i], bits[i], records);
+    }
+
+    ByteBuffer buffer = ByteBuffer.allocate(size);
+    for (int i = 0; i < columns.length; i++) {
+      int position = buffer.position();
+      buffer.put((byte) flags[i]);
+      buffer.put((byte) bits[i]);
+      buffer.putLong(bases[i]);
+      int valuesPosition = position + HEADER_SIZE;
+      if ((flags[i] & HAS_NULLS) != 0) {
+        for (int record = 0; record < records; record++) {
+          if (nulls[i][record]) {
+            putBits(buffer, ((long) valuesPosition << 3) + record, 1, 1);
+          }
+        }
+        valuesPosition += (records + 7) >>> 3;
+      }
+      long previous = bases[i];
+      for (int record = 0; record < records; record++) {
+        long value = nulls[i][record] ? previous : values[i][record];
+        long encoded = ((flags[i] & DELTA_ENCODED) != 0) ? zigzag(value - previous)
+            : (value - bases[i]);
+        putBits(buffer, ((long) valuesPosition << 3) + (long) record * bits[i], bits[i], encoded);
+        previous = value;
+      }
+      buffer.position(position + getChunkSize(flags[i], bits[i], records));
+    }
+    return buffer.array();
+  }
+
+  /**
+   * Decode entire group of records.
+   *
+   * @param buffer buffer holding encoded group
+   * @param position position of group within buffer
+   * @param schema
+   * @param records number of records in group
+   * @return decoded group
+   */
+  public static RecordGroup decode(final ByteBuffer buffer, int position, final Schema schema,
+      int records) {
+    int totalColumns = schema.getTotalColumns();
+    long[][] values = new long[totalColumns][records];
+    boolean[][] nulls = new boolean[totalColumns][];
+    for (int i = 0; i < totalColumns; i++) {
+      int flags = buffer.get(position);
+      int bits = buffer.get(position + 1);
+      long base = buffer.getLong(position + 2);
+      int valuesPosition = position + HEADER_SIZE;
+      if ((flags & HAS_NULLS) != 0) {
+        nulls[i] = new boolean[records];
+        for (int record = 0; record < records; record++) {
+          nulls[i][record] = getBits(buffer, ((long) valuesPosition << 3) + record, 1) != 0;
+        }
+        valuesPosition += (records + 7) >>> 3;
+      }
+      long value = base;
+      for (int record = 0; record < records; record++) {
+        long encoded = getBits(buffer, ((long) valuesPosition << 3) + (long) record * bits, bits);
+        value = ((flags & DELTA_ENCODED) != 0) ? value + unzigzag(encoded) : base + encoded;
+        values[i][record] = value;
+      }
+      position += getChunkSize(flags, bits, records);
+    }
+    return new RecordGroup(values, nulls);
+  }
+
+  /**
+   * Decode raw value of single record without decoding entire group.
+   *
+   * @param buffer buffer holding encoded group
+   * @param position position of group within buffer
+   * @param records number of records in group
+   * @param record record offset within group
+   * @param column column index
+   * @return raw value, same as {@link DataRecord#readRaw(int)}
+   */
+  public static long decodeValue(final ByteBuffer buffer, int position, int records, int record,
+      int column) {
+    position = getChunkPosition(buffer, position, records, column);
+    int flags = buffer.get(position);
+    int bits = buffer.get(position + 1);
+    long base = buffer.getLong(position + 2);
+    long valuesBit = (long) (position + HEADER_SIZE
+        + (((flags & HAS_NULLS) != 0) ? ((records + 7) >>> 3) : 0)) << 3;
+    if ((flags & DELTA_ENCODED) == 0) {
+      return base + getBits(buffer, valuesBit + (long) record * bits, bits);
+    }
+    long value = base;
+    for (int i = 0; i <= record && bits > 0; i++) {
+      value += unzigzag(getBits(buffer, valuesBit + (long) i * bits, bits));
+    }
+    return value;
+  }
+
+  /**
+   * Decode null flag of single record without decoding entire group.
+   *
+   * @param buffer buffer holding encoded group
+   * @param position position of group within buffer
+   * @param records number of records in group
+   * @param record record offset within group
+   * @param column column index
+   * @return true if value is null
+   */
+  public static boolean decodeNull(final ByteBuffer buffer, int position, int records,
+      int record, int column) {
+    position = getChunkPosition(buffer, position, records, column);
+    return (buffer.get(position) & HAS_NULLS) != 0
+        && getBits(buffer, ((long) (position + HEADER_SIZE) << 3) + record, 1) != 0;
+  }
+
+  /**
+   * Find position of column chunk by skipping chunks of preceding columns.
+   *
+   * @param buffer
+   * @param position position of group within buffer
+   * @param records number of records in group
+   * @param column column index
+   * @return position of column chunk
+   */
+  private static int getChunkPosition(final ByteBuffer buffer, int position, int records,
+      int column) {
+    for (int i = 0; i < column; i++) {
+      position += getChunkSize(buffer.get(position), buffer.get(position + 1), records);
+    }
+    return position;
+  }
+
+  /**
+   * Size of column chunk expressed in bytes.
+   *
+   * @param flags
+   * @param bits
+   * @param records
+   * @return size
+   */
+  private static int getChunkSize(int flags, int bits, int records) {
+    return HEADER_SIZE + (((flags & HAS_NULLS) != 0) ? ((records + 7) >>> 3) : 0)
+        + (int) (((long) records * bits + 7) >>> 3);
+  }
+
+  /**
+   * Write bits of value starting at given bit offset within buffer.
+   *
+   * @param buffer
+   * @param bitOffset
+   * @param bits
+   * @param value
+   */
+  private static void putBits(final ByteBuffer buffer, long bitOffset, int bits, long value) {
+    while (bits > 0) {
+      int index = (int) (bitOffset >>> 3);
+      int available = 8 - (int) (bitOffset & 7);
+      int count = Math.min(available, bits);
+      int chunk = (int) (value >>> (bits - count)) & ((1 << count) - 1);
+      buffer.put(index, (byte) (buffer.get(index) | (chunk << (available - count))));
+      bitOffset += count;
+      bits -= count;
+    }
+  }
+
+  /**
+   * Read bits starting at given bit offset within buffer.
+   *
+   * @param buffer
+   * @param bitOffset
+   * @param bits
+   * @return value
+   */
+  private static long getBits(final ByteBuffer buffer, long bitOffset, int bits) {
+    long value = 0;
+    while (bits > 0) {
+      int index = (int) (bitOffset >>> 3);
+      int available = 8 - (int) (bitOffset & 7);
+      int count = Math.min(available, bits);
+      int chunk = ((buffer.get(index) & 0xFF) >>> (available - count)) & ((1 << count) - 1);
+      value = (value << count) | chunk;
+      bitOffset += count;
+      bits -= count;
+    }
+    return value;
+  }
+
+  private static long zigzag(long value) {
+    return (value << 1) ^ (value >> 63);
+  }
+
+  private static long unzigzag(long value) {
+    return (value >>> 1) ^ -(value & 1);
+  }
+}
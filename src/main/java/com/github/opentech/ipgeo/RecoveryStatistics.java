@@ -0,0 +1,141 @@
+package com.github.opentech.ipgeo;
+
+import java.util.Locale;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Statistics of IP lookup recovery, collected per recovery phase. Index & data phases run
+ * concurrently on shared pool of recovery threads, so that time to ready is less than sum of
+ * phase times.
+ *
+ * @author bhargava.kulkarni
+ */
+public class RecoveryStatistics {
+
+  /**
+   * Number of recovery threads.
+   */
+  private int threads;
+
+  /**
+   * Time of reading metadata & checking schema expressed in nanoseconds.
+   */
+  private AtomicLong metadataTime = new AtomicLong();
+
+  /**
+   * Time of eager checksum verification expressed in nanoseconds.
+   */
+  private AtomicLong checksumTime = new AtomicLong();
+
+  /**
+   * Time until preloaded index shards are recovered expressed in nanoseconds.
+   */
+  private AtomicLong indexTime = new AtomicLong();
+
+  /**
+   * Time of recovering string pool expressed in nanoseconds.
+   */
+  private AtomicLong stringsTime = new AtomicLong();
+
+  /**
+   * Time of mapping & paging in data blocks expressed in nanoseconds.
+   */
+  private AtomicLong dataTime = new AtomicLong();
+
+  /**
+   * Elapsed time of recovery, i.e. time to ready, expressed in nanoseconds.
+   */
+  private AtomicLong totalTime = new AtomicLong();
+
+  /**
+   * Size of recovered index expressed in bytes.
+   */
+  private AtomicLong indexBytes = new AtomicLong();
+
+  /**
+   * Constructor for the class
+   *
+   * @param threads number of recovery threads
+   */
+  public RecoveryStatistics(int threads) {
+    this.threads = threads;
+  }
+
+  public void setMetadataTime(long metadataTime) {
+    this.metadataTime.set(metadataTime);
+  }
+
+  public void setChecksumTime(long checksumTime) {
+    this.checksumTime.set(checksumTime);
+  }
+
+  /**
+   * Record completion of index slice, index time is time until last slice completes.
+   *
+   * @param bytes size of slice expressed in bytes
+   * @param time time since start of recovery of index expressed in nanoseconds
+   */
+  public void addIndexSlice(long bytes, long time) {
+    this.indexBytes.addAndGet(bytes);
+    this.indexTime.accumulateAndGet(time, Math::max);
+  }
+
+  public void setStringsTime(long stringsTime) {
+    this.stringsTime.set(stringsTime);
+  }
+
+  public void setDataTime(long dataTime) {
+    this.dataTime.set(dataTime);
+  }
+
+  public void setTotalTime(long totalTime) {
+    this.totalTime.set(totalTime);
+  }
+
+  public int getThreads() {
+    return threads;
+  }
+
+  public long getMetadataTime() {
+    return metadataTime.get();
+  }
+
+  public long getChecksumTime() {
+    return checksumTime.get();
+  }
+
+  public long getIndexTime() {
+    return indexTime.get();
+  }
+
+  public long getIndexBytes() {
+    return indexBytes.get();
+  }
+
+  public long getStringsTime() {
+    return stringsTime.get();
+  }
+
+  public long getDataTime() {
+    return dataTime.get();
+  }
+
+  public long getTotalTime() {
+    return totalTime.get();
+  }
+
+  @Override
+  public String toString() {
+    return String.format(Locale.ROOT,
+        "RecoveryStatistics [threads=%d, metadataTime=%d ms, checksumTime=%d ms,"
+            + " indexTime=%d ms, indexBytes=%d, stringsTime=%d ms, dataTime=%d ms,"
+            + " totalTime=%d ms]",
+        this.threads, TimeUnit.NANOSECONDS.toMillis(getMetadataTime()),
+        TimeUnit.NANOSECONDS.toMillis(getChecksumTime()),
+        TimeUnit.NANOSECONDS.toMillis(getIndexTime()), getIndexBytes(),
+        TimeUnit.NANOSECONDS.toMillis(getStringsTime()),
+        TimeUnit.NANOSECONDS.toMillis(getDataTime()),
+        TimeUnit.NANOSECONDS.toMillis(getTotalTime()));
+  }
+}
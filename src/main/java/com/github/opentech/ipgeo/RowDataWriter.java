@@ -0,0 +1,51 @@
+package com.github.opentech.ipgeo;
+
+import java.io.IOException;
+
+/**
+ * Writes records in row layout, as fixed size rows separated by newline. Rows are collected in
+ * large buffers written on background thread by {@link BufferedChannelWriter}.
+ * 
+ * @author bhargava.kulkarni
+ */
+public class RowDataWriter implements DataWriter {
+
+  /**
+   * Writer of data file.
+   */
+  private BufferedChannelWriter dataOutputWriter;
+
+  /**
+   * Constructor for the class
+   * 
+   * @param filename name of data file
+   * @throws IOException
+   */
+  public RowDataWriter(final String filename) throws IOException {
+    this(filename, 0, null);
+  }
+
+  /**
+   * Constructor for the class
+   * 
+   * @param filename name of data file
+   * @param preallocatedSize expected size of data file, 0 if file is not preallocated
+   * @param persistStatistics statistics updated per background write, may be null
+   * @throws IOException
+   */
+  public RowDataWriter(final String filename, long preallocatedSize,
+      final PersistStatistics persistStatistics) throws IOException {
+    this.dataOutputWriter = new BufferedChannelWriter(filename,
+        BufferedChannelWriter.DEFAULT_BUFFER_SIZE, preallocatedSize, persistStatistics);
+  }
+
+  @Override
+  public void write(final DataRecord record) throws IOException {
+    this.dataOutputWriter.write(record.content().array());
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.dataOutputWriter.close();
+  }
+}
@@ -1,9 +1,16 @@
 package com.github.opentech.ipgeo;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.zip.CRC32;
 
 /**
  * Schema Definition.
+ *
+ * Each row is laid out as [fixed width columns] -> [null bitmap] -> [packed columns], where
+ * fixed width columns are stored in declaration order, null bitmap holds one bit per nullable
+ * column & packed columns share a bit region sized from their observed value ranges.
  */
 public class Schema {
 
@@ -11,6 +18,21 @@ public class Schema {
    * Columns which constitute schema
    */
   private Column[] columns;
+
+  /**
+   * Offset of null bitmap expressed in bytes.
+   */
+  private int nullBitmapOffset;
+
+  /**
+   * Offset of packed columns region expressed in bytes.
+   */
+  private int packedOffset;
+
+  /**
+   * Size of schema expressed in bytes.
+   */
+  private int size;
   
   /**
    * Column Definition
@@ -21,6 +43,12 @@ public class Schema {
     private Datatype datatype;
     private String description;
     private int offset;
+    private boolean nullable;
+    private int nullIndex;
+    private int bitOffset;
+    private int bits;
+    private long minValue;
+    private boolean packed;
     
     /**
      * Constructor for the class
@@ -30,10 +58,25 @@ public class Schema {
      * @param description
      */
     public Column(String name, Datatype datatype, String description) {
+      this(name, datatype, description, false);
+    }
+
+    /**
+     * Constructor for the class
+     *
+     * @param name
+     * @param datatype
+     * @param description
+     * @param nullable true if column accepts null values
+     */
+    public Column(String name, Datatype datatype, String description, boolean nullable) {
       this.name = name;
       this.datatype = datatype;
       this.description = description;
+      this.nullable = nullable;
       this.offset = -1;
+      this.nullIndex = -1;
+      this.bitOffset = -1;
     }
     
     /**
@@ -41,8 +84,23 @@ public class Schema {
      */
     public static enum Datatype {
       
+      /**
+       * Unsigned 8 bit value in range 0-255.
+       */
+      BYTE(Byte.SIZE/8),
       SHORT(Short.SIZE/8),
-      INT(Integer.SIZE/8);
+      INT(Integer.SIZE/8),
+      LONG(Long.SIZE/8),
+      FLOAT(Float.SIZE/8),
+      /**
+       * Integer value stored as offset from column minimum using only as many bits as needed
+       * for observed value range. Width is derived while persisting.
+       */
+      PACKED_INT(0),
+      /**
+       * String value dictionary encoded into string pool, row holds id of string.
+       */
+      STRING(Integer.SIZE/8);
       
       int size;
       
@@ -53,6 +111,79 @@ public class Schema {
       public int getSize() {
         return this.size;
       }
+
+      /**
+       * Parse value into its raw representation. Floats are represented by their IEEE 754 bits.
+       *
+       * @param value
+       * @return raw value
+       * @throws NumberFormatException if value is not valid for data type
+       */
+      public long parse(String value) {
+        switch (this) {
+          case BYTE:
+            int byteValue = Integer.parseInt(value);
+            if (byteValue < 0 || byteValue > 0xFF) {
+              throw new NumberFormatException("Value out of range. Value:\"" + value + "\"");
+            }
+            return byteValue;
+          case SHORT:
+            return Short.parseShort(value);
+          case INT:
+          case PACKED_INT:
+            return Integer.parseInt(value);
+          case LONG:
+            return Long.parseLong(value);
+          case FLOAT:
+            return Float.floatToIntBits(Float.parseFloat(value));
+          case STRING:
+            throw new NumberFormatException("String values are dictionary encoded");
+          default:
+            throw new NumberFormatException("Unsupported datatype " + this);
+        }
+      }
+
+      /**
+       * Check integer value against range of data type.
+       *
+       * @param value
+       * @return raw value
+       * @throws NumberFormatException if value is not valid for data type
+       */
+      public long checkRange(long value) {
+        switch (this) {
+          case BYTE:
+            if (value < 0 || value > 0xFF) {
+              throw new NumberFormatException("Value out of range. Value:\"" + value + "\"");
+            }
+            return value;
+          case SHORT:
+            if (value < Short.MIN_VALUE || value > Short.MAX_VALUE) {
+              throw new NumberFormatException("Value out of range. Value:\"" + value + "\"");
+            }
+            return value;
+          case INT:
+          case PACKED_INT:
+            if (value < Integer.MIN_VALUE || value > Integer.MAX_VALUE) {
+              throw new NumberFormatException("Value out of range. Value:\"" + value + "\"");
+            }
+            return value;
+          case LONG:
+            return value;
+          default:
+            throw new NumberFormatException("Datatype " + this + " is not an integer");
+        }
+      }
+    }
+
+    /**
+     * Check whether given value represents null.
+     *
+     * @param value
+     * @return true if value is null
+     */
+    public static boolean isNullValue(String value) {
+      return value == null || value.isEmpty() || LookupConstants.NULL_VALUE.equals(value);
     }
     
     public void setOffset(int offset) {
@@ -74,6 +205,30 @@ public class Schema {
     public int getOffset() {
       return this.offset;
     }
+
+    public boolean isNullable() {
+      return this.nullable;
+    }
+
+    public int getNullIndex() {
+      return this.nullIndex;
+    }
+
+    public int getBitOffset() {
+      return this.bitOffset;
+    }
+
+    public int getBits() {
+      return this.bits;
+    }
+
+    public long getMinValue() {
+      return this.minValue;
+    }
+
+    public boolean isPacked() {
+      return this.packed;
+    }
   }
   
   /**
@@ -83,24 +238,120 @@ public class Schema {
    */
   public Schema(List<Column> columns) {
     this.columns = columns.stream().toArray(Column[]::new);
-    int columnOffset = 0;
+    layout();
+  }
+
+  /**
+   * Copy column definitions into new schema, packing is not copied. Schema is updated with
+   * packing of lookup it is used with, each recovered lookup therefore needs its own copy.
+   * 
+   * @return schema
+   */
+  public Schema copy() {
+    List<Column> copies = new ArrayList<Column>();
     for (Column column : this.columns) {
-      column.setOffset(columnOffset);
-      columnOffset += column.getDatatype().getSize();
+      copies.add(new Column(column.getName(), column.getDatatype(), column.getDescription(),
+          column.isNullable()));
     }
+    return new Schema(copies);
+  }
+
+  /**
+   * Assign offsets to columns.
+   */
+  private void layout() {
+    int columnOffset = 0, nullableColumns = 0, packedBits = 0;
+    for (Column column : this.columns) {
+      if (column.getDatatype() != Column.Datatype.PACKED_INT) {
+        column.setOffset(columnOffset);
+        columnOffset += column.getDatatype().getSize();
+      }
+      column.nullIndex = column.isNullable() ? nullableColumns++ : -1;
+    }
+    this.nullBitmapOffset = columnOffset;
+    this.packedOffset = this.nullBitmapOffset + ((nullableColumns + 7) >>> 3);
+    for (Column column : this.columns) {
+      if (column.getDatatype() == Column.Datatype.PACKED_INT) {
+        column.bitOffset = (this.packedOffset << 3) + packedBits;
+        column.setOffset(column.bitOffset >>> 3);
+        packedBits += column.getBits();
+      }
+    }
+    this.size = this.packedOffset + ((packedBits + 7) >>> 3);
+  }
+
+  /**
+   * Set value range of packed column. Width of column is derived from given range.
+   *
+   * @param index column index
+   * @param minValue minimum value of column
+   * @param maxValue maximum value of column
+   */
+  public void setPacking(int index, long minValue, long maxValue) {
+    Column column = this.columns[index];
+    if (column.getDatatype() != Column.Datatype.PACKED_INT || maxValue < minValue) {
+      throw new IllegalArgumentException("Invalid packing for column " + column.getName());
+    }
+    column.minValue = minValue;
+    column.bits = Long.SIZE - Long.numberOfLeadingZeros(maxValue - minValue);
+    column.packed = true;
+    layout();
+  }
+
+  /**
+   * @return true if schema has packed columns
+   */
+  public boolean hasPackedColumns() {
+    for (Column column : this.columns) {
+      if (column.getDatatype() == Column.Datatype.PACKED_INT) {
+        return true;
+      }
+    }
+    return false;
   }
   
+  /**
+   * @return true if schema has string columns
+   */
+  public boolean hasStringColumns() {
+    for (Column column : this.columns) {
+      if (column.getDatatype() == Column.Datatype.STRING) {
+        return true;
+      }
+    }
+    return false;
+  }
+
+  /**
+   * Fingerprint of column definitions, i.e. names, data types & nullability in order. Packing
+   * is derived from data & is not part of fingerprint.
+   * 
+   * @return CRC32 of column definitions as 8 hexadecimal digits
+   */
+  public String getFingerprint() {
+    CRC32 crc = new CRC32();
+    for (Column column : this.columns) {
+      String definition = column.getName() + ':' + column.getDatatype().name() + ':'
+          + column.isNullable() + ';';
+      crc.update(definition.getBytes(StandardCharsets.UTF_8));
+    }
+    return String.format("%08x", crc.getValue());
+  }
+
   /**
    * Get Schema size
    * 
    * @return size
    */
   public int getSize() {
-    int size = 0;
-    for (int i=0; i<columns.length; i++) {
-      size += columns[i].getDatatype().getSize();
-    }
-    return size;
+    return this.size;
+  }
+
+  /**
+   * @return offset of null bitmap within row
+   */
+  public int getNullBitmapOffset() {
+    return this.nullBitmapOffset;
   }
   
   /**
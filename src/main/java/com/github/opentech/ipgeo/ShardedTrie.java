@@ -0,0 +1,340 @@
+package com.github.opentech.ipgeo;
+
+import java.io.File;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * IPv4 index partitioned into independent {@link BitmapTrie} shards keyed by leading bits of
+ * address, e.g. 256 shards keyed by leading octet. Prefixes shorter than shard key are held by
+ * every shard they cover, so that each shard answers longest prefix match on its own. Persisted
+ * shards are stored as separate files & recovered lazily on first access, unless preloaded.
+ *
+ * @author bhargava.kulkarni
+ */
+public class ShardedTrie {
+
+  /**
+   * Maximum number of leading bits used as shard key.
+   */
+  public static final int MAX_SHARD_BITS = 16;
+
+  /**
+   * Number of leading bits of address used as shard key.
+   */
+  private int shardBits;
+
+  /**
+   * Shards, null if shard is empty or not loaded yet.
+   */
+  private AtomicReferenceArray<BitmapTrie> shards;
+
+  /**
+   * Initial capacity of shard created in memory.
+   */
+  private int allocatedSize;
+
+  /**
+   * Base path of persisted shards, null if trie is not recovered.
+   */
+  private String basepath;
+
+  /**
+   * Container holding persisted shards, null if shards are separate files.
+   */
+  private LookupContainer container;
+
+  /**
+   * Sizes of persisted shards, 0 for empty shard.
+   */
+  private int[] shardSizes;
+
+  /**
+   * Constructor for the class, creates empty trie held in memory.
+   *
+   * @param shardBits number of leading bits of address used as shard key
+   * @param allocatedSize initial capacity of all shards together
+   */
+  public ShardedTrie(int shardBits, int allocatedSize) {
+    this(shardBits);
+    this.allocatedSize = Math.max(allocatedSize >>> shardBits, 64);
+  }
+
+  /**
+   * Constructor for the class, shards of persisted trie are recovered on first access.
+   *
+   * @param basepath base path of persisted shards
+   * @param shardBits number of leading bits of address used as shard key
+   * @param shardSizes sizes of persisted shards, 0 for empty shard
+   */
+  public ShardedTrie(String basepath, int shardBits, int[] shardSizes) {
+    this(basepath, null, shardBits, shardSizes);
+  }
+
+  /**
+   * Constructor for the class, shards of persisted trie are recovered on first access.
+   *
+   * @param basepath base path of persisted shards
+   * @param container container holding persisted shards, null if shards are separate files
+   * @param shardBits number of leading bits of address used as shard key
+   * @param shardSizes sizes of persisted shards, 0 for empty shard
+   */
+  public ShardedTrie(String basepath, LookupContainer container, int shardBits,
+      int[] shardSizes) {
+    this(shardBits);
+    if (shardSizes.length != this.shards.length()) {
+      throw new IllegalStateException(
+          "Expected " + this.shards.length() + " index shards, found " + shardSizes.length);
+    }
+    this.basepath = basepath;
+    this.container = container;
+    this.shardSizes = shardSizes;
+  }
+
+  private ShardedTrie(int shardBits) {
+    if (shardBits < 0 || shardBits > MAX_SHARD_BITS) {
+      throw new IllegalArgumentException("Invalid number of index shard bits " + shardBits);
+    }
+    this.shardBits = shardBits;
+    this.shards = new AtomicReferenceArray<BitmapTrie>(1 << shardBits);
+  }
+
+  /**
+   * Adds a key-value pair into every shard covered by key.
+   *
+   * @param key IPv4 network prefix
+   * @param mask IPv4 net mask in networked byte order format
+   * @param value an arbitrary value to be stored against given key
+   * @return true on successful add
+   */
+  public boolean add(long key, long mask, int value) {
+    int prefixLength = Long.bitCount(mask & 0xFFFFFFFFL);
+    int first = getShardNo(key & mask);
+    int count = (prefixLength >= this.shardBits) ? 1 : 1 << (this.shardBits - prefixLength);
+    for (int shard = first; shard < first + count; shard++) {
+      BitmapTrie bitmapTrie = getShard(shard);
+      if (bitmapTrie == null) {
+        bitmapTrie = new BitmapTrie();
+        bitmapTrie.init(this.allocatedSize);
+        this.shards.set(shard, bitmapTrie);
+      }
+      if (!bitmapTrie.add(key, mask, value)) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Matches a value for a given IPv4 address within shard of address.
+   *
+   * @param key IPv4 address to look up
+   * @return value at most specific IPv4 network for a given IPv4 address
+   */
+  public int match(long key) {
+    BitmapTrie bitmapTrie = getShard(getShardNo(key));
+    return (bitmapTrie != null) ? bitmapTrie.match(key) : BitmapTrie.NO_VALUE;
+  }
+
+  /**
+   * Get shard number of IPv4 address.
+   *
+   * @param key IPv4 address
+   * @return shard number
+   */
+  public int getShardNo(long key) {
+    return (int) ((key & 0xFFFFFFFFL) >>> (Integer.SIZE - this.shardBits));
+  }
+
+  /**
+   * Get shard, persisted shard is recovered if not loaded yet.
+   *
+   * @param shard shard number
+   * @return shard, null if shard is empty
+   */
+  public BitmapTrie getShard(int shard) {
+    BitmapTrie bitmapTrie = this.shards.get(shard);
+    if (bitmapTrie == null && this.shardSizes != null && this.shardSizes[shard] > 0) {
+      synchronized (this) {
+        bitmapTrie = this.shards.get(shard);
+        if (bitmapTrie == null) {
+          bitmapTrie = recoverShard(shard);
+          this.shards.set(shard, bitmapTrie);
+        }
+      }
+    }
+    return bitmapTrie;
+  }
+
+  /**
+   * Set shard, used while building trie.
+   *
+   * @param shard shard number
+   * @param bitmapTrie shard, null if shard is empty
+   */
+  void setShard(int shard, BitmapTrie bitmapTrie) {
+    this.shards.set(shard, bitmapTrie);
+  }
+
+  /**
+   * Recover persisted shard.
+   *
+   * @param shard shard number
+   * @return shard
+   */
+  private BitmapTrie recoverShard(int shard) {
+    String filename = getShardFilename(this.basepath, this.shardBits, shard);
+    try {
+      LookupContainer.Section section = LookupContainer.locate(this.container, filename);
+      BitmapTrie bitmapTrie = new BitmapTrie();
+      bitmapTrie.recover(section.getFilename(), section.getPosition(), this.shardSizes[shard]);
+      return bitmapTrie;
+    } catch (Exception e) {
+      throw new IllegalStateException(
+          "Failed to load index shard " + filename + " Reason: " + e.getMessage(), e);
+    }
+  }
+
+  /**
+   * Load persisted shard ahead of first access.
+   *
+   * @param shard shard number
+   */
+  public void preload(int shard) {
+    if (shard < 0 || shard >= this.shards.length()) {
+      throw new IllegalArgumentException("Invalid index shard " + shard);
+    }
+    getShard(shard);
+  }
+
+  /**
+   * Create tasks loading persisted shards ahead of first access, each shard is read in slices so
+   * that slices of all shards are read in parallel. Shard is published once its last slice is
+   * read, shards loaded already or empty are skipped.
+   *
+   * @param shards shard numbers
+   * @return tasks, each returning number of bytes read
+   */
+  List<Callable<Long>> getPreloadTasks(int[] shards) {
+    ThreadLocal<ByteBuffer> buffers = ThreadLocal
+        .withInitial(() -> ByteBuffer.allocateDirect(BufferedChannelWriter.DEFAULT_BUFFER_SIZE));
+    List<Callable<Long>> tasks = new ArrayList<Callable<Long>>();
+    for (int shard : shards) {
+      if (shard < 0 || shard >= this.shards.length()) {
+        throw new IllegalArgumentException("Invalid index shard " + shard);
+      }
+      if (this.shardSizes == null || this.shardSizes[shard] == 0 || isLoaded(shard)) {
+        continue;
+      }
+      String filename = getShardFilename(this.basepath, this.shardBits, shard);
+      List<Callable<Long>> slices;
+      BitmapTrie bitmapTrie = new BitmapTrie();
+      try {
+        LookupContainer.Section section = LookupContainer.locate(this.container, filename);
+        slices = bitmapTrie.recoverSlices(section.getFilename(), section.getPosition(),
+            this.shardSizes[shard], BufferedChannelWriter.DEFAULT_BUFFER_SIZE / Integer.BYTES,
+            buffers);
+      } catch (Exception e) {
+        throw new IllegalStateException(
+            "Failed to load index shard " + filename + " Reason: " + e.getMessage(), e);
+      }
+      AtomicInteger pending = new AtomicInteger(slices.size());
+      final int shardNo = shard;
+      for (Callable<Long> slice : slices) {
+        tasks.add(() -> {
+          long bytes = slice.call();
+          if (pending.decrementAndGet() == 0) {
+            this.shards.compareAndSet(shardNo, null, bitmapTrie);
+          }
+          return bytes;
+        });
+      }
+    }
+    return tasks;
+  }
+
+  /**
+   * Check whether shard is present in memory.
+   *
+   * @param shard shard number
+   * @return true if shard is loaded
+   */
+  public boolean isLoaded(int shard) {
+    return this.shards.get(shard) != null;
+  }
+
+  /**
+   * Persist each non empty shard to a separate file.
+   *
+   * @param basepath directory of shard files
+   * @throws Exception
+   */
+  public void persist(String basepath) throws Exception {
+    for (int shard = 0; shard < this.shards.length(); shard++) {
+      BitmapTrie bitmapTrie = getShard(shard);
+      if (bitmapTrie != null) {
+        bitmapTrie.persist(getShardFilename(basepath, this.shardBits, shard));
+      }
+    }
+  }
+
+  /**
+   * Name of shard file, trie which is not partitioned is stored as single index file.
+   *
+   * @param basepath directory of shard files
+   * @param shardBits number of leading bits of address used as shard key
+   * @param shard shard number
+   * @return name of file
+   */
+  public static String getShardFilename(String basepath, int shardBits, int shard) {
+    String filename = basepath + File.separator + LookupConstants.INDEX_FILE_NAME;
+    return (shardBits == 0) ? filename : (filename + "." + shard);
+  }
+
+  /**
+   * @return number of leading bits of address used as shard key
+   */
+  public int getShardBits() {
+    return this.shardBits;
+  }
+
+  /**
+   * @return number of shards
+   */
+  public int getShardCount() {
+    return this.shards.length();
+  }
+
+  /**
+   * Get sizes of shards, without loading persisted shards.
+   *
+   * @return sizes, 0 for empty shard
+   */
+  public int[] getShardSizes() {
+    int[] sizes = new int[this.shards.length()];
+    for (int shard = 0; shard < sizes.length; shard++) {
+      BitmapTrie bitmapTrie = this.shards.get(shard);
+      if (bitmapTrie != null) {
+        sizes[shard] = bitmapTrie.getSize();
+      } else if (this.shardSizes != null) {
+        sizes[shard] = this.shardSizes[shard];
+      }
+    }
+    return sizes;
+  }
+
+  /**
+   * @return total number of nodes of all shards
+   */
+  public long getSize() {
+    long size = 0;
+    for (int shardSize : getShardSizes()) {
+      size += shardSize;
+    }
+    return size;
+  }
+}
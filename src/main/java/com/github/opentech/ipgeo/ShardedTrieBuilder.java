@@ -0,0 +1,218 @@
+package com.github.opentech.ipgeo;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Bulk builder of {@link ShardedTrie}. Prefixes are routed to a {@link BitmapTrieBuilder} per
+ * shard & shards are built in parallel. Runs of all shards share one memory budget, run of the
+ * largest shard is written to temporary file whenever budget is exceeded.
+ *
+ * @author bhargava.kulkarni
+ */
+public class ShardedTrieBuilder implements Closeable {
+
+  /**
+   * Directory of temporary run files.
+   */
+  private File tempDirectory;
+
+  /**
+   * Number of leading bits of address used as shard key.
+   */
+  private int shardBits;
+
+  /**
+   * Builders per shard, null if no prefix is added to shard.
+   */
+  private BitmapTrieBuilder[] builders;
+
+  /**
+   * Maximum number of prefixes held in memory by runs of all shards together.
+   */
+  private int memoryBudget;
+
+  /**
+   * Number of prefixes runs of all shards have room for.
+   */
+  private long allocated;
+
+  /**
+   * Constructor for the class, runs of all shards together hold as many prefixes as single
+   * default run.
+   *
+   * @param tempDirectory directory of temporary run files
+   * @param shardBits number of leading bits of address used as shard key
+   */
+  public ShardedTrieBuilder(final File tempDirectory, int shardBits) {
+    this(tempDirectory, shardBits, BitmapTrieBuilder.DEFAULT_RUN_SIZE);
+  }
+
+  /**
+   * Constructor for the class
+   *
+   * @param tempDirectory directory of temporary run files
+   * @param shardBits number of leading bits of address used as shard key
+   * @param memoryBudget maximum number of prefixes held in memory by runs of all shards together
+   */
+  ShardedTrieBuilder(final File tempDirectory, int shardBits, int memoryBudget) {
+    if (shardBits < 0 || shardBits > ShardedTrie.MAX_SHARD_BITS) {
+      throw new IllegalArgumentException("Invalid number of index shard bits " + shardBits);
+    }
+    if (memoryBudget <= 0) {
+      throw new IllegalArgumentException("Invalid index memory budget " + memoryBudget);
+    }
+    this.tempDirectory = tempDirectory;
+    this.shardBits = shardBits;
+    this.builders = new BitmapTrieBuilder[1 << shardBits];
+    this.memoryBudget = memoryBudget;
+  }
+
+  /**
+   * Adds a key-value pair into every shard covered by key.
+   *
+   * @param key IPv4 network prefix
+   * @param prefixLength length of prefix in bits
+   * @param value an arbitrary value to be stored against given key
+   * @return true on successful add
+   * @throws IOException if run can not be written
+   */
+  public boolean add(long key, int prefixLength, int value) throws IOException {
+    if (prefixLength < 0 || prefixLength > Integer.SIZE) {
+      return false;
+    }
+    int first = (int) ((key & 0xFFFFFFFFL) >>> (Integer.SIZE - this.shardBits));
+    int count = (prefixLength >= this.shardBits) ? 1 : 1 << (this.shardBits - prefixLength);
+    first &= ~(count - 1);
+    for (int shard = first; shard < first + count; shard++) {
+      BitmapTrieBuilder builder = this.builders[shard];
+      if (builder == null) {
+        builder = new BitmapTrieBuilder(this.tempDirectory, this.memoryBudget);
+        this.builders[shard] = builder;
+        this.allocated += builder.getCapacity();
+      }
+      int capacity = builder.getCapacity();
+      if (!builder.add(key, prefixLength, value)) {
+        return false;
+      }
+      this.allocated += builder.getCapacity() - capacity;
+      while (this.allocated > this.memoryBudget) {
+        if (!spillLargest()) {
+          break;
+        }
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Write run of shard holding most memory to temporary file. Runs are not spilled below their
+   * initial capacity, so that shards hold at least as much memory as their initial runs.
+   *
+   * @return false if no run is large enough to release memory
+   * @throws IOException if run can not be written
+   */
+  private boolean spillLargest() throws IOException {
+    BitmapTrieBuilder largest = null;
+    for (BitmapTrieBuilder builder : this.builders) {
+      if (builder != null && (largest == null || builder.getCapacity() > largest.getCapacity())) {
+        largest = builder;
+      }
+    }
+    if (largest == null || largest.getCapacity() <= BitmapTrieBuilder.INITIAL_CAPACITY) {
+      return false;
+    }
+    int capacity = largest.getCapacity();
+    largest.spill();
+    this.allocated += largest.getCapacity() - capacity;
+    return true;
+  }
+
+  /**
+   * @return number of prefixes runs of all shards have room for
+   */
+  long getAllocated() {
+    return this.allocated;
+  }
+
+  /**
+   * Adds a value for every address of IPv4 range, same as
+   * {@link BitmapTrie#addRange(int, int, int)}.
+   *
+   * @param start first IPv4 address of range, unsigned
+   * @param end last IPv4 address of range, unsigned
+   * @param value an arbitrary value to be stored against given range
+   * @return true on successful add of all prefixes
+   * @throws IOException if run can not be written
+   */
+  public boolean addRange(int start, int end, int value) throws IOException {
+    long first = start & 0xFFFFFFFFL;
+    long last = end & 0xFFFFFFFFL;
+    if (first > last) {
+      return false;
+    }
+    while (first <= last) {
+      int hostBits = BitmapTrie.getHostBits(first, last);
+      if (!add(first, Integer.SIZE - hostBits, value)) {
+        return false;
+      }
+      first += 1L << hostBits;
+    }
+    return true;
+  }
+
+  /**
+   * Build shards in parallel.
+   *
+   * @param threads number of shards built concurrently
+   * @return trie held in memory
+   * @throws Exception if building of any shard fails
+   */
+  public ShardedTrie build(int threads) throws Exception {
+    ShardedTrie shardedTrie = new ShardedTrie(this.shardBits, 0);
+    ExecutorService workers = Executors.newFixedThreadPool(Math.max(threads, 1));
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int shard = 0; shard < this.builders.length; shard++) {
+        final int shardNo = shard;
+        final BitmapTrieBuilder builder = this.builders[shard];
+        if (builder != null) {
+          futures.add(workers.submit(() -> {
+            BitmapTrie bitmapTrie = new BitmapTrie();
+            builder.build(bitmapTrie);
+            shardedTrie.setShard(shardNo, bitmapTrie);
+            return null;
+          }));
+        }
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } catch (ExecutionException e) {
+      throw new IllegalStateException("Failed to build index shard Reason: " + e.getCause(),
+          e.getCause());
+    } finally {
+      workers.shutdownNow();
+    }
+    return shardedTrie;
+  }
+
+  /**
+   * Delete temporary run files of all shards.
+   */
+  @Override
+  public void close() {
+    for (BitmapTrieBuilder builder : this.builders) {
+      if (builder != null) {
+        builder.close();
+      }
+    }
+  }
+}
@@ -0,0 +1,396 @@
+package com.github.opentech.ipgeo;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * Single pass tokenizer of tab separated source files. File is memory mapped as windows & lines
+ * are split into fields directly on mapped bytes, so that numeric fields are parsed without
+ * creating Strings. Source can also be handed out as batches of whole lines, each of which is
+ * tokenized independently. Tokenizer is not thread safe.
+ *
+ * @author bhargava.kulkarni
+ */
+public class SourceTokenizer implements Closeable {
+
+  /**
+   * Default size of mapped window expressed in bytes.
+   */
+  private static final int WINDOW_SIZE = 1 << 30;
+
+  private static final byte TAB = '\t';
+  private static final byte CARRIAGE_RETURN = '\r';
+
+  /**
+   * Name of the file.
+   */
+  private String filename;
+
+  /**
+   * Reference to source file.
+   */
+  private RandomAccessFile sourceReader;
+
+  /**
+   * Size of source file expressed in bytes.
+   */
+  private long length;
+
+  /**
+   * Maximum size of mapped window expressed in bytes.
+   */
+  private int windowSize;
+
+  /**
+   * Starting position of mapped window within file.
+   */
+  private long windowPosition;
+
+  /**
+   * Memory mapped window of source file.
+   */
+  private ByteBuffer window;
+
+  /**
+   * Position of next line within window.
+   */
+  private int position;
+
+  /**
+   * Starting positions of fields of current line within window.
+   */
+  private int[] fieldStarts = new int[64];
+
+  /**
+   * Number of fields in current line.
+   */
+  private int fieldCount;
+
+  /**
+   * End position of current line within window, excluding line separator.
+   */
+  private int lineEnd;
+
+  /**
+   * Position within field while parsing IPv4 range.
+   */
+  private int cursor;
+
+  /**
+   * Constructor for the class
+   *
+   * @param filename name of source file
+   * @throws IOException
+   */
+  public SourceTokenizer(final String filename) throws IOException {
+    this(filename, WINDOW_SIZE);
+  }
+
+  /**
+   * Constructor for the class
+   *
+   * @param filename name of source file
+   * @param windowSize maximum size of mapped window, must be larger than longest line
+   * @throws IOException
+   */
+  SourceTokenizer(final String filename, int windowSize) throws IOException {
+    this.filename = filename;
+    this.windowSize = windowSize;
+    this.sourceReader = new RandomAccessFile(filename, "r");
+    this.length = this.sourceReader.length();
+    map(0);
+  }
+
+  /**
+   * Constructor for the class
+   *
+   * @param content batch of whole lines, as returned by {@link #nextBatch(int)}
+   */
+  public SourceTokenizer(final ByteBuffer content) {
+    this.filename = "batch";
+    this.window = content;
+    this.length = content.limit();
+    this.windowSize = content.limit();
+  }
+
+  /**
+   * Map window starting at given position within file.
+   *
+   * @param windowPosition
+   * @throws IOException
+   */
+  private void map(long windowPosition) throws IOException {
+    this.windowPosition = windowPosition;
+    this.window = this.sourceReader.getChannel().map(FileChannel.MapMode.READ_ONLY,
+        windowPosition, Math.min(this.windowSize, this.length - windowPosition));
+    this.position = 0;
+  }
+
+  /**
+   * Advance to next line of source.
+   *
+   * @return true if line is available, false at end of file
+   * @throws IOException
+   */
+  public boolean nextLine() throws IOException {
+    while (true) {
+      int limit = this.window.limit();
+      if (this.position >= limit) {
+        if (this.windowPosition + limit >= this.length) {
+          return false;
+        }
+        map(this.windowPosition + this.position);
+        continue;
+      }
+      int start = this.position, index = start;
+      this.fieldCount = 0;
+      addField(start);
+      byte data = 0;
+      while (index < limit && (data = this.window.get(index)) != LookupConstants.NEW_LINE) {
+        if (data == TAB) {
+          addField(index + 1);
+        }
+        index++;
+      }
+      if (index == limit && this.windowPosition + limit < this.length) {
+        if (start == 0) {
+          throw new IllegalStateException("Line exceeds window size at position "
+              + this.windowPosition + " in " + this.filename);
+        }
+        map(this.windowPosition + start);
+        continue;
+      }
+      this.lineEnd =
+          (index > start && this.window.get(index - 1) == CARRIAGE_RETURN) ? index - 1 : index;
+      this.position = index + 1;
+      return true;
+    }
+  }
+
+  /**
+   * Advance by batch of whole lines.
+   *
+   * @param batchSize minimum size of batch expressed in bytes, batch ends at end of line
+   * @return batch of lines, null at end of file
+   * @throws IOException
+   */
+  public ByteBuffer nextBatch(int batchSize) throws IOException {
+    while (true) {
+      int limit = this.window.limit();
+      if (this.position >= limit) {
+        if (this.windowPosition + limit >= this.length) {
+          return null;
+        }
+        map(this.windowPosition + this.position);
+        continue;
+      }
+      int index = (limit - this.position > batchSize) ? this.position + batchSize - 1 : limit - 1;
+      while (index < limit && this.window.get(index) != LookupConstants.NEW_LINE) {
+        index++;
+      }
+      if (index == limit && this.windowPosition + limit < this.length) {
+        if (this.position == 0) {
+          throw new IllegalStateException("Batch exceeds window size at position "
+              + this.windowPosition + " in " + this.filename);
+        }
+        map(this.windowPosition + this.position);
+        continue;
+      }
+      ByteBuffer batch = this.window.duplicate();
+      batch.position(this.position);
+      batch.limit(Math.min(index + 1, limit));
+      this.position = batch.limit();
+      return batch.slice();
+    }
+  }
+
+  private void addField(int start) {
+    if (this.fieldCount == this.fieldStarts.length) {
+      this.fieldStarts = Arrays.copyOf(this.fieldStarts, this.fieldCount << 1);
+    }
+    this.fieldStarts[this.fieldCount++] = start;
+  }
+
+  /**
+   * @return number of fields in current line
+   */
+  public int getFieldCount() {
+    return this.fieldCount;
+  }
+
+  private int getFieldEnd(int field) {
+    return (field + 1 < this.fieldCount) ? this.fieldStarts[field + 1] - 1 : this.lineEnd;
+  }
+
+  /**
+   * Check whether field represents null, same as {@link Schema.Column#isNullValue(String)}.
+   *
+   * @param field field index
+   * @return true if field is empty or null marker
+   */
+  public boolean isNullValue(int field) {
+    int start = this.fieldStarts[field], length = getFieldEnd(field) - start;
+    return length == 0 || (length == 2 && this.window.get(start) == '\\'
+        && this.window.get(start + 1) == 'N');
+  }
+
+  /**
+   * Parse field as decimal integer, accepting same input as {@link Long#parseLong(String)}.
+   *
+   * @param field field index
+   * @return value
+   * @throws NumberFormatException if field is not a valid integer
+   */
+  public long parseLong(int field) {
+    int index = this.fieldStarts[field], end = getFieldEnd(field);
+    if (index == end) {
+      throw new NumberFormatException("Empty value at field " + field);
+    }
+    boolean negative = false;
+    byte first = this.window.get(index);
+    if (first == '-' || first == '+') {
+      negative = (first == '-');
+      if (++index == end) {
+        throw new NumberFormatException("Invalid value at field " + field);
+      }
+    }
+    // Accumulate negatively, same as Long.parseLong, so that Long.MIN_VALUE is representable
+    long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+    long multiplyLimit = limit / 10, result = 0;
+    for (; index < end; index++) {
+      int digit = this.window.get(index) - '0';
+      if (digit < 0 || digit > 9 || result < multiplyLimit) {
+        throw new NumberFormatException("Invalid value at field " + field);
+      }
+      result *= 10;
+      if (result < limit + digit) {
+        throw new NumberFormatException("Value out of range at field " + field);
+      }
+      result -= digit;
+    }
+    return negative ? result : -result;
+  }
+
+  /**
+   * Parse field as IPv4 range, in form of "e.f.g.h", "e.f.g.h/m" or "e.f.g.h-i.j.k.l".
+   *
+   * @param field field index
+   * @return first address of range in upper 32 bits & last address in lower 32 bits
+   * @throws IllegalArgumentException if field is not a valid IPv4 range
+   */
+  public long parseIpRange(int field) {
+    this.cursor = this.fieldStarts[field];
+    int end = getFieldEnd(field);
+    long first = parseIpAddress(end, field), last = first;
+    if (this.cursor < end && this.window.get(this.cursor) == '/') {
+      this.cursor++;
+      long prefixLength = parseDigits(end, 2, field);
+      if (prefixLength > 32) {
+        throw new IllegalArgumentException("Invalid IPv4 prefix length at field " + field);
+      }
+      long mask = (0xFFFFFFFFL << (32 - prefixLength)) & 0xFFFFFFFFL;
+      first &= mask;
+      last = first | (~mask & 0xFFFFFFFFL);
+    } else if (this.cursor < end && this.window.get(this.cursor) == '-') {
+      this.cursor++;
+      last = parseIpAddress(end, field);
+      if (last < first) {
+        throw new IllegalArgumentException("Invalid IPv4 range at field " + field);
+      }
+    }
+    if (this.cursor != end) {
+      throw new IllegalArgumentException("Invalid IPv4 range at field " + field);
+    }
+    return (first << 32) | last;
+  }
+
+  /**
+   * Parse IPv4 address in dotted decimal form starting at cursor.
+   *
+   * @param end end of field
+   * @param field field index, used for error reporting
+   * @return address
+   */
+  private long parseIpAddress(int end, int field) {
+    long address = 0;
+    for (int octet = 0; octet < 4; octet++) {
+      if (octet > 0) {
+        if (this.cursor >= end || this.window.get(this.cursor) != '.') {
+          throw new IllegalArgumentException("Invalid IPv4 address at field " + field);
+        }
+        this.cursor++;
+      }
+      long value = parseDigits(end, 3, field);
+      if (value > 0xFF) {
+        throw new IllegalArgumentException("Invalid IPv4 address at field " + field);
+      }
+      address = (address << 8) | value;
+    }
+    return address;
+  }
+
+  /**
+   * Parse unsigned decimal number starting at cursor.
+   *
+   * @param end end of field
+   * @param maxDigits maximum number of digits
+   * @param field field index, used for error reporting
+   * @return value
+   */
+  private long parseDigits(int end, int maxDigits, int field) {
+    long value = 0;
+    int digits = 0;
+    while (this.cursor < end && digits < maxDigits && isDigit(this.window.get(this.cursor))) {
+      value = value * 10 + (this.window.get(this.cursor++) - '0');
+      digits++;
+    }
+    if (digits == 0) {
+      throw new IllegalArgumentException("Invalid IPv4 range at field " + field);
+    }
+    return value;
+  }
+
+  private static boolean isDigit(byte data) {
+    return data >= '0' && data <= '9';
+  }
+
+  /**
+   * Decode field as UTF-8 String.
+   *
+   * @param field field index
+   * @return value
+   */
+  public String getString(int field) {
+    return decode(this.fieldStarts[field], getFieldEnd(field));
+  }
+
+  /**
+   * Decode current line as UTF-8 String, intended for error reporting.
+   *
+   * @return line
+   */
+  public String getLine() {
+    return decode(this.fieldStarts[0], this.lineEnd);
+  }
+
+  private String decode(int start, int end) {
+    byte[] bytes = new byte[end - start];
+    ByteBuffer content = this.window.duplicate();
+    content.position(start);
+    content.get(bytes);
+    return new String(bytes, StandardCharsets.UTF_8);
+  }
+
+  @Override
+  public void close() throws IOException {
+    this.window = null;
+    if (this.sourceReader != null) {
+      this.sourceReader.close();
+    }
+  }
+}
@@ -0,0 +1,263 @@
+package com.github.opentech.ipgeo;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.CharBuffer;
+import java.nio.IntBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Memory mapped pool of dictionary encoded strings. Rows refer to strings by their id & values
+ * are resolved directly from mapped memory without heap copies.
+ * Data is persisted in the order, [count] -> [offsets] -> [characters]
+ *
+ * Pool & its views read mapping under lease, mapping is released once pool is un-initialized &
+ * no read is in flight.
+ *
+ * @author bhargava.kulkarni
+ */
+public class StringPool {
+
+  /**
+   * Name of the file.
+   */
+  private String filename;
+
+  /**
+   * Reference to file used for creating memory block
+   */
+  private RandomAccessFile poolReader;
+
+  /**
+   * Memory mapped byte buffer, offsets & characters are views of it.
+   */
+  private MappedByteBuffer mappedByteBuffer;
+
+  /**
+   * Offsets of strings within characters, one extra offset marks end of last string.
+   */
+  private IntBuffer offsets;
+
+  /**
+   * Characters of all strings.
+   */
+  private CharBuffer characters;
+
+  /**
+   * Number of strings in pool.
+   */
+  private int count;
+
+  /**
+   * Leases on memory mapped byte buffer. Pool holds one lease until it is un-initialized, buffer
+   * is unmapped once last lease is released.
+   */
+  private LeaseCounter leases = new LeaseCounter(this::unmap);
+
+  /**
+   * Constructor for the class.
+   *
+   * @param filename
+   */
+  public StringPool(final String filename) {
+    this(filename, 0, -1);
+  }
+
+  /**
+   * Constructor for the class, pool is stored at given position within file, e.g. within
+   * container.
+   *
+   * @param filename
+   * @param position starting position within file expressed in bytes
+   * @param length length of pool expressed in bytes, -1 if pool extends to end of file
+   */
+  public StringPool(final String filename, long position, long length) {
+    this.filename = filename;
+    try {
+      init(position, length);
+    } catch (Throwable e) {
+      throw new IllegalStateException(
+          "Failed to initialise string pool on file " + this.filename + " Reason: "
+              + e.getMessage());
+    }
+  }
+
+  /**
+   * Initialize String Pool
+   *
+   * @param position
+   * @param length
+   * @throws IOException
+   */
+  public void init(long position, long length) throws IOException {
+    this.poolReader = new RandomAccessFile(this.filename, "r");
+    this.mappedByteBuffer = this.poolReader.getChannel().map(
+        FileChannel.MapMode.READ_ONLY, position,
+        (length < 0) ? this.poolReader.length() - position : length);
+    this.mappedByteBuffer.load();
+    this.count = this.mappedByteBuffer.getInt(0);
+    int charactersPosition = Integer.BYTES * (this.count + 2);
+    this.mappedByteBuffer.position(Integer.BYTES);
+    this.offsets = this.mappedByteBuffer.slice().asIntBuffer();
+    this.mappedByteBuffer.position(charactersPosition);
+    this.characters = this.mappedByteBuffer.slice().asCharBuffer();
+    if (this.offsets.get(this.count) != this.characters.limit()) {
+      throw new IllegalStateException("Invalid string pool: " + this.filename);
+    }
+  }
+
+  /**
+   * Un-Initialize String Pool. Mapping is released once all leases are released, reads started
+   * afterwards fail. Repeated calls have no effect.
+   *
+   * @throws IOException
+   */
+  public void uninit() throws IOException {
+    this.leases.retire();
+  }
+
+  /**
+   * Acquire lease on mapping, fail if pool is un-initialized.
+   */
+  private void acquire() {
+    if (!this.leases.acquire()) {
+      throw new IllegalStateException("String pool on file " + this.filename
+          + " is un-initialized");
+    }
+  }
+
+  /**
+   * Release lease on mapping, last release unmaps buffer & closes file.
+   */
+  private void release() {
+    this.leases.release();
+  }
+
+  /**
+   * Unmap pool & close file, run once pool is retired & last lease is released. Views are
+   * dropped too, as no reader may use them any more.
+   */
+  private void unmap() {
+    CommonUtilities.unmap(this.mappedByteBuffer);
+    this.mappedByteBuffer = null;
+    this.offsets = null;
+    this.characters = null;
+    try {
+      this.poolReader.close();
+    } catch (IOException e) {
+      throw new IllegalStateException(
+          "Failed to release string pool on file " + this.filename + " Reason: " + e.getMessage());
+    }
+  }
+
+  /**
+   * @return number of leases, 0 once pool is un-initialized & unmapped
+   */
+  int getLeases() {
+    return this.leases.getLeases();
+  }
+
+  /**
+   * Point given view to string with given id.
+   *
+   * @param id string identifier
+   * @param view reusable view, new view is created if null
+   * @return view of string
+   */
+  public PooledString get(int id, PooledString view) {
+    if (id < 0 || id >= this.count) {
+      throw new IndexOutOfBoundsException("Invalid string id " + id);
+    }
+    PooledString pooledString = (view == null) ? new PooledString() : view;
+    acquire();
+    try {
+      pooledString.pool = this;
+      pooledString.start = this.offsets.get(id);
+      pooledString.length = this.offsets.get(id + 1) - pooledString.start;
+    } finally {
+      release();
+    }
+    return pooledString;
+  }
+
+  /**
+   * @return number of strings in pool
+   */
+  public int getCount() {
+    return this.count;
+  }
+
+  /**
+   * Zero copy view of a string present in pool. View is valid as long as pool is initialised,
+   * each read of view holds lease on pool so that mapping is not released while it is read.
+   */
+  public static class PooledString implements CharSequence {
+
+    private StringPool pool;
+    private int start;
+    private int length;
+
+    @Override
+    public int length() {
+      return this.length;
+    }
+
+    @Override
+    public char charAt(int index) {
+      if (index < 0 || index >= this.length) {
+        throw new IndexOutOfBoundsException("Invalid index " + index);
+      }
+      this.pool.acquire();
+      try {
+        return this.pool.characters.get(this.start + index);
+      } finally {
+        this.pool.release();
+      }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+      return toString().subSequence(start, end);
+    }
+
+    /**
+     * Compare content of view with given value without copying characters.
+     *
+     * @param value
+     * @return true if content is equal
+     */
+    public boolean contentEquals(CharSequence value) {
+      if (value == null || value.length() != this.length) {
+        return false;
+      }
+      this.pool.acquire();
+      try {
+        CharBuffer characters = this.pool.characters;
+        for (int i = 0; i < this.length; i++) {
+          if (characters.get(this.start + i) != value.charAt(i)) {
+            return false;
+          }
+        }
+        return true;
+      } finally {
+        this.pool.release();
+      }
+    }
+
+    @Override
+    public String toString() {
+      char[] value = new char[this.length];
+      this.pool.acquire();
+      try {
+        CharBuffer characters = this.pool.characters;
+        for (int i = 0; i < this.length; i++) {
+          value[i] = characters.get(this.start + i);
+        }
+      } finally {
+        this.pool.release();
+      }
+      return new String(value);
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package com.github.opentech.ipgeo;
+
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Dictionary encoder for string columns. Each distinct string is assigned an id in order of
+ * first occurrence & dictionary is persisted in format readable by {@link StringPool}.
+ *
+ * @author bhargava.kulkarni
+ */
+public class StringPoolBuilder {
+
+  /**
+   * Identifiers of encoded strings.
+   */
+  private Map<String, Integer> ids = new HashMap<String, Integer>();
+
+  /**
+   * Encoded strings in order of their identifiers.
+   */
+  private List<String> values = new ArrayList<String>();
+
+  /**
+   * Total number of characters in encoded strings.
+   */
+  private long totalCharacters;
+
+  /**
+   * Encode given string.
+   *
+   * @param value
+   * @return id of string
+   */
+  public int encode(String value) {
+    Integer id = this.ids.get(value);
+    if (id == null) {
+      id = this.values.size();
+      this.ids.put(value, id);
+      this.values.add(value);
+      this.totalCharacters += value.length();
+    }
+    return id;
+  }
+
+  /**
+   * Encode strings of persisted pool, so that they keep their ids.
+   *
+   * @param stringPool
+   * @param count number of strings to encode, from id 0
+   */
+  public void load(StringPool stringPool, int count) {
+    StringPool.PooledString view = null;
+    for (int id = 0; id < count; id++) {
+      view = stringPool.get(id, view);
+      encode(view.toString());
+    }
+  }
+
+  /**
+   * @return number of encoded strings
+   */
+  public int getCount() {
+    return this.values.size();
+  }
+
+  /**
+   * Persist dictionary to a file.
+   * Data is persisted in the order, [count] -> [offsets] -> [characters]
+   *
+   * @param filename
+   * @throws Exception
+   */
+  public void persist(String filename) throws Exception {
+    long size = Integer.BYTES * (this.values.size() + 2L) + Character.BYTES * this.totalCharacters;
+    if (size > Integer.MAX_VALUE) {
+      throw new IllegalStateException("String pool exceeds maximum size: " + size);
+    }
+    try (RandomAccessFile poolOutputWriter = new RandomAccessFile(filename, "rw")) {
+      poolOutputWriter.setLength(0);
+      MappedByteBuffer mappedByteBuffer =
+          poolOutputWriter.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+      mappedByteBuffer.putInt(this.values.size());
+      int offset = 0;
+      for (String value : this.values) {
+        mappedByteBuffer.putInt(offset);
+        offset += value.length();
+      }
+      mappedByteBuffer.putInt(offset);
+      ByteBuffer characters = mappedByteBuffer.slice();
+      for (String value : this.values) {
+        for (int i = 0; i < value.length(); i++) {
+          characters.putChar(value.charAt(i));
+        }
+      }
+      mappedByteBuffer.force();
+    }
+  }
+}
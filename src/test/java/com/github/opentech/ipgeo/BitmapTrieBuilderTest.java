@@ -0,0 +1,106 @@
+package com.github.opentech.ipgeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Random;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Unit test cases for class BitmapTrieBuilder
+ */
+public class BitmapTrieBuilderTest {
+
+  private static final String tempPath = "src/test/resources/triebuilder";
+
+  @BeforeClass
+  public static void setup() throws IOException {
+    Files.createDirectories(Paths.get(tempPath));
+  }
+
+  @AfterClass
+  public static void cleanup() {
+    FileUtils.deleteQuietly(new File(tempPath));
+  }
+
+  @Test
+  public void testBuild_sameAsAdd() throws IOException {
+    assertSameAsAdd(BitmapTrieBuilder.DEFAULT_RUN_SIZE);
+  }
+
+  @Test
+  public void testBuild_externalSort() throws IOException {
+    // Small runs force prefixes to be written to temporary files & merged
+    assertSameAsAdd(64);
+    assertEquals(0, new File(tempPath).list().length);
+  }
+
+  @Test
+  public void testBuild_depthFirstLayout() throws IOException {
+    BitmapTrie bitmapTrie = new BitmapTrie();
+    try (BitmapTrieBuilder builder = new BitmapTrieBuilder(new File(tempPath))) {
+      // IP=10.128.0.0/9 added before IP=10.0.0.0/8
+      assertTrue(builder.add(0x0A800000, 9, 2));
+      assertTrue(builder.add(0x0A000000, 8, 1));
+      assertFalse(builder.add(0x0A000000, 33, 1));
+      builder.build(bitmapTrie);
+    }
+    assertEquals(10, bitmapTrie.getSize());
+    assertEquals(10, bitmapTrie.getAllocatedSize());
+    assertEquals(1, bitmapTrie.match(0x0A7FFFFF));
+    assertEquals(2, bitmapTrie.match(0x0A800000));
+    assertEquals(-1, bitmapTrie.match(0x0B000000));
+    // Path of 10.0.0.0/8 occupies nodes 0..8 in depth first order, 10.128.0.0/9 is node 9
+    String[] rightNodes = bitmapTrie.toString().split("rightNodes: \n")[1].split(",");
+    assertEquals("9", rightNodes[8]);
+  }
+
+  @Test
+  public void testBuild_empty() throws IOException {
+    BitmapTrie bitmapTrie = new BitmapTrie();
+    try (BitmapTrieBuilder builder = new BitmapTrieBuilder(new File(tempPath))) {
+      builder.build(bitmapTrie);
+    }
+    assertEquals(1, bitmapTrie.getSize());
+    assertEquals(-1, bitmapTrie.match(0));
+  }
+
+  private void assertSameAsAdd(int runSize) throws IOException {
+    Random random = new Random(42);
+    BitmapTrie expected = new BitmapTrie();
+    expected.init(1024);
+    BitmapTrie actual = new BitmapTrie();
+    long[] probes = new long[4000];
+    try (BitmapTrieBuilder builder = new BitmapTrieBuilder(new File(tempPath), runSize)) {
+      for (int i = 0; i < 1000; i++) {
+        // Few distinct networks, so that prefixes overlap & repeat
+        int start = (random.nextInt(16) << 28) | (random.nextInt(64) << 16) | random.nextInt(1024);
+        int end = start + random.nextInt(1 << random.nextInt(20));
+        if (Integer.compareUnsigned(end, start) < 0) {
+          end = -1;
+        }
+        assertTrue(expected.addRange(start, end, i));
+        assertTrue(builder.addRange(start, end, i));
+        probes[i * 4] = (start - 1) & 0xFFFFFFFFL;
+        probes[i * 4 + 1] = start & 0xFFFFFFFFL;
+        probes[i * 4 + 2] = end & 0xFFFFFFFFL;
+        probes[i * 4 + 3] = (end + 1) & 0xFFFFFFFFL;
+      }
+      builder.build(actual);
+    }
+    assertEquals(expected.getSize(), actual.getSize());
+    assertEquals(actual.getSize(), actual.getAllocatedSize());
+    for (long address : probes) {
+      assertEquals(expected.match(address), actual.match(address));
+    }
+  }
+}
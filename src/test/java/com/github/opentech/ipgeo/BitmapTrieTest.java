@@ -15,8 +15,11 @@ import static org.junit.Assert.assertTrue;
 import java.io.File;
 import java.io.IOException;
 
+import java.nio.ByteBuffer;
 import java.nio.file.Files;
 import java.nio.file.Paths;
+import java.util.List;
+import java.util.concurrent.Callable;
 
 /**
  * Unit test cases for class BitmapTrie
@@ -114,6 +117,46 @@ public class BitmapTrieTest {
     assertEquals(-1, bitmapTrie.match(0x120E700));
   }
 
+  @Test
+  public void testAddRange_sameAsSubnet() {
+    BitmapTrie bitmapTrie = new BitmapTrie();
+    bitmapTrie.init(64);
+    // IP=1.32.232.0-1.32.239.255 is same as 1.32.232.0/21
+    assertTrue(bitmapTrie.addRange(0x120E800, 0x120EFFF, 663));
+    BitmapTrie subnetTrie = new BitmapTrie();
+    subnetTrie.init(64);
+    subnetTrie.add(0x120E800, 0xFFFFF800, 663);
+    assertEquals(subnetTrie.getSize(), bitmapTrie.getSize());
+    assertEquals(663, bitmapTrie.match(0x120E800));
+    assertEquals(663, bitmapTrie.match(0x120EFFF));
+    assertEquals(-1, bitmapTrie.match(0x120F000));
+  }
+
+  @Test
+  public void testAddRange_unaligned() {
+    BitmapTrie bitmapTrie = new BitmapTrie();
+    bitmapTrie.init(64);
+    // IP=10.0.0.3-10.0.1.4
+    assertTrue(bitmapTrie.addRange(0x0A000003, 0x0A000104, 77));
+    assertEquals(-1, bitmapTrie.match(0x0A000002));
+    assertEquals(77, bitmapTrie.match(0x0A000003));
+    assertEquals(77, bitmapTrie.match(0x0A0000FF));
+    assertEquals(77, bitmapTrie.match(0x0A000104));
+    assertEquals(-1, bitmapTrie.match(0x0A000105));
+    // Whole address space & inverted range
+    assertTrue(bitmapTrie.addRange(0, 0xFFFFFFFF, 5));
+    assertEquals(5, bitmapTrie.match(0xFFFFFFFFL));
+    assertFalse(bitmapTrie.addRange(0x0A000104, 0x0A000003, 77));
+  }
+
+  @Test
+  public void testGetHostBits() {
+    assertEquals(32, BitmapTrie.getHostBits(0, 0xFFFFFFFFL));
+    assertEquals(0, BitmapTrie.getHostBits(3, 0xFF));
+    assertEquals(2, BitmapTrie.getHostBits(4, 0xFF));
+    assertEquals(8, BitmapTrie.getHostBits(0x100, 0x2FF));
+  }
+
   @Test
   public void testExpandAllocatedSize_positive() {
     BitmapTrie bitmapTrie = new BitmapTrie();
@@ -147,6 +190,58 @@ public class BitmapTrieTest {
     bitmapTrie.persist("../../../resources/ipgeo/indices2");
   }
 
+  @Test
+  public void testPersistRecover_chunked() throws Exception {
+    BitmapTrie bitmapTrie = new BitmapTrie();
+    bitmapTrie.init(64);
+    for (int i = 0; i < 100; i++) {
+      bitmapTrie.add(0x0A000000L + i * 0x10101L, 0xFFFFFFFFL, i);
+    }
+    // Buffer holds fewer nodes than trie & node count is not multiple of buffer size
+    bitmapTrie.persist("src/test/resources/ipgeo/indices5", 28);
+    assertEquals(3L * Integer.BYTES * bitmapTrie.getSize(),
+        new File("src/test/resources/ipgeo/indices5").length());
+    BitmapTrie recovered = new BitmapTrie();
+    recovered.recover("src/test/resources/ipgeo/indices5", 0, bitmapTrie.getSize(), 12);
+    assertEquals(bitmapTrie.toString(), recovered.toString());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, recovered.match(0x0A000000L + i * 0x10101L));
+    }
+  }
+
+  @Test
+  public void testRecoverSlices() throws Exception {
+    BitmapTrie bitmapTrie = new BitmapTrie();
+    bitmapTrie.init(64);
+    for (int i = 0; i < 100; i++) {
+      bitmapTrie.add(0x0A000000L + i * 0x10101L, 0xFFFFFFFFL, i);
+    }
+    bitmapTrie.persist("src/test/resources/ipgeo/indices7");
+    // Slices are read in reverse order through buffers smaller than slice
+    BitmapTrie recovered = new BitmapTrie();
+    List<Callable<Long>> slices = recovered.recoverSlices("src/test/resources/ipgeo/indices7", 0,
+        bitmapTrie.getSize(), 50, ThreadLocal.withInitial(() -> ByteBuffer.allocateDirect(12)));
+    assertEquals((bitmapTrie.getSize() + 49) / 50, slices.size());
+    long bytes = 0;
+    for (int i = slices.size() - 1; i >= 0; i--) {
+      bytes += slices.get(i).call();
+    }
+    assertEquals(3L * Integer.BYTES * bitmapTrie.getSize(), bytes);
+    assertEquals(bitmapTrie.toString(), recovered.toString());
+    for (int i = 0; i < 100; i++) {
+      assertEquals(i, recovered.match(0x0A000000L + i * 0x10101L));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testRecover_truncated() throws Exception {
+    BitmapTrie bitmapTrie = new BitmapTrie();
+    bitmapTrie.init(64);
+    bitmapTrie.add(0x2110000, 0xFFFF0000, 5);
+    bitmapTrie.persist("src/test/resources/ipgeo/indices6");
+    new BitmapTrie().recover("src/test/resources/ipgeo/indices6", bitmapTrie.getSize() + 1);
+  }
+
   @Test
   public void testRecover_positive() throws Exception {
     BitmapTrie bitmapTrie = new BitmapTrie();
@@ -0,0 +1,121 @@
+package com.github.opentech.ipgeo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.opentech.ipgeo.Schema.Column;
+import com.github.opentech.ipgeo.Schema.Column.Datatype;
+
+/**
+ * Unit test cases for classes BufferedChannelWriter & ColumnarDataWriter
+ */
+public class BufferedChannelWriterTest {
+
+  private static final String filename = "src/test/resources/channelwriter/data";
+
+  @BeforeClass
+  public static void setup() throws IOException {
+    Files.createDirectories(Paths.get(filename).getParent());
+  }
+
+  @AfterClass
+  public static void cleanup() {
+    FileUtils.deleteQuietly(new File(filename).getParentFile());
+  }
+
+  @Test
+  public void testWrite_acrossBuffers() throws IOException {
+    ByteArrayOutputStream expected = new ByteArrayOutputStream();
+    PersistStatistics statistics = new PersistStatistics(1);
+    // Buffers smaller than content force several background writes
+    try (BufferedChannelWriter writer = new BufferedChannelWriter(filename, 16, 0, statistics)) {
+      for (int i = 0; i < 100; i++) {
+        byte[] row = ("row-" + i + "\n").getBytes("UTF-8");
+        writer.write(row);
+        expected.write(row);
+        writer.write(i);
+        expected.write(i);
+      }
+      ByteBuffer content = ByteBuffer.wrap("0123456789abcdefghij".getBytes("UTF-8"));
+      content.position(2);
+      writer.write(content);
+      expected.write("23456789abcdefghij".getBytes("UTF-8"));
+      assertEquals(2, content.position());
+      assertEquals(expected.size(), writer.getSize());
+    }
+    assertArrayEquals(expected.toByteArray(), Files.readAllBytes(Paths.get(filename)));
+    assertEquals(expected.size(), statistics.getDataBytes());
+    assertTrue(statistics.getWriteTime() > 0);
+  }
+
+  @Test
+  public void testClose_truncatesPreallocatedFile() throws IOException {
+    BufferedChannelWriter writer = new BufferedChannelWriter(filename, 1024, 1 << 20, null);
+    assertEquals(1 << 20, new File(filename).length());
+    writer.write(new byte[100]);
+    writer.close();
+    writer.close();
+    assertEquals(100, new File(filename).length());
+  }
+
+  @Test
+  public void testWrite_daemonFlusher() throws IOException {
+    try (BufferedChannelWriter writer = new BufferedChannelWriter(filename, 16, 0, null)) {
+      writer.write(new byte[100]);
+      boolean found = false;
+      for (Thread thread : Thread.getAllStackTraces().keySet()) {
+        if (thread.getName().equals("ip-lookup-flusher") && thread.isAlive()) {
+          assertTrue(thread.isDaemon());
+          found = true;
+        }
+      }
+      assertTrue(found);
+    }
+  }
+
+  @Test
+  public void testColumnarWriter_openFailure() throws IOException {
+    Path fds = Paths.get("/proc/self/fd");
+    Assume.assumeTrue(Files.isDirectory(fds));
+    String basename = filename + "_columns";
+    // Second column file can not be opened as directory of same name exists
+    Files.createDirectories(Paths.get(ColumnarDataWriter.getColumnFilename(basename, 1)));
+    Schema schema = new Schema(Arrays.asList(new Column("country_code", Datatype.SHORT, ""),
+        new Column("city_code", Datatype.INT, "")));
+    try {
+      new ColumnarDataWriter(basename, schema);
+      fail("Writer opened with column file being directory");
+    } catch (IOException e) {
+      // First column file opened before failure is closed
+      String opened =
+          new File(ColumnarDataWriter.getColumnFilename(basename, 0)).getCanonicalPath();
+      try (DirectoryStream<Path> descriptors = Files.newDirectoryStream(fds)) {
+        for (Path descriptor : descriptors) {
+          try {
+            assertTrue(!Files.readSymbolicLink(descriptor).toString().equals(opened));
+          } catch (IOException closed) {
+            // Descriptor of directory listing itself may be closed already
+          }
+        }
+      }
+    }
+  }
+}
@@ -0,0 +1,111 @@
+package com.github.opentech.ipgeo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+/**
+ * Unit test cases for class Checksums
+ */
+public class ChecksumsTest {
+
+  private static final String basepath = "src/test/resources/ip_geo/output_checksummed";
+
+  @After
+  public void cleanup() {
+    FileUtils.deleteQuietly(new File(basepath));
+  }
+
+  private static void write(String name, int length, int seed) throws IOException {
+    byte[] content = new byte[length];
+    for (int i = 0; i < length; i++) {
+      content[i] = (byte) (i * 31 + seed);
+    }
+    Files.write(Paths.get(basepath, name), content);
+  }
+
+  @Test
+  public void testComputePersistRecover() throws Exception {
+    Files.createDirectories(Paths.get(basepath));
+    write(LookupConstants.DATA_FILE_NAME, 1000, 1);
+    write(LookupConstants.INDEX_FILE_NAME, 64, 2);
+    write(LookupConstants.METADATA_FILE_NAME, 10, 3);
+
+    Checksums checksums = Checksums.compute(basepath, 2, 256);
+    assertEquals(2, checksums.getFiles().size());
+    assertEquals(4, checksums.getFiles().get(LookupConstants.DATA_FILE_NAME).getChecksums().length);
+    checksums.persist(basepath);
+
+    Checksums recovered = Checksums.recover(basepath, null);
+    assertEquals(256, recovered.getBlockSize());
+    assertArrayEquals(checksums.getFiles().get(LookupConstants.DATA_FILE_NAME).getChecksums(),
+        recovered.getFiles().get(LookupConstants.DATA_FILE_NAME).getChecksums());
+    new ChecksumVerifier(basepath, null, recovered).verify(2);
+
+    // Corrupt checksums file is detected
+    try (RandomAccessFile checksumsFile =
+        new RandomAccessFile(new File(basepath, LookupConstants.CHECKSUMS_FILE_NAME), "rw")) {
+      checksumsFile.seek(5);
+      checksumsFile.write(0x7F);
+    }
+    try {
+      Checksums.recover(basepath, null);
+      fail("Corrupt checksums recovered");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("Corrupt checksums"));
+    }
+  }
+
+  @Test
+  public void testUpdate() throws Exception {
+    Files.createDirectories(Paths.get(basepath));
+    write(LookupConstants.DATA_FILE_NAME, 1000, 1);
+    Checksums checksums = Checksums.compute(basepath, 1, 256);
+    int[] before = checksums.getFiles().get(LookupConstants.DATA_FILE_NAME).getChecksums();
+
+    try (FileOutputStream data =
+        new FileOutputStream(new File(basepath, LookupConstants.DATA_FILE_NAME), true)) {
+      data.write(new byte[300]);
+    }
+    checksums.update(basepath, LookupConstants.DATA_FILE_NAME, 1000);
+    int[] after = checksums.getFiles().get(LookupConstants.DATA_FILE_NAME).getChecksums();
+    assertEquals(1300, checksums.getFiles().get(LookupConstants.DATA_FILE_NAME).getLength());
+    assertEquals(6, after.length);
+    // Blocks before appended content keep their checksums
+    assertArrayEquals(new int[] {before[0], before[1], before[2]},
+        new int[] {after[0], after[1], after[2]});
+    assertEquals(Checksums.compute(basepath, 1, 256).getFiles()
+        .get(LookupConstants.DATA_FILE_NAME).getChecksums()[3], after[3]);
+
+    checksums.remove(LookupConstants.DATA_FILE_NAME);
+    assertTrue(checksums.getFiles().isEmpty());
+  }
+
+  @Test
+  public void testVerify_corrupt() throws Exception {
+    Files.createDirectories(Paths.get(basepath));
+    write(LookupConstants.DATA_FILE_NAME, 1000, 1);
+    Checksums checksums = Checksums.compute(basepath, 1, 256);
+    write(LookupConstants.DATA_FILE_NAME, 1000, 2);
+    ChecksumVerifier verifier = new ChecksumVerifier(basepath, null, checksums);
+    try {
+      verifier.verify(4);
+      fail("Corrupt block verified");
+    } catch (IllegalStateException e) {
+      assertEquals(ChecksumVerifier.Status.FAILED, verifier.getStatus());
+      assertTrue(verifier.getFailure().startsWith("Checksum mismatch in block"));
+    }
+  }
+}
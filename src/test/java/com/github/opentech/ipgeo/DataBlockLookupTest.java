@@ -1,8 +1,10 @@
 package com.github.opentech.ipgeo;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
 import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.util.Arrays;
@@ -88,6 +90,83 @@ public class DataBlockLookupTest {
     assertNull(dataBlockLookup.selectRecord(-1073741824));
   }
   
+  @Test
+  public void testUninit_leases() throws IOException {
+    DataBlockLookupInitArgs dataBlockLookupInitArgs = new DataBlockLookupInitArgs();
+    dataBlockLookupInitArgs.setFilename("src/test/resources/ip_geo/data");
+    dataBlockLookupInitArgs.setSchema(schema);
+    dataBlockLookupInitArgs.setDataBlockOffsetBits(30);
+    dataBlockLookupInitArgs.setDataBlockRowSize(53);
+    dataBlockLookupInitArgs.setTotalLines(5);
+    dataBlockLookupInitArgs.setLinesPerDataBlock(2);
+    DataBlockLookup dataBlockLookup1 = new DataBlockLookup(dataBlockLookupInitArgs);
+    DataBlock dataBlock = dataBlockLookup1.getDataBlock(0);
+    DataRecord record = dataBlockLookup1.selectRecord(0);
+    assertEquals(1, dataBlock.getLeases());
+
+    // Block held by lease stays mapped after uninit, reads started afterwards find no record
+    assertTrue(dataBlock.acquire());
+    dataBlockLookup1.uninit();
+    assertEquals(1, dataBlock.getLeases());
+    assertNull(dataBlockLookup1.selectRecord(0));
+
+    // Block is unmapped once last lease is released, record copied before stays readable
+    dataBlock.release();
+    assertEquals(0, dataBlock.getLeases());
+    assertFalse(dataBlock.acquire());
+    assertNull(dataBlockLookup1.selectRecord(0));
+    assertEquals(840, record.readShort(0));
+  }
+
+  @Test
+  public void testUninit_twice() throws IOException {
+    DataBlockLookupInitArgs dataBlockLookupInitArgs = new DataBlockLookupInitArgs();
+    dataBlockLookupInitArgs.setFilename("src/test/resources/ip_geo/data");
+    dataBlockLookupInitArgs.setSchema(schema);
+    dataBlockLookupInitArgs.setDataBlockRowSize(53);
+    dataBlockLookupInitArgs.setTotalLines(5);
+    dataBlockLookupInitArgs.setLinesPerDataBlock(2);
+    DataBlockLookup dataBlockLookup1 = new DataBlockLookup(dataBlockLookupInitArgs);
+    DataBlock dataBlock = dataBlockLookup1.getDataBlock(0);
+
+    // Repeated uninit does not release lease held by reader
+    assertTrue(dataBlock.acquire());
+    dataBlockLookup1.uninit();
+    dataBlockLookup1.uninit();
+    assertEquals(1, dataBlock.getLeases());
+
+    dataBlock.release();
+    dataBlockLookup1.uninit();
+    assertEquals(0, dataBlock.getLeases());
+    assertFalse(dataBlock.acquire());
+    assertNull(dataBlockLookup1.selectRecord(0));
+  }
+
+  @Test
+  public void testSelectRecord_recordNumbers() throws IOException {
+    DataBlockLookupInitArgs dataBlockLookupInitArgs = new DataBlockLookupInitArgs();
+    dataBlockLookupInitArgs.setFilename("src/test/resources/ip_geo/data");
+    dataBlockLookupInitArgs.setSchema(schema);
+    dataBlockLookupInitArgs.setDataBlockRowSize(53);
+    dataBlockLookupInitArgs.setTotalLines(5L);
+    dataBlockLookupInitArgs.setLinesPerDataBlock(2);
+    DataBlockLookup dataBlockLookup1 = new DataBlockLookup(dataBlockLookupInitArgs);
+    try {
+      // Index is record number, same record as block no & line no encoded index
+      assertEquals(dataBlockLookup.selectRecord(-2147483648).readInt(15),
+          dataBlockLookup1.selectRecord(4).readInt(15));
+      assertEquals(dataBlockLookup.selectRecord(1073741825).readInt(1),
+          dataBlockLookup1.selectRecord(3).readInt(1));
+      assertNull(dataBlockLookup1.selectRecord(5));
+      // Index is read as unsigned
+      assertNull(dataBlockLookup1.selectRecord(-3));
+      assertEquals(5L, dataBlockLookup1.getTotalLines());
+      assertEquals(4L, DataBlockLookup.toRecordNo(-2147483648, 30, 2));
+    } finally {
+      dataBlockLookup1.uninit();
+    }
+  }
+
   @Test (expected = IllegalStateException.class)
   public void testInitDatablock_invalid() throws IOException {
     DataBlockLookupInitArgs dataBlockLookupInitArgs = new DataBlockLookupInitArgs();
@@ -1,10 +1,13 @@
 package com.github.opentech.ipgeo;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
 import java.io.IOException;
 import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
 import java.util.Arrays;
 import java.util.List;
 
@@ -54,4 +57,47 @@ public class DataRecordTest {
     Mockito.doNothing().when(fileMock).write(Mockito.any());
     assertTrue(record.write(fileMock));
   }
+
+  @Test
+  public void testWriteReadColumn_compactTypes() {
+    List<Column> columns = Arrays.asList(new Column("conn_speed_code", Datatype.BYTE, ""),
+        new Column("ip_start_int", Datatype.LONG, ""), new Column("latitude", Datatype.FLOAT, ""),
+        new Column("homebiz_type_code", Datatype.PACKED_INT, ""),
+        new Column("region_code", Datatype.PACKED_INT, "", true),
+        new Column("mcc", Datatype.SHORT, "", true));
+    Schema schema = new Schema(columns);
+    schema.setPacking(3, -1, 6);
+    schema.setPacking(4, 0, 9000);
+    DataRecord record = new DataRecord(schema, schema.getSize());
+    String[] values = new String[] {"255", "3232235777", "12.5", "-1", "8203", ""};
+    for (int i = 0; i < values.length; i++) {
+      record.writeColumn(values[i], schema.getColumn(i));
+    }
+    assertEquals(255, record.readByte(0));
+    assertEquals(3232235777L, record.readLong(1));
+    assertEquals(12.5f, record.readFloat(2), 0);
+    assertEquals(-1, record.readInt(3));
+    assertEquals(8203, record.readInt(4));
+    assertFalse(record.isNull(4));
+    assertTrue(record.isNull(5));
+    assertNull(record.read(5));
+    for (int i = 0; i < values.length; i++) {
+      assertTrue(record.matches(i, values[i]));
+    }
+    assertFalse(record.matches(4, "8204"));
+  }
+
+  @Test
+  public void testEncodeRecord_nullPackedAfterValue() {
+    Schema schema = new Schema(Arrays.asList(new Column("conn_speed_code", Datatype.BYTE, ""),
+        new Column("region_code", Datatype.PACKED_INT, "", true)));
+    schema.setPacking(1, 0, 9000);
+    String[] nullRow = new String[] {"7", ""};
+    // Record of first processor is reused for null row after row with packed value
+    DataRecordProcessor reused = new DataRecordProcessor(schema);
+    reused.encodeRecord(new String[] {"7", "8191"});
+    ByteBuffer afterValue = reused.encodeRecord(nullRow).copyContent();
+    ByteBuffer fresh = new DataRecordProcessor(schema).encodeRecord(nullRow).copyContent();
+    assertEquals(fresh, afterValue);
+  }
 }
@@ -0,0 +1,51 @@
+package com.github.opentech.ipgeo;
+
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Arrays;
+
+import org.junit.Test;
+
+import com.github.opentech.ipgeo.Schema.Column;
+import com.github.opentech.ipgeo.Schema.Column.Datatype;
+
+/**
+ * Unit test cases for class IngestPipeline
+ */
+public class IngestPipelineTest {
+
+  private static final String source = "src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt";
+
+  private static boolean isReaderAlive() {
+    for (Thread thread : Thread.getAllStackTraces().keySet()) {
+      if (thread.getName().equals("ip-lookup-ingest-reader") && thread.isAlive()) {
+        assertTrue(thread.isDaemon());
+        return true;
+      }
+    }
+    return false;
+  }
+
+  @Test
+  public void testClose_fullQueue() throws Exception {
+    Schema schema = new Schema(Arrays.asList(new Column("country_code", Datatype.SHORT, ""),
+        new Column("city_code", Datatype.INT, "")));
+    PersistStatistics statistics = new PersistStatistics(1);
+
+    // Source of many small batches fills queue of single worker, committer fails after one batch
+    IngestPipeline ingestPipeline = new IngestPipeline(source,
+        new DataRecordProcessor(schema), 1, 1024, statistics);
+    assertTrue(ingestPipeline.next() != null);
+    for (int i = 0; i < 100 && statistics.getSourceBytes() < 3072; i++) {
+      Thread.sleep(10);
+    }
+    ingestPipeline.close();
+
+    // Closed pipeline does not leave reader blocked on full queue
+    for (int i = 0; i < 200 && isReaderAlive(); i++) {
+      Thread.sleep(10);
+    }
+    assertFalse(isReaderAlive());
+  }
+}
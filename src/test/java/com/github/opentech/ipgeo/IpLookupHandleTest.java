@@ -0,0 +1,198 @@
+package com.github.opentech.ipgeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+
+import com.github.opentech.ipgeo.Schema.Column;
+import com.github.opentech.ipgeo.Schema.Column.Datatype;
+
+/**
+ * Unit test cases for class IpLookupHandle
+ */
+public class IpLookupHandleTest {
+
+  private static final String source = "src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt";
+
+  private static final String directory = "src/test/resources/ip_geo/versions";
+
+  private static Schema createSchema() {
+    return new Schema(Arrays.asList(new Column("country_code", Datatype.SHORT, ""),
+        new Column("city_name", Datatype.STRING, ""), new Column("post_code_id", Datatype.INT, ""),
+        new Column("region_code", Datatype.PACKED_INT, ""),
+        new Column("sic_code", Datatype.INT, ""),
+        new Column("isp_name", Datatype.STRING, "", true),
+        new Column("homebiz_type_code", Datatype.SHORT, ""),
+        new Column("naics_code", Datatype.INT, ""), new Column("cbsa_code", Datatype.INT, ""),
+        new Column("csa_code", Datatype.SHORT, ""), new Column("md_code", Datatype.INT, ""),
+        new Column("mcc", Datatype.SHORT, ""), new Column("mnc", Datatype.SHORT, ""),
+        new Column("conn_speed_code", Datatype.SHORT, ""),
+        new Column("org_name", Datatype.STRING, ""),
+        new Column("ip_start_int", Datatype.INT, "")));
+  }
+
+  /**
+   * Persist version of source where city of 216.254.241.10 is replaced by given city.
+   */
+  private static void persistVersion(String version, String city) throws Exception {
+    List<String> lines = new ArrayList<String>();
+    for (String line : Files.readAllLines(Paths.get(source))) {
+      lines.add(line.startsWith("216.254.241.10/32\t") ? line.replace("\t17134\t", "\t" + city
+          + "\t") : line);
+    }
+    String versionSource = directory + File.separator + version + ".txt";
+    Files.createDirectories(Paths.get(directory));
+    Files.write(Paths.get(versionSource), lines);
+    new IpLookup().persist(versionSource, directory + File.separator + version, createSchema());
+    Files.delete(Paths.get(versionSource));
+  }
+
+  private static String readCity(IpLookupHandle handle) {
+    return handle.match("216.254.241.10", record -> record.readString(1).toString());
+  }
+
+  @After
+  public void cleanup() {
+    FileUtils.deleteQuietly(new File(directory));
+  }
+
+  @Test
+  public void testReload() throws Exception {
+    persistVersion("v1", "City1");
+    try (IpLookupHandle handle =
+        new IpLookupHandle(directory, createSchema(), new IpLookupInitArgs(), 0)) {
+      assertEquals("City1", readCity(handle));
+      assertFalse(handle.reload());
+
+      // Lease keeps replaced lookup readable
+      IpLookupHandle.Lease lease = handle.acquire();
+      persistVersion("v2", "City2");
+      assertTrue(handle.reload());
+      assertEquals("City2", readCity(handle));
+      assertEquals(new File(directory, "v2").getPath(), handle.getBasepath());
+      assertEquals("City1",
+          lease.getIpLookup().match("216.254.241.10").readString(1).toString());
+      assertEquals(0, handle.getRetiredVersions());
+      lease.close();
+      lease.close();
+      for (int i = 0; i < 100 && handle.getRetiredVersions() == 0; i++) {
+        Thread.sleep(10);
+      }
+      assertEquals(1, handle.getRetiredVersions());
+      assertEquals(2, handle.getReloads());
+
+      // Incomplete lookup is not loaded, corrupt lookup is rejected once
+      Files.createDirectories(Paths.get(directory, "v3"));
+      assertFalse(handle.reload());
+      persistVersion("v4", "City4");
+      Files.delete(Paths.get(directory, "v4", LookupConstants.DATA_FILE_NAME));
+      assertFalse(handle.reload());
+      assertFalse(handle.reload());
+      assertEquals(1, handle.getFailedReloads());
+      assertEquals("City2", readCity(handle));
+
+      // Validator rejects lookup
+      handle.setValidator(
+          ipLookup -> !"City5".equals(ipLookup.match("216.254.241.10").readString(1).toString()));
+      persistVersion("v5", "City5");
+      assertFalse(handle.reload());
+      assertEquals(2, handle.getFailedReloads());
+      persistVersion("v6", "City6");
+      assertTrue(handle.reload());
+      assertEquals("City6", readCity(handle));
+    }
+  }
+
+  @Test
+  public void testReload_concurrentReaders() throws Exception {
+    persistVersion("v0", "City0");
+    AtomicBoolean done = new AtomicBoolean();
+    ExecutorService readers = Executors.newFixedThreadPool(4);
+    try (IpLookupHandle handle =
+        new IpLookupHandle(directory, createSchema(), new IpLookupInitArgs(), 0)) {
+      List<Future<Integer>> futures = new ArrayList<Future<Integer>>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(readers.submit(() -> {
+          int reads = 0;
+          while (!done.get()) {
+            assertTrue(readCity(handle).startsWith("City"));
+            reads++;
+          }
+          return reads;
+        }));
+      }
+      for (int version = 1; version <= 5; version++) {
+        persistVersion("v" + version, "City" + version);
+        assertTrue(handle.reload());
+      }
+      done.set(true);
+      for (Future<Integer> future : futures) {
+        assertTrue(future.get() > 0);
+      }
+      assertEquals("City5", readCity(handle));
+      assertEquals(6, handle.getReloads());
+    } finally {
+      readers.shutdownNow();
+    }
+  }
+
+  @Test
+  public void testReload_readsNotBlocked() throws Exception {
+    persistVersion("v0", "City0");
+    AtomicBoolean done = new AtomicBoolean();
+    AtomicLong reads = new AtomicLong();
+    ExecutorService readers = Executors.newFixedThreadPool(4);
+    try (IpLookupHandle handle =
+        new IpLookupHandle(directory, createSchema(), new IpLookupInitArgs(), 0)) {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int i = 0; i < 4; i++) {
+        futures.add(readers.submit(() -> {
+          while (!done.get()) {
+            // Record is never null nor read from unmapped lookup
+            assertTrue(readCity(handle).startsWith("City"));
+            reads.incrementAndGet();
+          }
+        }));
+      }
+
+      // Reads proceed while reload holds monitor of handle
+      synchronized (handle) {
+        long held = reads.get();
+        for (int i = 0; i < 500 && reads.get() < held + 1000; i++) {
+          Thread.sleep(10);
+        }
+        assertTrue(reads.get() >= held + 1000);
+      }
+      for (int version = 1; version <= 5; version++) {
+        persistVersion("v" + version, "City" + version);
+        assertTrue(handle.reload());
+      }
+      done.set(true);
+      for (Future<?> future : futures) {
+        future.get();
+      }
+      for (int i = 0; i < 100 && handle.getRetiredVersions() < 5; i++) {
+        Thread.sleep(10);
+      }
+      assertEquals(5, handle.getRetiredVersions());
+    } finally {
+      readers.shutdownNow();
+    }
+  }
+}
@@ -1,12 +1,23 @@
 package com.github.opentech.ipgeo;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
 import java.net.UnknownHostException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
 
 import org.apache.commons.io.FileUtils;
 import org.junit.Test;
@@ -23,6 +34,60 @@ import com.github.opentech.ipgeo.Schema.Column.Datatype;
  */
 public class IpLookupTest {
 
+  /**
+   * Columns of test source, codes are stored as numbers.
+   */
+  private static List<Column> createColumns() {
+    return Arrays.asList(new Column("country_code", Datatype.SHORT, ""),
+        new Column("city_code", Datatype.INT, ""), new Column("post_code_id", Datatype.INT, ""),
+        new Column("region_code", Datatype.INT, ""), new Column("sic_code", Datatype.INT, ""),
+        new Column("isp_name_code", Datatype.INT, ""),
+        new Column("homebiz_type_code", Datatype.SHORT, ""),
+        new Column("naics_code", Datatype.INT, ""), new Column("cbsa_code", Datatype.INT, ""),
+        new Column("csa_code", Datatype.SHORT, ""), new Column("md_code", Datatype.INT, ""),
+        new Column("mcc", Datatype.SHORT, ""), new Column("mnc", Datatype.SHORT, ""),
+        new Column("conn_speed_code", Datatype.SHORT, ""),
+        new Column("org_name_code", Datatype.INT, ""),
+        new Column("ip_start_int", Datatype.INT, ""));
+  }
+
+  /**
+   * Columns of test source covering all datatypes & nullable columns.
+   */
+  private static List<Column> createTypedColumns() {
+    return Arrays.asList(new Column("country_code", Datatype.SHORT, ""),
+        new Column("city_code", Datatype.INT, ""), new Column("post_code_id", Datatype.INT, ""),
+        new Column("region_code", Datatype.PACKED_INT, ""),
+        new Column("sic_code", Datatype.INT, ""), new Column("isp_name_code", Datatype.INT, ""),
+        new Column("homebiz_type_code", Datatype.PACKED_INT, ""),
+        new Column("naics_code", Datatype.INT, ""), new Column("cbsa_code", Datatype.FLOAT, ""),
+        new Column("csa_code", Datatype.BYTE, "", true), new Column("md_code", Datatype.INT, ""),
+        new Column("mcc", Datatype.PACKED_INT, "", true), new Column("mnc", Datatype.BYTE, ""),
+        new Column("conn_speed_code", Datatype.SHORT, ""),
+        new Column("org_name_code", Datatype.INT, ""),
+        new Column("ip_start_int", Datatype.LONG, ""));
+  }
+
+  /**
+   * Columns of test source, city, ISP & organization are stored as strings.
+   *
+   * @param regionType datatype of region code, INT or PACKED_INT
+   * @param nullableCsa true if CSA code is nullable
+   */
+  private static List<Column> createStringColumns(Datatype regionType, boolean nullableCsa) {
+    return Arrays.asList(new Column("country_code", Datatype.SHORT, ""),
+        new Column("city_name", Datatype.STRING, ""), new Column("post_code_id", Datatype.INT, ""),
+        new Column("region_code", regionType, ""), new Column("sic_code", Datatype.INT, ""),
+        new Column("isp_name", Datatype.STRING, "", true),
+        new Column("homebiz_type_code", Datatype.SHORT, ""),
+        new Column("naics_code", Datatype.INT, ""), new Column("cbsa_code", Datatype.INT, ""),
+        new Column("csa_code", Datatype.SHORT, "", nullableCsa),
+        new Column("md_code", Datatype.INT, ""), new Column("mcc", Datatype.SHORT, ""),
+        new Column("mnc", Datatype.SHORT, ""), new Column("conn_speed_code", Datatype.SHORT, ""),
+        new Column("org_name", Datatype.STRING, ""),
+        new Column("ip_start_int", Datatype.INT, ""));
+  }
+
   @Test
   public void testConstructor() {
     IpLookup ipLookup = new IpLookup();
@@ -92,4 +157,850 @@ public class IpLookupTest {
     ipLookup.uninit(true);
     FileUtils.deleteQuietly(new File("src/test/resources/ip_geo/output/"));
   }
+
+  @Test
+  public void testPersistRecoverMatch_compactTypes() throws Exception {
+    Schema schema = new Schema(createTypedColumns());
+
+    IpLookup ipLookup = new IpLookup();
+    ipLookup.persist("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt",
+        "src/test/resources/ip_geo/output_compact", schema);
+    ipLookup = new IpLookup("src/test/resources/ip_geo/output_compact", schema);
+    assertTrue(ipLookup.isInitialised());
+    ipLookup.validate("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt", schema);
+    DataRecord record = ipLookup.match("216.254.241.10");
+    assertEquals(42, record.readInt(3));
+    assertEquals(-1, record.readInt(6));
+    assertEquals(1493102853L, record.readLong(15));
+
+    ipLookup.uninit(true);
+    FileUtils.deleteQuietly(new File("src/test/resources/ip_geo/output_compact/"));
+  }
+
+  @Test
+  public void testPersistRecoverMatch_columnarLayout() throws Exception {
+    Schema schema = new Schema(createTypedColumns());
+
+    IpLookup ipLookup = new IpLookup();
+    ipLookup.setLinesPerBlock(2000);
+    ipLookup.setDataLayout(DataLayout.COLUMNAR);
+    ipLookup.persist("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt",
+        "src/test/resources/ip_geo/output_columnar", schema);
+    Map<String, String> metadata = readMetadata("src/test/resources/ip_geo/output_columnar");
+    assertEquals(DataLayout.COLUMNAR.name(), metadata.get(LookupConstants.DATA_LAYOUT));
+
+    ipLookup = new IpLookup("src/test/resources/ip_geo/output_columnar", schema);
+    assertTrue(ipLookup.isInitialised());
+    ipLookup.validate("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt", schema);
+    DataRecord record = ipLookup.match("216.254.241.10");
+    assertEquals(42, record.readInt(3));
+    assertEquals(-1, record.readInt(6));
+    assertEquals(1493102853L, record.readLong(15));
+
+    int index = ipLookup.matchIndex("216.254.241.10");
+    assertEquals(42, ipLookup.getDataBlockLookup().selectValue(index, 3));
+    assertEquals(1493102853L, ipLookup.getDataBlockLookup().selectValue(index, 15));
+    assertTrue(ipLookup.match("0.0.0.255") == null);
+
+    ipLookup.uninit(true);
+    FileUtils.deleteQuietly(new File("src/test/resources/ip_geo/output_columnar/"));
+  }
+
+  @Test
+  public void testPersistRecoverMatch_compressedLayout() throws Exception {
+    Schema schema = new Schema(createTypedColumns());
+
+    IpLookup ipLookup = new IpLookup();
+    ipLookup.setDataLayout(DataLayout.COMPRESSED);
+    ipLookup.setRecordsPerGroup(32);
+    ipLookup.persist("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt",
+        "src/test/resources/ip_geo/output_compressed", schema);
+    Map<String, String> metadata = readMetadata("src/test/resources/ip_geo/output_compressed");
+    assertEquals("32", metadata.get(LookupConstants.RECORDS_PER_GROUP));
+    assertTrue(Double.parseDouble(metadata.get(LookupConstants.COMPRESSION_RATIO)) > 1.0);
+
+    IpLookupInitArgs ipLookupInitArgs = new IpLookupInitArgs();
+    ipLookupInitArgs.setDecodedGroupCacheSize(4);
+    ipLookup =
+        new IpLookup("src/test/resources/ip_geo/output_compressed", schema, ipLookupInitArgs);
+    assertTrue(ipLookup.isInitialised());
+    ipLookup.validate("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt", schema);
+    DataRecord record = ipLookup.match("216.254.241.10");
+    assertEquals(42, record.readInt(3));
+    assertEquals(-1, record.readInt(6));
+    assertEquals(1493102853L, record.readLong(15));
+    record = ipLookup.match("216.254.241.10");
+    DecodedGroupCache decodedGroupCache = ipLookup.getDataBlockLookup().getDecodedGroupCache();
+    assertTrue(decodedGroupCache.getHits() > 0);
+    assertTrue(decodedGroupCache.size() <= 4);
+    ipLookup.uninit(false);
+
+    // Groups are decoded per read when cache is disabled
+    ipLookupInitArgs.setDecodedGroupCacheSize(0);
+    ipLookup =
+        new IpLookup("src/test/resources/ip_geo/output_compressed", schema, ipLookupInitArgs);
+    assertTrue(ipLookup.isInitialised());
+    assertTrue(ipLookup.getDataBlockLookup().getDecodedGroupCache() == null);
+    ipLookup.validate("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt", schema);
+    int index = ipLookup.matchIndex("216.254.241.10");
+    assertEquals(1493102853L, ipLookup.getDataBlockLookup().selectValue(index, 15));
+
+    ipLookup.uninit(true);
+    FileUtils.deleteQuietly(new File("src/test/resources/ip_geo/output_compressed/"));
+  }
+
+  @Test
+  public void testPersistRecoverMatch_stringColumns() throws Exception {
+    Schema schema = new Schema(createStringColumns(Datatype.INT, false));
+
+    IpLookup ipLookup = new IpLookup();
+    ipLookup.persist("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt",
+        "src/test/resources/ip_geo/output_strings", schema);
+    assertTrue(new File("src/test/resources/ip_geo/output_strings/strings").exists());
+    ipLookup = new IpLookup("src/test/resources/ip_geo/output_strings", schema);
+    assertTrue(ipLookup.isInitialised());
+    ipLookup.validate("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt", schema);
+    DataRecord record = ipLookup.match("216.254.241.10");
+    assertEquals("17134", record.readString(1).toString());
+    assertEquals("-1", record.readString(14).toString());
+
+    ipLookup.uninit(true);
+    FileUtils.deleteQuietly(new File("src/test/resources/ip_geo/output_strings/"));
+  }
+
+  @Test
+  public void testPersist_deduplicate() throws Exception {
+    Schema schema = new Schema(createColumns().subList(0, 15));
+
+    // Drop unique ip_start_int column, so that ranges share attribute tuples
+    String source = "src/test/resources/ip_geo/ip_geo_dedup.txt";
+    List<String> lines = new ArrayList<String>();
+    for (String line : Files
+        .readAllLines(Paths.get("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt"))) {
+      lines.add(line.substring(0, line.lastIndexOf('\t')));
+    }
+    Files.write(Paths.get(source), lines);
+
+    IpLookup ipLookup = new IpLookup();
+    ipLookup.setDeduplicate(false);
+    ipLookup.persist(source, "src/test/resources/ip_geo/output_dedup", schema);
+    Map<String, String> metadata = readMetadata("src/test/resources/ip_geo/output_dedup");
+    assertEquals(metadata.get(LookupConstants.TOTAL_SOURCE_RECORDS),
+        metadata.get(LookupConstants.TOTAL_DATABLOCK_LINES));
+
+    ipLookup = new IpLookup();
+    assertTrue(ipLookup.isDeduplicate());
+    ipLookup.persist(source, "src/test/resources/ip_geo/output_dedup", schema);
+    metadata = readMetadata("src/test/resources/ip_geo/output_dedup");
+    int sourceRecords = Integer.parseInt(metadata.get(LookupConstants.TOTAL_SOURCE_RECORDS));
+    int dataLines = Integer.parseInt(metadata.get(LookupConstants.TOTAL_DATABLOCK_LINES));
+    assertTrue(dataLines < sourceRecords);
+    assertEquals(Double.parseDouble(metadata.get(LookupConstants.DEDUP_RATIO)),
+        (double) sourceRecords / dataLines, 0.0001);
+
+    ipLookup = new IpLookup("src/test/resources/ip_geo/output_dedup", schema);
+    assertTrue(ipLookup.isInitialised());
+    ipLookup.validate(source, schema);
+
+    ipLookup.uninit(true);
+    FileUtils.deleteQuietly(new File("src/test/resources/ip_geo/output_dedup/"));
+    FileUtils.deleteQuietly(new File(source));
+  }
+
+  @Test
+  public void testPersist_parallelIdentical() throws Exception {
+    Schema schema = new Schema(createStringColumns(Datatype.PACKED_INT, false));
+
+    IpLookup ipLookup = new IpLookup();
+    ipLookup.setPersistThreads(1);
+    ipLookup.persist("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt",
+        "src/test/resources/ip_geo/output_sequential", schema);
+    PersistStatistics statistics = ipLookup.getPersistStatistics();
+    assertEquals(5005, statistics.getSourceLines());
+    assertEquals(new File("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt").length(),
+        statistics.getSourceBytes());
+    assertTrue(statistics.getParseThroughput() > 0);
+    assertTrue(statistics.getCommitThroughput() > 0);
+    assertEquals(new File("src/test/resources/ip_geo/output_sequential/data").length(),
+        statistics.getDataBytes());
+    assertTrue(statistics.getWriteThroughput() > 0);
+
+    // Small batches spread source across all workers
+    ipLookup = new IpLookup();
+    ipLookup.setPersistThreads(4);
+    ipLookup.setIngestBatchSize(4096);
+    ipLookup.persist("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt",
+        "src/test/resources/ip_geo/output_parallel", schema);
+    assertEquals(5005, ipLookup.getPersistStatistics().getSourceLines());
+
+    String[] filenames = new File("src/test/resources/ip_geo/output_sequential").list();
+    assertEquals(filenames.length,
+        new File("src/test/resources/ip_geo/output_parallel").list().length);
+    for (String filename : filenames) {
+      if (filename.equals(LookupConstants.METADATA_FILE_NAME)) {
+        continue;
+      }
+      assertTrue(Arrays.equals(
+          Files.readAllBytes(Paths.get("src/test/resources/ip_geo/output_sequential", filename)),
+          Files.readAllBytes(Paths.get("src/test/resources/ip_geo/output_parallel", filename))));
+    }
+    Map<String, String> sequential = readMetadata("src/test/resources/ip_geo/output_sequential");
+    Map<String, String> parallel = readMetadata("src/test/resources/ip_geo/output_parallel");
+    sequential.remove(LookupConstants.CREATED_AT);
+    parallel.remove(LookupConstants.CREATED_AT);
+    assertEquals(sequential, parallel);
+
+    FileUtils.deleteQuietly(new File("src/test/resources/ip_geo/output_sequential/"));
+    FileUtils.deleteQuietly(new File("src/test/resources/ip_geo/output_parallel/"));
+  }
+
+  @Test
+  public void testPersistRecoverMatch_indexShards() throws Exception {
+    Schema schema = new Schema(createColumns());
+
+    IpLookup ipLookup = new IpLookup();
+    ipLookup.setIndexShardBits(0);
+    ipLookup.persist("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt",
+        "src/test/resources/ip_geo/output_single_index", schema);
+    assertTrue(new File("src/test/resources/ip_geo/output_single_index/index").exists());
+    IpLookup singleIndexLookup = new IpLookup("src/test/resources/ip_geo/output_single_index",
+        schema);
+    assertTrue(singleIndexLookup.isInitialised());
+
+    ipLookup = new IpLookup();
+    assertEquals(8, ipLookup.getIndexShardBits());
+    ipLookup.persist("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt",
+        "src/test/resources/ip_geo/output_index_shards", schema);
+    assertTrue(new File("src/test/resources/ip_geo/output_index_shards/index.216").exists());
+    assertFalse(new File("src/test/resources/ip_geo/output_index_shards/index").exists());
+    Map<String, String> metadata = readMetadata("src/test/resources/ip_geo/output_index_shards");
+    assertEquals(256, metadata.get(LookupConstants.INDEX_SHARD_SIZES).split(",").length);
+
+    IpLookupInitArgs ipLookupInitArgs = new IpLookupInitArgs();
+    ipLookupInitArgs.setPreloadedIndexShards(new int[] {254});
+    ipLookup = new IpLookup("src/test/resources/ip_geo/output_index_shards", schema,
+        ipLookupInitArgs);
+    assertTrue(ipLookup.isInitialised());
+    assertTrue(ipLookup.lookupTree.isLoaded(254));
+    assertFalse(ipLookup.lookupTree.isLoaded(216));
+    assertTrue(ipLookup.match("216.254.241.10") != null);
+    assertTrue(ipLookup.lookupTree.isLoaded(216));
+    ipLookup.validate("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt", schema);
+    for (String ipAddress : Arrays.asList("254.50.53.255", "216.254.241.10", "0.0.0.255",
+        "1.0.0.0", "255.255.255.255")) {
+      assertEquals(singleIndexLookup.matchIndex(ipAddress), ipLookup.matchIndex(ipAddress));
+    }
+
+    singleIndexLookup.uninit(true);
+    ipLookup.uninit(true);
+    FileUtils.deleteQuietly(new File("src/test/resources/ip_geo/output_single_index/"));
+    FileUtils.deleteQuietly(new File("src/test/resources/ip_geo/output_index_shards/"));
+  }
+
+  @Test
+  public void testPersist_multiPartSource() throws Exception {
+    Schema schema = new Schema(createStringColumns(Datatype.PACKED_INT, false));
+
+    // Split source into parts, last part has no trailing new line
+    List<String> lines = Files
+        .readAllLines(Paths.get("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt"));
+    Files.createDirectories(Paths.get("src/test/resources/ip_geo/parts"));
+    List<String> parts = new ArrayList<String>();
+    for (int i = 0; i < 3; i++) {
+      String part = "src/test/resources/ip_geo/parts/ip_geo_2020_11_01_00" + i + "_1.txt";
+      String content = String.join("\n",
+          lines.subList(i * lines.size() / 3, (i + 1) * lines.size() / 3));
+      Files.write(Paths.get(part), (i < 2 ? content + "\n" : content).getBytes("UTF-8"));
+      parts.add(part);
+    }
+
+    IpLookup ipLookup = new IpLookup();
+    ipLookup.persist("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt",
+        "src/test/resources/ip_geo/output_single", schema);
+    ipLookup = new IpLookup();
+    ipLookup.setPersistThreads(2);
+    ipLookup.setIngestBatchSize(4096);
+    ipLookup.persist(parts, "src/test/resources/ip_geo/output_parts", schema);
+    assertEquals(5005, ipLookup.getPersistStatistics().getSourceLines());
+    ipLookup = new IpLookup();
+    ipLookup.persist("src/test/resources/ip_geo/parts/ip_geo_2020_11_01_*_1.txt",
+        "src/test/resources/ip_geo/output_glob", schema);
+
+    for (String output : Arrays.asList("output_parts", "output_glob")) {
+      for (String filename : new File("src/test/resources/ip_geo/output_single").list()) {
+        if (filename.equals(LookupConstants.METADATA_FILE_NAME)) {
+          continue;
+        }
+        assertTrue(Arrays.equals(
+            Files.readAllBytes(Paths.get("src/test/resources/ip_geo/output_single", filename)),
+            Files.readAllBytes(Paths.get("src/test/resources/ip_geo", output, filename))));
+      }
+    }
+    ipLookup = new IpLookup("src/test/resources/ip_geo/output_glob", schema);
+    assertTrue(ipLookup.isInitialised());
+    ipLookup.validate("src/test/resources/ip_geo/parts/*.txt", schema);
+
+    ipLookup.uninit(true);
+    for (String output : Arrays.asList("output_single", "output_parts", "output_glob", "parts")) {
+      FileUtils.deleteQuietly(new File("src/test/resources/ip_geo", output));
+    }
+  }
+
+  @Test
+  public void testPersist_binarySource() throws Exception {
+    List<Column> columns = createStringColumns(Datatype.PACKED_INT, false);
+    Schema schema = new Schema(columns);
+    String source = "src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt";
+    String binarySource = "src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.bin";
+
+    // Small chunks, so that source spans multiple chunks. Invalid lines are skipped
+    assertEquals(5001, BinarySourceWriter.convert(source, binarySource, schema, 512));
+    assertTrue(BinarySourceReader.isBinarySource(binarySource));
+    assertFalse(BinarySourceReader.isBinarySource(source));
+
+    IpLookup ipLookup = new IpLookup();
+    ipLookup.persist(source, "src/test/resources/ip_geo/output_text", schema);
+    ipLookup = new IpLookup();
+    ipLookup.setPersistThreads(2);
+    ipLookup.persist(binarySource, "src/test/resources/ip_geo/output_binary", schema);
+    assertEquals(5001, ipLookup.getPersistStatistics().getSourceLines());
+
+    for (String filename : new File("src/test/resources/ip_geo/output_text").list()) {
+      if (filename.equals(LookupConstants.METADATA_FILE_NAME)) {
+        continue;
+      }
+      assertTrue(Arrays.equals(
+          Files.readAllBytes(Paths.get("src/test/resources/ip_geo/output_text", filename)),
+          Files.readAllBytes(Paths.get("src/test/resources/ip_geo/output_binary", filename))));
+    }
+    ipLookup = new IpLookup("src/test/resources/ip_geo/output_binary", schema);
+    assertTrue(ipLookup.isInitialised());
+    ipLookup.validate(source, schema);
+
+    // Binary source written for other schema is rejected
+    Schema otherSchema = new Schema(columns.subList(0, 3));
+    try {
+      new IpLookup().persist(binarySource, "src/test/resources/ip_geo/output_other", otherSchema);
+      fail("Binary source of other schema persisted");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("does not match schema"));
+    }
+
+    ipLookup.uninit(true);
+    for (String output : Arrays.asList("output_text", "output_binary", "output_other",
+        "ip_geo_2020_11_01_000_1.bin")) {
+      FileUtils.deleteQuietly(new File("src/test/resources/ip_geo", output));
+    }
+  }
+
+  @Test
+  public void testApplyDelta() throws Exception {
+    Schema schema = new Schema(createStringColumns(Datatype.PACKED_INT, false));
+    String target = "src/test/resources/ip_geo/output_delta";
+    String delta = "src/test/resources/ip_geo/ip_geo_delta.txt";
+
+    IpLookup ipLookup = new IpLookup();
+    ipLookup.persist("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt", target, schema);
+    int dataLines =
+        Integer.parseInt(readMetadata(target).get(LookupConstants.TOTAL_DATABLOCK_LINES));
+    String values = "\t840\t%s\t-2146568473\t42\t517311\t-1\t-1\t517311\t43620\t0\t0\t0\t0"
+        + "\t-1\t-1\t1493102853";
+    Files.write(Paths.get(delta), Arrays.asList(
+        "update\t216.254.241.10/32" + String.format(values, "NewCity"),
+        "remove\t216.254.241.9/32",
+        "add\t10.1.0.0-10.1.0.255" + String.format(values, "17134"),
+        "add\t10.2.0.0/16" + String.format(values, "17134"),
+        "rename\t10.3.0.0/16" + String.format(values, "17134")));
+    ipLookup.applyDelta(target, delta, schema);
+
+    Map<String, String> metadata = readMetadata(target);
+    assertEquals("1", metadata.get(LookupConstants.DELTA_GENERATION));
+    assertEquals("4", metadata.get(LookupConstants.DELTA_RANGES));
+    // Added ranges share single appended record
+    assertEquals(dataLines + 2,
+        Integer.parseInt(metadata.get(LookupConstants.TOTAL_DATABLOCK_LINES)));
+    ipLookup = new IpLookup(target, schema);
+    assertTrue(ipLookup.isInitialised());
+    assertEquals("NewCity", ipLookup.match("216.254.241.10").readString(1).toString());
+    assertEquals(null, ipLookup.match("216.254.241.9"));
+    assertEquals("162", ipLookup.match("216.254.241.20").readString(1).toString());
+    assertEquals("17134", ipLookup.match("10.1.0.255").readString(1).toString());
+    assertEquals("17134", ipLookup.match("10.2.255.0").readString(1).toString());
+    assertEquals(null, ipLookup.match("10.1.1.0"));
+    assertEquals(null, ipLookup.match("10.3.0.0"));
+    ipLookup.uninit(false);
+
+    // Later delta overrides earlier delta, previous overlay index is replaced
+    Files.write(Paths.get(delta), Arrays.asList(
+        "update\t10.1.0.0-10.1.0.255" + String.format(values, "OtherCity"),
+        "remove\t216.254.241.10/32"));
+    ipLookup.applyDelta(target, delta, schema);
+    assertFalse(new File(target, LookupConstants.OVERLAY_FILE_NAME + ".1").exists());
+    assertTrue(new File(target, LookupConstants.OVERLAY_FILE_NAME + ".2").exists());
+    // Checksums are keyed by generation committed by metadata
+    assertFalse(new File(target, Checksums.getFilename(1)).exists());
+    assertTrue(new File(target, Checksums.getFilename(2)).exists());
+    ipLookup = new IpLookup(target, schema);
+    assertTrue(ipLookup.isInitialised());
+    assertEquals("OtherCity", ipLookup.match("10.1.0.0").readString(1).toString());
+    // Checksums of appended & replaced files are updated
+    assertEquals(ChecksumVerifier.Status.PASSED, ipLookup.getChecksumVerifier().getStatus());
+    assertEquals("17134", ipLookup.match("10.2.0.0").readString(1).toString());
+    assertEquals(null, ipLookup.match("216.254.241.10"));
+    assertEquals(null, ipLookup.match("216.254.241.9"));
+
+    ipLookup.uninit(true);
+    FileUtils.deleteQuietly(new File(target));
+    FileUtils.deleteQuietly(new File(delta));
+  }
+
+  @Test
+  public void testRebuildData() throws Exception {
+    List<Column> columns = new ArrayList<Column>(createStringColumns(Datatype.PACKED_INT, false));
+    Schema schema = new Schema(columns);
+    columns.add(new Column("country_id", Datatype.PACKED_INT, ""));
+    Schema newSchema = new Schema(columns);
+
+    // Source of new schema repeats country code as added column
+    String source = "src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt";
+    String newSource = "src/test/resources/ip_geo/ip_geo_evolved.txt";
+    List<String> lines = new ArrayList<String>();
+    for (String line : Files.readAllLines(Paths.get(source))) {
+      lines.add(line + "\t" + line.split("\t")[1]);
+    }
+    Files.write(Paths.get(newSource), lines);
+
+    for (DataLayout dataLayout : Arrays.asList(DataLayout.ROW, DataLayout.COMPRESSED)) {
+      IpLookup ipLookup = new IpLookup();
+      ipLookup.setDataLayout(dataLayout);
+      ipLookup.persist(source, "src/test/resources/ip_geo/output_base", schema);
+      ipLookup.rebuildData(newSource, "src/test/resources/ip_geo/output_base",
+          "src/test/resources/ip_geo/output_rebuilt", newSchema);
+      ipLookup.persist(newSource, "src/test/resources/ip_geo/output_full", newSchema);
+
+      // Rebuilt data & reused index are same as persisted with new schema
+      for (String filename : new File("src/test/resources/ip_geo/output_full").list()) {
+        if (filename.equals(LookupConstants.METADATA_FILE_NAME)) {
+          continue;
+        }
+        assertTrue(filename, Arrays.equals(
+            Files.readAllBytes(Paths.get("src/test/resources/ip_geo/output_full", filename)),
+            Files.readAllBytes(Paths.get("src/test/resources/ip_geo/output_rebuilt", filename))));
+      }
+      ipLookup = new IpLookup("src/test/resources/ip_geo/output_rebuilt", newSchema);
+      assertTrue(ipLookup.isInitialised());
+      assertEquals(840, ipLookup.match("216.254.241.10").readRaw(16));
+      ipLookup.validate(newSource, newSchema);
+      ipLookup.uninit(false);
+
+      // Fingerprint rejects schema lookup is not built with
+      assertFalse(new IpLookup("src/test/resources/ip_geo/output_rebuilt",
+          new Schema(columns.subList(0, 16))).isInitialised());
+      assertFalse(new IpLookup("src/test/resources/ip_geo/output_base", newSchema)
+          .isInitialised());
+    }
+
+    // Records sharing record index can not differ in added column
+    List<String> baseLines = new ArrayList<String>();
+    lines.clear();
+    for (String line : Files.readAllLines(Paths.get(source))) {
+      String[] fields = line.split("\t");
+      baseLines.add(fields[0] + "\t" + fields[1]);
+      lines.add(fields[0] + "\t" + fields[1] + "\t" + fields[2]);
+    }
+    Files.write(Paths.get(source + ".base"), baseLines);
+    Files.write(Paths.get(newSource), lines);
+    IpLookup ipLookup = new IpLookup();
+    ipLookup.persist(source + ".base", "src/test/resources/ip_geo/output_base",
+        new Schema(columns.subList(0, 1)));
+    try {
+      ipLookup.rebuildData(newSource, "src/test/resources/ip_geo/output_base",
+          "src/test/resources/ip_geo/output_rebuilt", new Schema(columns.subList(0, 2)));
+      fail("Records sharing record index rebuilt");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("persist lookup again"));
+    }
+
+    for (String output : Arrays.asList("output_base", "output_rebuilt", "output_full",
+        "ip_geo_evolved.txt", "ip_geo_2020_11_01_000_1.txt.base")) {
+      FileUtils.deleteQuietly(new File("src/test/resources/ip_geo", output));
+    }
+  }
+
+  @Test
+  public void testPackRecover() throws Exception {
+    String source = "src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt";
+    List<Column> columns = createStringColumns(Datatype.PACKED_INT, true);
+    String basepath = "src/test/resources/ip_geo/output_packed";
+    String container = "src/test/resources/ip_geo/output_packed.ipgc";
+
+    for (DataLayout dataLayout : DataLayout.values()) {
+      IpLookup ipLookup = new IpLookup();
+      ipLookup.setDataLayout(dataLayout);
+      ipLookup.setLinesPerBlock(2000);
+      ipLookup.persist(source, basepath, new Schema(columns));
+      IpLookup.pack(basepath, container);
+      assertTrue(LookupContainer.isContainer(container));
+      assertFalse(LookupContainer.isContainer(basepath + "/metadata"));
+      assertEquals(IpLookup.getCreateTime(basepath), IpLookup.getCreateTime(container));
+
+      LookupContainer lookupContainer = new LookupContainer(container);
+      assertEquals(dataLayout, lookupContainer.getDataLayout());
+      assertEquals(new Schema(columns).getFingerprint(), lookupContainer.getFingerprint());
+      assertEquals(new File(basepath).list().length,
+          lookupContainer.getSectionNames().length);
+
+      // Container is recovered without lookup directory
+      FileUtils.deleteQuietly(new File(basepath));
+      Schema schema = new Schema(columns);
+      ipLookup = new IpLookup(container, schema);
+      assertTrue(dataLayout.name(), ipLookup.isInitialised());
+      ipLookup.validate(source, schema);
+      DataRecord record = ipLookup.match("216.254.241.10");
+      assertEquals("17134", record.readString(1).toString());
+      assertEquals(42, record.readInt(3));
+      assertTrue(ipLookup.match("0.0.0.255") == null);
+      ipLookup.uninit(false);
+    }
+
+    // Container is read only & checked against schema
+    try {
+      new IpLookup().applyDelta(container, source, new Schema(columns));
+      fail("Delta applied to container");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("container"));
+    }
+    assertFalse(new IpLookup(container, new Schema(columns.subList(0, 15))).isInitialised());
+
+    FileUtils.deleteQuietly(new File(container));
+  }
+
+  @Test
+  public void testLoadPolicy() throws Exception {
+    String source = "src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt";
+    List<Column> columns = createStringColumns(Datatype.PACKED_INT, true);
+    String basepath = "src/test/resources/ip_geo/output_loaded";
+    String profile = "src/test/resources/ip_geo/output_loaded.profile";
+
+    for (DataLayout dataLayout : DataLayout.values()) {
+      IpLookup ipLookup = new IpLookup();
+      ipLookup.setDataLayout(dataLayout);
+      ipLookup.setLinesPerBlock(1000);
+      ipLookup.persist(source, basepath, new Schema(columns));
+      Schema schema = new Schema(columns);
+
+      IpLookupInitArgs ipLookupInitArgs = new IpLookupInitArgs();
+      ipLookup = new IpLookup(basepath, schema, ipLookupInitArgs);
+      DataBlockLoader loader = ipLookup.getDataBlockLookup().getDataBlockLoader();
+      assertEquals(6, loader.getSegments());
+      assertEquals(6, loader.getLoadedSegments());
+      assertTrue(loader.getLoadedBytes() > 0);
+      if (dataLayout == DataLayout.ROW) {
+        assertEquals(ipLookup.getDataBlockLookup().getSize(), loader.getLoadedBytes());
+      }
+      try {
+        ipLookup.getDataBlockLookup().saveAccessProfile(profile);
+        fail("Access profile saved without profiling");
+      } catch (IllegalStateException e) {
+        assertTrue(e.getMessage().contains("not profiled"));
+      }
+      ipLookup.uninit(false);
+
+      // Lazy lookup serves without paging in, reads are profiled
+      ipLookupInitArgs.setLoadPolicy(LoadPolicy.LAZY);
+      ipLookupInitArgs.setAccessProfiling(true);
+      ipLookup = new IpLookup(basepath, schema, ipLookupInitArgs);
+      loader = ipLookup.getDataBlockLookup().getDataBlockLoader();
+      assertEquals(0, loader.getLoadedSegments());
+      assertEquals(0.0, loader.getProgress(), 0.0);
+      for (int i = 0; i < 3; i++) {
+        assertEquals("17134", ipLookup.match("216.254.241.10").readString(1).toString());
+      }
+      assertTrue(ipLookup.match("223.26.19.61") != null);
+      ipLookup.getDataBlockLookup().saveAccessProfile(profile);
+      ipLookup.uninit(false);
+      List<String> ranked = Files.readAllLines(Paths.get(profile));
+      assertEquals(dataLayout.name(), 2, ranked.size());
+      assertTrue(ranked.get(0).endsWith(":3"));
+
+      // Profiled segment is paged in before lookup serves
+      ipLookupInitArgs.setLoadPolicy(LoadPolicy.HOT_FIRST);
+      ipLookupInitArgs.setAccessProfile(profile);
+      ipLookup = new IpLookup(basepath, schema, ipLookupInitArgs);
+      loader = ipLookup.getDataBlockLookup().getDataBlockLoader();
+      assertTrue(loader.isLoaded(Integer.parseInt(ranked.get(0).split(":")[0])));
+      assertTrue(loader.await(10000));
+      assertEquals(1.0, loader.getProgress(), 0.0);
+      assertEquals("17134", ipLookup.match("216.254.241.10").readString(1).toString());
+      ipLookup.uninit(false);
+
+      ipLookupInitArgs.setLoadPolicy(LoadPolicy.BACKGROUND);
+      ipLookup = new IpLookup(basepath, schema, ipLookupInitArgs);
+      assertTrue(ipLookup.isInitialised());
+      loader = ipLookup.getDataBlockLookup().getDataBlockLoader();
+      assertTrue(loader.await(10000));
+      assertEquals(6, loader.getLoadedSegments());
+      assertTrue(loader.getLoadTime() > 0);
+      ipLookup.uninit(false);
+    }
+    FileUtils.deleteQuietly(new File(basepath));
+    FileUtils.deleteQuietly(new File(profile));
+  }
+
+  @Test
+  public void testLoadPolicy_pageInFailure() throws Exception {
+    DataBlockLoader loader = new DataBlockLoader("failing", 4, segment -> {
+      if (segment == 2) {
+        throw new IllegalStateException("Failed to read segment " + segment);
+      }
+      return 100;
+    });
+    loader.loadInBackground(2);
+    assertTrue(loader.await(10000));
+    assertEquals(3, loader.getLoadedSegments());
+    assertEquals(1, loader.getFailedSegments());
+    assertEquals(300, loader.getLoadedBytes());
+    assertEquals(1.0, loader.getProgress(), 0.0);
+    assertFalse(loader.isLoaded(2));
+    assertTrue(loader.isLoaded(3));
+  }
+
+  @Test
+  public void testParallelRecovery() throws Exception {
+    String source = "src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt";
+    Schema schema = new Schema(createStringColumns(Datatype.INT, true));
+    String basepath = "src/test/resources/ip_geo/output_parallel_recovery";
+
+    for (DataLayout dataLayout : Arrays.asList(DataLayout.ROW, DataLayout.COLUMNAR)) {
+      IpLookup ipLookup = new IpLookup();
+      ipLookup.setDataLayout(dataLayout);
+      ipLookup.setLinesPerBlock(1000);
+      ipLookup.persist(source, basepath, schema);
+
+      IpLookupInitArgs ipLookupInitArgs = new IpLookupInitArgs();
+      ipLookupInitArgs.setRecoveryThreads(1);
+      IpLookup sequentialLookup = new IpLookup(basepath, schema, ipLookupInitArgs);
+      assertTrue(sequentialLookup.isInitialised());
+      assertEquals(1, sequentialLookup.getRecoveryStatistics().getThreads());
+      assertEquals(0, sequentialLookup.getRecoveryStatistics().getIndexBytes());
+
+      ipLookupInitArgs.setRecoveryThreads(4);
+      ipLookupInitArgs.setPreloadIndex(true);
+      ipLookup = new IpLookup(basepath, schema, ipLookupInitArgs);
+      assertTrue(ipLookup.isInitialised());
+      int[] shardSizes = ipLookup.lookupTree.getShardSizes();
+      for (int shard = 0; shard < shardSizes.length; shard++) {
+        assertEquals(shardSizes[shard] > 0, ipLookup.lookupTree.isLoaded(shard));
+      }
+      RecoveryStatistics statistics = ipLookup.getRecoveryStatistics();
+      assertEquals(4, statistics.getThreads());
+      assertEquals(3L * Integer.BYTES * ipLookup.lookupTree.getSize(),
+          statistics.getIndexBytes());
+      assertTrue(statistics.getIndexTime() > 0);
+      assertTrue(statistics.getDataTime() > 0);
+      assertTrue(statistics.getTotalTime() >= statistics.getDataTime());
+      assertEquals(6, ipLookup.getDataBlockLookup().getDataBlockLoader().getLoadedSegments());
+      for (String ipAddress : Arrays.asList("254.50.53.255", "216.254.241.10", "223.26.19.61",
+          "0.0.0.255", "255.255.255.255")) {
+        assertEquals(sequentialLookup.matchIndex(ipAddress), ipLookup.matchIndex(ipAddress));
+      }
+      assertEquals("17134", ipLookup.match("216.254.241.10").readString(1).toString());
+      ipLookup.validate(source, schema);
+
+      sequentialLookup.uninit(false);
+      ipLookup.uninit(false);
+    }
+    FileUtils.deleteQuietly(new File(basepath));
+  }
+
+  @Test
+  public void testWarmUp() throws Exception {
+    Schema schema = new Schema(createStringColumns(Datatype.INT, true));
+    String basepath = "src/test/resources/ip_geo/output_warm_up";
+    String sample = "src/test/resources/ip_geo/output_warm_up.sample";
+    new IpLookup().persist("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt", basepath,
+        schema);
+
+    IpLookupInitArgs ipLookupInitArgs = new IpLookupInitArgs();
+    IpLookup ipLookup = new IpLookup(basepath, schema, ipLookupInitArgs);
+    assertNull(ipLookup.getLookupWarmer());
+    ipLookup.uninit(false);
+
+    // Synthetic sample is drawn across populated shards
+    ipLookupInitArgs.setWarmUp(true);
+    ipLookupInitArgs.setWarmUpSampleSize(1000);
+    ipLookupInitArgs.setWarmUpTolerance(1.0);
+    ipLookup = new IpLookup(basepath, schema, ipLookupInitArgs);
+    assertTrue(ipLookup.isInitialised());
+    LookupWarmer lookupWarmer = ipLookup.getLookupWarmer();
+    assertTrue(lookupWarmer.getRounds() >= 3);
+    assertTrue(lookupWarmer.getWarmUpTime() > 0);
+    assertTrue(lookupWarmer.getInitialMean() > 0);
+    assertTrue(lookupWarmer.getFinalPercentile() > 0);
+    int[] shardSizes = ipLookup.lookupTree.getShardSizes();
+    for (String ipAddress : LookupWarmer.syntheticSample(100, ipLookup.lookupTree, 1L)) {
+      int shard = Integer.parseInt(ipAddress.substring(0, ipAddress.indexOf('.')));
+      assertTrue(ipAddress, shardSizes[shard] > 0);
+    }
+    ipLookup.uninit(false);
+
+    // Recorded sample, lines which are not addresses are skipped
+    Files.write(Paths.get(sample),
+        Arrays.asList("216.254.241.10", "not an address", "300.1.1.1", " 223.26.19.61 ", ""));
+    assertEquals(2, LookupWarmer.readSample(sample, 10).length);
+    assertEquals(1, LookupWarmer.readSample(sample, 1).length);
+    ipLookupInitArgs.setWarmUpSample(sample);
+    ipLookupInitArgs.setWarmUpTolerance(0.0);
+    ipLookupInitArgs.setWarmUpTimeout(100);
+    ipLookup = new IpLookup(basepath, schema, ipLookupInitArgs);
+    assertTrue(ipLookup.isInitialised());
+    lookupWarmer = ipLookup.getLookupWarmer();
+    assertEquals(2L * lookupWarmer.getRounds(), lookupWarmer.getMatches());
+    assertTrue(lookupWarmer.getWarmUpTime() < TimeUnit.SECONDS.toNanos(10));
+    ipLookup.uninit(false);
+
+    // Replayed sample is not counted by access profile
+    ipLookupInitArgs.setAccessProfiling(true);
+    ipLookup = new IpLookup(basepath, schema, ipLookupInitArgs);
+    ipLookup.getDataBlockLookup().saveAccessProfile(sample + ".profile");
+    assertTrue(Files.readAllLines(Paths.get(sample + ".profile")).isEmpty());
+    ipLookup.uninit(false);
+
+    FileUtils.deleteQuietly(new File(basepath));
+    FileUtils.deleteQuietly(new File(sample));
+    FileUtils.deleteQuietly(new File(sample + ".profile"));
+  }
+
+  @Test
+  public void testMemoryMode() throws Exception {
+    String source = "src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt";
+    List<Column> columns = createStringColumns(Datatype.PACKED_INT, true);
+    String basepath = "src/test/resources/ip_geo/output_memory_mode";
+
+    for (DataLayout dataLayout : DataLayout.values()) {
+      IpLookup ipLookup = new IpLookup();
+      ipLookup.setDataLayout(dataLayout);
+      ipLookup.setLinesPerBlock(1000);
+      ipLookup.persist(source, basepath, new Schema(columns));
+      Schema schema = new Schema(columns);
+
+      IpLookupInitArgs ipLookupInitArgs = new IpLookupInitArgs();
+      IpLookup mappedLookup = new IpLookup(basepath, schema, ipLookupInitArgs);
+      MemoryStatus memoryStatus = mappedLookup.getMemoryStatus();
+      assertEquals(MemoryMode.MAPPED, memoryStatus.getActiveMode());
+      assertEquals(0, memoryStatus.getAnonymousSize());
+      assertFalse(memoryStatus.isDataHugePages());
+      assertFalse(memoryStatus.isDataResident());
+
+      // Anonymous copy reads same records as mapping
+      ipLookupInitArgs.setMemoryMode(MemoryMode.ANONYMOUS);
+      ipLookup = new IpLookup(basepath, schema, ipLookupInitArgs);
+      assertTrue(ipLookup.isInitialised());
+      memoryStatus = ipLookup.getMemoryStatus();
+      assertEquals(dataLayout.name(), MemoryMode.ANONYMOUS, memoryStatus.getActiveMode());
+      assertEquals(ipLookup.getDataBlockLookup().getSize(), memoryStatus.getAnonymousSize());
+      assertTrue(memoryStatus.getDataSize() > 0);
+      for (String ipAddress : Arrays.asList("216.254.241.10", "223.26.19.61",
+          "254.50.53.255")) {
+        DataRecord mapped = mappedLookup.match(ipAddress);
+        DataRecord anonymous = ipLookup.match(ipAddress);
+        assertEquals(mapped == null, anonymous == null);
+        if (mapped != null) {
+          for (int i = 0; i < columns.size(); i++) {
+            assertEquals(mapped.readRaw(i), anonymous.readRaw(i));
+          }
+        }
+      }
+      ipLookup.validate(source, schema);
+      mappedLookup.uninit(false);
+      ipLookup.uninit(false);
+
+      // Mappings & anonymous copies are released by uninit, reads started afterwards find no record
+      assertEquals(0, ipLookup.getDataBlockLookup().getLeases());
+      assertNull(ipLookup.match("216.254.241.10"));
+    }
+
+    assertEquals("madvise", MemoryStatus.parseTransparentHugePages("always [madvise] never\n"));
+    assertEquals(MemoryStatus.UNKNOWN, MemoryStatus.parseTransparentHugePages(""));
+    assertEquals(2048L * 1024, MemoryStatus.parseSwapTotal(
+        Arrays.asList("MemTotal:       65536000 kB", "SwapTotal:          2048 kB")));
+    assertEquals(-1, MemoryStatus.parseSwapTotal(Arrays.asList("MemTotal: 65536000 kB")));
+    FileUtils.deleteQuietly(new File(basepath));
+  }
+
+  @Test
+  public void testChecksumVerification() throws Exception {
+    Schema schema = new Schema(createStringColumns(Datatype.INT, false));
+    String target = "src/test/resources/ip_geo/output_checksums";
+    new IpLookup().persist("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt", target,
+        schema);
+    assertTrue(new File(target, LookupConstants.CHECKSUMS_FILE_NAME).exists());
+
+    IpLookupInitArgs ipLookupInitArgs = new IpLookupInitArgs();
+    IpLookup ipLookup = new IpLookup(target, schema, ipLookupInitArgs);
+    assertTrue(ipLookup.isInitialised());
+    ChecksumVerifier verifier = ipLookup.getChecksumVerifier();
+    assertEquals(ChecksumVerifier.Status.PASSED, verifier.getStatus());
+    long totalBytes = 0;
+    for (File file : new File(target).listFiles()) {
+      totalBytes += file.getName().equals(LookupConstants.METADATA_FILE_NAME)
+          || file.getName().equals(LookupConstants.CHECKSUMS_FILE_NAME) ? 0 : file.length();
+    }
+    assertEquals(totalBytes, verifier.getVerifiedBytes());
+    assertTrue(verifier.getThroughput() > 0);
+    ipLookup.uninit(false);
+
+    // Corrupt value passes structural checks but fails checksum
+    try (RandomAccessFile data =
+        new RandomAccessFile(new File(target, LookupConstants.DATA_FILE_NAME), "rw")) {
+      data.seek(2);
+      int value = data.read();
+      data.seek(2);
+      data.write(value ^ 0x01);
+    }
+    assertFalse(new IpLookup(target, schema, ipLookupInitArgs).isInitialised());
+
+    ipLookupInitArgs.setChecksumVerification(ChecksumVerification.LAZY);
+    ipLookup = new IpLookup(target, schema, ipLookupInitArgs);
+    assertTrue(ipLookup.isInitialised());
+    assertEquals(ChecksumVerifier.Status.FAILED, ipLookup.getChecksumVerifier().await(10000));
+    assertTrue(ipLookup.getChecksumVerifier().getFailure()
+        .contains("block 0 of file " + LookupConstants.DATA_FILE_NAME));
+    ipLookup.uninit(false);
+
+    ipLookupInitArgs.setChecksumVerification(ChecksumVerification.NONE);
+    ipLookup = new IpLookup(target, schema, ipLookupInitArgs);
+    assertTrue(ipLookup.isInitialised());
+    assertTrue(ipLookup.getChecksumVerifier() == null);
+    ipLookup.uninit(false);
+
+    // Partially copied file fails eager verification
+    new IpLookup().persist("src/test/resources/ip_geo/ip_geo_2020_11_01_000_1.txt", target,
+        schema);
+    try (RandomAccessFile strings =
+        new RandomAccessFile(new File(target, LookupConstants.STRINGS_FILE_NAME), "rw")) {
+      strings.setLength(strings.length() - 2);
+    }
+    ipLookupInitArgs.setChecksumVerification(ChecksumVerification.EAGER);
+    assertFalse(new IpLookup(target, schema, ipLookupInitArgs).isInitialised());
+
+    FileUtils.deleteQuietly(new File(target));
+  }
+
+  @Test(expected = IOException.class)
+  public void testPersist_globWithoutMatch() throws Exception {
+    Schema schema = new Schema(Arrays.asList(new Column("country_code", Datatype.SHORT, "")));
+    new IpLookup().persist("src/test/resources/ip_geo/missing_*.txt",
+        "src/test/resources/ip_geo/output_missing", schema);
+  }
+
+  private static Map<String, String> readMetadata(String basepath) throws IOException {
+    Map<String, String> metadata = new HashMap<String, String>();
+    for (String line : Files
+        .readAllLines(Paths.get(basepath, LookupConstants.METADATA_FILE_NAME))) {
+      String[] keyValue = line.split(LookupConstants.COLON, 2);
+      metadata.put(keyValue[0], keyValue[1]);
+    }
+    return metadata;
+  }
 }
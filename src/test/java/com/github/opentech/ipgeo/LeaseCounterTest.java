@@ -0,0 +1,80 @@
+package com.github.opentech.ipgeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.Test;
+
+/**
+ * Unit test cases for class LeaseCounter
+ */
+public class LeaseCounterTest {
+
+  @Test
+  public void testRetire() {
+    AtomicInteger drained = new AtomicInteger();
+    LeaseCounter leases = new LeaseCounter(drained::incrementAndGet);
+    assertEquals(1, leases.getLeases());
+    assertTrue(leases.acquire());
+    assertEquals(2, leases.getLeases());
+
+    // Lease held by reader defers release of retired resource
+    leases.retire();
+    leases.retire();
+    assertEquals(1, leases.getLeases());
+    assertEquals(0, drained.get());
+    assertFalse(leases.acquire());
+    assertEquals(1, leases.getLeases());
+
+    leases.release();
+    assertEquals(0, leases.getLeases());
+    assertEquals(1, drained.get());
+    assertFalse(leases.acquire());
+    assertEquals(1, drained.get());
+  }
+
+  @Test
+  public void testRetire_concurrentReaders() throws Exception {
+    ExecutorService readers = Executors.newFixedThreadPool(4);
+    try {
+      for (int round = 0; round < 200; round++) {
+        AtomicBoolean released = new AtomicBoolean();
+        AtomicInteger drained = new AtomicInteger();
+        LeaseCounter leases = new LeaseCounter(() -> {
+          released.set(true);
+          drained.incrementAndGet();
+        });
+        List<Future<Boolean>> futures = new ArrayList<Future<Boolean>>();
+        for (int i = 0; i < 4; i++) {
+          futures.add(readers.submit(() -> {
+            // Resource is never released while lease is held
+            boolean valid = true;
+            while (leases.acquire()) {
+              valid &= !released.get();
+              leases.release();
+            }
+            return valid;
+          }));
+        }
+        Thread.sleep(1);
+        leases.retire();
+        for (Future<Boolean> future : futures) {
+          assertTrue(future.get());
+        }
+        assertEquals(1, drained.get());
+        assertEquals(0, leases.getLeases());
+      }
+    } finally {
+      readers.shutdownNow();
+    }
+  }
+}
@@ -0,0 +1,129 @@
+package com.github.opentech.ipgeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.junit.Test;
+
+import com.github.opentech.ipgeo.Schema.Column;
+import com.github.opentech.ipgeo.Schema.Column.Datatype;
+
+/**
+ * Unit test cases for classes RecordGroup & DecodedGroupCache
+ */
+public class RecordGroupTest {
+
+  private static final int RECORDS = 37;
+
+  @Test
+  public void testEncodeDecode_roundTrip() {
+    Schema schema = new Schema(Arrays.asList(new Column("ip_start_int", Datatype.LONG, ""),
+        new Column("country_code", Datatype.SHORT, ""),
+        new Column("csa_code", Datatype.INT, "", true),
+        new Column("extreme", Datatype.LONG, ""), new Column("constant", Datatype.INT, "")));
+    long[][] values = new long[5][RECORDS];
+    boolean[][] nulls = new boolean[5][RECORDS];
+    for (int record = 0; record < RECORDS; record++) {
+      values[0][record] = 1493102853L + record * 256L;
+      values[1][record] = (record % 3) - 1;
+      values[2][record] = record * 1000;
+      nulls[2][record] = (record % 4) == 0;
+      values[3][record] = ((record & 1) == 0) ? Long.MIN_VALUE : Long.MAX_VALUE;
+      values[4][record] = 42;
+    }
+
+    // Padding before group verifies positions are relative to group start
+    byte[] encoded = RecordGroup.encode(schema, values, nulls, RECORDS);
+    ByteBuffer buffer = ByteBuffer.allocate(encoded.length + 3);
+    buffer.position(3);
+    buffer.put(encoded);
+    assertTrue(encoded.length < RECORDS * 30);
+
+    RecordGroup group = RecordGroup.decode(buffer, 3, schema, RECORDS);
+    for (int record = 0; record < RECORDS; record++) {
+      for (int column = 0; column < 5; column++) {
+        assertEquals(nulls[column][record], group.isNull(record, column));
+        assertEquals(nulls[column][record],
+            RecordGroup.decodeNull(buffer, 3, RECORDS, record, column));
+        if (!nulls[column][record]) {
+          assertEquals(values[column][record], group.get(record, column));
+          assertEquals(values[column][record],
+              RecordGroup.decodeValue(buffer, 3, RECORDS, record, column));
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testDecodedGroupCache_eviction() {
+    Schema schema = new Schema(Arrays.asList(new Column("country_code", Datatype.SHORT, "")));
+    byte[] encoded =
+        RecordGroup.encode(schema, new long[][] {{1}}, new boolean[][] {{false}}, 1);
+    RecordGroup group = RecordGroup.decode(ByteBuffer.wrap(encoded), 0, schema, 1);
+
+    DecodedGroupCache cache = new DecodedGroupCache(2);
+    assertEquals(0, cache.getHitRate(), 0);
+    assertNull(cache.get(0));
+    cache.put(0, group);
+    cache.put(1, group);
+    assertNotNull(cache.get(0));
+    cache.put(2, group);
+    assertEquals(2, cache.size());
+    assertFalse(cache.get(1) != null);
+    assertNotNull(cache.get(0));
+    assertEquals(2, cache.getHits());
+    assertEquals(2, cache.getMisses());
+    assertEquals(0.5, cache.getHitRate(), 0);
+  }
+
+  @Test
+  public void testDecodedGroupCache_concurrentReads() throws Exception {
+    Schema schema = new Schema(Arrays.asList(new Column("country_code", Datatype.SHORT, "")));
+    RecordGroup[] groups = new RecordGroup[64];
+    for (int i = 0; i < groups.length; i++) {
+      byte[] encoded =
+          RecordGroup.encode(schema, new long[][] {{i}}, new boolean[][] {{false}}, 1);
+      groups[i] = RecordGroup.decode(ByteBuffer.wrap(encoded), 0, schema, 1);
+    }
+
+    DecodedGroupCache cache = new DecodedGroupCache(8);
+    ExecutorService readers = Executors.newFixedThreadPool(4);
+    try {
+      List<Future<?>> futures = new ArrayList<Future<?>>();
+      for (int reader = 0; reader < 4; reader++) {
+        final int seed = reader;
+        futures.add(readers.submit(() -> {
+          for (int i = 0; i < 20000; i++) {
+            // Few hot groups are read repeatedly, cold groups are read once in a while
+            int groupNo = (i % 4 == 0) ? (i * 31 + seed) % groups.length : (i + seed) % 4;
+            RecordGroup group = cache.get(groupNo);
+            if (group == null) {
+              cache.put(groupNo, groups[groupNo]);
+            } else {
+              assertEquals(groupNo, group.get(0, 0));
+            }
+          }
+        }));
+      }
+      for (Future<?> future : futures) {
+        future.get();
+      }
+    } finally {
+      readers.shutdownNow();
+    }
+    assertTrue(cache.size() <= 8);
+    assertEquals(80000, cache.getHits() + cache.getMisses());
+    assertTrue(cache.getHitRate() > 0.5);
+  }
+}
@@ -10,6 +10,8 @@ import com.github.opentech.ipgeo.Schema.Column;
 import com.github.opentech.ipgeo.Schema.Column.Datatype;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
 
 /**
  * Test cases for class Schema
@@ -28,4 +30,50 @@ public class SchemaTest {
     assertEquals(columns.get(0), schema.getColumn(0));
     assertEquals(columns.get(1), schema.getColumn(1));
   }
+
+  @Test
+  public void testConstructor_compactTypes() {
+    List<Column> columns = Arrays.asList(new Column("conn_speed_code", Datatype.BYTE, ""),
+        new Column("ip_start_int", Datatype.LONG, ""), new Column("latitude", Datatype.FLOAT, ""),
+        new Column("homebiz_type_code", Datatype.PACKED_INT, ""),
+        new Column("region_code", Datatype.PACKED_INT, "", true),
+        new Column("mcc", Datatype.SHORT, "", true));
+    Schema schema = new Schema(columns);
+
+    // 1 + 8 + 4 + 2 fixed bytes followed by 1 byte null bitmap
+    assertEquals(16, schema.getSize());
+    assertEquals(15, schema.getNullBitmapOffset());
+    assertEquals(13, schema.getColumn(5).getOffset());
+    assertTrue(schema.hasPackedColumns());
+
+    schema.setPacking(3, -1, 6);
+    schema.setPacking(4, 0, 9000);
+    assertEquals(3, schema.getColumn(3).getBits());
+    assertEquals(14, schema.getColumn(4).getBits());
+    assertEquals(131, schema.getColumn(4).getBitOffset());
+    assertEquals(19, schema.getSize());
+  }
+
+  @Test
+  public void testGetFingerprint() {
+    Schema schema = new Schema(Arrays.asList(new Column("country_code", Datatype.SHORT, ""),
+        new Column("region_code", Datatype.PACKED_INT, "", true)));
+    String fingerprint = schema.getFingerprint();
+    assertEquals(8, fingerprint.length());
+    assertEquals(fingerprint, new Schema(Arrays.asList(new Column("country_code", Datatype.SHORT,
+        "Country Code"), new Column("region_code", Datatype.PACKED_INT, "", true)))
+            .getFingerprint());
+
+    // Packing is derived from data
+    schema.setPacking(1, 0, 100);
+    assertEquals(fingerprint, schema.getFingerprint());
+
+    assertNotEquals(fingerprint, new Schema(Arrays.asList(new Column("country_code", Datatype.INT,
+        ""), new Column("region_code", Datatype.PACKED_INT, "", true))).getFingerprint());
+    assertNotEquals(fingerprint, new Schema(Arrays.asList(new Column("country_code",
+        Datatype.SHORT, ""), new Column("region_code", Datatype.PACKED_INT, ""))).getFingerprint());
+    assertNotEquals(fingerprint, new Schema(Arrays.asList(new Column("country_code",
+        Datatype.SHORT, ""), new Column("region_code", Datatype.PACKED_INT, "", true),
+        new Column("mcc", Datatype.SHORT, ""))).getFingerprint());
+  }
 }
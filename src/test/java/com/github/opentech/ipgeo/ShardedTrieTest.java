@@ -0,0 +1,100 @@
+package com.github.opentech.ipgeo;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+/**
+ * Unit test cases for class ShardedTrie
+ */
+public class ShardedTrieTest {
+
+  private static final String basepath = "src/test/resources/shardedtrie";
+
+  @BeforeClass
+  public static void setup() throws IOException {
+    Files.createDirectories(Paths.get(basepath));
+  }
+
+  @AfterClass
+  public static void cleanup() {
+    FileUtils.deleteQuietly(new File(basepath));
+  }
+
+  @Test
+  public void testAdd_shortPrefixSpansShards() {
+    ShardedTrie shardedTrie = new ShardedTrie(8, 1024);
+    // IP=8.0.0.0/5 covers shards 8..15
+    assertTrue(shardedTrie.add(0x08000000, 0xF8000000L, 1));
+    // IP=10.1.0.0/16 is more specific within shard 10
+    assertTrue(shardedTrie.add(0x0A010000, 0xFFFF0000L, 2));
+    assertEquals(1, shardedTrie.match(0x08000000));
+    assertEquals(1, shardedTrie.match(0x0FFFFFFF));
+    assertEquals(1, shardedTrie.match(0x0A000001));
+    assertEquals(2, shardedTrie.match(0x0A010001));
+    assertEquals(-1, shardedTrie.match(0x10000000));
+    assertEquals(-1, shardedTrie.match(0x07FFFFFF));
+    assertFalse(shardedTrie.isLoaded(7));
+    assertTrue(shardedTrie.isLoaded(15));
+  }
+
+  @Test
+  public void testPersistRecover_lazy() throws Exception {
+    ShardedTrie shardedTrie;
+    try (ShardedTrieBuilder builder = new ShardedTrieBuilder(new File(basepath), 4)) {
+      // IP=0.0.0.0/0 covers all shards
+      assertTrue(builder.add(0, 0, 7));
+      assertTrue(builder.addRange(0x20000000, 0x2000FFFF, 8));
+      shardedTrie = builder.build(4);
+    }
+    assertEquals(16, shardedTrie.getShardCount());
+    shardedTrie.persist(basepath);
+    assertTrue(new File(ShardedTrie.getShardFilename(basepath, 4, 15)).exists());
+
+    ShardedTrie recovered = new ShardedTrie(basepath, 4, shardedTrie.getShardSizes());
+    assertArrayEquals(shardedTrie.getShardSizes(), recovered.getShardSizes());
+    assertEquals(shardedTrie.getSize(), recovered.getSize());
+    assertFalse(recovered.isLoaded(2));
+    assertEquals(8, recovered.match(0x20001234));
+    assertEquals(7, recovered.match(0x20011234));
+    assertTrue(recovered.isLoaded(2));
+    assertFalse(recovered.isLoaded(3));
+    recovered.preload(3);
+    assertTrue(recovered.isLoaded(3));
+    assertEquals(7, recovered.match(0xFFFFFFFFL));
+  }
+
+  @Test
+  public void testBuild_memoryBudget() throws Exception {
+    ShardedTrie shardedTrie;
+    try (ShardedTrieBuilder builder = new ShardedTrieBuilder(new File(basepath), 4, 512)) {
+      for (int i = 0; i < 4096; i++) {
+        assertTrue(builder.add((i * 0x9E3779B1L) & 0xFFFFFFFFL, 32, i));
+        // Runs of all shards together stay within budget, runs exceeding it are spilled
+        assertTrue(builder.getAllocated() <= 512);
+      }
+      shardedTrie = builder.build(4);
+    }
+    for (int i = 0; i < 4096; i++) {
+      assertEquals(i, shardedTrie.match((i * 0x9E3779B1L) & 0xFFFFFFFFL));
+    }
+  }
+
+  @Test(expected = IllegalStateException.class)
+  public void testRecover_missingShard() {
+    int[] shardSizes = new int[16];
+    shardSizes[5] = 10;
+    new ShardedTrie(basepath + "/missing", 4, shardSizes).match(0x50000000);
+  }
+}
@@ -0,0 +1,132 @@
+package com.github.opentech.ipgeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.Arrays;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.Test;
+
+import com.github.opentech.ipgeo.Schema.Column;
+import com.github.opentech.ipgeo.Schema.Column.Datatype;
+
+/**
+ * Unit test cases for class SourceTokenizer
+ */
+public class SourceTokenizerTest {
+
+  private static String sourcePath = "src/test/resources/ip_geo/ip_geo_tokenizer.txt";
+
+  @AfterClass
+  public static void cleanup() {
+    FileUtils.deleteQuietly(new File(sourcePath));
+  }
+
+  private static void writeSource(String content) throws IOException {
+    Files.write(Paths.get(sourcePath), content.getBytes(StandardCharsets.UTF_8));
+  }
+
+  @Test
+  public void testNextLine_smallWindow() throws IOException {
+    writeSource("1.0.0.0/24\t840\t\\N\r\n2.0.0.0/24\t-17\t\nM\u00fcnchen\t+5");
+    // Window smaller than source forces lines to be re-mapped across window boundaries
+    try (SourceTokenizer tokenizer = new SourceTokenizer(sourcePath, 24)) {
+      assertTrue(tokenizer.nextLine());
+      assertEquals(3, tokenizer.getFieldCount());
+      assertEquals("1.0.0.0/24", tokenizer.getString(0));
+      assertEquals(840, tokenizer.parseLong(1));
+      assertTrue(tokenizer.isNullValue(2));
+      assertEquals("1.0.0.0/24\t840\t\\N", tokenizer.getLine());
+
+      assertTrue(tokenizer.nextLine());
+      assertEquals(3, tokenizer.getFieldCount());
+      assertEquals(-17, tokenizer.parseLong(1));
+      assertTrue(tokenizer.isNullValue(2));
+
+      assertTrue(tokenizer.nextLine());
+      assertEquals(2, tokenizer.getFieldCount());
+      assertEquals("M\u00fcnchen", tokenizer.getString(0));
+      assertFalse(tokenizer.isNullValue(0));
+      assertEquals(5, tokenizer.parseLong(1));
+      assertFalse(tokenizer.nextLine());
+    }
+  }
+
+  @Test
+  public void testParseLong_limits() throws IOException {
+    String[] invalid = {"", "-", "+", "12a", "9223372036854775808", "-9223372036854775809", " 1"};
+    writeSource(Long.MIN_VALUE + "\t" + Long.MAX_VALUE + "\t0\t" + String.join("\t", invalid));
+    try (SourceTokenizer tokenizer = new SourceTokenizer(sourcePath)) {
+      assertTrue(tokenizer.nextLine());
+      assertEquals(Long.MIN_VALUE, tokenizer.parseLong(0));
+      assertEquals(Long.MAX_VALUE, tokenizer.parseLong(1));
+      assertEquals(0, tokenizer.parseLong(2));
+      for (int field = 3; field < tokenizer.getFieldCount(); field++) {
+        try {
+          tokenizer.parseLong(field);
+          fail("Expected invalid value at field " + field);
+        } catch (NumberFormatException e) {
+          // expected
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testParseIpRange() throws IOException {
+    String[] invalid = {"", "1.2.3", "1.2.3.256", "1.2.3.4/33", "1.2.3.4-1.2.3.3", "1.2.3.4/",
+        "1.2.3.4x", "1..3.4", "1234.2.3.4"};
+    writeSource("1.2.3.4\t10.1.2.3/8\t0.0.0.0/0\t1.2.3.4-5.6.7.8\t" + String.join("\t", invalid));
+    try (SourceTokenizer tokenizer = new SourceTokenizer(sourcePath)) {
+      assertTrue(tokenizer.nextLine());
+      assertEquals(0x01020304_01020304L, tokenizer.parseIpRange(0));
+      assertEquals(0x0A000000_0AFFFFFFL, tokenizer.parseIpRange(1));
+      assertEquals(0x00000000_FFFFFFFFL, tokenizer.parseIpRange(2));
+      assertEquals(0x01020304_05060708L, tokenizer.parseIpRange(3));
+      for (int field = 4; field < tokenizer.getFieldCount(); field++) {
+        try {
+          tokenizer.parseIpRange(field);
+          fail("Expected invalid range at field " + field);
+        } catch (IllegalArgumentException e) {
+          // expected
+        }
+      }
+    }
+  }
+
+  @Test
+  public void testEncodeRecord_sameAsStringValues() throws IOException {
+    Schema schema = new Schema(Arrays.asList(new Column("country_code", Datatype.SHORT, ""),
+        new Column("csa_code", Datatype.BYTE, "", true),
+        new Column("cbsa_code", Datatype.FLOAT, ""), new Column("md_code", Datatype.INT, ""),
+        new Column("ip_start_int", Datatype.LONG, "")));
+    DataRecordProcessor dataRecordProcessor = new DataRecordProcessor(schema);
+    String[] values = {"840", "\\N", "1.5", "-2146568473", "1493102853"};
+    writeSource("216.254.241.10/32\t" + String.join("\t", values)
+        + "\n216.254.241.11/32\t40000\t1\t1.5\t0\t0\n216.254.241.12/32\t1");
+    try (SourceTokenizer tokenizer = new SourceTokenizer(sourcePath)) {
+      assertTrue(tokenizer.nextLine());
+      DataRecord record = dataRecordProcessor.encodeRecord(tokenizer, 1);
+      assertEquals(dataRecordProcessor.encodeRecord(values).copyContent(),
+          dataRecordProcessor.encodeRecord(tokenizer, 1).copyContent());
+      assertTrue(record.isNull(1));
+      assertEquals(1493102853L, record.readLong(4));
+
+      // Short out of range & missing values are rejected
+      assertTrue(tokenizer.nextLine());
+      assertNull(dataRecordProcessor.encodeRecord(tokenizer, 1));
+      assertTrue(tokenizer.nextLine());
+      assertNull(dataRecordProcessor.encodeRecord(tokenizer, 1));
+    }
+  }
+}
@@ -0,0 +1,105 @@
+package com.github.opentech.ipgeo;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.AfterClass;
+import org.junit.BeforeClass;
+import org.junit.Test;
+
+import com.github.opentech.ipgeo.StringPool.PooledString;
+
+/**
+ * Unit test cases for classes StringPool & StringPoolBuilder
+ */
+public class StringPoolTest {
+
+  @BeforeClass
+  public static void setup() throws IOException {
+    Files.createDirectories(Paths.get("src/test/resources/stringpool"));
+  }
+
+  @AfterClass
+  public static void cleanup() {
+    FileUtils.deleteQuietly(new File("src/test/resources/stringpool"));
+  }
+
+  @Test
+  public void testEncode_deduplicates() {
+    StringPoolBuilder stringPoolBuilder = new StringPoolBuilder();
+    assertEquals(0, stringPoolBuilder.encode("Bengaluru"));
+    assertEquals(1, stringPoolBuilder.encode("Comcast Cable"));
+    assertEquals(0, stringPoolBuilder.encode("Bengaluru"));
+    assertEquals(2, stringPoolBuilder.getCount());
+  }
+
+  @Test
+  public void testPersistRecover_positive() throws Exception {
+    StringPoolBuilder stringPoolBuilder = new StringPoolBuilder();
+    stringPoolBuilder.encode("Bengaluru");
+    stringPoolBuilder.encode("");
+    stringPoolBuilder.encode("Z\u00fcrich");
+    stringPoolBuilder.persist("src/test/resources/stringpool/strings1");
+
+    StringPool stringPool = new StringPool("src/test/resources/stringpool/strings1");
+    assertEquals(3, stringPool.getCount());
+    PooledString view = stringPool.get(0, null);
+    assertEquals("Bengaluru", view.toString());
+    assertSame(view, stringPool.get(2, view));
+    assertEquals(6, view.length());
+    assertEquals('\u00fc', view.charAt(1));
+    assertTrue(view.contentEquals("Z\u00fcrich"));
+    assertFalse(view.contentEquals("Zurich"));
+    assertEquals(0, stringPool.get(1, view).length());
+    assertEquals(1, stringPool.getLeases());
+    stringPool.uninit();
+    stringPool.uninit();
+    assertEquals(0, stringPool.getLeases());
+  }
+
+  @Test
+  public void testUninit_readsFail() throws Exception {
+    StringPoolBuilder stringPoolBuilder = new StringPoolBuilder();
+    stringPoolBuilder.encode("Bengaluru");
+    stringPoolBuilder.persist("src/test/resources/stringpool/strings3");
+    StringPool stringPool = new StringPool("src/test/resources/stringpool/strings3");
+    PooledString view = stringPool.get(0, null);
+    stringPool.uninit();
+
+    // Mapping is released, views & reads started afterwards fail rather than read unmapped memory
+    try {
+      view.toString();
+      fail("View read after uninit");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("un-initialized"));
+    }
+    try {
+      stringPool.get(0, view);
+      fail("String resolved after uninit");
+    } catch (IllegalStateException e) {
+      assertTrue(e.getMessage().contains("un-initialized"));
+    }
+  }
+
+  @Test(expected = IndexOutOfBoundsException.class)
+  public void testGet_invalidId() throws Exception {
+    StringPoolBuilder stringPoolBuilder = new StringPoolBuilder();
+    stringPoolBuilder.encode("Bengaluru");
+    stringPoolBuilder.persist("src/test/resources/stringpool/strings2");
+    StringPool stringPool = new StringPool("src/test/resources/stringpool/strings2");
+    try {
+      stringPool.get(1, null);
+    } finally {
+      stringPool.uninit();
+    }
+  }
+}